@@ -1,18 +1,54 @@
 package com.boonya.game.cache;
 
+import com.boonya.game.cache.batch.CollapsingBatchLoader;
+import com.boonya.game.cache.fill.BackfillExecutor;
+import com.boonya.game.cache.fill.SingleFlight;
+import com.boonya.game.cache.hedge.HedgedExecutor;
+import com.boonya.game.cache.tier.TieredCache;
+import com.boonya.game.datasource.DynamicDataSourceHolder;
+import com.boonya.game.datasource.WritePositionHolder;
+import com.boonya.game.deadline.Deadline;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.util.ClassUtils;
 
 import java.time.Duration;
-import java.util.concurrent.CompletableFuture;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * 多级缓存管理器
+ * <p>
+ * L1未命中后按键single-flight：同一个键的并发未命中只查一次L2/L3，L1由加载者同步回填，
+ * L2在独立的有界线程池上回填，回填失败计数不抛出。
+ * <p>
+ * 通过 {@link #usePipeline} 为某个缓存名指定 {@link TieredCache} 后，该缓存的读取完全交给管线，
+ * 层数、每层TTL与提升降级规则由管线配置决定，不再使用这里固定的 CacheManager + Redis + 数据库三层。
+ * <p>
+ * 当前线程设置了 {@link Deadline} 时，每次查询L2/L3前检查剩余时间，等待其他调用方的在途加载最多等到截止时间。
+ * 通过 {@link #enableHedging} 开启对冲后，L2慢于近期p95时同时查L3，L3慢于p95时向另一个从库再查一次，先返回的生效。
+ * <p>
+ * 写路径在数据库写入后调用 {@link #evict}，删除L2与L1中的旧值。
  */
 @Data
-public abstract class AbstractMultiLevelCache<T, ID> {
+public abstract class AbstractMultiLevelCache<T, ID> implements MeterBinder, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(AbstractMultiLevelCache.class);
 
     /**
      * L1: 本地缓存
@@ -24,9 +60,54 @@ public abstract class AbstractMultiLevelCache<T, ID> {
      */
     private RedisTemplate<String, Object> redisCache;
 
+    /**
+     * L1未命中后的L2+L3合批加载，只作用于开启时指定的缓存，未开启时为null
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile CollapsingBatchLoader<ID, Object> batchLoader;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile String batchCacheName;
+
+    /**
+     * L1未命中的在途加载，键为Redis键（cacheName_:id）
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final SingleFlight<String, Object> fills;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final BackfillExecutor backfills;
+
+    /**
+     * 按缓存名指定的分层管线，优先于固定的三层
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final Map<String, TieredCache<ID, ?>> pipelines = new ConcurrentHashMap<>();
+
+    /**
+     * L2/L3的对冲执行器，未开启时为null
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile HedgedExecutor redisHedge;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile HedgedExecutor databaseHedge;
+
+    /**
+     * 对冲时L3胜出但实体不存在，与L2未命中（null）区分，避免再查一次数据库
+     */
+    private static final Object NOT_FOUND = new Object();
+
     public AbstractMultiLevelCache(CacheManager localCache, RedisTemplate<String, Object> redisCache) {
         this.localCache = localCache;
         this.redisCache = redisCache;
+        String name = ClassUtils.getUserClass(getClass()).getSimpleName();
+        this.fills = new SingleFlight<>(name);
+        this.backfills = new BackfillExecutor(name);
     }
 
     /**
@@ -34,13 +115,84 @@ public abstract class AbstractMultiLevelCache<T, ID> {
      */
     public abstract JpaRepository<T, ID> database();
 
+    /**
+     * L3单条查询，默认走 {@link #database()}；数据不在JPA数据源上（如分片库）时由子类覆盖
+     */
+    protected T loadFromDatabase(ID id) {
+        return database().findById(id).orElse(null);
+    }
+
+    /**
+     * L3批量查询，默认走 {@link #database()}
+     */
+    protected Iterable<T> loadAllFromDatabase(List<ID> ids) {
+        return database().findAllById(ids);
+    }
+
     public <T> T findById(Class<T> clazz, String cacheName, ID id) {
+        TieredCache<ID, ?> pipeline = pipelines.get(cacheName);
+        if (pipeline != null) {
+            return (T) pipeline.get(id);
+        }
+
         // 1. 先查本地缓存
         T entity = localCache.getCache(cacheName).get(id, clazz);
         if (entity != null) return entity;
 
-        // 2. 再查Redis
-        entity = (T) redisCache.opsForValue().get(cacheName + "_:" + id);
+        // 2/3. 同一个键的并发未命中共享一次加载
+        String key = cacheName + "_:" + id;
+        return (T) fills.load(key, () -> loadMiss(cacheName, key, id));
+    }
+
+    /**
+     * 实体被修改或删除后由写路径调用：先删L2再删L1，避免删除过程中L1被L2的旧值回填；
+     * 缓存名配置了管线时同时清除管线各层。Redis删除失败只记日志，不影响已经完成的写入
+     */
+    public void evict(String cacheName, ID id) {
+        String key = cacheName + "_:" + id;
+        try {
+            redisCache.delete(key);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to delete {} from redis, it may stay stale until it expires: {}", key, e.toString());
+        }
+        Cache cache = localCache.getCache(cacheName);
+        if (cache != null) {
+            cache.evict(id);
+        }
+        TieredCache<ID, ?> pipeline = pipelines.get(cacheName);
+        if (pipeline != null) {
+            pipeline.evict(id);
+        }
+    }
+
+    /**
+     * L1未命中的加载，只由single-flight的leader执行；返回前同步回填L1，
+     * 之后到达的调用方直接命中L1，不会再发起加载
+     */
+    private Object loadMiss(String cacheName, String key, ID id) {
+        // 开启合批时，窗口内不同键的未命中合并为一次MGET + 一次findAllById，L2由批次回填
+        CollapsingBatchLoader<ID, Object> loader = batchLoader;
+        if (loader != null && cacheName.equals(batchCacheName)) {
+            // 按调用方的数据源路由分批，批次在加载线程上恢复路由与本批最大的写位点
+            Object entity = Deadline.await(loader.load(id, DynamicDataSourceHolder.peekDataSource(),
+                    WritePositionHolder.getPosition()), "batch load");
+            if (entity != null) {
+                localCache.getCache(cacheName).put(id, entity);
+            }
+            return entity;
+        }
+
+        // 2. 再查Redis，开启对冲时慢于p95同时查数据库
+        Deadline.check("redis read");
+        HedgedExecutor hedge = redisHedge;
+        Object entity = hedge == null ? redisCache.opsForValue().get(key)
+                : hedge.call(() -> redisCache.opsForValue().get(key), onCallerRoute(() -> {
+                    Object loaded = loadDatabase(cacheName, key, id);
+                    return loaded != null ? loaded : NOT_FOUND;
+                }));
+        if (entity == NOT_FOUND) {
+            return null;
+        }
         if (entity != null) {
             // 回填本地缓存
             localCache.getCache(cacheName).put(id, entity);
@@ -48,15 +200,172 @@ public abstract class AbstractMultiLevelCache<T, ID> {
         }
 
         // 3. 最后查数据库
-        entity = (T) database().findById(id).orElse(null);
+        return loadDatabase(cacheName, key, id);
+    }
+
+    /**
+     * L3查询，查到后同步回填L1、异步回填L2
+     */
+    private Object loadDatabase(String cacheName, String key, ID id) {
+        Deadline.check("database read");
+        Object entity = findInDatabase(id);
         if (entity != null) {
-            final T t = entity;
-            // 异步回填缓存
-            CompletableFuture.runAsync(() -> {
-                redisCache.opsForValue().set(cacheName + "_:" + id, t, Duration.ofMinutes(30));
-                localCache.getCache(cacheName).put(id, t);
-            });
+            localCache.getCache(cacheName).put(id, entity);
+            // 异步回填Redis，有界线程池，队列满时丢弃
+            Object loaded = entity;
+            backfills.submit(key, () -> redisCache.opsForValue().set(key, loaded, Duration.ofMinutes(30)));
         }
         return entity;
     }
+
+    /**
+     * 开启对冲且调用方读从库时，主请求与备选请求在调用线程上分别选定两个不同的从库（筛选条件与读己之写在这里生效），
+     * 执行线程按选定的从库路由；调用方读主库或只有一个合格从库时不对冲，只做截止时间控制
+     */
+    private T findInDatabase(ID id) {
+        HedgedExecutor hedge = databaseHedge;
+        if (hedge == null) {
+            return loadFromDatabase(id);
+        }
+        if (!DynamicDataSourceHolder.SLAVE.equals(DynamicDataSourceHolder.peekDataSource())) {
+            String dataSource = DynamicDataSourceHolder.peekDataSource();
+            return hedge.call(() -> onDataSource(dataSource, id), null);
+        }
+        String primary = DynamicDataSourceHolder.getDataSource();
+        String secondary = DynamicDataSourceHolder.MASTER.equals(primary) ? null
+                : DynamicDataSourceHolder.getLoadBalancedSlaveExcluding(primary);
+        return hedge.call(() -> onDataSource(primary, id),
+                secondary == null ? null : () -> onDataSource(secondary, id));
+    }
+
+    /**
+     * 在对冲线程上恢复调用方的数据源选择与写位点，执行完清除，不留在线程池线程上
+     */
+    private static <R> Supplier<R> onCallerRoute(Supplier<R> action) {
+        String dataSource = DynamicDataSourceHolder.peekDataSource();
+        long position = WritePositionHolder.getPosition();
+        return () -> DynamicDataSourceHolder.callWithRoute(dataSource, position, action);
+    }
+
+    private T onDataSource(String dataSource, ID id) {
+        DynamicDataSourceHolder.setDataSource(dataSource);
+        try {
+            return loadFromDatabase(id);
+        } finally {
+            DynamicDataSourceHolder.clearDataSource();
+        }
+    }
+
+    /**
+     * 开启L2+L3合批加载；调用方的数据源路由不同的未命中分别合批，批量查询在加载线程上按该路由与本批最大的写位点选库
+     *
+     * @param idOf        从实体取主键，用于把findAllById的结果对应回请求
+     * @param window      合批窗口，即单个请求最多增加的等待
+     * @param maxBatchSize 一批的最大键数，达到后立即发出
+     * @param concurrency 同时执行的批量查询数
+     */
+    public synchronized void enableBatchLoading(String cacheName, Function<T, ID> idOf, Duration window,
+                                                int maxBatchSize, int concurrency, MeterRegistry registry) {
+        disableBatchLoading();
+        this.batchCacheName = cacheName;
+        this.batchLoader = new CollapsingBatchLoader<>(cacheName, (route, position, ids) ->
+                DynamicDataSourceHolder.callWithRoute((String) route, position, () -> loadBatch(cacheName, idOf, ids)),
+                window, maxBatchSize, concurrency, registry);
+    }
+
+    public synchronized void disableBatchLoading() {
+        CollapsingBatchLoader<ID, Object> loader = batchLoader;
+        batchLoader = null;
+        if (loader != null) {
+            loader.close();
+        }
+    }
+
+    /**
+     * 开启L2/L3对冲，两层各用一个 {@link HedgedExecutor}，替换的旧执行器被关闭；registry为null时不注册指标
+     */
+    public synchronized void enableHedging(HedgedExecutor.Policy policy, MeterRegistry registry) {
+        disableHedging();
+        String name = ClassUtils.getUserClass(getClass()).getSimpleName();
+        HedgedExecutor redis = new HedgedExecutor(name, "redis", policy);
+        HedgedExecutor database = new HedgedExecutor(name, "database", policy);
+        if (registry != null) {
+            redis.bindTo(registry);
+            database.bindTo(registry);
+        }
+        this.redisHedge = redis;
+        this.databaseHedge = database;
+    }
+
+    public synchronized void disableHedging() {
+        HedgedExecutor redis = redisHedge;
+        HedgedExecutor database = databaseHedge;
+        redisHedge = null;
+        databaseHedge = null;
+        if (redis != null) {
+            redis.close();
+        }
+        if (database != null) {
+            database.close();
+        }
+    }
+
+    /**
+     * 缓存名的读取改由管线处理，替换的旧管线被关闭；pipeline为null时恢复固定三层
+     */
+    public void usePipeline(String cacheName, TieredCache<ID, ?> pipeline) {
+        TieredCache<ID, ?> previous = pipeline == null ? pipelines.remove(cacheName) : pipelines.put(cacheName, pipeline);
+        if (previous != null && previous != pipeline) {
+            previous.close();
+        }
+    }
+
+    /**
+     * 未命中合并与回填指标，Spring容器中作为MeterBinder自动绑定
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        fills.bindTo(registry);
+        backfills.bindTo(registry);
+    }
+
+    /**
+     * 关闭合批加载与回填线程池，已排队的回填继续执行
+     */
+    @Override
+    public void close() {
+        disableBatchLoading();
+        disableHedging();
+        backfills.close();
+        pipelines.values().forEach(TieredCache::close);
+    }
+
+    /**
+     * 一次MGET取L2，剩余的一次findAllById并同步回填L2
+     */
+    private Map<ID, Object> loadBatch(String cacheName, Function<T, ID> idOf, List<ID> ids) {
+        List<String> keys = new ArrayList<>(ids.size());
+        for (ID id : ids) {
+            keys.add(cacheName + "_:" + id);
+        }
+        List<Object> cached = redisCache.opsForValue().multiGet(keys);
+        Map<ID, Object> result = new HashMap<>(ids.size() * 2);
+        List<ID> missing = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            Object value = cached == null ? null : cached.get(i);
+            if (value != null) {
+                result.put(ids.get(i), value);
+            } else {
+                missing.add(ids.get(i));
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (T entity : loadAllFromDatabase(missing)) {
+                ID id = idOf.apply(entity);
+                result.put(id, entity);
+                redisCache.opsForValue().set(cacheName + "_:" + id, entity, Duration.ofMinutes(30));
+            }
+        }
+        return result;
+    }
 }
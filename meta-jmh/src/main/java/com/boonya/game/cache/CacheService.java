@@ -4,11 +4,17 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 public interface CacheService {
     <T> T getFromRedis(String key, Class<T> type);
 
+    /**
+     * 一次MGET，结果与keys一一对应，不存在的为null
+     */
+    List<Object> multiGetFromRedis(List<String> keys);
+
     void putToRedis(String key, Object value, long timeout, TimeUnit unit);
 
     void clearUserCache();
@@ -18,13 +24,18 @@ public interface CacheService {
         private static final String USER_CACHE_KEY = "user:";
 
         @Autowired
-        private RedisTemplate redisTemplate;
+        private RedisTemplate<String, Object> redisTemplate;
 
         @Override
         public <T> T getFromRedis(String key, Class<T> type) {
             return (T) redisTemplate.opsForValue().get(key);
         }
 
+        @Override
+        public List<Object> multiGetFromRedis(List<String> keys) {
+            return redisTemplate.opsForValue().multiGet(keys);
+        }
+
         @Override
         public void putToRedis(String key, Object value, long timeout, TimeUnit unit) {
             redisTemplate.opsForValue().set(key, value, timeout, unit);
@@ -0,0 +1,178 @@
+package com.boonya.game.cache.batch;
+
+import com.google.common.collect.Lists;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * 保序的批量查询：按ID列表一次解析L1/L2/L3
+ * <ol>
+ *     <li>L1：调用线程上逐个查本地缓存，命中的直接按下标写入结果数组</li>
+ *     <li>L2：未命中的键去重后按chunkSize分块，各块并行批量读取（如Redis MGET）</li>
+ *     <li>L3：L2仍未命中的键同样分块并行批量加载（如findAllById）</li>
+ * </ol>
+ * 结果数组按输入下标预分配，每个分块的结果放在自己的future里，合并在调用线程上进行，全程没有共享锁；
+ * 只有一个分块时在调用线程直接执行，多个分块时调用线程执行最后一块。返回顺序与输入一致，不存在的键被跳过，重复的键重复返回。
+ * <p>
+ * 超大列表用 {@link #stream}：按窗口逐段查询并按顺序发出，同时最多 {@value #STREAM_WINDOWS_IN_FLIGHT} 个窗口在途，内存只与窗口大小相关。
+ */
+public class BatchQueryEngine<K, V> {
+
+    static final int STREAM_WINDOWS_IN_FLIGHT = 2;
+
+    /**
+     * 三层数据源与回填
+     */
+    public interface Source<K, V> {
+
+        V getLocal(K key);
+
+        /**
+         * 批量读L2，只返回命中的键
+         */
+        Map<K, V> getRemote(List<K> keys);
+
+        /**
+         * 批量读L3，只返回存在的键
+         */
+        Map<K, V> load(List<K> keys);
+
+        /**
+         * L2命中后回填L1
+         */
+        void onRemoteHit(K key, V value);
+
+        /**
+         * L3加载后回填L1/L2
+         */
+        void onLoaded(K key, V value);
+    }
+
+    private final Source<K, V> source;
+    private final Executor executor;
+    private final int chunkSize;
+    private final int streamWindow;
+
+    /**
+     * @param executor     分块查询的执行器，应为专用线程池或虚拟线程，不要用公共ForkJoinPool
+     * @param chunkSize    L2/L3单次批量查询的最大键数
+     * @param streamWindow 流式查询每个窗口的键数
+     */
+    public BatchQueryEngine(Source<K, V> source, Executor executor, int chunkSize, int streamWindow) {
+        this.source = source;
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+        this.streamWindow = streamWindow;
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<V> query(List<K> ids) {
+        int size = ids.size();
+        Object[] results = new Object[size];
+        int[] missing = new int[size];
+        int missingCount = 0;
+        LinkedHashSet<K> missingKeys = new LinkedHashSet<>();
+        for (int i = 0; i < size; i++) {
+            K id = ids.get(i);
+            V value = source.getLocal(id);
+            if (value != null) {
+                results[i] = value;
+            } else {
+                missing[missingCount++] = i;
+                missingKeys.add(id);
+            }
+        }
+
+        if (missingCount > 0) {
+            List<K> keys = new ArrayList<>(missingKeys);
+            Map<K, V> found = new HashMap<>(keys.size() * 2);
+            for (Map<K, V> chunk : fetch(keys, source::getRemote)) {
+                chunk.forEach((key, value) -> {
+                    found.put(key, value);
+                    source.onRemoteHit(key, value);
+                });
+            }
+
+            List<K> notCached = new ArrayList<>(keys.size() - found.size());
+            for (K key : keys) {
+                if (!found.containsKey(key)) {
+                    notCached.add(key);
+                }
+            }
+            if (!notCached.isEmpty()) {
+                for (Map<K, V> chunk : fetch(notCached, source::load)) {
+                    chunk.forEach((key, value) -> {
+                        found.put(key, value);
+                        source.onLoaded(key, value);
+                    });
+                }
+            }
+
+            for (int j = 0; j < missingCount; j++) {
+                int index = missing[j];
+                results[index] = found.get(ids.get(index));
+            }
+        }
+
+        List<V> ordered = new ArrayList<>(size);
+        for (Object result : results) {
+            if (result != null) {
+                ordered.add((V) result);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * 按窗口流式查询，顺序与输入一致；窗口查询在boundedElastic上阻塞等待，分块仍在executor上执行，
+     * 避免窗口任务占满executor后等待自己的分块
+     */
+    public Flux<V> stream(List<K> ids) {
+        return Flux.fromIterable(Lists.partition(ids, streamWindow))
+                .flatMapSequential(window -> Mono.fromCallable(() -> query(window))
+                        .subscribeOn(Schedulers.boundedElastic()), STREAM_WINDOWS_IN_FLIGHT)
+                .flatMapIterable(Function.identity());
+    }
+
+    /**
+     * 分块并行执行，结果按分块下标返回
+     */
+    private List<Map<K, V>> fetch(List<K> keys, Function<List<K>, Map<K, V>> bulk) {
+        int chunks = (keys.size() + chunkSize - 1) / chunkSize;
+        if (chunks == 1) {
+            return List.of(bulk.apply(keys));
+        }
+        List<CompletableFuture<Map<K, V>>> futures = new ArrayList<>(chunks - 1);
+        for (int c = 0; c < chunks - 1; c++) {
+            List<K> chunk = keys.subList(c * chunkSize, (c + 1) * chunkSize);
+            futures.add(CompletableFuture.supplyAsync(() -> bulk.apply(chunk), executor));
+        }
+        // 最后一块在调用线程上执行
+        Map<K, V> last = bulk.apply(keys.subList((chunks - 1) * chunkSize, keys.size()));
+        List<Map<K, V>> results = new ArrayList<>(chunks);
+        try {
+            for (CompletableFuture<Map<K, V>> future : futures) {
+                results.add(future.join());
+            }
+        } catch (CompletionException e) {
+            futures.forEach(future -> future.cancel(false));
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        results.add(last);
+        return results;
+    }
+}
@@ -0,0 +1,240 @@
+package com.boonya.game.cache.batch;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * 合并请求的批量加载器（DataLoader模式）
+ * <ul>
+ *     <li>窗口内到达的键合成一批，第一个键到达时开始计时，窗口到期或达到maxBatchSize时关闭</li>
+ *     <li>同一批内的重复键共享一个future</li>
+ *     <li>关闭的批次在独立线程池上调用一次批量函数，按键完成各自的future，批量函数未返回的键得到null</li>
+ *     <li>批量函数抛异常时本批所有future异常完成</li>
+ *     <li>{@link #load(Object, Object, long)} 按分区分别合批（例如调用方的数据源路由），
+ *     每批带上调用方水位的最大值（例如读己之写的复制位点），批量函数在执行线程上据此恢复调用方的上下文</li>
+ * </ul>
+ * 合批以增加最多一个窗口的延迟为代价，把N次单键查询变为一次批量查询，适合下游有网络往返的场景。
+ * 用ReentrantLock保护当前批次，在虚拟线程上调用不会钉住载体线程。
+ */
+public class CollapsingBatchLoader<K, V> implements AutoCloseable {
+
+    /**
+     * 按分区合批的批量函数
+     */
+    @FunctionalInterface
+    public interface PartitionedBatchFunction<K, V> {
+
+        /**
+         * @param partition 本批键的分区，{@link #load(Object)} 加入的键为null
+         * @param watermark 本批调用方水位的最大值
+         */
+        Map<K, V> apply(Object partition, long watermark, List<K> keys);
+    }
+
+    private final PartitionedBatchFunction<K, V> batchFunction;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService timer;
+    private final ExecutorService dispatcher;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * 分区 -> 正在收集的批次
+     */
+    private final Map<Object, Pending<K, V>> pending = new HashMap<>();
+    private boolean closed;
+
+    private final DistributionSummary batchSize;
+    private final Timer batchWait;
+    private final Timer batchFetch;
+    private final Counter failures;
+
+    /**
+     * @param concurrency 同时执行的批量查询数
+     * @param registry    为null时不记录指标
+     */
+    public CollapsingBatchLoader(String name, Function<List<K>, Map<K, V>> batchFunction, Duration window,
+                                 int maxBatchSize, int concurrency, MeterRegistry registry) {
+        this(name, (partition, watermark, keys) -> batchFunction.apply(keys), window, maxBatchSize, concurrency, registry);
+    }
+
+    public CollapsingBatchLoader(String name, PartitionedBatchFunction<K, V> batchFunction, Duration window,
+                                 int maxBatchSize, int concurrency, MeterRegistry registry) {
+        this.batchFunction = batchFunction;
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "batch-loader-" + name + "-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger threads = new AtomicInteger();
+        this.dispatcher = Executors.newFixedThreadPool(concurrency, r -> {
+            Thread thread = new Thread(r, "batch-loader-" + name + "-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (registry != null) {
+            this.batchSize = DistributionSummary.builder("batch.loader.size")
+                    .description("Distinct keys per collapsed batch")
+                    .tag("loader", name)
+                    .publishPercentiles(0.5, 0.99)
+                    .register(registry);
+            this.batchWait = Timer.builder("batch.loader.wait")
+                    .description("Latency added by collapsing: how long the first key of a batch waited for it to close")
+                    .tag("loader", name)
+                    .publishPercentiles(0.5, 0.99)
+                    .register(registry);
+            this.batchFetch = Timer.builder("batch.loader.fetch")
+                    .description("Time spent in the batch function")
+                    .tag("loader", name)
+                    .register(registry);
+            this.failures = Counter.builder("batch.loader.failures")
+                    .tag("loader", name)
+                    .register(registry);
+        } else {
+            this.batchSize = null;
+            this.batchWait = null;
+            this.batchFetch = null;
+            this.failures = null;
+        }
+    }
+
+    public CompletableFuture<V> load(K key) {
+        return load(key, null, 0);
+    }
+
+    /**
+     * @param partition 只与同一分区（equals）的键合批，可以为null
+     * @param watermark 调用方的水位，批量函数收到本批的最大值
+     */
+    public CompletableFuture<V> load(K key, Object partition, long watermark) {
+        Pending<K, V> full = null;
+        CompletableFuture<V> future;
+        lock.lock();
+        try {
+            if (closed) {
+                return CompletableFuture.failedFuture(new IllegalStateException("Batch loader is closed"));
+            }
+            Pending<K, V> batch = pending.get(partition);
+            if (batch == null) {
+                Pending<K, V> opened = new Pending<>(partition, System.nanoTime());
+                timer.schedule(() -> closeIfCurrent(opened), windowNanos, TimeUnit.NANOSECONDS);
+                pending.put(partition, opened);
+                batch = opened;
+            }
+            batch.watermark = Math.max(batch.watermark, watermark);
+            future = batch.futures.computeIfAbsent(key, k -> new CompletableFuture<>());
+            if (batch.futures.size() >= maxBatchSize) {
+                full = batch;
+                pending.remove(partition);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (full != null) {
+            dispatch(full);
+        }
+        return future;
+    }
+
+    private void closeIfCurrent(Pending<K, V> batch) {
+        lock.lock();
+        try {
+            // 已因达到上限被关闭
+            if (!pending.remove(batch.partition, batch)) {
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        dispatch(batch);
+    }
+
+    private void dispatch(Pending<K, V> batch) {
+        long closedAt = System.nanoTime();
+        if (batchWait != null) {
+            batchWait.record(closedAt - batch.openedAt, TimeUnit.NANOSECONDS);
+            batchSize.record(batch.futures.size());
+        }
+        try {
+            dispatcher.execute(() -> run(batch));
+        } catch (RejectedExecutionException e) {
+            fail(batch, e);
+        }
+    }
+
+    private void run(Pending<K, V> batch) {
+        List<K> keys = new ArrayList<>(batch.futures.keySet());
+        long start = System.nanoTime();
+        Map<K, V> values;
+        try {
+            values = batchFunction.apply(batch.partition, batch.watermark, keys);
+        } catch (Throwable e) {
+            fail(batch, e);
+            return;
+        } finally {
+            if (batchFetch != null) {
+                batchFetch.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+        for (Map.Entry<K, CompletableFuture<V>> entry : batch.futures.entrySet()) {
+            entry.getValue().complete(values == null ? null : values.get(entry.getKey()));
+        }
+    }
+
+    private void fail(Pending<K, V> batch, Throwable error) {
+        if (failures != null) {
+            failures.increment();
+        }
+        for (CompletableFuture<V> future : batch.futures.values()) {
+            future.completeExceptionally(error);
+        }
+    }
+
+    @Override
+    public void close() {
+        List<Pending<K, V>> last;
+        lock.lock();
+        try {
+            closed = true;
+            timer.shutdownNow();
+            last = new ArrayList<>(pending.values());
+            pending.clear();
+        } finally {
+            lock.unlock();
+        }
+        last.forEach(this::dispatch);
+        dispatcher.shutdown();
+    }
+
+    private static final class Pending<K, V> {
+        private final Object partition;
+        private final long openedAt;
+        private final Map<K, CompletableFuture<V>> futures = new LinkedHashMap<>();
+        private long watermark;
+
+        Pending(Object partition, long openedAt) {
+            this.partition = partition;
+            this.openedAt = openedAt;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.boonya.game.cache.fill;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存回填线程池：线程数与队列都有上限，不占用公共ForkJoinPool
+ * <ul>
+ *     <li>回填是尽力而为的，队列满时直接丢弃并计数，下一次未命中会重新加载</li>
+ *     <li>失败只计数并在debug级别记录，不影响读路径</li>
+ *     <li>空闲线程超时回收，未使用时不占线程</li>
+ * </ul>
+ */
+public class BackfillExecutor implements MeterBinder, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BackfillExecutor.class);
+
+    public static final int DEFAULT_THREADS = 2;
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public BackfillExecutor(String name) {
+        this(name, DEFAULT_THREADS, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public BackfillExecutor(String name, int threads, int queueCapacity) {
+        this.name = name;
+        AtomicInteger sequence = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread thread = new Thread(r, "backfill-" + name + "-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, (task, pool) -> rejected.increment());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 提交一次回填，队列满或已关闭时丢弃
+     */
+    public void submit(Object key, Runnable backfill) {
+        executor.execute(() -> {
+            try {
+                backfill.run();
+                completed.increment();
+            } catch (RuntimeException e) {
+                failed.increment();
+                logger.debug("Backfill of {} for {} failed: {}", name, key, e.getMessage());
+            }
+        });
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public int getQueued() {
+        return executor.getQueue().size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("cache.backfill", this, BackfillExecutor::getCompleted)
+                .tag("cache", name)
+                .tag("result", "completed")
+                .register(registry);
+        FunctionCounter.builder("cache.backfill", this, BackfillExecutor::getFailed)
+                .tag("cache", name)
+                .tag("result", "failed")
+                .register(registry);
+        FunctionCounter.builder("cache.backfill", this, BackfillExecutor::getRejected)
+                .description("Backfills dropped because the queue was full")
+                .tag("cache", name)
+                .tag("result", "rejected")
+                .register(registry);
+        Gauge.builder("cache.backfill.queue", this, BackfillExecutor::getQueued)
+                .tag("cache", name)
+                .register(registry);
+    }
+
+    /**
+     * 已排队的回填继续执行，不再接受新任务
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
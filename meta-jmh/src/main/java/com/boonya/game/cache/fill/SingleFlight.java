@@ -0,0 +1,100 @@
+package com.boonya.game.cache.fill;
+
+import com.boonya.game.deadline.Deadline;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 按键合并并发加载（single-flight）
+ * <ul>
+ *     <li>同一个键同时只有一个调用方（leader）执行加载，其余调用方等待它的结果</li>
+ *     <li>加载完成后立即从在途表移除，结果不在这里缓存；leader应在返回前写好本地缓存，之后到达的调用方直接命中</li>
+ *     <li>加载异常同样共享给所有等待者</li>
+ * </ul>
+ * 与 {@link com.boonya.game.cache.batch.CollapsingBatchLoader} 互补：合批合并不同的键，这里合并相同的键。
+ */
+public class SingleFlight<K, V> implements MeterBinder {
+
+    private final String name;
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder shared = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public SingleFlight(String name) {
+        this.name = name;
+    }
+
+    /**
+     * 执行或加入键的在途加载，loader在调用线程上执行
+     */
+    public V load(K key, Supplier<V> loader) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            shared.increment();
+            return await(existing);
+        }
+        loads.increment();
+        try {
+            V value = loader.get();
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            failures.increment();
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * 等待者收到与leader相同的异常，而不是CompletionException包装；
+     * 等待者设置了 {@link Deadline} 时最多等到截止时间，不被leader更长的加载拖住
+     */
+    private static <V> V await(CompletableFuture<V> future) {
+        return Deadline.await(future, "in-flight load");
+    }
+
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    public long getShared() {
+        return shared.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("cache.fill.loads", this, SingleFlight::getLoads)
+                .description("Cache misses that performed the load")
+                .tag("cache", name)
+                .register(registry);
+        FunctionCounter.builder("cache.fill.shared", this, SingleFlight::getShared)
+                .description("Cache misses served by another caller's in-flight load")
+                .tag("cache", name)
+                .register(registry);
+        FunctionCounter.builder("cache.fill.failures", this, SingleFlight::getFailures)
+                .tag("cache", name)
+                .register(registry);
+        Gauge.builder("cache.fill.inflight", this, SingleFlight::inFlight)
+                .tag("cache", name)
+                .register(registry);
+    }
+}
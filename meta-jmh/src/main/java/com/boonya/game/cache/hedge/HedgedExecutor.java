@@ -0,0 +1,370 @@
+package com.boonya.game.cache.hedge;
+
+import com.boonya.game.deadline.Deadline;
+import com.boonya.game.deadline.DeadlineExceededException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.Data;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 对冲请求：主请求超过近期延迟的分位数（默认p95）仍未返回时，向备选目标（另一个从库或下一层）再发一次，
+ * 先成功返回的结果生效，另一个继续执行到结束，结果丢弃
+ * <ul>
+ *     <li>主请求失败时立即发出备选请求，不等待对冲延迟，也不占对冲预算</li>
+ *     <li>对冲数不超过调用数的 maxHedgeRatio，依赖整体变慢时不会把负载翻倍</li>
+ *     <li>等待最多到当前线程的 {@link Deadline}，过期后不再等待在途请求，直接抛出 {@link DeadlineExceededException}</li>
+ *     <li>线程池无排队，线程用完时在调用线程上直接执行主请求，不对冲</li>
+ * </ul>
+ * 落败或超过截止时间的请求不中断：JDBC驱动与Lettuce在线程被中断时会关闭连接或让连接处于不确定状态，
+ * 中断一次读取可能换来连接池里一条坏连接。请求本身的耗时由驱动与连接池的超时兜底，
+ * 执行线程上也设置了同样的截止时间，后续步骤会在发起远程调用前放弃；代价是落败请求继续占用一个对冲线程直到结束。
+ * 延迟窗口只记录主请求自己的耗时，在主请求结束时记入，包括落败、失败与超过截止时间后才结束的主请求；
+ * 备选请求胜出时的耗时不计入，否则对冲越多分位数越低，对冲延迟随之缩短，形成正反馈。
+ */
+public class HedgedExecutor implements MeterBinder, AutoCloseable {
+
+    private final String cache;
+    private final String target;
+    private final Policy policy;
+    private final ThreadPoolExecutor executor;
+    private final LatencyWindow latencies;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder hedged = new LongAdder();
+    private final LongAdder failovers = new LongAdder();
+    private final LongAdder backupWins = new LongAdder();
+    private final LongAdder deadlineExceeded = new LongAdder();
+    private final LongAdder saturated = new LongAdder();
+
+    /**
+     * @param cache  所属缓存，用于线程名与指标标签
+     * @param target 被对冲的依赖，例如 redis、database
+     */
+    public HedgedExecutor(String cache, String target, Policy policy) {
+        this.cache = cache;
+        this.target = target;
+        this.policy = policy;
+        this.latencies = new LatencyWindow(policy.getWindowSize(), policy.getRefreshInterval().toNanos());
+        AtomicInteger sequence = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(policy.getThreads(), policy.getThreads(), 30, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), r -> {
+            Thread thread = new Thread(r, "hedge-" + cache + "-" + target + "-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 执行主请求，慢于对冲延迟或失败时执行备选请求，返回先成功的结果
+     *
+     * @param backup 为null时只做截止时间控制，不对冲
+     */
+    public <T> T call(Supplier<T> primary, Supplier<T> backup) {
+        Deadline deadline = Deadline.current();
+        if (deadline != null && deadline.isExpired()) {
+            deadlineExceeded.increment();
+            throw new DeadlineExceededException(target);
+        }
+        calls.increment();
+        long start = System.nanoTime();
+        ExecutorCompletionService<T> race = new ExecutorCompletionService<>(executor);
+        Future<T> first;
+        try {
+            first = race.submit(() -> timed(start, () -> Deadline.callWithin(deadline, primary)));
+        } catch (RejectedExecutionException e) {
+            saturated.increment();
+            return timed(start, primary);
+        }
+
+        long hedgeAt = start + hedgeDelayNanos();
+        Future<T> second = null;
+        boolean hedgeArmed = backup != null;
+        int pending = 1;
+        RuntimeException failure = null;
+        try {
+            while (pending > 0) {
+                long wait = deadline == null ? Long.MAX_VALUE : deadline.remainingNanos();
+                if (hedgeArmed) {
+                    wait = Math.min(wait, hedgeAt - System.nanoTime());
+                }
+                Future<T> done = race.poll(Math.max(0, wait), TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    if (deadline != null && deadline.isExpired()) {
+                        deadlineExceeded.increment();
+                        throw new DeadlineExceededException(target);
+                    }
+                    // 到达对冲延迟，预算内才发出
+                    hedgeArmed = false;
+                    if (withinBudget()) {
+                        second = submit(race, deadline, backup);
+                        if (second != null) {
+                            hedged.increment();
+                            pending++;
+                        }
+                    }
+                    continue;
+                }
+                pending--;
+                try {
+                    T value = done.get();
+                    if (done != first) {
+                        backupWins.increment();
+                    }
+                    return value;
+                } catch (ExecutionException e) {
+                    failure = unwrap(e.getCause());
+                    if (done == first && second == null && backup != null) {
+                        hedgeArmed = false;
+                        second = submit(race, deadline, backup);
+                        if (second != null) {
+                            failovers.increment();
+                            pending++;
+                        }
+                    }
+                }
+            }
+            throw failure;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + cache + " " + target, e);
+        } finally {
+            // 不中断，见类注释；尚未开始执行的请求不再执行
+            first.cancel(false);
+            if (second != null) {
+                second.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * 执行主请求，结束时把它自己的耗时记入延迟窗口
+     */
+    private <T> T timed(long start, Supplier<T> primary) {
+        try {
+            return primary.get();
+        } finally {
+            latencies.record(System.nanoTime() - start);
+        }
+    }
+
+    private <T> Future<T> submit(ExecutorCompletionService<T> race, Deadline deadline, Supplier<T> backup) {
+        try {
+            return race.submit(() -> Deadline.callWithin(deadline, backup));
+        } catch (RejectedExecutionException e) {
+            saturated.increment();
+            return null;
+        }
+    }
+
+    private boolean withinBudget() {
+        return hedged.sum() < policy.getMaxHedgeRatio() * calls.sum() + policy.getHedgeBurst();
+    }
+
+    private static RuntimeException unwrap(Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new CompletionException(cause);
+    }
+
+    /**
+     * 当前对冲延迟：样本足够时为延迟窗口的分位数，否则为 maxDelay；限制在 [minDelay, maxDelay] 内
+     */
+    public long hedgeDelayNanos() {
+        long max = policy.getMaxDelay().toNanos();
+        long quantile = latencies.count() < policy.getMinSamples() ? max : latencies.quantile(policy.getPercentile());
+        return Math.max(policy.getMinDelay().toNanos(), Math.min(max, quantile));
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getHedged() {
+        return hedged.sum();
+    }
+
+    public long getFailovers() {
+        return failovers.sum();
+    }
+
+    public long getBackupWins() {
+        return backupWins.sum();
+    }
+
+    public long getDeadlineExceeded() {
+        return deadlineExceeded.sum();
+    }
+
+    public long getSaturated() {
+        return saturated.sum();
+    }
+
+    /**
+     * 对冲率 = 因慢而发出的备选请求 / 调用数
+     */
+    public double hedgeRate() {
+        long total = calls.sum();
+        return total == 0 ? 0 : (double) hedged.sum() / total;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("cache.hedge.calls", this, HedgedExecutor::getCalls)
+                .tag("cache", cache)
+                .tag("target", target)
+                .register(registry);
+        FunctionCounter.builder("cache.hedge.sent", this, HedgedExecutor::getHedged)
+                .description("Backup requests sent because the primary exceeded the hedge delay")
+                .tag("cache", cache)
+                .tag("target", target)
+                .tag("reason", "slow")
+                .register(registry);
+        FunctionCounter.builder("cache.hedge.sent", this, HedgedExecutor::getFailovers)
+                .description("Backup requests sent because the primary failed")
+                .tag("cache", cache)
+                .tag("target", target)
+                .tag("reason", "failover")
+                .register(registry);
+        FunctionCounter.builder("cache.hedge.backup.wins", this, HedgedExecutor::getBackupWins)
+                .tag("cache", cache)
+                .tag("target", target)
+                .register(registry);
+        FunctionCounter.builder("cache.hedge.deadline.exceeded", this, HedgedExecutor::getDeadlineExceeded)
+                .tag("cache", cache)
+                .tag("target", target)
+                .register(registry);
+        FunctionCounter.builder("cache.hedge.saturated", this, HedgedExecutor::getSaturated)
+                .description("Requests run on the caller thread or not hedged because the hedge pool was busy")
+                .tag("cache", cache)
+                .tag("target", target)
+                .register(registry);
+        Gauge.builder("cache.hedge.rate", this, HedgedExecutor::hedgeRate)
+                .tag("cache", cache)
+                .tag("target", target)
+                .register(registry);
+        Gauge.builder("cache.hedge.delay", this, e -> e.hedgeDelayNanos() / 1_000_000.0)
+                .baseUnit("milliseconds")
+                .tag("cache", cache)
+                .tag("target", target)
+                .register(registry);
+    }
+
+    /**
+     * 不再接受新请求，在途请求继续执行
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * 最近 windowSize 个延迟样本的环形缓冲，分位数最多每 refreshNanos 排序重算一次，由抢到标志位的线程执行
+     */
+    static final class LatencyWindow {
+
+        private final AtomicLongArray samples;
+        private final int mask;
+        private final long refreshNanos;
+        private final AtomicLong cursor = new AtomicLong();
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile long nextRefreshAt;
+        private volatile double cachedPercentile = -1;
+        private volatile long cachedQuantile;
+
+        LatencyWindow(int windowSize, long refreshNanos) {
+            int size = Integer.highestOneBit(Math.max(16, windowSize - 1) << 1);
+            this.samples = new AtomicLongArray(size);
+            this.mask = size - 1;
+            this.refreshNanos = refreshNanos;
+        }
+
+        void record(long nanos) {
+            samples.lazySet((int) (cursor.getAndIncrement() & mask), nanos);
+        }
+
+        long count() {
+            return Math.min(cursor.get(), samples.length());
+        }
+
+        long quantile(double percentile) {
+            long now = System.nanoTime();
+            if ((now - nextRefreshAt >= 0 || percentile != cachedPercentile) && refreshing.compareAndSet(false, true)) {
+                try {
+                    int n = (int) count();
+                    long[] sorted = new long[n];
+                    for (int i = 0; i < n; i++) {
+                        sorted[i] = samples.get(i);
+                    }
+                    Arrays.sort(sorted);
+                    cachedQuantile = n == 0 ? 0 : sorted[Math.min(n - 1, (int) Math.ceil(percentile * n) - 1)];
+                    cachedPercentile = percentile;
+                    nextRefreshAt = now + refreshNanos;
+                } finally {
+                    refreshing.set(false);
+                }
+            }
+            return cachedQuantile;
+        }
+    }
+
+    @Data
+    public static class Policy {
+
+        /**
+         * 对冲延迟取近期延迟的该分位数
+         */
+        private double percentile = 0.95;
+
+        private Duration minDelay = Duration.ofMillis(2);
+
+        /**
+         * 对冲延迟上限，样本不足 minSamples 时也用这个值
+         */
+        private Duration maxDelay = Duration.ofMillis(100);
+
+        private int minSamples = 100;
+
+        private int windowSize = 1024;
+
+        private Duration refreshInterval = Duration.ofSeconds(1);
+
+        /**
+         * 对冲数占调用数的上限
+         */
+        private double maxHedgeRatio = 0.1;
+
+        /**
+         * 预算之外允许的对冲数，冷启动时不至于一个都发不出
+         */
+        private int hedgeBurst = 10;
+
+        /**
+         * 执行主请求与备选请求的线程数，同时在途的请求最多这么多
+         */
+        private int threads = 32;
+    }
+}
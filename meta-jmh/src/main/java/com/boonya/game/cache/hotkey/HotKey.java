@@ -0,0 +1,7 @@
+package com.boonya.game.cache.hotkey;
+
+/**
+ * 热点键估计：count为衰减后的访问计数（上界），error为替换进入时继承的计数，count - error 为下界
+ */
+public record HotKey(long key, double count, double error) {
+}
@@ -0,0 +1,162 @@
+package com.boonya.game.cache.hotkey;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户访问热点遥测
+ * <ul>
+ *     <li>入口（Controller、MonitoredUserService）按用户ID记录访问，见 {@link HotKeyTracker}</li>
+ *     <li>每个衰减周期把top-K快照写入Redis，所有副本共用一个键，后写覆盖先写；流量均衡时各副本的热点基本一致</li>
+ *     <li>新启动的副本本地还没有统计，预热读Redis中的快照；运行中的预测预加载读本地统计</li>
+ * </ul>
+ */
+@Component
+public class HotKeyTelemetry implements MeterBinder, InitializingBean, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(HotKeyTelemetry.class);
+
+    /**
+     * 衰减后不足一次访问的键不再跟踪
+     */
+    private static final double DECAY_FLOOR = 1.0;
+
+    private final HotKeyTracker tracker;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final int topK;
+    private final Duration drainInterval;
+    private final Duration decayInterval;
+    private final double decayFactor;
+    private final String redisKey;
+    private final Duration snapshotTtl;
+    private ScheduledExecutorService scheduler;
+
+    public HotKeyTelemetry(RedisTemplate<String, Object> redisTemplate,
+                           @Value("${hotkey.capacity:1024}") int capacity,
+                           @Value("${hotkey.ring-size:4096}") int ringSize,
+                           @Value("${hotkey.top-k:200}") int topK,
+                           @Value("${hotkey.drain-interval:200ms}") Duration drainInterval,
+                           @Value("${hotkey.decay-interval:60s}") Duration decayInterval,
+                           @Value("${hotkey.decay-factor:0.5}") double decayFactor,
+                           @Value("${hotkey.redis-key:hotkeys:user}") String redisKey,
+                           @Value("${hotkey.snapshot-ttl:1d}") Duration snapshotTtl) {
+        this.tracker = new HotKeyTracker(capacity, ringSize);
+        this.redisTemplate = redisTemplate;
+        this.topK = topK;
+        this.drainInterval = drainInterval;
+        this.decayInterval = decayInterval;
+        this.decayFactor = decayFactor;
+        this.redisKey = redisKey;
+        this.snapshotTtl = snapshotTtl;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "hotkey-telemetry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long drain = drainInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(tracker::drain, drain, drain, TimeUnit.MILLISECONDS);
+        long decay = decayInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::rotate, decay, decay, TimeUnit.MILLISECONDS);
+    }
+
+    public void record(Long userId) {
+        if (userId != null) {
+            tracker.record(userId);
+        }
+    }
+
+    /**
+     * 本地统计的热点，从高到低
+     */
+    public List<Long> localHotKeys(int limit) {
+        List<HotKey> top = tracker.top(limit);
+        List<Long> keys = new ArrayList<>(top.size());
+        for (HotKey hotKey : top) {
+            keys.add(hotKey.key());
+        }
+        return keys;
+    }
+
+    public List<Long> localHotKeys() {
+        return localHotKeys(topK);
+    }
+
+    /**
+     * Redis中最近一次的热点快照，不存在或Redis不可用时为空
+     */
+    public List<Long> snapshot() {
+        try {
+            Object value = redisTemplate.opsForValue().get(redisKey);
+            if (!(value instanceof List<?> list)) {
+                return List.of();
+            }
+            List<Long> keys = new ArrayList<>(list.size());
+            for (Object key : list) {
+                if (key instanceof Number number) {
+                    keys.add(number.longValue());
+                }
+            }
+            return keys;
+        } catch (RuntimeException e) {
+            logger.warn("Failed to read hot key snapshot {}: {}", redisKey, e.getMessage());
+            return List.of();
+        }
+    }
+
+    /**
+     * 先写快照再衰减，快照反映上一个周期的完整统计
+     */
+    void rotate() {
+        tracker.drain();
+        persist();
+        tracker.decay(decayFactor, DECAY_FLOOR);
+    }
+
+    void persist() {
+        List<Long> keys = localHotKeys();
+        if (keys.isEmpty()) {
+            return;
+        }
+        try {
+            redisTemplate.opsForValue().set(redisKey, new ArrayList<>(keys), snapshotTtl);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to persist hot key snapshot {}: {}", redisKey, e.getMessage());
+        }
+    }
+
+    public HotKeyTracker getTracker() {
+        return tracker;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        tracker.bindTo(registry);
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        tracker.drain();
+        persist();
+    }
+}
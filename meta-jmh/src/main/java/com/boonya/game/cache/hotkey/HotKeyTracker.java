@@ -0,0 +1,132 @@
+package com.boonya.game.cache.hotkey;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 有损的访问热点统计
+ * <ul>
+ *     <li>记录路径只做一次原子递增和一次写：按线程分条的环形缓冲，写满后覆盖最旧的记录</li>
+ *     <li>后台定期排空缓冲，同一批次内先按键聚合，再累加到 {@link SpaceSavingTopK}</li>
+ *     <li>排空不及时被覆盖、或读到尚未写完的槽位，都计为丢弃；只影响精度，不影响记录路径</li>
+ * </ul>
+ */
+public class HotKeyTracker implements MeterBinder {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final Ring[] rings;
+    private final int ringMask;
+    private final SpaceSavingTopK topK;
+    private final LongAdder drained = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * @param capacity 跟踪的计数器数量，应为需要的top-k的数倍
+     * @param ringSize 每条环形缓冲的槽位数，向上取2的幂
+     */
+    public HotKeyTracker(int capacity, int ringSize) {
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2) * 2 - 1);
+        int size = Integer.highestOneBit(Math.max(2, ringSize) * 2 - 1);
+        this.rings = new Ring[stripes];
+        for (int i = 0; i < stripes; i++) {
+            rings[i] = new Ring(size);
+        }
+        this.ringMask = stripes - 1;
+        this.topK = new SpaceSavingTopK(capacity);
+    }
+
+    public void record(long key) {
+        if (key == EMPTY) {
+            return;
+        }
+        long probe = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        Ring ring = rings[(int) (probe >>> 32) & ringMask];
+        long index = ring.writes.getAndIncrement();
+        ring.slots.lazySet((int) index & ring.mask, key);
+    }
+
+    /**
+     * 排空所有环形缓冲，由单个后台线程调用
+     */
+    public synchronized void drain() {
+        Map<Long, Integer> batch = new HashMap<>();
+        for (Ring ring : rings) {
+            long end = ring.writes.get();
+            long start = Math.max(ring.reads, end - ring.slots.length());
+            long lost = start - ring.reads;
+            for (long i = start; i < end; i++) {
+                long key = ring.slots.getAndSet((int) i & ring.mask, EMPTY);
+                if (key == EMPTY) {
+                    lost++;
+                } else {
+                    batch.merge(key, 1, Integer::sum);
+                }
+            }
+            ring.reads = end;
+            dropped.add(lost);
+            drained.add(end - start);
+        }
+        for (Map.Entry<Long, Integer> entry : batch.entrySet()) {
+            topK.add(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * 整体衰减计数，衰减后不足floor次的键不再跟踪
+     */
+    public synchronized void decay(double factor, double floor) {
+        topK.decay(factor, floor);
+    }
+
+    /**
+     * 按估计访问次数从高到低
+     */
+    public synchronized List<HotKey> top(int k) {
+        return topK.top(k);
+    }
+
+    public synchronized int size() {
+        return topK.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("hotkey.recorded", drained, LongAdder::sum)
+                .description("Accesses drained from the telemetry buffers")
+                .register(registry);
+        FunctionCounter.builder("hotkey.dropped", dropped, LongAdder::sum)
+                .description("Accesses lost to buffer overwrites before draining")
+                .register(registry);
+        Gauge.builder("hotkey.tracked", this, HotKeyTracker::size)
+                .description("Keys currently tracked by the top-K sketch")
+                .register(registry);
+    }
+
+    private static final class Ring {
+        private final AtomicLongArray slots;
+        private final int mask;
+        private final AtomicLong writes = new AtomicLong();
+        /**
+         * 只由排空线程读写
+         */
+        private long reads;
+
+        Ring(int size) {
+            this.slots = new AtomicLongArray(size);
+            this.mask = size - 1;
+            for (int i = 0; i < size; i++) {
+                slots.set(i, EMPTY);
+            }
+        }
+    }
+}
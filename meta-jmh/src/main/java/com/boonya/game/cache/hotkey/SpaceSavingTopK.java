@@ -0,0 +1,100 @@
+package com.boonya.game.cache.hotkey;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Space-Saving 算法：固定数量的计数器跟踪出现频率最高的键
+ * <ul>
+ *     <li>已跟踪的键直接累加</li>
+ *     <li>计数器满时替换计数最小的键，新键继承其计数作为误差，频率超过 N/capacity 的键一定被保留</li>
+ *     <li>定期整体乘以衰减因子，过去的热点逐渐让位给新热点</li>
+ * </ul>
+ * 非线程安全，由 {@link HotKeyTracker} 在排空时单线程调用。
+ */
+class SpaceSavingTopK {
+
+    private static final Comparator<Counter> BY_COUNT = Comparator.<Counter>comparingDouble(c -> c.count)
+            .thenComparingLong(c -> c.key);
+
+    private final int capacity;
+    private final Map<Long, Counter> counters = new HashMap<>();
+    private TreeSet<Counter> byCount = new TreeSet<>(BY_COUNT);
+
+    SpaceSavingTopK(int capacity) {
+        this.capacity = capacity;
+    }
+
+    void add(long key, double weight) {
+        Counter counter = counters.get(key);
+        if (counter != null) {
+            byCount.remove(counter);
+            counter.count += weight;
+            byCount.add(counter);
+            return;
+        }
+        if (counters.size() < capacity) {
+            counter = new Counter(key, weight, 0);
+            counters.put(key, counter);
+            byCount.add(counter);
+            return;
+        }
+        Counter min = byCount.pollFirst();
+        counters.remove(min.key);
+        min.key = key;
+        min.error = min.count;
+        min.count += weight;
+        counters.put(key, min);
+        byCount.add(min);
+    }
+
+    /**
+     * 计数与误差乘以factor，衰减后低于floor的计数器释放
+     */
+    void decay(double factor, double floor) {
+        TreeSet<Counter> decayed = new TreeSet<>(BY_COUNT);
+        Iterator<Counter> it = counters.values().iterator();
+        while (it.hasNext()) {
+            Counter counter = it.next();
+            counter.count *= factor;
+            counter.error *= factor;
+            if (counter.count < floor) {
+                it.remove();
+            } else {
+                decayed.add(counter);
+            }
+        }
+        byCount = decayed;
+    }
+
+    List<HotKey> top(int k) {
+        List<HotKey> top = new ArrayList<>(Math.min(k, counters.size()));
+        Iterator<Counter> it = byCount.descendingIterator();
+        while (it.hasNext() && top.size() < k) {
+            Counter counter = it.next();
+            top.add(new HotKey(counter.key, counter.count, counter.error));
+        }
+        return top;
+    }
+
+    int size() {
+        return counters.size();
+    }
+
+    private static final class Counter {
+        private long key;
+        private double count;
+        private double error;
+
+        Counter(long key, double count, double error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.boonya.game.cache.local;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 有界本地缓存：CLOCK（second chance）淘汰，读写都不经过全局锁
+ * <ul>
+ *     <li>读：ConcurrentHashMap无锁读，只在引用位为0时置位一次，热点键的读不产生写</li>
+ *     <li>写：已有键原地替换值；新键插入哈希表后进入无锁FIFO队列</li>
+ *     <li>淘汰：条目数超过上限时，抢到淘汰权的线程从队头扫描，引用位为1的清零后放回队尾，为0的移除；
+ *     其他线程不等待，条目数可能短暂超过上限；
+ *     队列中尚未清理的失效节点也占名额，实际条目数可能略低于上限</li>
+ *     <li>命中、未命中、写入、淘汰用LongAdder计数，高并发下不争用同一个缓存行</li>
+ *     <li>可选写入后过期：读到过期条目时移除并按未命中处理，漏掉的失效最多持续一个TTL</li>
+ *     <li>读穿加载：加载前取 {@link #generation}，加载后用 {@link #putIfUnchanged} 写入；
+ *     加载期间该键被 {@link #invalidate} 过时不写入，避免把失效前读到的旧值放回缓存</li>
+ * </ul>
+ */
+public class BoundedLocalCache<K, V> implements MeterBinder {
+
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final String name;
+    private final long maximumSize;
+    private final ConcurrentHashMap<K, Node<K, V>> map;
+
+    /**
+     * 按插入顺序排列的节点，含已被invalidate/clear移除、尚未被淘汰扫描清理的节点
+     */
+    private final ConcurrentLinkedQueue<Node<K, V>> clock = new ConcurrentLinkedQueue<>();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    /**
+     * 按键哈希分段的失效计数，不同键落在同一段时只会多放弃一次写入
+     */
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    private final long expireAfterWriteNanos;
+    private final LongSupplier nanoClock;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public BoundedLocalCache(String name, long maximumSize) {
+        this(name, maximumSize, null, System::nanoTime);
+    }
+
+    /**
+     * @param expireAfterWrite 写入后的存活时间，null表示不过期
+     */
+    public BoundedLocalCache(String name, long maximumSize, Duration expireAfterWrite) {
+        this(name, maximumSize, expireAfterWrite, System::nanoTime);
+    }
+
+    public BoundedLocalCache(String name, long maximumSize, Duration expireAfterWrite, LongSupplier nanoClock) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+        }
+        this.name = name;
+        this.maximumSize = maximumSize;
+        this.map = new ConcurrentHashMap<>((int) Math.min(maximumSize, 1 << 16));
+        this.expireAfterWriteNanos = expireAfterWrite == null ? 0 : expireAfterWrite.toNanos();
+        this.nanoClock = nanoClock;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public V get(K key) {
+        Node<K, V> node = map.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        if (expireAfterWriteNanos > 0 && nanoClock.getAsLong() - node.writtenAt >= expireAfterWriteNanos) {
+            map.remove(key, node);
+            misses.increment();
+            return null;
+        }
+        if (!node.referenced) {
+            node.referenced = true;
+        }
+        hits.increment();
+        return node.value;
+    }
+
+    /**
+     * 只读探测，不计入命中统计，也不置引用位（预热判断缺失等场景）
+     */
+    public boolean contains(K key) {
+        return map.containsKey(key);
+    }
+
+    public void put(K key, V value) {
+        write(key, value);
+    }
+
+    /**
+     * 键当前的失效计数，读穿加载前取得，传给 {@link #putIfUnchanged}
+     */
+    public long generation(K key) {
+        return generations.get(stripe(key));
+    }
+
+    /**
+     * 取得generation之后该键没有被失效过时才写入
+     * @return 是否写入
+     */
+    public boolean putIfUnchanged(K key, V value, long generation) {
+        int stripe = stripe(key);
+        if (generations.get(stripe) != generation) {
+            return false;
+        }
+        Node<K, V> node = write(key, value);
+        // invalidate先递增计数再移除：写入落在移除之后时这里一定能看到计数变化，撤回本次写入
+        if (generations.get(stripe) != generation) {
+            map.remove(key, node);
+            return false;
+        }
+        return true;
+    }
+
+    private Node<K, V> write(K key, V value) {
+        puts.increment();
+        Node<K, V> existing = map.get(key);
+        if (existing == null) {
+            Node<K, V> created = new Node<>(key, value, nanoClock.getAsLong());
+            existing = map.putIfAbsent(key, created);
+            if (existing == null) {
+                clock.offer(created);
+                if (queued.incrementAndGet() > maximumSize) {
+                    evict();
+                }
+                return created;
+            }
+        }
+        // 与淘汰并发时写入可能落在刚被移除的节点上，效果等同于写入后立即被淘汰
+        existing.value = value;
+        existing.writtenAt = nanoClock.getAsLong();
+        existing.referenced = true;
+        return existing;
+    }
+
+    public void invalidate(K key) {
+        generations.incrementAndGet(stripe(key));
+        map.remove(key);
+    }
+
+    public void clear() {
+        for (int i = 0; i < GENERATION_STRIPES; i++) {
+            generations.incrementAndGet(i);
+        }
+        map.clear();
+    }
+
+    private static int stripe(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (GENERATION_STRIPES - 1);
+    }
+
+    public long size() {
+        return map.size();
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            // 一整圈都被重新引用时不再给第二次机会，避免读多的场景下扫描不停
+            long chances = 0;
+            while (queued.get() > maximumSize) {
+                Node<K, V> node = clock.poll();
+                if (node == null) {
+                    return;
+                }
+                if (map.get(node.key) != node) {
+                    // 已被invalidate/clear移除，只清理队列
+                    queued.decrementAndGet();
+                } else if (node.referenced && chances++ < maximumSize) {
+                    node.referenced = false;
+                    clock.offer(node);
+                } else {
+                    if (map.remove(node.key, node)) {
+                        evictions.increment();
+                    }
+                    queued.decrementAndGet();
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getPuts() {
+        return puts.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * 命中率，没有请求时为NaN
+     */
+    public double hitRatio() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? Double.NaN : (double) hit / total;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("cache.local.requests", hits, LongAdder::sum)
+                .tag("cache", name)
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("cache.local.requests", misses, LongAdder::sum)
+                .tag("cache", name)
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("cache.local.puts", puts, LongAdder::sum)
+                .tag("cache", name)
+                .register(registry);
+        FunctionCounter.builder("cache.local.evictions", evictions, LongAdder::sum)
+                .description("Entries removed by the size bound")
+                .tag("cache", name)
+                .register(registry);
+        Gauge.builder("cache.local.size", map, ConcurrentHashMap::size)
+                .tag("cache", name)
+                .register(registry);
+    }
+
+    private static final class Node<K, V> {
+
+        private final K key;
+        private volatile V value;
+        private volatile long writtenAt;
+        private volatile boolean referenced;
+
+        Node(K key, V value, long writtenAt) {
+            this.key = key;
+            this.value = value;
+            this.writtenAt = writtenAt;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.boonya.game.cache.tier;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * 缓存层SPI，由 {@link TieredCache} 按顺序组合
+ * <p>
+ * 每层自带TTL与容量，get未命中返回null；只读层（如数据库加载）不接受写入。
+ */
+public interface CacheTier<K, V> {
+
+    /**
+     * 层名，用于指标标签
+     */
+    String name();
+
+    V get(K key);
+
+    /**
+     * 批量读取，只返回命中的键；默认逐个读取，远程层应覆盖为一次往返
+     */
+    default Map<K, V> getAll(Collection<K> keys) {
+        Map<K, V> found = new HashMap<>(keys.size() * 2);
+        for (K key : keys) {
+            V value = get(key);
+            if (value != null) {
+                found.put(key, value);
+            }
+        }
+        return found;
+    }
+
+    void put(K key, V value);
+
+    void evict(K key);
+
+    /**
+     * 进程内的层同步写入，远程层的提升/降级写入交给回填线程池
+     */
+    default boolean isLocal() {
+        return true;
+    }
+
+    default boolean isWritable() {
+        return true;
+    }
+
+    /**
+     * 因容量被淘汰的条目回调，用于降级到下一层；不支持的层忽略
+     */
+    default void onEviction(BiConsumer<K, V> listener) {
+    }
+}
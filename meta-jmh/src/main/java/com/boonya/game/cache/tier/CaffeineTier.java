@@ -0,0 +1,78 @@
+package com.boonya.game.cache.tier;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * 堆内层：Caffeine，按条数淘汰、写入后过期
+ * <p>
+ * 淘汰回调在执行维护的线程上同步触发（不走公共ForkJoinPool），降级写入由 {@link TieredCache} 决定同步或异步。
+ */
+public class CaffeineTier<K, V> implements CacheTier<K, V> {
+
+    private final String name;
+    private final Cache<K, V> cache;
+    private volatile BiConsumer<K, V> evictionListener;
+
+    public CaffeineTier(String name, long maximumSize, Duration ttl) {
+        this.name = name;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .executor(Runnable::run)
+                .removalListener((K key, V value, RemovalCause cause) -> {
+                    BiConsumer<K, V> listener = evictionListener;
+                    if (cause == RemovalCause.SIZE && listener != null && key != null && value != null) {
+                        listener.accept(key, value);
+                    }
+                })
+                .build();
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public V get(K key) {
+        return cache.getIfPresent(key);
+    }
+
+    @Override
+    public Map<K, V> getAll(Collection<K> keys) {
+        return cache.getAllPresent(keys);
+    }
+
+    @Override
+    public void put(K key, V value) {
+        cache.put(key, value);
+    }
+
+    @Override
+    public void evict(K key) {
+        cache.invalidate(key);
+    }
+
+    @Override
+    public void onEviction(BiConsumer<K, V> listener) {
+        this.evictionListener = listener;
+    }
+
+    public long estimatedSize() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * 立即执行挂起的淘汰（主要用于测试）
+     */
+    public void cleanUp() {
+        cache.cleanUp();
+    }
+}
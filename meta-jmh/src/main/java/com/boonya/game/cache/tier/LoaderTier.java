@@ -0,0 +1,57 @@
+package com.boonya.game.cache.tier;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 最后一层：从数据源加载，只读
+ */
+public class LoaderTier<K, V> implements CacheTier<K, V> {
+
+    private final String name;
+    private final Function<K, V> loader;
+    private final Function<Collection<K>, Map<K, V>> bulkLoader;
+
+    /**
+     * @param bulkLoader 为null时批量读取逐个调用loader
+     */
+    public LoaderTier(String name, Function<K, V> loader, Function<Collection<K>, Map<K, V>> bulkLoader) {
+        this.name = name;
+        this.loader = loader;
+        this.bulkLoader = bulkLoader;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public V get(K key) {
+        return loader.apply(key);
+    }
+
+    @Override
+    public Map<K, V> getAll(Collection<K> keys) {
+        return bulkLoader == null ? CacheTier.super.getAll(keys) : bulkLoader.apply(keys);
+    }
+
+    @Override
+    public void put(K key, V value) {
+    }
+
+    @Override
+    public void evict(K key) {
+    }
+
+    @Override
+    public boolean isLocal() {
+        return false;
+    }
+
+    @Override
+    public boolean isWritable() {
+        return false;
+    }
+}
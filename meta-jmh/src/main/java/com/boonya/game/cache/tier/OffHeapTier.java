@@ -0,0 +1,169 @@
+package com.boonya.game.cache.tier;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * 堆外层：值序列化后存入DirectByteBuffer，不占堆、不增加GC扫描量
+ * <ul>
+ *     <li>容量按字节计，超出时按写入顺序近似FIFO淘汰（重复写入同一个键不调整顺序）</li>
+ *     <li>过期在读取时检查，过期条目在被读到或被淘汰时释放</li>
+ *     <li>每次读取都要反序列化，适合放在堆内层之后、远程层之前</li>
+ * </ul>
+ */
+public class OffHeapTier<K, V> implements CacheTier<K, V> {
+
+    /**
+     * 值与字节的转换
+     */
+    public interface Codec<V> {
+
+        byte[] encode(V value);
+
+        V decode(byte[] bytes);
+
+        /**
+         * JDK序列化，值需要实现Serializable
+         */
+        static <V> Codec<V> javaSerialization() {
+            return new Codec<>() {
+                @Override
+                public byte[] encode(V value) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+                    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                        out.writeObject(value);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return bytes.toByteArray();
+                }
+
+                @Override
+                @SuppressWarnings("unchecked")
+                public V decode(byte[] bytes) {
+                    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                        return (V) in.readObject();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    } catch (ClassNotFoundException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            };
+        }
+    }
+
+    private record Slot(ByteBuffer buffer, long expiresAt) {
+    }
+
+    private final String name;
+    private final long capacityBytes;
+    private final long ttlNanos;
+    private final Codec<V> codec;
+    private final Map<K, Slot> slots = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<K> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicLong usedBytes = new AtomicLong();
+    private volatile BiConsumer<K, V> evictionListener;
+
+    public OffHeapTier(String name, long capacityBytes, Duration ttl, Codec<V> codec) {
+        this.name = name;
+        this.capacityBytes = capacityBytes;
+        this.ttlNanos = ttl.toNanos();
+        this.codec = codec;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public V get(K key) {
+        Slot slot = slots.get(key);
+        if (slot == null) {
+            return null;
+        }
+        if (System.nanoTime() - slot.expiresAt() >= 0) {
+            if (slots.remove(key, slot)) {
+                usedBytes.addAndGet(-slot.buffer().capacity());
+            }
+            return null;
+        }
+        return codec.decode(read(slot));
+    }
+
+    @Override
+    public void put(K key, V value) {
+        byte[] bytes = codec.encode(value);
+        if (bytes.length > capacityBytes) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        Slot previous = slots.put(key, new Slot(buffer, System.nanoTime() + ttlNanos));
+        if (previous == null) {
+            insertionOrder.add(key);
+            usedBytes.addAndGet(bytes.length);
+        } else {
+            usedBytes.addAndGet(bytes.length - previous.buffer().capacity());
+        }
+        evictOverCapacity();
+    }
+
+    @Override
+    public void evict(K key) {
+        Slot removed = slots.remove(key);
+        if (removed != null) {
+            usedBytes.addAndGet(-removed.buffer().capacity());
+        }
+    }
+
+    @Override
+    public void onEviction(BiConsumer<K, V> listener) {
+        this.evictionListener = listener;
+    }
+
+    public long usedBytes() {
+        return usedBytes.get();
+    }
+
+    public int size() {
+        return slots.size();
+    }
+
+    private void evictOverCapacity() {
+        while (usedBytes.get() > capacityBytes) {
+            K oldest = insertionOrder.poll();
+            if (oldest == null) {
+                return;
+            }
+            Slot removed = slots.remove(oldest);
+            if (removed == null) {
+                continue;
+            }
+            usedBytes.addAndGet(-removed.buffer().capacity());
+            BiConsumer<K, V> listener = evictionListener;
+            if (listener != null && System.nanoTime() - removed.expiresAt() < 0) {
+                listener.accept(oldest, codec.decode(read(removed)));
+            }
+        }
+    }
+
+    private static byte[] read(Slot slot) {
+        ByteBuffer view = slot.buffer().duplicate();
+        byte[] bytes = new byte[view.remaining()];
+        view.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,76 @@
+package com.boonya.game.cache.tier;
+
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Redis层：键由keyOf生成，批量读取为一次MGET
+ */
+public class RedisTier<K, V> implements CacheTier<K, V> {
+
+    private final String name;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final Function<K, String> keyOf;
+    private final Duration ttl;
+
+    public RedisTier(String name, RedisTemplate<String, Object> redisTemplate, Function<K, String> keyOf, Duration ttl) {
+        this.name = name;
+        this.redisTemplate = redisTemplate;
+        this.keyOf = keyOf;
+        this.ttl = ttl;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        return (V) redisTemplate.opsForValue().get(keyOf.apply(key));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<K, V> getAll(Collection<K> keys) {
+        List<K> ordered = new ArrayList<>(keys);
+        List<String> redisKeys = new ArrayList<>(ordered.size());
+        for (K key : ordered) {
+            redisKeys.add(keyOf.apply(key));
+        }
+        List<Object> values = redisTemplate.opsForValue().multiGet(redisKeys);
+        Map<K, V> found = new HashMap<>(ordered.size() * 2);
+        if (values != null) {
+            for (int i = 0; i < ordered.size(); i++) {
+                Object value = values.get(i);
+                if (value != null) {
+                    found.put(ordered.get(i), (V) value);
+                }
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public void put(K key, V value) {
+        redisTemplate.opsForValue().set(keyOf.apply(key), value, ttl);
+    }
+
+    @Override
+    public void evict(K key) {
+        redisTemplate.delete(keyOf.apply(key));
+    }
+
+    @Override
+    public boolean isLocal() {
+        return false;
+    }
+}
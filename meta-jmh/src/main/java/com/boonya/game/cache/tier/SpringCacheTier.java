@@ -0,0 +1,39 @@
+package com.boonya.game.cache.tier;
+
+import org.springframework.cache.Cache;
+
+/**
+ * 适配Spring {@link Cache}，与 @Cacheable 共用同一个本地缓存，TTL与容量由CacheManager配置
+ */
+public class SpringCacheTier<K, V> implements CacheTier<K, V> {
+
+    private final String name;
+    private final Cache cache;
+
+    public SpringCacheTier(String name, Cache cache) {
+        this.name = name;
+        this.cache = cache;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        Cache.ValueWrapper wrapper = cache.get(key);
+        return wrapper == null ? null : (V) wrapper.get();
+    }
+
+    @Override
+    public void put(K key, V value) {
+        cache.put(key, value);
+    }
+
+    @Override
+    public void evict(K key) {
+        cache.evict(key);
+    }
+}
@@ -0,0 +1,393 @@
+package com.boonya.game.cache.tier;
+
+import com.boonya.game.cache.fill.BackfillExecutor;
+import com.boonya.game.cache.fill.SingleFlight;
+import com.boonya.game.deadline.Deadline;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.Data;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * N层缓存管线：按顺序查询各层，命中后按规则提升到上层
+ * <ul>
+ *     <li>提升：在第i层命中时，写入之前所有 promote=true 的可写层；进程内的层同步写，远程层交给回填线程池</li>
+ *     <li>降级：demote=true 的层因容量淘汰的条目写入其后的第一个可写层，例如堆内淘汰到堆外</li>
+ *     <li>延迟预算：某层的EWMA读延迟超过 latencyBudget 时跳过该层，按 1/{@value #PROBE_EVERY} 的概率放行探测请求刷新EWMA</li>
+ *     <li>第一层未命中后按键single-flight，同一个键的并发未命中只查一次后续各层</li>
+ *     <li>某层读取抛异常按未命中处理并计数，不影响后续层</li>
+ *     <li>最后一层是数据源（通常是加载层）：不能设置延迟预算，读取异常计数后原样抛出，
+ *     数据源故障不会被当成“不存在”返回null</li>
+ * </ul>
+ * 不缓存空值，加载层返回null的键每次都会查到最后一层。
+ * 当前线程设置了 {@link Deadline} 时，每查一层前检查剩余时间，过期后不再查后续各层。
+ */
+public class TieredCache<K, V> implements MeterBinder, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TieredCache.class);
+
+    static final int PROBE_EVERY = 64;
+    private static final double LATENCY_ALPHA = 0.1;
+
+    private final String name;
+    private final List<Level<K, V>> levels;
+    private final SingleFlight<K, V> fills;
+    private final BackfillExecutor backfills;
+
+    private TieredCache(String name, List<Level<K, V>> levels) {
+        this.name = name;
+        this.levels = levels;
+        this.fills = new SingleFlight<>(name);
+        this.backfills = new BackfillExecutor(name);
+        for (int i = 0; i < levels.size(); i++) {
+            Level<K, V> level = levels.get(i);
+            Level<K, V> below = nextWritable(i + 1);
+            if (level.options.isDemote() && below != null) {
+                level.tier.onEviction((key, value) -> write(below, key, value));
+            }
+        }
+    }
+
+    public static <K, V> Builder<K, V> builder(String name) {
+        return new Builder<>(name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> tierNames() {
+        List<String> names = new ArrayList<>(levels.size());
+        for (Level<K, V> level : levels) {
+            names.add(level.tier.name());
+        }
+        return names;
+    }
+
+    public V get(K key) {
+        V value = read(levels.get(0), key, levels.size() == 1);
+        if (value != null) {
+            return value;
+        }
+        return fills.load(key, () -> loadFrom(1, key));
+    }
+
+    /**
+     * 批量读取，每层只查上层未命中的键；返回命中的键，顺序与keys一致
+     */
+    public Map<K, V> getAll(Collection<K> keys) {
+        Set<K> remaining = new LinkedHashSet<>(keys);
+        Map<K, V> found = new HashMap<>(remaining.size() * 2);
+        for (int i = 0; i < levels.size() && !remaining.isEmpty(); i++) {
+            Level<K, V> level = levels.get(i);
+            if (level.shouldSkip()) {
+                level.skipped.add(remaining.size());
+                continue;
+            }
+            Map<K, V> hits = readAll(level, remaining, i == levels.size() - 1);
+            for (Map.Entry<K, V> hit : hits.entrySet()) {
+                if (remaining.remove(hit.getKey())) {
+                    found.put(hit.getKey(), hit.getValue());
+                    promote(i, hit.getKey(), hit.getValue());
+                }
+            }
+        }
+        Map<K, V> ordered = new LinkedHashMap<>(found.size() * 2);
+        for (K key : keys) {
+            V value = found.get(key);
+            if (value != null) {
+                ordered.put(key, value);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * 同步写入所有可写层
+     */
+    public void put(K key, V value) {
+        for (Level<K, V> level : levels) {
+            if (level.tier.isWritable()) {
+                level.tier.put(key, value);
+            }
+        }
+    }
+
+    /**
+     * 从所有可写层删除，由下往上删，避免删除过程中上层被下层的旧值重新提升
+     */
+    public void evict(K key) {
+        for (int i = levels.size() - 1; i >= 0; i--) {
+            Level<K, V> level = levels.get(i);
+            if (level.tier.isWritable()) {
+                level.tier.evict(key);
+            }
+        }
+    }
+
+    private V loadFrom(int start, K key) {
+        for (int i = start; i < levels.size(); i++) {
+            Deadline.check(levels.get(i).tier.name());
+            V value = read(levels.get(i), key, i == levels.size() - 1);
+            if (value != null) {
+                promote(i, key, value);
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param source 是否为最后一层，最后一层的异常不吞掉
+     */
+    private V read(Level<K, V> level, K key, boolean source) {
+        if (level.shouldSkip()) {
+            level.skipped.increment();
+            return null;
+        }
+        long start = System.nanoTime();
+        V value;
+        try {
+            value = level.tier.get(key);
+        } catch (RuntimeException e) {
+            level.errors.increment();
+            if (source) {
+                level.recordLatency(System.nanoTime() - start);
+                throw e;
+            }
+            logger.debug("Tier {} of {} failed to read {}: {}", level.tier.name(), name, key, e.getMessage());
+            value = null;
+        }
+        level.recordLatency(System.nanoTime() - start);
+        (value != null ? level.hits : level.misses).increment();
+        return value;
+    }
+
+    private Map<K, V> readAll(Level<K, V> level, Collection<K> keys, boolean source) {
+        long start = System.nanoTime();
+        Map<K, V> hits;
+        try {
+            hits = level.tier.getAll(keys);
+        } catch (RuntimeException e) {
+            level.errors.add(keys.size());
+            if (source) {
+                level.recordLatency(System.nanoTime() - start);
+                throw e;
+            }
+            logger.debug("Tier {} of {} failed to read {} keys: {}", level.tier.name(), name, keys.size(), e.getMessage());
+            hits = Map.of();
+        }
+        level.recordLatency(System.nanoTime() - start);
+        level.hits.add(hits.size());
+        level.misses.add(keys.size() - hits.size());
+        return hits;
+    }
+
+    private void promote(int foundAt, K key, V value) {
+        for (int i = 0; i < foundAt; i++) {
+            Level<K, V> level = levels.get(i);
+            if (level.options.isPromote() && level.tier.isWritable()) {
+                write(level, key, value);
+            }
+        }
+    }
+
+    private void write(Level<K, V> level, K key, V value) {
+        if (!level.tier.isLocal()) {
+            backfills.submit(key, () -> level.tier.put(key, value));
+            return;
+        }
+        try {
+            level.tier.put(key, value);
+        } catch (RuntimeException e) {
+            level.errors.increment();
+            logger.debug("Tier {} of {} failed to write {}: {}", level.tier.name(), name, key, e.getMessage());
+        }
+    }
+
+    private Level<K, V> nextWritable(int from) {
+        for (int i = from; i < levels.size(); i++) {
+            if (levels.get(i).tier.isWritable()) {
+                return levels.get(i);
+            }
+        }
+        return null;
+    }
+
+    public long getHits(String tier) {
+        return level(tier).hits.sum();
+    }
+
+    public long getMisses(String tier) {
+        return level(tier).misses.sum();
+    }
+
+    public long getSkipped(String tier) {
+        return level(tier).skipped.sum();
+    }
+
+    public long getErrors(String tier) {
+        return level(tier).errors.sum();
+    }
+
+    private Level<K, V> level(String tier) {
+        for (Level<K, V> level : levels) {
+            if (level.tier.name().equals(tier)) {
+                return level;
+            }
+        }
+        throw new IllegalArgumentException("No tier " + tier + " in " + name);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        fills.bindTo(registry);
+        backfills.bindTo(registry);
+        for (Level<K, V> level : levels) {
+            String tier = level.tier.name();
+            counter(registry, level, tier, "hit", level.hits);
+            counter(registry, level, tier, "miss", level.misses);
+            counter(registry, level, tier, "skipped", level.skipped);
+            counter(registry, level, tier, "error", level.errors);
+            Gauge.builder("cache.tier.latency.ewma", level, l -> l.ewmaLatencyNanos / 1_000_000)
+                    .description("EWMA of tier read latency, compared against the latency budget")
+                    .baseUnit("milliseconds")
+                    .tag("cache", name)
+                    .tag("tier", tier)
+                    .register(registry);
+            level.latency = Timer.builder("cache.tier.latency")
+                    .description("Tier read latency")
+                    .tag("cache", name)
+                    .tag("tier", tier)
+                    .publishPercentiles(0.5, 0.99)
+                    .register(registry);
+        }
+    }
+
+    private void counter(MeterRegistry registry, Level<K, V> level, String tier, String result, LongAdder adder) {
+        FunctionCounter.builder("cache.tier.requests", adder, LongAdder::sum)
+                .tag("cache", name)
+                .tag("tier", tier)
+                .tag("result", result)
+                .register(registry);
+    }
+
+    @Override
+    public void close() {
+        backfills.close();
+    }
+
+    /**
+     * 单层的提升、降级与延迟预算规则
+     */
+    @Data
+    public static class TierOptions {
+
+        /**
+         * 下层命中时写入本层
+         */
+        private boolean promote = true;
+
+        /**
+         * 本层因容量淘汰的条目写入下一个可写层
+         */
+        private boolean demote;
+
+        /**
+         * 本层EWMA读延迟超过该值时跳过，为null时不跳过；最后一层不允许设置
+         */
+        private Duration latencyBudget;
+    }
+
+    private static final class Level<K, V> {
+
+        private final CacheTier<K, V> tier;
+        private final TierOptions options;
+        private final long budgetNanos;
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        /**
+         * 非原子更新，并发下丢失个别样本不影响估计
+         */
+        private volatile double ewmaLatencyNanos;
+        private volatile Timer latency;
+
+        Level(CacheTier<K, V> tier, TierOptions options) {
+            this.tier = tier;
+            this.options = options;
+            this.budgetNanos = options.getLatencyBudget() == null ? 0 : options.getLatencyBudget().toNanos();
+        }
+
+        boolean shouldSkip() {
+            return budgetNanos > 0 && ewmaLatencyNanos > budgetNanos
+                    && ThreadLocalRandom.current().nextInt(PROBE_EVERY) != 0;
+        }
+
+        void recordLatency(long nanos) {
+            double current = ewmaLatencyNanos;
+            ewmaLatencyNanos = current == 0 ? nanos : current + LATENCY_ALPHA * (nanos - current);
+            Timer timer = latency;
+            if (timer != null) {
+                timer.record(nanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    public static class Builder<K, V> {
+
+        private final String name;
+        private final List<Level<K, V>> levels = new ArrayList<>();
+
+        private Builder(String name) {
+            this.name = name;
+        }
+
+        public Builder<K, V> tier(CacheTier<K, V> tier) {
+            return tier(tier, new TierOptions());
+        }
+
+        public Builder<K, V> tier(CacheTier<K, V> tier, TierOptions options) {
+            levels.add(new Level<>(tier, options));
+            return this;
+        }
+
+        public TieredCache<K, V> build() {
+            if (levels.isEmpty()) {
+                throw new IllegalStateException("Tiered cache " + name + " has no tiers");
+            }
+            Set<String> names = new HashSet<>();
+            for (Level<K, V> level : levels) {
+                if (!names.add(level.tier.name())) {
+                    throw new IllegalStateException("Duplicate tier " + level.tier.name() + " in " + name);
+                }
+            }
+            Level<K, V> source = levels.get(levels.size() - 1);
+            if (source.budgetNanos > 0) {
+                throw new IllegalStateException("Tier " + source.tier.name() + " is the last tier of " + name
+                        + " and cannot have a latency budget");
+            }
+            return new TieredCache<>(name, List.copyOf(levels));
+        }
+    }
+}
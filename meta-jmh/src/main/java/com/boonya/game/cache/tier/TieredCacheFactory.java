@@ -0,0 +1,111 @@
+package com.boonya.game.cache.tier;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+/**
+ * 按 cache.tiered 配置组装 {@link TieredCache}，业务只需提供最后一层的加载函数
+ * <p>
+ * 配置中没有loader层时追加在最后；创建的管线随容器关闭。
+ */
+public class TieredCacheFactory implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(TieredCacheFactory.class);
+
+    private final TieredCacheProperties properties;
+    private final CacheManager cacheManager;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final MeterRegistry registry;
+    private final List<TieredCache<?, ?>> created = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param registry 为null时不注册指标
+     */
+    public TieredCacheFactory(TieredCacheProperties properties, CacheManager cacheManager,
+                              RedisTemplate<String, Object> redisTemplate, MeterRegistry registry) {
+        this.properties = properties;
+        this.cacheManager = cacheManager;
+        this.redisTemplate = redisTemplate;
+        this.registry = registry;
+    }
+
+    public boolean isConfigured(String cacheName) {
+        return properties.isEnabled() && !properties.tiersOf(cacheName).isEmpty();
+    }
+
+    /**
+     * 未开启或该缓存没有配置时返回null
+     *
+     * @param bulkLoader 为null时批量读取逐个调用loader
+     */
+    public <K, V> TieredCache<K, V> create(String cacheName, Function<K, V> loader,
+                                           Function<Collection<K>, Map<K, V>> bulkLoader) {
+        if (!isConfigured(cacheName)) {
+            return null;
+        }
+        TieredCache.Builder<K, V> builder = TieredCache.builder(cacheName);
+        boolean hasLoader = false;
+        for (TieredCacheProperties.Tier config : properties.tiersOf(cacheName)) {
+            String type = config.getType() == null ? "" : config.getType().toLowerCase();
+            String name = config.getName() == null ? type : config.getName();
+            CacheTier<K, V> tier;
+            switch (type) {
+                case "caffeine":
+                    tier = new CaffeineTier<>(name, config.getMaximumSize(), config.getTtl());
+                    break;
+                case "spring":
+                    tier = new SpringCacheTier<>(name, cacheManager.getCache(cacheName));
+                    break;
+                case "offheap":
+                    tier = new OffHeapTier<>(name, config.getCapacity().toBytes(), config.getTtl(),
+                            OffHeapTier.Codec.javaSerialization());
+                    break;
+                case "redis":
+                    String prefix = config.getKeyPrefix() == null ? cacheName + "_:" : config.getKeyPrefix();
+                    tier = new RedisTier<>(name, redisTemplate, key -> prefix + key, config.getTtl());
+                    break;
+                case "loader":
+                    tier = new LoaderTier<>(name, loader, bulkLoader);
+                    hasLoader = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown tier type '" + config.getType() + "' in cache " + cacheName);
+            }
+            builder.tier(tier, options(config));
+        }
+        if (!hasLoader) {
+            builder.tier(new LoaderTier<>("loader", loader, bulkLoader));
+        }
+
+        TieredCache<K, V> cache = builder.build();
+        if (registry != null) {
+            cache.bindTo(registry);
+        }
+        created.add(cache);
+        logger.info("Tiered cache {} assembled: {}", cacheName, cache.tierNames());
+        return cache;
+    }
+
+    private static TieredCache.TierOptions options(TieredCacheProperties.Tier config) {
+        TieredCache.TierOptions options = new TieredCache.TierOptions();
+        options.setPromote(config.isPromote());
+        options.setDemote(config.isDemote());
+        options.setLatencyBudget(config.getLatencyBudget());
+        return options;
+    }
+
+    @Override
+    public void destroy() {
+        created.forEach(TieredCache::close);
+    }
+}
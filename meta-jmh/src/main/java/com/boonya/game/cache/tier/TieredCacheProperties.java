@@ -0,0 +1,67 @@
+package com.boonya.game.cache.tier;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分层缓存配置，按缓存名列出各层，顺序即查询顺序
+ */
+@Data
+@ConfigurationProperties(prefix = "cache.tiered")
+public class TieredCacheProperties {
+
+    private boolean enabled;
+
+    private Map<String, List<Tier>> caches = new LinkedHashMap<>();
+
+    @Data
+    public static class Tier {
+
+        /**
+         * caffeine / spring / offheap / redis / loader
+         */
+        private String type;
+
+        /**
+         * 指标中的层名，默认与type相同
+         */
+        private String name;
+
+        private Duration ttl = Duration.ofMinutes(10);
+
+        /**
+         * caffeine层的最大条数
+         */
+        private long maximumSize = 10_000;
+
+        /**
+         * offheap层的字节容量
+         */
+        private DataSize capacity = DataSize.ofMegabytes(64);
+
+        /**
+         * redis层的键前缀，默认 缓存名 + "_:"，与 {@link com.boonya.game.cache.AbstractMultiLevelCache} 的键一致
+         */
+        private String keyPrefix;
+
+        private boolean promote = true;
+
+        private boolean demote;
+
+        private Duration latencyBudget;
+    }
+
+    /**
+     * 配置为空时返回空列表
+     */
+    public List<Tier> tiersOf(String cacheName) {
+        return caches.getOrDefault(cacheName, new ArrayList<>());
+    }
+}
@@ -0,0 +1,178 @@
+package com.boonya.game.cache.warmup;
+
+import com.google.common.util.concurrent.RateLimiter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存预热执行器
+ * <ul>
+ *     <li>独立的固定线程池，并发数即预热打到缓存与数据库的最大并发，不占用公共ForkJoin池和请求线程</li>
+ *     <li>键按热度从高到低切成批次进入优先队列：优先级高的任务先执行，同一任务内越热的批次越先执行</li>
+ *     <li>每批先由加载器过滤已缓存的键，剩余的键一次 findAllById；每次查库前从令牌桶取一个许可，
+ *     整体查库速率不超过 warmup.db-qps</li>
+ * </ul>
+ */
+@Component
+public class WarmUpExecutor implements MeterBinder, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(WarmUpExecutor.class);
+
+    /**
+     * 数值越小越先执行
+     */
+    public static final int PRIORITY_STARTUP = 0;
+    public static final int PRIORITY_ON_DEMAND = 5;
+    public static final int PRIORITY_PREDICTIVE = 10;
+
+    /**
+     * 批量加载器
+     */
+    public interface BatchLoader {
+
+        /**
+         * 过滤掉已在缓存中的键（可顺带从L2回填L1），返回需要查库的键
+         */
+        List<Long> missing(List<Long> ids);
+
+        /**
+         * 一次查库加载并回填缓存，返回查到的数量
+         */
+        int load(List<Long> ids);
+    }
+
+    private final PriorityBlockingQueue<Batch> queue = new PriorityBlockingQueue<>(64,
+            Comparator.comparingInt(Batch::priority).thenComparingLong(Batch::jobSequence).thenComparingInt(Batch::index));
+    private final ExecutorService workers;
+    private final RateLimiter dbRateLimiter;
+    private final int batchSize;
+    private final AtomicLong jobSequence = new AtomicLong();
+
+    private final LongAdder keysCached = new LongAdder();
+    private final LongAdder keysNotFound = new LongAdder();
+    private final LongAdder keysFailed = new LongAdder();
+    private final LongAdder dbQueries = new LongAdder();
+    private volatile Timer batchTimer;
+
+    public WarmUpExecutor(@Value("${warmup.concurrency:4}") int concurrency,
+                          @Value("${warmup.batch-size:100}") int batchSize,
+                          @Value("${warmup.db-qps:50}") double dbQps) {
+        this.batchSize = batchSize;
+        this.dbRateLimiter = RateLimiter.create(dbQps);
+        AtomicInteger threads = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(concurrency, r -> {
+            Thread thread = new Thread(r, "cache-warmup-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < concurrency; i++) {
+            workers.execute(this::work);
+        }
+    }
+
+    /**
+     * @param hottestFirst 按热度从高到低排列的键
+     */
+    public WarmUpJob submit(String name, List<Long> hottestFirst, int priority, BatchLoader loader) {
+        int batches = (hottestFirst.size() + batchSize - 1) / batchSize;
+        WarmUpJob job = new WarmUpJob(name, hottestFirst.size(), batches);
+        long sequence = jobSequence.getAndIncrement();
+        for (int i = 0; i < batches; i++) {
+            List<Long> ids = new ArrayList<>(hottestFirst.subList(i * batchSize, Math.min((i + 1) * batchSize, hottestFirst.size())));
+            queue.add(new Batch(job, loader, ids, priority, sequence, i));
+        }
+        return job;
+    }
+
+    private void work() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Batch batch;
+            try {
+                batch = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            run(batch);
+        }
+    }
+
+    private void run(Batch batch) {
+        long start = System.nanoTime();
+        int size = batch.ids().size();
+        try {
+            List<Long> missing = batch.loader().missing(batch.ids());
+            int loaded = 0;
+            if (!missing.isEmpty()) {
+                dbRateLimiter.acquire();
+                dbQueries.increment();
+                loaded = batch.loader().load(missing);
+            }
+            int cached = size - missing.size() + loaded;
+            keysCached.add(cached);
+            keysNotFound.add(missing.size() - loaded);
+            batch.job().onBatch(cached, missing.size() - loaded, 0);
+        } catch (RuntimeException e) {
+            logger.warn("Warm-up batch {} of {} failed: {}", batch.index(), batch.job().getName(), e.getMessage());
+            keysFailed.add(size);
+            batch.job().onBatch(0, 0, size);
+        } finally {
+            Timer timer = batchTimer;
+            if (timer != null) {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    public int getQueuedBatches() {
+        return queue.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        batchTimer = Timer.builder("warmup.batch.duration")
+                .description("Time to filter and load one warm-up batch, including rate limiting")
+                .register(registry);
+        Gauge.builder("warmup.queue.batches", this, WarmUpExecutor::getQueuedBatches)
+                .description("Warm-up batches waiting to run")
+                .register(registry);
+        FunctionCounter.builder("warmup.keys", keysCached, LongAdder::sum)
+                .tag("result", "cached")
+                .register(registry);
+        FunctionCounter.builder("warmup.keys", keysNotFound, LongAdder::sum)
+                .tag("result", "not_found")
+                .register(registry);
+        FunctionCounter.builder("warmup.keys", keysFailed, LongAdder::sum)
+                .tag("result", "failed")
+                .register(registry);
+        FunctionCounter.builder("warmup.db.queries", dbQueries, LongAdder::sum)
+                .description("findAllById calls issued by warm-up")
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        workers.shutdownNow();
+    }
+
+    private record Batch(WarmUpJob job, BatchLoader loader, List<Long> ids, int priority, long jobSequence, int index) {
+    }
+}
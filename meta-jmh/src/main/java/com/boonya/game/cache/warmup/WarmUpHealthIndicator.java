@@ -0,0 +1,83 @@
+package com.boonya.game.cache.warmup;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 预热就绪门：启动预热的预期命中率达到 warmup.readiness.target-hit-rate 才报告就绪，
+ * 加入 readiness 健康组后，Pod在热点加载完成前不接流量
+ * <ul>
+ *     <li>Pod未就绪时没有真实流量，命中率按热点集合中已缓存的比例计算，数据库中不存在的键不计</li>
+ *     <li>超过 warmup.readiness.timeout 仍未达标也放行，避免数据库故障时Pod永远不就绪</li>
+ *     <li>就绪后不再回退，之后的淘汰不影响就绪状态</li>
+ * </ul>
+ */
+@Component
+public class WarmUpHealthIndicator implements HealthIndicator, MeterBinder {
+
+    private final double targetHitRate;
+    private final long timeoutNanos;
+    private final long createdAt = System.nanoTime();
+    private volatile WarmUpJob startupJob;
+    private volatile boolean ready;
+
+    public WarmUpHealthIndicator(@Value("${warmup.readiness.target-hit-rate:0.9}") double targetHitRate,
+                                 @Value("${warmup.readiness.timeout:2m}") Duration timeout) {
+        this.targetHitRate = targetHitRate;
+        this.timeoutNanos = timeout.toNanos();
+    }
+
+    /**
+     * 登记启动预热任务，就绪状态由它的命中率决定
+     */
+    public void track(WarmUpJob job) {
+        this.startupJob = job;
+    }
+
+    public boolean isReady() {
+        if (ready) {
+            return true;
+        }
+        WarmUpJob job = startupJob;
+        if ((job != null && job.hitRate() >= targetHitRate) || System.nanoTime() - createdAt > timeoutNanos) {
+            ready = true;
+        }
+        return ready;
+    }
+
+    @Override
+    public Health health() {
+        WarmUpJob job = startupJob;
+        Health.Builder builder = isReady() ? Health.up() : Health.outOfService();
+        builder.withDetail("targetHitRate", targetHitRate);
+        if (job == null) {
+            return builder.withDetail("startup", "pending").build();
+        }
+        return builder.withDetail("hitRate", job.hitRate())
+                .withDetail("progress", job.progress())
+                .withDetail("cached", job.getCached())
+                .withDetail("notFound", job.getNotFound())
+                .withDetail("failed", job.getFailed())
+                .build();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("warmup.startup.progress", this, h -> h.startupJob == null ? 0 : h.startupJob.progress())
+                .description("Share of startup hot keys processed")
+                .register(registry);
+        Gauge.builder("warmup.startup.hit.rate", this, h -> h.startupJob == null ? 0 : h.startupJob.hitRate())
+                .description("Expected L1 hit rate over the startup hot key set")
+                .register(registry);
+        Gauge.builder("warmup.ready", this, h -> h.isReady() ? 1 : 0)
+                .description("1 once the warm-up readiness gate has opened")
+                .register(registry);
+    }
+}
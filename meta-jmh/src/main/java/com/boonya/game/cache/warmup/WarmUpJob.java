@@ -0,0 +1,92 @@
+package com.boonya.game.cache.warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一次预热任务的进度，按批次累计
+ */
+public class WarmUpJob {
+
+    private final String name;
+    private final int total;
+    private final int batches;
+    private final AtomicInteger completedBatches = new AtomicInteger();
+    private final LongAdder cached = new LongAdder();
+    private final LongAdder notFound = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final CompletableFuture<WarmUpJob> completion = new CompletableFuture<>();
+
+    WarmUpJob(String name, int total, int batches) {
+        this.name = name;
+        this.total = total;
+        this.batches = batches;
+        if (batches == 0) {
+            completion.complete(this);
+        }
+    }
+
+    /**
+     * @param cachedKeys   本批结束后已在缓存中的键（原本就在缓存的 + 新加载的）
+     * @param missingKeys  数据库中不存在的键
+     * @param failedKeys   加载失败的键
+     */
+    void onBatch(int cachedKeys, int missingKeys, int failedKeys) {
+        cached.add(cachedKeys);
+        notFound.add(missingKeys);
+        failed.add(failedKeys);
+        if (completedBatches.incrementAndGet() == batches) {
+            completion.complete(this);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public long getCached() {
+        return cached.sum();
+    }
+
+    public long getNotFound() {
+        return notFound.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public boolean isDone() {
+        return completion.isDone();
+    }
+
+    /**
+     * 已处理的键占比
+     */
+    public double progress() {
+        return total == 0 ? 1 : (double) (cached.sum() + notFound.sum() + failed.sum()) / total;
+    }
+
+    /**
+     * 预期命中率：存在的热点键中已在缓存的比例，未处理的键按未命中计
+     */
+    public double hitRate() {
+        long existing = total - notFound.sum();
+        return existing <= 0 ? 1 : (double) cached.sum() / existing;
+    }
+
+    public CompletableFuture<WarmUpJob> completion() {
+        return completion;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[total=%d, cached=%d, notFound=%d, failed=%d]",
+                name, total, cached.sum(), notFound.sum(), failed.sum());
+    }
+}
@@ -1,6 +1,11 @@
 package com.boonya.game.component;
 
+import com.boonya.game.cache.warmup.WarmUpExecutor;
+import com.boonya.game.cache.warmup.WarmUpHealthIndicator;
+import com.boonya.game.cache.warmup.WarmUpJob;
 import com.boonya.game.service.UserService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
@@ -10,31 +15,47 @@ import org.springframework.stereotype.Component;
 import java.util.List;
 
 /**
- * 热点数据加载
+ * 热点数据加载，热点来源见 {@link com.boonya.game.cache.hotkey.HotKeyTelemetry}，
+ * 加载的并发、查库速率与优先级见 {@link WarmUpExecutor}
  */
 @Component
 public class CacheWarmUp {
 
+    private static final Logger logger = LoggerFactory.getLogger(CacheWarmUp.class);
+
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private WarmUpExecutor warmUpExecutor;
+
+    @Autowired
+    private WarmUpHealthIndicator readiness;
+
+    private volatile WarmUpJob predictiveJob;
+
     @EventListener(ApplicationReadyEvent.class)
     public void warmUpCache() {
-        // 启动时预热热点数据
+        // 启动时按Redis中的热点快照预热，就绪门跟踪其命中率；不阻塞启动线程
         List<Long> hotUserIds = userService.getHotUserIds();
-        hotUserIds.parallelStream().forEach(id -> {
-            userService.getUserMultiLevel(id);
-        });
+        WarmUpJob job = warmUpExecutor.submit("startup", hotUserIds, WarmUpExecutor.PRIORITY_STARTUP,
+                userService.warmUpLoader());
+        readiness.track(job);
+        job.completion().thenAccept(done -> logger.info("Cache warm-up finished: {}", done));
     }
 
-    // 预测性预加载
-    @Scheduled(fixedRate = 60000) // 每分钟执行
+    // 预测性预加载，优先级低于启动预热；上一轮未完成时跳过，避免任务堆积
+    @Scheduled(fixedRateString = "${hotkey.preload-interval-ms:60000}", initialDelayString = "${hotkey.preload-interval-ms:60000}")
     public void predictiveLoading() {
+        WarmUpJob previous = predictiveJob;
+        if (previous != null && !previous.isDone()) {
+            logger.debug("Skipping predictive preload, previous run still in progress: {}", previous);
+            return;
+        }
         List<Long> predictedHotIds = userService.predictHotUserIds();
-        predictedHotIds.parallelStream().forEach(id -> {
-            if (!userService.cacheContains(id)) {
-                userService.getUserMultiLevel(id);
-            }
-        });
+        if (!predictedHotIds.isEmpty()) {
+            predictiveJob = warmUpExecutor.submit("predictive", predictedHotIds, WarmUpExecutor.PRIORITY_PREDICTIVE,
+                    userService.warmUpLoader());
+        }
     }
 }
@@ -0,0 +1,95 @@
+package com.boonya.game.component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 虚拟线程钉住检测：订阅 JFR 的 jdk.VirtualThreadPinned 事件
+ * <p>
+ * 虚拟线程在 synchronized 块或本地方法中阻塞时无法卸载，会占住载体线程，
+ * 超过阈值的钉住记入 jvm.threads.virtual.pinned 指标并打印阻塞位置的栈顶。
+ */
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadPinningMonitor implements InitializingBean, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int LOGGED_FRAMES = 5;
+
+    private final Counter pinnedCounter;
+    private final Timer pinnedTimer;
+    private final Duration threshold;
+    private RecordingStream stream;
+
+    public VirtualThreadPinningMonitor(MeterRegistry meterRegistry,
+                                       @Value("${monitor.virtual-thread.pinned-threshold:20ms}") Duration threshold) {
+        this.threshold = threshold;
+        this.pinnedCounter = Counter.builder("jvm.threads.virtual.pinned")
+                .description("Virtual thread pinned events above threshold")
+                .register(meterRegistry);
+        this.pinnedTimer = Timer.builder("jvm.threads.virtual.pinned.duration")
+                .description("Duration of virtual thread pinning")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        stream = new RecordingStream();
+        stream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        stream.onEvent(PINNED_EVENT, this::onPinned);
+        stream.startAsync();
+        logger.info("Virtual thread pinning monitor started, threshold {}", threshold);
+    }
+
+    private void onPinned(RecordedEvent event) {
+        pinnedCounter.increment();
+        pinnedTimer.record(event.getDuration());
+        if (logger.isWarnEnabled()) {
+            logger.warn("Virtual thread pinned for {} ms on {}:\n{}", event.getDuration().toMillis(),
+                    event.getThread() != null ? event.getThread().getJavaName() : "unknown",
+                    topFrames(event.getStackTrace()));
+        }
+    }
+
+    private static String topFrames(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return "\t<no stack trace>";
+        }
+        StringBuilder frames = new StringBuilder();
+        List<RecordedFrame> recorded = stackTrace.getFrames();
+        for (int i = 0; i < Math.min(LOGGED_FRAMES, recorded.size()); i++) {
+            RecordedFrame frame = recorded.get(i);
+            frames.append("\tat ")
+                    .append(frame.getMethod().getType().getName()).append('.')
+                    .append(frame.getMethod().getName())
+                    .append(':').append(frame.getLineNumber())
+                    .append('\n');
+        }
+        return frames.toString();
+    }
+
+    @Override
+    public void destroy() {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+}
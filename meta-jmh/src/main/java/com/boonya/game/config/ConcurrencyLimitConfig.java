@@ -0,0 +1,31 @@
+package com.boonya.game.config;
+
+import com.boonya.game.limit.AdaptiveConcurrencyLimiter;
+import com.boonya.game.limit.ConcurrencyLimitProperties;
+import com.boonya.game.limit.ConcurrencyLimitWebFilter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * HTTP自适应并发限制，http.limiter.enabled=true 时生效
+ * <p>
+ * 限制器是MeterBinder，由Spring Boot绑定到注册表，排队时间的直方图配置见 {@link MetricsConfig}。
+ */
+@Configuration
+@EnableConfigurationProperties(ConcurrencyLimitProperties.class)
+@ConditionalOnProperty(prefix = "http.limiter", name = "enabled", havingValue = "true")
+public class ConcurrencyLimitConfig {
+
+    @Bean
+    public AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter(ConcurrencyLimitProperties properties) {
+        return new AdaptiveConcurrencyLimiter(properties.getPolicy(), System::nanoTime);
+    }
+
+    @Bean
+    public ConcurrencyLimitWebFilter concurrencyLimitWebFilter(AdaptiveConcurrencyLimiter limiter,
+                                                               ConcurrencyLimitProperties properties) {
+        return new ConcurrencyLimitWebFilter(limiter, properties);
+    }
+}
@@ -0,0 +1,36 @@
+package com.boonya.game.config;
+
+import com.boonya.game.cache.hedge.HedgedExecutor;
+import com.boonya.game.deadline.DeadlineWebFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 请求截止时间与多级缓存对冲
+ * <ul>
+ *     <li>http.deadline.enabled=true 时每个请求带截止时间，阻塞路径上的各级缓存按剩余时间查询</li>
+ *     <li>user.hedge.enabled=true 时 UserService 多级缓存的L2/L3开启对冲，参数见 {@link HedgedExecutor.Policy}</li>
+ * </ul>
+ */
+@Configuration
+public class DeadlineConfig {
+
+    @Bean
+    @ConditionalOnProperty(prefix = "http.deadline", name = "enabled", havingValue = "true")
+    public DeadlineWebFilter deadlineWebFilter(@Value("${http.deadline.default-timeout:1s}") Duration defaultTimeout,
+                                               @Value("${http.deadline.max-timeout:5s}") Duration maxTimeout) {
+        return new DeadlineWebFilter(defaultTimeout, maxTimeout);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "user.hedge", name = "enabled", havingValue = "true")
+    @ConfigurationProperties(prefix = "user.hedge")
+    public HedgedExecutor.Policy userHedgePolicy() {
+        return new HedgedExecutor.Policy();
+    }
+}
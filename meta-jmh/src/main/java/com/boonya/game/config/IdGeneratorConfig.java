@@ -0,0 +1,30 @@
+package com.boonya.game.config;
+
+import com.boonya.game.id.SnowflakeIdGenerator;
+import com.boonya.game.id.WorkerIdResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 分布式ID生成器，工作节点ID见 {@link WorkerIdResolver}
+ */
+@Configuration
+public class IdGeneratorConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdGeneratorConfig.class);
+
+    @Bean
+    public SnowflakeIdGenerator idGenerator(@Value("${id.worker-id:-1}") long configuredWorkerId,
+                                            @Value("${id.pod-name:${POD_NAME:${HOSTNAME:}}}") String podName,
+                                            @Value("${id.thread-buffer-size:32}") int bufferSize,
+                                            @Value("${id.max-ahead-millis:5}") long maxAheadMillis,
+                                            @Value("${id.max-backward-millis:1000}") long maxBackwardMillis) {
+        long workerId = WorkerIdResolver.resolve(configuredWorkerId, podName);
+        logger.info("Snowflake id generator using worker id {} (pod {}), thread buffer {}", workerId, podName, bufferSize);
+        return new SnowflakeIdGenerator(workerId, bufferSize, SnowflakeIdGenerator.DEFAULT_EPOCH,
+                maxAheadMillis, maxBackwardMillis, System::currentTimeMillis);
+    }
+}
@@ -2,11 +2,16 @@ package com.boonya.game.config;
 
 import com.ryantenney.metrics.spring.config.annotation.EnableMetrics;
 import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.Meter;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
 import org.springframework.boot.actuate.autoconfigure.metrics.MeterRegistryCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+
 /**
  * 性能监控指标
  */
@@ -23,4 +28,26 @@ public class MetricsConfig {
     public TimedAspect timedAspect(MeterRegistry registry) {
         return new TimedAspect(registry);
     }
+
+    /**
+     * 并发限制的排队时间导出分位数直方图，范围覆盖各优先级的 queue-timeout，
+     * 用于判断排队是否在吸收突发还是已经接近超时拒绝
+     */
+    @Bean
+    public MeterFilter limiterQueueTimeHistogram() {
+        return new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (!"http.limiter.queue.time".equals(id.getName())) {
+                    return config;
+                }
+                return DistributionStatisticConfig.builder()
+                        .percentilesHistogram(true)
+                        .minimumExpectedValue((double) Duration.ofMillis(1).toNanos())
+                        .maximumExpectedValue((double) Duration.ofMillis(200).toNanos())
+                        .build()
+                        .merge(config);
+            }
+        };
+    }
 }
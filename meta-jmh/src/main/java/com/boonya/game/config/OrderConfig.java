@@ -0,0 +1,28 @@
+package com.boonya.game.config;
+
+import com.boonya.game.order.MappedOrderEventLog;
+import com.boonya.game.order.OrderEventLog;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+/**
+ * 订单事件日志，order.event-log.enabled=false 时不持久化
+ */
+@Configuration
+public class OrderConfig {
+
+    @Bean(destroyMethod = "close")
+    public OrderEventLog orderEventLog(@Value("${order.event-log.enabled:true}") boolean enabled,
+                                       @Value("${order.event-log.path:data/order-events.log}") String path,
+                                       @Value("${order.event-log.force-interval:1s}") Duration forceInterval) throws IOException {
+        if (!enabled) {
+            return OrderEventLog.NONE;
+        }
+        return MappedOrderEventLog.open(Paths.get(path), forceInterval);
+    }
+}
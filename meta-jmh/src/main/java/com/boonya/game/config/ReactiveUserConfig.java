@@ -0,0 +1,45 @@
+package com.boonya.game.config;
+
+import com.boonya.game.dao.OffloadedUserRepository;
+import com.boonya.game.dao.ReactiveUserRepository;
+import com.boonya.game.dao.ShardedUserRepository;
+import com.boonya.game.dao.UserRepository;
+import com.boonya.game.service.ReactiveUserProperties;
+import com.boonya.game.service.ReactiveUserService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.ReactiveRedisOperations;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * 响应式读路径，各接口是否使用由 user.read-path.* 决定，默认仍走阻塞路径
+ */
+@Configuration
+@EnableConfigurationProperties(ReactiveUserProperties.class)
+public class ReactiveUserConfig {
+
+    @Bean
+    @ConditionalOnMissingBean(ReactiveUserRepository.class)
+    public ReactiveUserRepository reactiveUserRepository(UserRepository userRepository,
+                                                         ObjectProvider<ShardedUserRepository> shardedUsers,
+                                                         @Qualifier("blockingScheduler") Scheduler blockingScheduler) {
+        ShardedUserRepository sharded = shardedUsers.getIfAvailable();
+        return sharded != null ? new OffloadedUserRepository(sharded::findById, blockingScheduler)
+                : new OffloadedUserRepository(userRepository, blockingScheduler);
+    }
+
+    @Bean
+    public ReactiveUserService reactiveUserService(ReactiveUserRepository repository,
+                                                   ObjectProvider<ReactiveRedisOperations<Object, Object>> redis,
+                                                   ReactiveUserProperties properties,
+                                                   ObjectProvider<MeterRegistry> registry) {
+        ReactiveUserService service = new ReactiveUserService(repository, redis.getIfAvailable(), properties);
+        registry.ifAvailable(service::bindTo);
+        return service;
+    }
+}
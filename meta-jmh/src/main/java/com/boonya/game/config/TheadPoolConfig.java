@@ -1,16 +1,39 @@
 package com.boonya.game.config;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpStatus;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 
+/**
+ * 执行模式由 spring.threads.virtual.enabled 切换（需要 JDK 21，低版本始终为平台线程）：
+ * <ul>
+ *     <li>平台线程：@Async 使用固定大小线程池，阻塞调用卸载到 boundedElastic</li>
+ *     <li>虚拟线程：@Async、阻塞调用每个任务一个虚拟线程，Tomcat 请求处理由 Spring Boot 切换为虚拟线程</li>
+ * </ul>
+ */
 @Configuration
+@EnableAsync
 public class TheadPoolConfig {
 
+    /**
+     * 虚拟线程模式下同时在途的阻塞任务上限，保护下游连接池；达到上限时拒绝新任务，不阻塞提交线程
+     */
+    private static final int VIRTUAL_CONCURRENCY_LIMIT = 10_000;
+
     @Bean("taskExecutor")
+    @ConditionalOnThreading(Threading.PLATFORM)
     public TaskExecutor taskExecutor() {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         executor.setCorePoolSize(20);
@@ -21,4 +44,52 @@ public class TheadPoolConfig {
         executor.initialize();
         return executor;
     }
+
+    @Bean("taskExecutor")
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public TaskExecutor virtualTaskExecutor() {
+        return virtualThreadExecutor("async-vt-");
+    }
+
+    /**
+     * Controller 中阻塞调用（缓存/数据库）的卸载调度器
+     */
+    @Bean("blockingScheduler")
+    @ConditionalOnThreading(Threading.PLATFORM)
+    public Scheduler blockingScheduler() {
+        return Schedulers.boundedElastic();
+    }
+
+    @Bean(name = "blockingScheduler", destroyMethod = "dispose")
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public Scheduler virtualBlockingScheduler() {
+        return Schedulers.fromExecutor(virtualThreadExecutor("blocking-vt-"));
+    }
+
+    public static SimpleAsyncTaskExecutor virtualThreadExecutor(String threadNamePrefix) {
+        return virtualThreadExecutor(threadNamePrefix, VIRTUAL_CONCURRENCY_LIMIT);
+    }
+
+    /**
+     * 每任务一个虚拟线程，在途任务达到上限时抛出 {@link org.springframework.core.task.TaskRejectedException}
+     * <p>
+     * 默认的限流会让提交线程等待名额，而 blockingScheduler 的提交方是 Netty 事件循环线程，
+     * 等待会卡住该线程上的所有连接，所以改为立即拒绝，由调用方返回503
+     *
+     * @param concurrencyLimit 在途任务上限，{@link SimpleAsyncTaskExecutor#UNBOUNDED_CONCURRENCY} 表示不限
+     */
+    public static SimpleAsyncTaskExecutor virtualThreadExecutor(String threadNamePrefix, int concurrencyLimit) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+        executor.setVirtualThreads(true);
+        executor.setConcurrencyLimit(concurrencyLimit);
+        executor.setRejectTasksWhenLimitReached(true);
+        return executor;
+    }
+
+    /**
+     * 阻塞调用被卸载线程池拒绝时的响应：503，与并发限流的拒绝一致
+     */
+    public static ResponseStatusException overloaded(RejectedExecutionException e) {
+        return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Blocking executor saturated", e);
+    }
 }
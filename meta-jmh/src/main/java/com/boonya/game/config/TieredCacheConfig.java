@@ -0,0 +1,26 @@
+package com.boonya.game.config;
+
+import com.boonya.game.cache.tier.TieredCacheFactory;
+import com.boonya.game.cache.tier.TieredCacheProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.RedisTemplate;
+
+/**
+ * 分层缓存，cache.tiered.enabled=true 且配置了对应缓存时，业务按配置组装管线
+ */
+@Configuration
+@EnableConfigurationProperties(TieredCacheProperties.class)
+public class TieredCacheConfig {
+
+    @Bean
+    public TieredCacheFactory tieredCacheFactory(TieredCacheProperties properties, CacheManager cacheManager,
+                                                 RedisTemplate<String, Object> redisTemplate,
+                                                 ObjectProvider<MeterRegistry> registry) {
+        return new TieredCacheFactory(properties, cacheManager, redisTemplate, registry.getIfAvailable());
+    }
+}
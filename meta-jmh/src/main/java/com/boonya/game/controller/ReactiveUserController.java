@@ -1,13 +1,21 @@
 package com.boonya.game.controller;
 
+import com.boonya.game.cache.hotkey.HotKeyTelemetry;
+import com.boonya.game.config.TheadPoolConfig;
+import com.boonya.game.deadline.Deadline;
 import com.boonya.game.model.User;
+import com.boonya.game.service.ReactiveUserService;
 import com.boonya.game.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.concurrent.RejectedExecutionException;
 
 // 使用WebFlux实现响应式编程
 @RestController
@@ -16,9 +24,33 @@ public class ReactiveUserController {
     @Autowired
     private UserService userService;
 
+    // 平台线程模式为 boundedElastic，虚拟线程模式为每任务一个虚拟线程，见 TheadPoolConfig
+    @Autowired
+    @Qualifier("blockingScheduler")
+    private Scheduler blockingScheduler;
+
+    // 全响应式读路径，user.read-path.users=reactive 时使用
+    @Autowired(required = false)
+    private ReactiveUserService reactiveUserService;
+
+    @Value("${user.read-path.users:blocking}")
+    private String readPath;
+
+    // 访问热点遥测，脱离完整应用的压测桩中不存在
+    @Autowired(required = false)
+    private HotKeyTelemetry hotKeyTelemetry;
+
     @GetMapping("/users/{id}")
     public Mono<User> getUserReactive(@PathVariable Long id) {
-        return Mono.fromCallable(() -> userService.getUser(id))
-                .subscribeOn(Schedulers.boundedElastic());
+        if (hotKeyTelemetry != null) {
+            hotKeyTelemetry.record(id);
+        }
+        if (reactiveUserService != null && "reactive".equalsIgnoreCase(readPath)) {
+            return reactiveUserService.getUser(id);
+        }
+        // 请求的截止时间随Reactor Context传入，在阻塞线程上转为ThreadLocal，由多级缓存查L2/L3前检查
+        return Deadline.blocking(() -> userService.getUserMultiLevel(id))
+                .subscribeOn(blockingScheduler)
+                .onErrorMap(RejectedExecutionException.class, TheadPoolConfig::overloaded);
     }
 }
@@ -0,0 +1,77 @@
+package com.boonya.game.dao;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * 号段分配：在id_sequences表上用比较并交换一次取走连续的一段ID
+ * <p>
+ * 与Hibernate的表生成器（pooled-lo优化器，hibernate.id.generator.stored_last_used=false）语义一致：
+ * next_val是下一段的起始值，取走n个ID即把next_val加n，因此JPA与JDBC两条写入路径可以共用一张号段表。
+ * Hibernate 6默认stored_last_used=true，表中存的是已用的最大值，两边会分到重叠的号段，
+ * 所以application.yml中必须关闭该选项。
+ * 更新不依赖行锁和事务，冲突时重读重试。
+ */
+public class IdRangeAllocator {
+
+    static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS id_sequences "
+            + "(sequence_name VARCHAR(255) NOT NULL PRIMARY KEY, next_val BIGINT)";
+    private static final String SELECT = "SELECT next_val FROM id_sequences WHERE sequence_name = ?";
+    private static final String INSERT = "INSERT INTO id_sequences (sequence_name, next_val) VALUES (?, ?)";
+    private static final String UPDATE = "UPDATE id_sequences SET next_val = ? WHERE sequence_name = ? AND next_val = ?";
+    private static final int MAX_ATTEMPTS = 100;
+
+    /**
+     * Hibernate表生成器的默认初始值
+     */
+    private static final long INITIAL_VALUE = 1;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public IdRangeAllocator(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * 建号段表（测试和基准用，生产环境由DDL或Hibernate建表）
+     */
+    public void createTableIfMissing() {
+        jdbcTemplate.execute(CREATE_TABLE);
+    }
+
+    /**
+     * 取走count个连续ID
+     * @return 第一个ID，本次可用 [返回值, 返回值 + count)
+     */
+    public long allocate(String sequence, int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("count must be positive: " + count);
+        }
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            Long current = currentValue(sequence);
+            if (current == null) {
+                try {
+                    jdbcTemplate.update(INSERT, sequence, INITIAL_VALUE + count);
+                    return INITIAL_VALUE;
+                } catch (DuplicateKeyException e) {
+                    // 并发初始化，重试走更新分支
+                    continue;
+                }
+            }
+            if (jdbcTemplate.update(UPDATE, current + count, sequence, current) == 1) {
+                return current;
+            }
+        }
+        throw new IllegalStateException("Failed to allocate " + count + " ids from " + sequence
+                + " after " + MAX_ATTEMPTS + " attempts");
+    }
+
+    private Long currentValue(String sequence) {
+        try {
+            return jdbcTemplate.queryForObject(SELECT, Long.class, sequence);
+        } catch (EmptyResultDataAccessException e) {
+            return null;
+        }
+    }
+}
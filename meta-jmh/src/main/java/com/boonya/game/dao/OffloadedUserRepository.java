@@ -0,0 +1,36 @@
+package com.boonya.game.dao;
+
+import com.boonya.game.model.User;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.function.Function;
+
+/**
+ * 阻塞仓库的响应式适配：JPA查询卸载到 blockingScheduler，不占用事件循环线程
+ * <p>
+ * 只有L1/L2都未命中的请求才会走到这里，命中路径全程不切换线程。
+ */
+public class OffloadedUserRepository implements ReactiveUserRepository {
+
+    private final Function<Long, User> finder;
+    private final Scheduler scheduler;
+
+    public OffloadedUserRepository(UserRepository userRepository, Scheduler scheduler) {
+        this(id -> userRepository.findById(id).orElse(null), scheduler);
+    }
+
+    /**
+     * @param finder 阻塞的单条查询，例如分片库上的 {@link ShardedUserRepository#findById}
+     */
+    public OffloadedUserRepository(Function<Long, User> finder, Scheduler scheduler) {
+        this.finder = finder;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public Mono<User> findById(Long id) {
+        return Mono.fromCallable(() -> finder.apply(id))
+                .subscribeOn(scheduler);
+    }
+}
@@ -0,0 +1,14 @@
+package com.boonya.game.dao;
+
+import com.boonya.game.model.User;
+import reactor.core.publisher.Mono;
+
+/**
+ * 响应式读路径的数据库层，用户不存在时返回空Mono
+ * <p>
+ * 默认实现为 {@link OffloadedUserRepository}；引入R2DBC驱动后提供同名Bean即可替换，读路径其他部分不变。
+ */
+public interface ReactiveUserRepository {
+
+    Mono<User> findById(Long id);
+}
@@ -0,0 +1,95 @@
+package com.boonya.game.dao;
+
+import com.boonya.game.datasource.annotation.Master;
+import com.boonya.game.datasource.annotation.ReadOnly;
+import com.boonya.game.datasource.annotation.ShardKey;
+import com.boonya.game.datasource.annotation.Sharded;
+import com.boonya.game.datasource.shard.ShardingTemplate;
+import com.boonya.game.model.User;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 分片库上的用户表，按用户ID路由到分片；datasource.sharding.enabled=true 时由 ShardingConfig 注册，
+ * UserService 的读写改走这里，不再经过JPA
+ * <p>
+ * 单条读写由 {@link Sharded} 切面绑定分片，findAllById 按分片拆分并行查询；
+ * 批量插入按分片分组后在各分片内 batchUpdate。各分片的写入不在同一个事务中。
+ */
+public class ShardedUserRepository {
+
+    private static final String UPDATE_USER = "UPDATE users SET name = ?, email = ? WHERE id = ?";
+
+    private static final RowMapper<User> USER = (rs, row) -> new User(rs.getLong(1), rs.getString(2), rs.getString(3));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ShardingTemplate shardingTemplate;
+
+    public ShardedUserRepository(JdbcTemplate shardingJdbcTemplate, ShardingTemplate shardingTemplate) {
+        this.jdbcTemplate = shardingJdbcTemplate;
+        this.shardingTemplate = shardingTemplate;
+    }
+
+    @Sharded
+    @ReadOnly
+    public User findById(@ShardKey Long id) {
+        List<User> users = jdbcTemplate.query("SELECT id, name, email FROM users WHERE id = ?", USER, id);
+        return users.isEmpty() ? null : users.get(0);
+    }
+
+    @Sharded
+    @ReadOnly
+    public List<User> findAllById(@ShardKey List<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String placeholders = ids.stream().map(id -> "?").collect(Collectors.joining(","));
+        return jdbcTemplate.query("SELECT id, name, email FROM users WHERE id IN (" + placeholders + ")",
+                USER, ids.toArray());
+    }
+
+    /**
+     * 按ID更新，不存在时插入；ID即分片键，必须事先分配。
+     * 并发保存同一个新ID时，另一方可能在UPDATE与INSERT之间插入了该行，主键冲突后改为再更新一次
+     */
+    @Sharded
+    @Master
+    public User save(@ShardKey("id") User user) {
+        if (update(user) == 0) {
+            try {
+                jdbcTemplate.update(UserBatchWriter.INSERT_USER, user.getId(), user.getName(), user.getEmail());
+            } catch (DuplicateKeyException e) {
+                update(user);
+            }
+        }
+        return user;
+    }
+
+    private int update(User user) {
+        return jdbcTemplate.update(UPDATE_USER, user.getName(), user.getEmail(), user.getId());
+    }
+
+    /**
+     * 批量插入已分配ID的用户，每个分片一次batchUpdate
+     */
+    @Master
+    public List<User> insertAll(List<User> users, int batchSize) {
+        Map<String, List<User>> byShard = shardingTemplate.partitionBy(users, User::getId);
+        for (Map.Entry<String, List<User>> shard : byShard.entrySet()) {
+            shardingTemplate.executeInShard(shard.getKey(), () -> jdbcTemplate.batchUpdate(UserBatchWriter.INSERT_USER,
+                    shard.getValue(), Math.max(1, batchSize), (ps, user) -> {
+                        ps.setLong(1, user.getId());
+                        ps.setString(2, user.getName());
+                        ps.setString(3, user.getEmail());
+                    }));
+        }
+        return new ArrayList<>(users);
+    }
+}
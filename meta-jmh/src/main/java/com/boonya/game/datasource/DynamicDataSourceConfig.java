@@ -1,5 +1,7 @@
 package com.boonya.game.datasource;
 
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.jdbc.DataSourceBuilder;
 import org.springframework.context.annotation.Bean;
@@ -40,9 +42,12 @@ public class DynamicDataSourceConfig {
         // 添加主库
         targetDataSources.put(DynamicDataSourceHolder.MASTER, masterDataSource());
 
-        // 添加从库
-        targetDataSources.put(DynamicDataSourceHolder.SLAVE_1, slave1DataSource());
-        targetDataSources.put(DynamicDataSourceHolder.SLAVE_2, slave2DataSource());
+        // 添加从库，包装后统计延迟与故障，供健康路由使用
+        ReplicaRouter router = DynamicDataSourceHolder.getReplicaRouter();
+        targetDataSources.put(DynamicDataSourceHolder.SLAVE_1,
+                new TrackedDataSource(DynamicDataSourceHolder.SLAVE_1, slave1DataSource(), router));
+        targetDataSources.put(DynamicDataSourceHolder.SLAVE_2,
+                new TrackedDataSource(DynamicDataSourceHolder.SLAVE_2, slave2DataSource(), router));
 
         // 配置动态数据源
         DynamicRoutingDataSource dynamicDataSource = new DynamicRoutingDataSource();
@@ -52,14 +57,86 @@ public class DynamicDataSourceConfig {
         return dynamicDataSource;
     }
 
+    /**
+     * 每个从库的延迟、在途数、错误率、熔断状态指标
+     */
+    @Bean
+    public MeterBinder replicaRouterMetrics() {
+        return DynamicDataSourceHolder.getReplicaRouter();
+    }
+
+    /**
+     * 请求边界清除写位点，与 {@link ReplicationLagMonitor} 同时开启
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "datasource.replication", name = "lag-aware", havingValue = "true", matchIfMissing = true)
+    public WritePositionWebFilter writePositionWebFilter() {
+        return new WritePositionWebFilter();
+    }
+
     /**
      * 动态路由数据源
+     * <p>
+     * 目标数据源保存在不可变Map的volatile引用中，运行时增删从库时整体替换，
+     * 路由查找不加锁，也不会看到构建到一半的Map
      */
     public static class DynamicRoutingDataSource extends AbstractRoutingDataSource {
 
+        private volatile Map<Object, DataSource> targets = Map.of();
+
+        @Override
+        public void afterPropertiesSet() {
+            super.afterPropertiesSet();
+            targets = Map.copyOf(super.getResolvedDataSources());
+        }
+
         @Override
         protected Object determineCurrentLookupKey() {
             return DynamicDataSourceHolder.getDataSource();
         }
+
+        @Override
+        protected DataSource determineTargetDataSource() {
+            Object lookupKey = determineCurrentLookupKey();
+            DataSource dataSource = targets.get(lookupKey);
+            // 刚被移除的从库可能仍被路由选中，回退到主库
+            if (dataSource == null) {
+                dataSource = getResolvedDefaultDataSource();
+            }
+            if (dataSource == null) {
+                throw new IllegalStateException("Cannot determine target DataSource for lookup key [" + lookupKey + "]");
+            }
+            return dataSource;
+        }
+
+        @Override
+        public Map<Object, DataSource> getResolvedDataSources() {
+            return targets;
+        }
+
+        /**
+         * 添加或替换一个目标数据源
+         * @return 被替换的数据源，没有时返回null
+         */
+        public synchronized DataSource putTarget(String name, DataSource dataSource) {
+            Map<Object, DataSource> next = new HashMap<>(targets);
+            DataSource previous = next.put(name, dataSource);
+            targets = Map.copyOf(next);
+            return previous;
+        }
+
+        /**
+         * 移除一个目标数据源
+         * @return 被移除的数据源，不存在时返回null
+         */
+        public synchronized DataSource removeTarget(String name) {
+            if (!targets.containsKey(name)) {
+                return null;
+            }
+            Map<Object, DataSource> next = new HashMap<>(targets);
+            DataSource removed = next.remove(name);
+            targets = Map.copyOf(next);
+            return removed;
+        }
     }
 }
\ No newline at end of file
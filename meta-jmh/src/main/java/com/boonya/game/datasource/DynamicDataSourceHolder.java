@@ -2,9 +2,8 @@ package com.boonya.game.datasource;
 
 import org.springframework.util.StringUtils;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 /**
  * 动态数据源持有者，用于在运行时切换数据源
@@ -26,19 +25,19 @@ public class DynamicDataSourceHolder {
     private static final ThreadLocal<String> DATASOURCE_HOLDER = new ThreadLocal<>();
 
     /**
-     * 从库计数器，用于负载均衡
+     * 从库路由引擎，按健康状态与负载选择从库
      */
-    private static final AtomicInteger SLAVE_COUNTER = new AtomicInteger(0);
+    private static final ReplicaRouter REPLICA_ROUTER = new ReplicaRouter();
 
     /**
-     * 可用的从库列表
+     * 复制延迟筛选，未开启时为null
      */
-    private static final List<String> SLAVE_DATA_SOURCES = new ArrayList<>();
+    private static volatile ReplicaRouter.Filter replicaFilter;
 
     static {
         // 初始化从库列表
-        SLAVE_DATA_SOURCES.add(SLAVE_1);
-        SLAVE_DATA_SOURCES.add(SLAVE_2);
+        REPLICA_ROUTER.addReplica(SLAVE_1);
+        REPLICA_ROUTER.addReplica(SLAVE_2);
     }
 
     /**
@@ -71,6 +70,32 @@ public class DynamicDataSourceHolder {
         return dataSource;
     }
 
+    /**
+     * 获取当前线程设置的数据源原值，不做从库选择
+     * @return 数据源名称（可能为slave），未设置时返回null
+     */
+    public static String peekDataSource() {
+        return DATASOURCE_HOLDER.get();
+    }
+
+    /**
+     * 在池化线程上恢复调用方的数据源选择与写位点后执行，执行完两者都清除，不留给线程上的后续任务
+     * @param dataSource 调用方 {@link #peekDataSource()} 的结果，null时走默认路由
+     * @param position 调用方的 {@link WritePositionHolder#getPosition()}
+     * @param action 执行的操作
+     * @return 操作结果
+     */
+    public static <T> T callWithRoute(String dataSource, long position, Supplier<T> action) {
+        setDataSource(dataSource);
+        WritePositionHolder.restore(position);
+        try {
+            return action.get();
+        } finally {
+            clearDataSource();
+            WritePositionHolder.clear();
+        }
+    }
+
     /**
      * 清除数据源设置
      */
@@ -97,7 +122,7 @@ public class DynamicDataSourceHolder {
      * @param slaveName 从库名称
      */
     public static void useSpecificSlave(String slaveName) {
-        if (SLAVE_DATA_SOURCES.contains(slaveName)) {
+        if (REPLICA_ROUTER.contains(slaveName)) {
             setDataSource(slaveName);
         } else {
             throw new IllegalArgumentException("Unknown slave data source: " + slaveName);
@@ -106,24 +131,69 @@ public class DynamicDataSourceHolder {
 
     /**
      * 获取负载均衡后的从库
-     * @return 从库名称
+     * @return 从库名称，没有从库（可能已在运行时全部移除）、所有从库都被熔断或未追上复制位点时返回主库
      */
     private static String getLoadBalancedSlave() {
-        if (SLAVE_DATA_SOURCES.isEmpty()) {
-            throw new IllegalStateException("No slave data sources available");
+        ReplicaRouter.Filter filter = replicaFilter;
+        String slave = REPLICA_ROUTER.choose(filter);
+        if (filter != null) {
+            filter.onRouted(slave);
         }
+        return slave != null ? slave : MASTER;
+    }
+
+    /**
+     * 对冲请求用：在同样的筛选条件下选择excluded之外的从库
+     * @param excluded 主请求已使用的从库
+     * @return 从库名称，没有其他合格从库时返回null（不回退到主库）
+     */
+    public static String getLoadBalancedSlaveExcluding(String excluded) {
+        ReplicaRouter.Filter filter = replicaFilter;
+        return REPLICA_ROUTER.choose(replica -> !replica.getName().equals(excluded)
+                && (filter == null || filter.accept(replica)));
+    }
+
+    /**
+     * 设置从库筛选条件（复制延迟/读己之写）
+     * @param filter 筛选条件，null表示不筛选
+     */
+    public static void setReplicaFilter(ReplicaRouter.Filter filter) {
+        replicaFilter = filter;
+    }
 
-        int index = Math.abs(SLAVE_COUNTER.getAndIncrement() % SLAVE_DATA_SOURCES.size());
-        return SLAVE_DATA_SOURCES.get(index);
+    /**
+     * 当前的从库筛选条件，分片数据源的读路由也使用它
+     * @return 筛选条件，未设置时为null
+     */
+    public static ReplicaRouter.Filter getReplicaFilter() {
+        return replicaFilter;
     }
 
     /**
-     * 添加从库数据源
+     * 获取从库路由引擎（健康统计与指标）
+     * @return 路由引擎
+     */
+    public static ReplicaRouter getReplicaRouter() {
+        return REPLICA_ROUTER;
+    }
+
+    /**
+     * 添加从库数据源（只注册路由名称，连接池由 {@link ReplicaRegistry} 创建）
      * @param slaveDataSource 从库名称
      */
     public static void addSlaveDataSource(String slaveDataSource) {
-        if (StringUtils.hasText(slaveDataSource) && !SLAVE_DATA_SOURCES.contains(slaveDataSource)) {
-            SLAVE_DATA_SOURCES.add(slaveDataSource);
+        if (StringUtils.hasText(slaveDataSource)) {
+            REPLICA_ROUTER.addReplica(slaveDataSource);
+        }
+    }
+
+    /**
+     * 从库连接池被替换后重置其健康状态，不存在时添加
+     * @param slaveDataSource 从库名称
+     */
+    public static void replaceSlaveDataSource(String slaveDataSource) {
+        if (StringUtils.hasText(slaveDataSource)) {
+            REPLICA_ROUTER.replaceReplica(slaveDataSource);
         }
     }
 
@@ -132,7 +202,7 @@ public class DynamicDataSourceHolder {
      * @param slaveDataSource 从库名称
      */
     public static void removeSlaveDataSource(String slaveDataSource) {
-        SLAVE_DATA_SOURCES.remove(slaveDataSource);
+        REPLICA_ROUTER.removeReplica(slaveDataSource);
     }
 
     /**
@@ -140,7 +210,7 @@ public class DynamicDataSourceHolder {
      * @return 从库列表
      */
     public static List<String> getAvailableSlaveDataSources() {
-        return new ArrayList<>(SLAVE_DATA_SOURCES);
+        return REPLICA_ROUTER.names();
     }
 
     /**
@@ -171,10 +241,10 @@ public class DynamicDataSourceHolder {
     }
 
     /**
-     * 重置从库计数器（主要用于测试）
+     * 重置从库健康统计（主要用于测试）
      */
     public static void resetSlaveCounter() {
-        SLAVE_COUNTER.set(0);
+        REPLICA_ROUTER.reset();
     }
 
     /**
@@ -182,6 +252,6 @@ public class DynamicDataSourceHolder {
      * @return 从库数量
      */
     public static int getSlaveCount() {
-        return SLAVE_DATA_SOURCES.size();
+        return REPLICA_ROUTER.size();
     }
 }
@@ -0,0 +1,64 @@
+package com.boonya.game.datasource;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 从库运维端点 /actuator/replicas：列表、注册或更新、移除
+ * <p>
+ * 作为actuator端点，默认不通过HTTP暴露；需要时在 management.endpoints.web.exposure.include 中加入 replicas，
+ * 并用 management.server.port 把管理端点绑定到只对内网开放的端口。
+ * 不接受驱动类，URL须通过 {@link ReplicaUrlPolicy} 白名单。阻塞的建池与预热由actuator在弹性线程池上执行。
+ */
+@Component
+@Endpoint(id = "replicas")
+public class ReplicaAdminEndpoint {
+
+    private final ReplicaRegistry replicaRegistry;
+
+    public ReplicaAdminEndpoint(ReplicaRegistry replicaRegistry) {
+        this.replicaRegistry = replicaRegistry;
+    }
+
+    @ReadOperation
+    public Map<String, String> replicas() {
+        Map<String, String> replicas = new LinkedHashMap<>();
+        for (String name : replicaRegistry.replicas()) {
+            ReplicaHealth health = DynamicDataSourceHolder.getReplicaRouter().health(name);
+            replicas.put(name, health == null ? "DETACHED" : health.getState().name());
+        }
+        return replicas;
+    }
+
+    @WriteOperation
+    public List<String> register(String name, String url, @Nullable String username, @Nullable String password,
+                                 @Nullable Integer maximumPoolSize, @Nullable Integer minimumIdle) {
+        ReplicaDefinition definition = new ReplicaDefinition();
+        definition.setName(name);
+        definition.setUrl(url);
+        definition.setUsername(username);
+        definition.setPassword(password);
+        if (maximumPoolSize != null) {
+            definition.setMaximumPoolSize(maximumPoolSize);
+        }
+        if (minimumIdle != null) {
+            definition.setMinimumIdle(minimumIdle);
+        }
+        replicaRegistry.register(definition);
+        return replicaRegistry.replicas();
+    }
+
+    @DeleteOperation
+    public boolean remove(@Selector String name) {
+        return replicaRegistry.remove(name);
+    }
+}
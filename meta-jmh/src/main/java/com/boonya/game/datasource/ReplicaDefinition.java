@@ -0,0 +1,27 @@
+package com.boonya.game.datasource;
+
+import lombok.Data;
+
+/**
+ * 运行时注册的从库连接配置
+ */
+@Data
+public class ReplicaDefinition {
+
+    /**
+     * 路由名称，不能是master或slave
+     */
+    private String name;
+
+    private String url;
+
+    private String username;
+
+    private String password;
+
+    private String driverClassName;
+
+    private int maximumPoolSize = 15;
+
+    private int minimumIdle = 3;
+}
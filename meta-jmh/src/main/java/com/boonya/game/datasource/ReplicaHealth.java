@@ -0,0 +1,233 @@
+package com.boonya.game.datasource;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个从库的健康状态：EWMA延迟、在途连接数、EWMA错误率与熔断状态
+ * <p>
+ * 熔断状态机：
+ * <ul>
+ *     <li>CLOSED：正常参与路由</li>
+ *     <li>OPEN：连续失败或错误率过高被摘除，退避时间按摘除次数指数增长</li>
+ *     <li>HALF_OPEN：退避到期后放行一个探测请求，成功则恢复，失败则再次摘除</li>
+ * </ul>
+ * 探测请求取连接时领取探测票据，归还时凭票据回报；熔断前已在途的连接没有票据，
+ * 它们在OPEN/HALF_OPEN期间归还只计入统计，不改变熔断状态。
+ * 所有状态都用原子变量维护，路由路径不加锁。
+ */
+public class ReplicaHealth {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final ReplicaRouter.Policy policy;
+
+    /**
+     * double以bit形式存放，CAS更新
+     */
+    private final AtomicLong ewmaLatencyNanos = new AtomicLong(Double.doubleToRawLongBits(0));
+    private final AtomicLong ewmaErrorRate = new AtomicLong(Double.doubleToRawLongBits(0));
+
+    /**
+     * 最近一次延迟样本的时间，用于空闲衰减
+     */
+    private volatile long lastSampleAt;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder ejections = new LongAdder();
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+
+    /**
+     * 连续摘除次数，决定退避时长，恢复后清零
+     */
+    private final AtomicInteger ejectionStreak = new AtomicInteger();
+
+    /**
+     * OPEN/HALF_OPEN状态下允许下一次探测的时间（System.nanoTime）
+     */
+    private final AtomicLong retryAt = new AtomicLong();
+
+    /**
+     * 探测票据：probeTickets发号，pendingProbe为已放行但还没取连接的探测（0表示没有），
+     * activeProbe为已取连接的探测
+     */
+    private final AtomicLong probeTickets = new AtomicLong();
+    private final AtomicLong pendingProbe = new AtomicLong();
+    private volatile long activeProbe;
+
+    ReplicaHealth(String name, ReplicaRouter.Policy policy) {
+        this.name = name;
+        this.policy = policy;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    public boolean isAvailable() {
+        return state.get() == State.CLOSED;
+    }
+
+    public double getEwmaLatencyNanos() {
+        return Double.longBitsToDouble(ewmaLatencyNanos.get());
+    }
+
+    public double getErrorRate() {
+        return Double.longBitsToDouble(ewmaErrorRate.get());
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public long getEjections() {
+        return ejections.sum();
+    }
+
+    /**
+     * 路由代价：EWMA延迟 × (在途数 + 1)，在途请求多的从库即使历史延迟低也会被避开。
+     * 延迟随空闲时间指数衰减，曾经慢的从库一段时间没被选中后会重新获得流量，不会被永久饿死
+     */
+    double cost(long now) {
+        double latency = getEwmaLatencyNanos();
+        long idle = now - lastSampleAt;
+        if (latency > 0 && idle > 0) {
+            latency *= Math.exp(-(double) idle / policy.getLatencyDecayNanos());
+        }
+        return (latency + 1) * (inFlight.get() + 1);
+    }
+
+    /**
+     * 熔断中的从库退避到期时，只有一个调用方能抢到探测权
+     */
+    boolean tryProbe(long now) {
+        if (state.get() == State.CLOSED) {
+            return false;
+        }
+        long at = retryAt.get();
+        // 探测请求如果没有真正取连接（例如只用于日志），超时后允许重新探测
+        if (now - at >= 0 && retryAt.compareAndSet(at, now + policy.getProbeTimeoutNanos())) {
+            pendingProbe.set(probeTickets.incrementAndGet());
+            state.set(State.HALF_OPEN);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return 本次租用领到的探测票据，不是探测请求时为0
+     */
+    long onAcquire() {
+        inFlight.incrementAndGet();
+        requests.increment();
+        long ticket = pendingProbe.get();
+        if (ticket != 0 && state.get() == State.HALF_OPEN && pendingProbe.compareAndSet(ticket, 0)) {
+            activeProbe = ticket;
+            return ticket;
+        }
+        return 0;
+    }
+
+    /**
+     * @param probeTicket {@link #onAcquire} 返回的票据
+     */
+    void onRelease(long probeTicket, long latencyNanos, boolean failed, long now) {
+        inFlight.decrementAndGet();
+        update(ewmaLatencyNanos, latencyNanos, policy.getLatencyAlpha(), true);
+        lastSampleAt = now;
+        boolean probe = probeTicket != 0 && probeTicket == activeProbe;
+        if (failed) {
+            onFailure(probe, now);
+        } else {
+            onSuccess(probe);
+        }
+    }
+
+    private void onSuccess(boolean probe) {
+        consecutiveFailures.set(0);
+        update(ewmaErrorRate, 0, policy.getErrorAlpha(), false);
+        // 只有探测请求成功才恢复，摘除前已在途的请求返回成功不算数
+        if (probe && state.compareAndSet(State.HALF_OPEN, State.CLOSED)) {
+            ejectionStreak.set(0);
+            ewmaErrorRate.set(Double.doubleToRawLongBits(0));
+        }
+    }
+
+    private void onFailure(boolean probe, long now) {
+        errors.increment();
+        int failures = consecutiveFailures.incrementAndGet();
+        double errorRate = update(ewmaErrorRate, 1, policy.getErrorAlpha(), false);
+
+        State current = state.get();
+        if (current == State.HALF_OPEN) {
+            if (probe) {
+                eject(current, now);
+            }
+        } else if (current == State.CLOSED
+                && (failures >= policy.getMaxConsecutiveFailures()
+                || (errorRate >= policy.getMaxErrorRate() && requests.sum() >= policy.getMinRequests()))) {
+            eject(current, now);
+        }
+    }
+
+    private void eject(State expected, long now) {
+        if (!state.compareAndSet(expected, State.OPEN)) {
+            return;
+        }
+        int streak = Math.min(ejectionStreak.getAndIncrement(), policy.getMaxBackoffShift());
+        long backoff = Math.min(policy.getBaseEjectionNanos() << streak, policy.getMaxEjectionNanos());
+        retryAt.set(now + backoff);
+        ejections.increment();
+    }
+
+    void reset() {
+        ewmaLatencyNanos.set(Double.doubleToRawLongBits(0));
+        ewmaErrorRate.set(Double.doubleToRawLongBits(0));
+        consecutiveFailures.set(0);
+        ejectionStreak.set(0);
+        pendingProbe.set(0);
+        activeProbe = 0;
+        state.set(State.CLOSED);
+    }
+
+    /**
+     * @param seed 当前值为0（尚无样本）时直接取样本值，避免新从库的延迟从0缓慢爬升
+     */
+    private static double update(AtomicLong bits, double sample, double alpha, boolean seed) {
+        while (true) {
+            long current = bits.get();
+            double value = Double.longBitsToDouble(current);
+            double next = seed && value == 0 ? sample : value + alpha * (sample - value);
+            if (bits.compareAndSet(current, Double.doubleToRawLongBits(next))) {
+                return next;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[%s, ewma=%.2fms, inFlight=%d, errorRate=%.3f]",
+                name, state.get(), getEwmaLatencyNanos() / 1_000_000, inFlight.get(), getErrorRate());
+    }
+}
@@ -0,0 +1,298 @@
+package com.boonya.game.datasource;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * 运行时增删从库
+ * <ul>
+ *     <li>注册：创建Hikari连接池并预热到minimumIdle个已校验连接，再替换路由表、加入健康路由</li>
+ *     <li>同名从库配置变化时先建好新池再整体替换路由目标，健康状态随之换成新的（旧池的熔断与统计不带到新池），旧池排空后关闭</li>
+ *     <li>移除：先退出健康路由不再被选中，再从路由表删除，等在途连接归还（最长drain-timeout）后关闭连接池</li>
+ *     <li>只关闭本类创建的连接池；启动时由Spring创建的从库被移除或替换时只退出路由，连接池留给容器关闭</li>
+ *     <li>URL必须通过 {@link ReplicaUrlPolicy} 白名单，不接受指定驱动类</li>
+ * </ul>
+ * 路由表是不可变Map的整体替换，路由路径不加锁，见 {@link DynamicDataSourceConfig.DynamicRoutingDataSource}。
+ */
+@Component
+public class ReplicaRegistry implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaRegistry.class);
+
+    private static final long DRAIN_POLL_MILLIS = 100;
+
+    private final DynamicDataSourceConfig.DynamicRoutingDataSource routingDataSource;
+    private final Duration warmupTimeout;
+    private final Duration drainTimeout;
+    private final ReplicaUrlPolicy urlPolicy;
+    private final BiFunction<ReplicaDefinition, Duration, HikariDataSource> poolFactory;
+
+    /**
+     * 由本类创建的连接池，启动时配置的slave1/slave2由Spring管理，不在其中
+     */
+    private final Map<String, ManagedReplica> managed = new ConcurrentHashMap<>();
+
+    /**
+     * 正在排空的连接池，关闭应用时直接关闭
+     */
+    private final Set<HikariDataSource> draining = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService drainer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "replica-drain");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public ReplicaRegistry(@Qualifier("dynamicDataSource") DataSource dynamicDataSource,
+                           @Value("${datasource.replicas.warmup-timeout:10s}") Duration warmupTimeout,
+                           @Value("${datasource.replicas.drain-timeout:30s}") Duration drainTimeout,
+                           @Value("${datasource.replicas.allowed-schemes:mysql}") List<String> allowedSchemes,
+                           @Value("${datasource.replicas.allowed-hosts:}") List<String> allowedHosts) {
+        this(dynamicDataSource, warmupTimeout, drainTimeout, allowedSchemes, allowedHosts, ReplicaRegistry::createPool);
+    }
+
+    /**
+     * @param poolFactory 按从库配置创建连接池（测试用来把白名单内的URL映射到内存库）
+     */
+    ReplicaRegistry(DataSource dynamicDataSource, Duration warmupTimeout, Duration drainTimeout,
+                    List<String> allowedSchemes, List<String> allowedHosts,
+                    BiFunction<ReplicaDefinition, Duration, HikariDataSource> poolFactory) {
+        this.routingDataSource = (DynamicDataSourceConfig.DynamicRoutingDataSource) dynamicDataSource;
+        this.warmupTimeout = warmupTimeout;
+        this.drainTimeout = drainTimeout;
+        this.urlPolicy = new ReplicaUrlPolicy(allowedSchemes, allowedHosts);
+        this.poolFactory = poolFactory;
+    }
+
+    /**
+     * 注册或更新从库，配置与当前一致时不做任何事
+     * @throws IllegalArgumentException 名称无效、URL不在白名单内或指定了驱动类
+     * @throws IllegalStateException 连接池无法建立或预热失败，此时路由表保持不变
+     */
+    public synchronized void register(ReplicaDefinition definition) {
+        String name = definition.getName();
+        validateName(name);
+        urlPolicy.validate(definition.getUrl());
+        if (StringUtils.hasText(definition.getDriverClassName())) {
+            throw new IllegalArgumentException("Driver class is resolved from the url and cannot be set: " + name);
+        }
+        ManagedReplica current = managed.get(name);
+        if (current != null && current.definition.equals(definition)) {
+            return;
+        }
+
+        HikariDataSource pool = null;
+        try {
+            // 连接池构造时即建立首个连接，连不上直接失败
+            pool = poolFactory.apply(definition, warmupTimeout);
+            warmUp(pool, Math.min(Math.max(1, definition.getMinimumIdle()), definition.getMaximumPoolSize()));
+        } catch (SQLException | RuntimeException e) {
+            if (pool != null) {
+                pool.close();
+            }
+            throw new IllegalStateException("Failed to warm up replica " + name + ": " + e.getMessage(), e);
+        }
+
+        ReplicaRouter router = DynamicDataSourceHolder.getReplicaRouter();
+        DataSource previous = routingDataSource.putTarget(name, new TrackedDataSource(name, pool, router));
+        if (previous != null) {
+            // 旧池被摘除的熔断状态不能留给新池；旧池的在途连接归还到它们取连接时的健康状态
+            DynamicDataSourceHolder.replaceSlaveDataSource(name);
+        } else {
+            DynamicDataSourceHolder.addSlaveDataSource(name);
+        }
+        managed.put(name, new ManagedReplica(copyOf(definition), pool));
+        if (current != null) {
+            drain(name, current.pool);
+        }
+        logger.info("Replica {} registered ({}), pool size {}-{}", name, previous == null ? "added" : "replaced",
+                definition.getMinimumIdle(), definition.getMaximumPoolSize());
+    }
+
+    /**
+     * 移除从库并排空连接池
+     * @return 从库是否存在
+     */
+    public synchronized boolean remove(String name) {
+        validateName(name);
+        // 先退出路由选择，之后从路由表删除；两步之间被选中的请求回退到主库
+        DynamicDataSourceHolder.removeSlaveDataSource(name);
+        DataSource removed = routingDataSource.removeTarget(name);
+        ManagedReplica replica = managed.remove(name);
+        if (removed == null) {
+            return false;
+        }
+        if (replica == null) {
+            logger.info("Replica {} removed from routing, pool is owned by the container", name);
+            return true;
+        }
+        drain(name, replica.pool);
+        logger.info("Replica {} removed, draining", name);
+        return true;
+    }
+
+    /**
+     * 按期望列表对齐由本类管理的从库：新增、更新、移除（配置刷新时调用）
+     */
+    public synchronized void reconcile(Collection<ReplicaDefinition> desired) {
+        Set<String> names = new HashSet<>();
+        for (ReplicaDefinition definition : desired) {
+            register(definition);
+            names.add(definition.getName());
+        }
+        for (String name : new ArrayList<>(managed.keySet())) {
+            if (!names.contains(name)) {
+                remove(name);
+            }
+        }
+    }
+
+    /**
+     * 当前路由表中的从库名称
+     */
+    public List<String> replicas() {
+        List<String> names = new ArrayList<>();
+        for (Object key : routingDataSource.getResolvedDataSources().keySet()) {
+            if (!DynamicDataSourceHolder.MASTER.equals(key)) {
+                names.add(String.valueOf(key));
+            }
+        }
+        return names;
+    }
+
+    private static void validateName(String name) {
+        if (!StringUtils.hasText(name)
+                || DynamicDataSourceHolder.MASTER.equals(name) || DynamicDataSourceHolder.SLAVE.equals(name)) {
+            throw new IllegalArgumentException("Invalid replica name: " + name);
+        }
+    }
+
+    /**
+     * 按从库配置创建Hikari连接池，构造时即建立首个连接
+     */
+    public static HikariDataSource createPool(ReplicaDefinition definition, Duration connectionTimeout) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("replica-" + definition.getName());
+        config.setJdbcUrl(definition.getUrl());
+        config.setUsername(definition.getUsername());
+        config.setPassword(definition.getPassword());
+        if (StringUtils.hasText(definition.getDriverClassName())) {
+            config.setDriverClassName(definition.getDriverClassName());
+        }
+        config.setMaximumPoolSize(definition.getMaximumPoolSize());
+        config.setMinimumIdle(definition.getMinimumIdle());
+        config.setConnectionTimeout(connectionTimeout.toMillis());
+        return new HikariDataSource(config);
+    }
+
+    /**
+     * 同时借出connections个连接并校验，迫使连接池建满，避免刚接入路由的从库承担建连延迟
+     */
+    private void warmUp(HikariDataSource pool, int connections) throws SQLException {
+        List<Connection> borrowed = new ArrayList<>(connections);
+        try {
+            for (int i = 0; i < connections; i++) {
+                Connection connection = pool.getConnection();
+                borrowed.add(connection);
+                if (!connection.isValid((int) Math.max(1, warmupTimeout.toSeconds()))) {
+                    throw new SQLException("Connection validation failed");
+                }
+            }
+        } finally {
+            for (Connection connection : borrowed) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    logger.debug("Failed to return warm-up connection: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 排空并关闭本类创建的连接池
+     */
+    private void drain(String name, HikariDataSource pool) {
+        long deadline = System.nanoTime() + drainTimeout.toNanos();
+        draining.add(pool);
+        drainer.execute(() -> awaitIdleAndClose(name, pool, deadline));
+    }
+
+    private void awaitIdleAndClose(String name, HikariDataSource pool, long deadline) {
+        HikariPoolMXBean poolBean = pool.getHikariPoolMXBean();
+        int active = 0;
+        if (poolBean != null) {
+            // 空闲连接立即关闭，在用连接归还时关闭
+            poolBean.softEvictConnections();
+            active = poolBean.getActiveConnections();
+        }
+        if (active > 0 && System.nanoTime() - deadline < 0) {
+            drainer.schedule(() -> awaitIdleAndClose(name, pool, deadline), DRAIN_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            return;
+        }
+        if (active > 0) {
+            logger.warn("Replica {} drain timed out with {} active connections, closing", name, active);
+        }
+        pool.close();
+        draining.remove(pool);
+        logger.info("Replica {} pool closed", name);
+    }
+
+    private static ReplicaDefinition copyOf(ReplicaDefinition definition) {
+        ReplicaDefinition copy = new ReplicaDefinition();
+        copy.setName(definition.getName());
+        copy.setUrl(definition.getUrl());
+        copy.setUsername(definition.getUsername());
+        copy.setPassword(definition.getPassword());
+        copy.setDriverClassName(definition.getDriverClassName());
+        copy.setMaximumPoolSize(definition.getMaximumPoolSize());
+        copy.setMinimumIdle(definition.getMinimumIdle());
+        return copy;
+    }
+
+    @Override
+    public void destroy() {
+        drainer.shutdownNow();
+        managed.values().forEach(replica -> replica.pool.close());
+        managed.clear();
+        draining.forEach(HikariDataSource::close);
+        draining.clear();
+    }
+
+    private static final class ManagedReplica {
+
+        private final ReplicaDefinition definition;
+        private final HikariDataSource pool;
+
+        ManagedReplica(ReplicaDefinition definition, HikariDataSource pool) {
+            this.definition = definition;
+            this.pool = pool;
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.boonya.game.datasource;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * 从库路由引擎：按健康状态和负载选择从库
+ * <ul>
+ *     <li>双随机选择（power of two choices）：随机取两个可用从库，选代价（EWMA延迟 × 在途数）较低的一个</li>
+ *     <li>熔断：连续失败或错误率过高的从库被摘除，退避到期后放行单个探测请求</li>
+ *     <li>所有从库都不可用时返回null，由调用方回退到主库</li>
+ * </ul>
+ * 从库列表为写时复制数组，路由路径无锁。延迟与错误由 {@link TrackedDataSource} 在连接归还时回报。
+ */
+public class ReplicaRouter implements MeterBinder {
+
+    private static final ReplicaHealth[] EMPTY = new ReplicaHealth[0];
+
+    private final Policy policy;
+    private final LongSupplier nanoClock;
+    private final Map<String, ReplicaHealth> replicasByName = new ConcurrentHashMap<>();
+    private final Map<String, List<Meter>> metersByName = new ConcurrentHashMap<>();
+    private volatile ReplicaHealth[] replicas = EMPTY;
+    private volatile MeterRegistry registry;
+
+    public ReplicaRouter() {
+        this(new Policy(), System::nanoTime);
+    }
+
+    public ReplicaRouter(Policy policy, LongSupplier nanoClock) {
+        this.policy = policy;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * 路由前的额外筛选，例如复制延迟
+     */
+    public interface Filter {
+
+        boolean accept(ReplicaHealth replica);
+
+        /**
+         * 每次路由决策后回调，replica为null表示没有合格从库
+         */
+        default void onRouted(String replica) {
+        }
+    }
+
+    /**
+     * 选择一个从库，全部不可用时返回null
+     */
+    public String choose() {
+        return choose(null);
+    }
+
+    /**
+     * 在满足filter的从库中选择，filter为null时不筛选
+     */
+    public String choose(Filter filter) {
+        ReplicaHealth[] current = replicas;
+        int size = current.length;
+        if (size == 0) {
+            return null;
+        }
+
+        // 退避到期的从库优先放行一个探测请求
+        long now = nanoClock.getAsLong();
+        for (ReplicaHealth replica : current) {
+            if (accepts(filter, replica) && replica.tryProbe(now)) {
+                return replica.getName();
+            }
+        }
+
+        if (size == 1) {
+            return eligible(filter, current[0]) ? current[0].getName() : null;
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int a = random.nextInt(size);
+        int b = random.nextInt(size - 1);
+        if (b >= a) {
+            b++;
+        }
+        ReplicaHealth first = current[a];
+        ReplicaHealth second = current[b];
+        boolean firstAvailable = eligible(filter, first);
+        boolean secondAvailable = eligible(filter, second);
+        if (firstAvailable && secondAvailable) {
+            return (first.cost(now) <= second.cost(now) ? first : second).getName();
+        }
+        if (firstAvailable) {
+            return first.getName();
+        }
+        if (secondAvailable) {
+            return second.getName();
+        }
+
+        // 抽中的两个都被摘除，退化为扫描剩余从库
+        ReplicaHealth best = null;
+        for (ReplicaHealth replica : current) {
+            if (eligible(filter, replica) && (best == null || replica.cost(now) < best.cost(now))) {
+                best = replica;
+            }
+        }
+        return best == null ? null : best.getName();
+    }
+
+    private static boolean accepts(Filter filter, ReplicaHealth replica) {
+        return filter == null || filter.accept(replica);
+    }
+
+    private static boolean eligible(Filter filter, ReplicaHealth replica) {
+        return replica.isAvailable() && accepts(filter, replica);
+    }
+
+    /**
+     * 取连接时调用
+     * @return 探测票据，归还时原样传回 {@link #onRelease}；不是探测请求时为0
+     */
+    public long onAcquire(String name) {
+        ReplicaHealth replica = replicasByName.get(name);
+        return replica != null ? onAcquire(replica) : 0;
+    }
+
+    /**
+     * 按取连接时的健康状态计数，从库被替换后旧连接归还时仍回报给它取连接时的健康状态
+     */
+    public long onAcquire(ReplicaHealth replica) {
+        return replica.onAcquire();
+    }
+
+    /**
+     * 连接归还时回报本次租用时长与是否发生从库故障，只有探测请求的结果能让熔断中的从库恢复或再次摘除
+     */
+    public void onRelease(String name, long probeTicket, long latencyNanos, boolean failed) {
+        ReplicaHealth replica = replicasByName.get(name);
+        if (replica != null) {
+            onRelease(replica, probeTicket, latencyNanos, failed);
+        }
+    }
+
+    public void onRelease(ReplicaHealth replica, long probeTicket, long latencyNanos, boolean failed) {
+        replica.onRelease(probeTicket, latencyNanos, failed, nanoClock.getAsLong());
+    }
+
+    public synchronized void addReplica(String name) {
+        if (replicasByName.containsKey(name)) {
+            return;
+        }
+        ReplicaHealth replica = new ReplicaHealth(name, policy);
+        replicasByName.put(name, replica);
+        ReplicaHealth[] next = Arrays.copyOf(replicas, replicas.length + 1);
+        next[next.length - 1] = replica;
+        replicas = next;
+        MeterRegistry current = registry;
+        if (current != null) {
+            register(current, replica);
+        }
+    }
+
+    /**
+     * 以全新的健康状态替换同名从库（连接池被替换时调用），路由数组整体替换，替换期间该从库不会消失。
+     * 旧连接池的熔断状态与统计不再适用；旧健康状态下的在途连接仍归还到旧的健康状态
+     */
+    public synchronized void replaceReplica(String name) {
+        ReplicaHealth previous = replicasByName.get(name);
+        if (previous == null) {
+            addReplica(name);
+            return;
+        }
+        ReplicaHealth replica = new ReplicaHealth(name, policy);
+        replicasByName.put(name, replica);
+        ReplicaHealth[] next = replicas.clone();
+        for (int i = 0; i < next.length; i++) {
+            if (next[i] == previous) {
+                next[i] = replica;
+            }
+        }
+        replicas = next;
+        unregister(name);
+        MeterRegistry current = registry;
+        if (current != null) {
+            register(current, replica);
+        }
+    }
+
+    public synchronized void removeReplica(String name) {
+        ReplicaHealth removed = replicasByName.remove(name);
+        if (removed == null) {
+            return;
+        }
+        replicas = Arrays.stream(replicas).filter(r -> r != removed).toArray(ReplicaHealth[]::new);
+        unregister(name);
+    }
+
+    private void unregister(String name) {
+        List<Meter> meters = metersByName.remove(name);
+        MeterRegistry current = registry;
+        if (meters != null && current != null) {
+            meters.forEach(current::remove);
+        }
+    }
+
+    public boolean contains(String name) {
+        return replicasByName.containsKey(name);
+    }
+
+    public int size() {
+        return replicas.length;
+    }
+
+    public List<String> names() {
+        List<String> names = new ArrayList<>(replicas.length);
+        for (ReplicaHealth replica : replicas) {
+            names.add(replica.getName());
+        }
+        return names;
+    }
+
+    public List<ReplicaHealth> snapshot() {
+        return Collections.unmodifiableList(Arrays.asList(replicas));
+    }
+
+    public ReplicaHealth health(String name) {
+        return replicasByName.get(name);
+    }
+
+    /**
+     * 清空健康统计（主要用于测试）
+     */
+    public void reset() {
+        for (ReplicaHealth replica : replicas) {
+            replica.reset();
+        }
+    }
+
+    @Override
+    public synchronized void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        for (ReplicaHealth replica : replicas) {
+            register(registry, replica);
+        }
+    }
+
+    private void register(MeterRegistry registry, ReplicaHealth replica) {
+        String name = replica.getName();
+        List<Meter> meters = new ArrayList<>();
+        meters.add(Gauge.builder("datasource.replica.latency.ewma", replica, r -> r.getEwmaLatencyNanos() / 1_000_000)
+                .description("EWMA of connection lease time")
+                .baseUnit("milliseconds")
+                .tag("replica", name)
+                .register(registry));
+        meters.add(Gauge.builder("datasource.replica.inflight", replica, ReplicaHealth::getInFlight)
+                .description("Connections currently leased from the replica")
+                .tag("replica", name)
+                .register(registry));
+        meters.add(Gauge.builder("datasource.replica.error.rate", replica, ReplicaHealth::getErrorRate)
+                .description("EWMA of replica fault rate")
+                .tag("replica", name)
+                .register(registry));
+        meters.add(Gauge.builder("datasource.replica.available", replica, r -> r.isAvailable() ? 1 : 0)
+                .description("1 when the replica takes reads, 0 when ejected or probing")
+                .tag("replica", name)
+                .register(registry));
+        meters.add(FunctionCounter.builder("datasource.replica.requests", replica, ReplicaHealth::getRequests)
+                .tag("replica", name)
+                .register(registry));
+        meters.add(FunctionCounter.builder("datasource.replica.errors", replica, ReplicaHealth::getErrors)
+                .tag("replica", name)
+                .register(registry));
+        meters.add(FunctionCounter.builder("datasource.replica.ejections", replica, ReplicaHealth::getEjections)
+                .tag("replica", name)
+                .register(registry));
+        metersByName.put(name, meters);
+    }
+
+    /**
+     * 熔断与EWMA参数
+     */
+    @Data
+    public static class Policy {
+
+        private double latencyAlpha = 0.2;
+
+        private double errorAlpha = 0.1;
+
+        /**
+         * 延迟EWMA的空闲衰减时间常数
+         */
+        private long latencyDecayNanos = TimeUnit.SECONDS.toNanos(10);
+
+        /**
+         * 连续失败达到该次数立即摘除
+         */
+        private int maxConsecutiveFailures = 5;
+
+        /**
+         * EWMA错误率达到该值且请求数不少于minRequests时摘除
+         */
+        private double maxErrorRate = 0.5;
+
+        private long minRequests = 20;
+
+        /**
+         * 首次摘除的退避时长，之后每次翻倍，最多左移maxBackoffShift位且不超过maxEjectionNanos
+         */
+        private long baseEjectionNanos = TimeUnit.SECONDS.toNanos(5);
+
+        private long maxEjectionNanos = TimeUnit.MINUTES.toNanos(2);
+
+        private int maxBackoffShift = 5;
+
+        /**
+         * 探测请求未回报结果时，超过该时长允许重新探测
+         */
+        private long probeTimeoutNanos = TimeUnit.SECONDS.toNanos(10);
+    }
+}
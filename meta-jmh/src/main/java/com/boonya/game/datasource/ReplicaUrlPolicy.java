@@ -0,0 +1,97 @@
+package com.boonya.game.datasource;
+
+import org.springframework.util.StringUtils;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 运行时注册从库的JDBC URL白名单
+ * <ul>
+ *     <li>只接受 jdbc:&lt;scheme&gt;://host[:port]/database[?k=v&amp;...] 形式，scheme与host必须在白名单内</li>
+ *     <li>host白名单项以 *. 开头时匹配该域名的所有子域名；白名单为空时拒绝所有注册</li>
+ *     <li>连接参数只允许 {@link #ALLOWED_PARAMETERS} 中的键，值只能是字母数字与少量符号，
+ *     避免通过 INIT、autoDeserialize、allowLoadLocalInfile 一类参数在应用内执行代码或读文件</li>
+ * </ul>
+ * 驱动类由URL决定，不接受调用方指定。
+ */
+public class ReplicaUrlPolicy {
+
+    private static final Pattern URL = Pattern.compile(
+            "jdbc:([a-z0-9]+)://([A-Za-z0-9.-]+)(?::(\\d{1,5}))?/([A-Za-z0-9_]+)(?:\\?(.*))?");
+
+    private static final Pattern PARAMETER_VALUE = Pattern.compile("[A-Za-z0-9_./+-]*");
+
+    static final Set<String> ALLOWED_PARAMETERS = Set.of(
+            "useUnicode", "characterEncoding", "serverTimezone", "useSSL", "sslMode",
+            "connectTimeout", "socketTimeout", "rewriteBatchedStatements");
+
+    private final Set<String> schemes = new LinkedHashSet<>();
+    private final Set<String> hosts = new LinkedHashSet<>();
+
+    public ReplicaUrlPolicy(Collection<String> schemes, Collection<String> hosts) {
+        for (String scheme : schemes) {
+            if (StringUtils.hasText(scheme)) {
+                this.schemes.add(scheme.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        for (String host : hosts) {
+            if (StringUtils.hasText(host)) {
+                this.hosts.add(host.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException URL不符合白名单
+     */
+    public void validate(String url) {
+        if (url == null) {
+            throw new IllegalArgumentException("Replica url is required");
+        }
+        Matcher matcher = URL.matcher(url);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Replica url must be jdbc:<scheme>://host[:port]/database");
+        }
+        String scheme = matcher.group(1);
+        if (!schemes.contains(scheme)) {
+            throw new IllegalArgumentException("JDBC scheme not allowed: " + scheme);
+        }
+        String host = matcher.group(2).toLowerCase(Locale.ROOT);
+        if (!hostAllowed(host)) {
+            throw new IllegalArgumentException("Replica host not allowed: " + host);
+        }
+        String port = matcher.group(3);
+        if (port != null && (Integer.parseInt(port) == 0 || Integer.parseInt(port) > 65535)) {
+            throw new IllegalArgumentException("Invalid port: " + port);
+        }
+        String query = matcher.group(5);
+        if (query != null && !query.isEmpty()) {
+            for (String pair : query.split("&")) {
+                int eq = pair.indexOf('=');
+                String key = eq < 0 ? pair : pair.substring(0, eq);
+                String value = eq < 0 ? "" : pair.substring(eq + 1);
+                if (!ALLOWED_PARAMETERS.contains(key) || !PARAMETER_VALUE.matcher(value).matches()) {
+                    throw new IllegalArgumentException("JDBC url parameter not allowed: " + key);
+                }
+            }
+        }
+    }
+
+    private boolean hostAllowed(String host) {
+        for (String allowed : hosts) {
+            if (allowed.startsWith("*.")) {
+                if (host.endsWith(allowed.substring(1))) {
+                    return true;
+                }
+            } else if (allowed.equals(host)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,373 @@
+package com.boonya.game.datasource;
+
+import com.boonya.game.datasource.shard.ShardGroup;
+import com.boonya.game.datasource.shard.ShardingDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Schedulers;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 复制延迟跟踪：主库定期写心跳行（递增序号 + 时间戳），轮询各从库读到的心跳
+ * <ul>
+ *     <li>每个应用实例只写自己的心跳行（id = instance-id），多实例之间互不覆盖；
+ *     序号取 max(当前毫秒, 上一个序号 + 1)，单实例内严格递增，重启和换实例后位点仍可比较</li>
+ *     <li>从库已应用位点 = 本实例心跳行的序号；延迟 = 当前时间 - 该行的时间戳，查询时计算，轮询卡住时延迟随之增长</li>
+ *     <li>各从库在独立线程上轮询，同一从库上一次轮询未结束时跳过，慢从库不拖慢其他从库</li>
+ *     <li>延迟超过 max-lag 的从库不参与读路由</li>
+ *     <li>当前线程写过主库时（见 {@link WritePositionHolder}），只路由到已追上该位点的从库</li>
+ *     <li>没有合格从库时读主库，并计入 datasource.read.master.fallback</li>
+ *     <li>开启分片时同样给每个分片主库写心跳、轮询分片从库，分片读路由使用同一个筛选（见 {@link ShardGroup#select}）；
+ *     从库名称在主数据源与各分片之间必须唯一</li>
+ * </ul>
+ * 心跳表在 MySQL 与 H2 上通用，不依赖 GTID。instance-id 未配置时每次启动随机生成，
+ * 启动时删除一天以上没有更新的其他实例的心跳行。位点带到另一个实例上使用时，精度受两个实例的时钟偏差影响。
+ */
+@Component
+@ConditionalOnProperty(prefix = "datasource.replication", name = "lag-aware", havingValue = "true", matchIfMissing = true)
+public class ReplicationLagMonitor implements ReplicaRouter.Filter, InitializingBean, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicationLagMonitor.class);
+
+    static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS replication_heartbeat "
+            + "(id INT PRIMARY KEY, seq BIGINT NOT NULL, ts BIGINT NOT NULL)";
+    static final String SELECT_HEARTBEAT = "SELECT seq, ts FROM replication_heartbeat WHERE id = ?";
+    static final String UPDATE_HEARTBEAT = "UPDATE replication_heartbeat SET seq = ?, ts = ? WHERE id = ?";
+    static final String INSERT_HEARTBEAT = "INSERT INTO replication_heartbeat (id, seq, ts) VALUES (?, ?, ?)";
+    static final String DELETE_STALE = "DELETE FROM replication_heartbeat WHERE ts < ? AND id <> ?";
+
+    private static final long STALE_ROW_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private static final String SCHEDULE_HOOK = WritePositionHolder.class.getName();
+
+    private final AbstractRoutingDataSource routingDataSource;
+    private final MeterRegistry meterRegistry;
+    private final Duration heartbeatInterval;
+    private final long maxLagMillis;
+    private final int instanceId;
+
+    /**
+     * 最近一次心跳取得的序号
+     */
+    private final AtomicLong lastSeq = new AtomicLong();
+    private final Map<String, ReplicaLag> lags = new ConcurrentHashMap<>();
+    private final Counter replicaReads;
+    private final Counter masterFallbacks;
+    private ScheduledExecutorService scheduler;
+    private ExecutorService pollers;
+    private volatile Collection<ShardGroup> shardGroups = List.of();
+
+    /**
+     * 心跳写入失败的主库（主数据源为master，分片为分片名），只在开始失败时告警一次
+     */
+    private final Set<String> failingHeartbeats = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param instanceId 心跳行id，各实例必须不同；小于等于0时随机生成（避开旧版本共用的1）
+     */
+    public ReplicationLagMonitor(@Qualifier("dynamicDataSource") DataSource dynamicDataSource,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${datasource.replication.heartbeat-interval:200ms}") Duration heartbeatInterval,
+                                 @Value("${datasource.replication.max-lag:5s}") Duration maxLag,
+                                 @Value("${datasource.replication.instance-id:0}") int instanceId) {
+        this.routingDataSource = (AbstractRoutingDataSource) dynamicDataSource;
+        this.meterRegistry = meterRegistry;
+        this.heartbeatInterval = heartbeatInterval;
+        this.maxLagMillis = maxLag.toMillis();
+        this.instanceId = instanceId > 0 ? instanceId : ThreadLocalRandom.current().nextInt(2, Integer.MAX_VALUE);
+        this.replicaReads = Counter.builder("datasource.read.replica")
+                .description("Reads routed to a replica")
+                .register(meterRegistry);
+        this.masterFallbacks = Counter.builder("datasource.read.master.fallback")
+                .description("Reads sent to master because no replica was caught up")
+                .register(meterRegistry);
+        Gauge.builder("datasource.master.position", lastSeq, AtomicLong::get)
+                .description("Last heartbeat sequence written to master")
+                .register(meterRegistry);
+    }
+
+    /**
+     * datasource.sharding.enabled=true 时注入，分片的主从也纳入延迟跟踪
+     */
+    @Autowired(required = false)
+    public void setShardingDataSource(ShardingDataSource shardingDataSource) {
+        this.shardGroups = List.copyOf(shardingDataSource.getGroups().values());
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        prepare(DynamicDataSourceHolder.MASTER, master());
+        for (ShardGroup group : shardGroups) {
+            prepare(group.getName(), group.getMaster());
+        }
+
+        AtomicInteger pollerSequence = new AtomicInteger();
+        pollers = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "replication-poll-" + pollerSequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        tick();
+        WritePositionHolder.setPositionSource(this::nextPosition);
+        // boundedElastic等调度器线程上的任务结束后清除位点，避免留给同一线程上的其他请求
+        Schedulers.onScheduleHook(SCHEDULE_HOOK, WritePositionHolder::clearingAfter);
+        DynamicDataSourceHolder.setReplicaFilter(this);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "replication-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = heartbeatInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::tick, interval, interval, TimeUnit.MILLISECONDS);
+        logger.info("Replication lag monitor started as instance {}, heartbeat every {}, max lag {} ms, {} shards",
+                instanceId, heartbeatInterval, maxLagMillis, shardGroups.size());
+    }
+
+    /**
+     * 建心跳表、读取本实例已有的序号、清理一天以上没有更新的其他实例的心跳行
+     * @param name 主数据源为master，分片为分片名
+     */
+    private void prepare(String name, DataSource master) {
+        try (Connection connection = master.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(CREATE_TABLE);
+            }
+            // 配置了固定instance-id时，重启后不低于已有序号，时钟回拨时旧从库的高序号也不会被误判为已追上
+            try (PreparedStatement select = connection.prepareStatement(SELECT_HEARTBEAT)) {
+                select.setInt(1, instanceId);
+                try (ResultSet rs = select.executeQuery()) {
+                    if (rs.next()) {
+                        lastSeq.accumulateAndGet(rs.getLong(1), Math::max);
+                    }
+                }
+            }
+            try (PreparedStatement delete = connection.prepareStatement(DELETE_STALE)) {
+                delete.setLong(1, System.currentTimeMillis() - STALE_ROW_MILLIS);
+                delete.setInt(2, instanceId);
+                delete.executeUpdate();
+            }
+        } catch (SQLException e) {
+            logger.warn("Replication heartbeat table unavailable on {}: {}", name, e.getMessage());
+        }
+    }
+
+    /**
+     * 写一次主库（及各分片主库）心跳，再并行轮询所有从库
+     */
+    void tick() {
+        // 先取序号再写：在写操作取位点之前取到的序号都小于该位点，之后取到的心跳在写操作完成之后才提交
+        long seq = lastSeq.updateAndGet(last -> Math.max(System.currentTimeMillis(), last + 1));
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        writeHeartbeat(DynamicDataSourceHolder.MASTER, master(), seq);
+        for (Map.Entry<Object, DataSource> entry : routingDataSource.getResolvedDataSources().entrySet()) {
+            String name = String.valueOf(entry.getKey());
+            if (!DynamicDataSourceHolder.MASTER.equals(name)) {
+                replicas.put(name, unwrap(entry.getValue()));
+            }
+        }
+        for (ShardGroup group : shardGroups) {
+            writeHeartbeat(group.getName(), group.getMaster(), seq);
+            group.getReplicas().forEach((name, replica) -> replicas.put(name, unwrap(replica)));
+        }
+
+        for (Map.Entry<String, DataSource> entry : replicas.entrySet()) {
+            ReplicaLag lag = lags.computeIfAbsent(entry.getKey(), this::register);
+            // 上一次轮询还没返回时跳过，该从库的延迟随时间增长，超过max-lag后自然被摘除
+            if (lag.polling.compareAndSet(false, true)) {
+                DataSource replica = entry.getValue();
+                try {
+                    pollers.execute(() -> {
+                        try {
+                            pollReplica(lag, replica);
+                        } finally {
+                            lag.polling.set(false);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // 已关闭
+                    lag.polling.set(false);
+                }
+            }
+        }
+        lags.entrySet().removeIf(entry -> {
+            if (replicas.containsKey(entry.getKey())) {
+                return false;
+            }
+            entry.getValue().meters.forEach(meterRegistry::remove);
+            return true;
+        });
+    }
+
+    private void writeHeartbeat(String name, DataSource master, long seq) {
+        try (Connection connection = master.getConnection();
+             PreparedStatement update = connection.prepareStatement(UPDATE_HEARTBEAT)) {
+            update.setLong(1, seq);
+            update.setLong(2, System.currentTimeMillis());
+            update.setInt(3, instanceId);
+            if (update.executeUpdate() == 0) {
+                try (PreparedStatement insert = connection.prepareStatement(INSERT_HEARTBEAT)) {
+                    insert.setInt(1, instanceId);
+                    insert.setLong(2, seq);
+                    insert.setLong(3, System.currentTimeMillis());
+                    insert.executeUpdate();
+                }
+            }
+            failingHeartbeats.remove(name);
+        } catch (SQLException e) {
+            if (failingHeartbeats.add(name)) {
+                logger.warn("Failed to write replication heartbeat on {}: {}", name, e.getMessage());
+            }
+        }
+    }
+
+    private void pollReplica(ReplicaLag lag, DataSource replica) {
+        try (Connection connection = replica.getConnection();
+             PreparedStatement select = connection.prepareStatement(SELECT_HEARTBEAT)) {
+            select.setInt(1, instanceId);
+            try (ResultSet rs = select.executeQuery()) {
+                if (rs.next()) {
+                    lag.appliedSeq = rs.getLong(1);
+                    lag.heartbeatMillis = rs.getLong(2);
+                } else {
+                    lag.heartbeatMillis = 0;
+                }
+            }
+        } catch (SQLException e) {
+            // 读不到心跳视为延迟未知，不参与路由
+            lag.heartbeatMillis = 0;
+        }
+    }
+
+    private ReplicaLag register(String name) {
+        ReplicaLag lag = new ReplicaLag();
+        lag.meters.add(Gauge.builder("datasource.replica.lag", lag, l -> l.heartbeatMillis == 0 ? Double.NaN : l.lagMillis())
+                .description("Replication lag measured by heartbeat")
+                .baseUnit("milliseconds")
+                .tag("replica", name)
+                .register(meterRegistry));
+        lag.meters.add(Gauge.builder("datasource.replica.position", lag, l -> l.appliedSeq)
+                .description("Last heartbeat sequence applied on the replica")
+                .tag("replica", name)
+                .register(meterRegistry));
+        return lag;
+    }
+
+    /**
+     * 写操作完成后的读己之写位点：大于此前取得的所有心跳序号；时钟不回拨时，此后取得的心跳序号都不小于它
+     */
+    long nextPosition() {
+        return Math.max(System.currentTimeMillis(), lastSeq.get() + 1);
+    }
+
+    /**
+     * 从库延迟在阈值内，且已应用当前线程最后一次写入的位点
+     */
+    @Override
+    public boolean accept(ReplicaHealth replica) {
+        ReplicaLag lag = lags.get(replica.getName());
+        if (lag == null || lag.lagMillis() > maxLagMillis) {
+            return false;
+        }
+        return lag.appliedSeq >= WritePositionHolder.getPosition();
+    }
+
+    @Override
+    public void onRouted(String replica) {
+        if (replica == null) {
+            masterFallbacks.increment();
+        } else {
+            replicaReads.increment();
+        }
+    }
+
+    public long getLagMillis(String replica) {
+        ReplicaLag lag = lags.get(replica);
+        return lag == null ? Long.MAX_VALUE : lag.lagMillis();
+    }
+
+    public long getAppliedPosition(String replica) {
+        ReplicaLag lag = lags.get(replica);
+        return lag == null ? 0 : lag.appliedSeq;
+    }
+
+    private DataSource master() {
+        return unwrap(routingDataSource.getResolvedDataSources().get(DynamicDataSourceHolder.MASTER));
+    }
+
+    /**
+     * 心跳不经过健康统计，避免探测流量影响路由代价
+     */
+    private static DataSource unwrap(DataSource dataSource) {
+        return dataSource instanceof TrackedDataSource
+                ? ((TrackedDataSource) dataSource).getTargetDataSource() : dataSource;
+    }
+
+    @Override
+    public void destroy() {
+        DynamicDataSourceHolder.setReplicaFilter(null);
+        WritePositionHolder.setPositionSource(null);
+        Schedulers.resetOnScheduleHook(SCHEDULE_HOOK);
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (pollers != null) {
+            pollers.shutdownNow();
+        }
+    }
+
+    int getInstanceId() {
+        return instanceId;
+    }
+
+    private static class ReplicaLag {
+        private final List<Meter> meters = new ArrayList<>();
+        private final AtomicBoolean polling = new AtomicBoolean();
+        private volatile long appliedSeq;
+
+        /**
+         * 从库上读到的心跳时间戳，0表示未知
+         */
+        private volatile long heartbeatMillis;
+
+        long lagMillis() {
+            long heartbeat = heartbeatMillis;
+            return heartbeat == 0 ? Long.MAX_VALUE : Math.max(0, System.currentTimeMillis() - heartbeat);
+        }
+    }
+}
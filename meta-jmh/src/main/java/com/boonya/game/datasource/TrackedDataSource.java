@@ -0,0 +1,150 @@
+package com.boonya.game.datasource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.sql.Statement;
+
+/**
+ * 从库数据源包装：统计连接租用时长与从库故障，回报给 {@link ReplicaRouter}
+ * <p>
+ * 连接和由它创建的Statement都被代理，执行中抛出的连接类/瞬时类SQLException记为从库故障；
+ * SQL语法、约束冲突等业务错误与从库健康无关，不计入。
+ */
+public class TrackedDataSource extends DelegatingDataSource {
+
+    private final String name;
+    private final ReplicaRouter router;
+
+    public TrackedDataSource(String name, DataSource target, ReplicaRouter router) {
+        super(target);
+        this.name = name;
+        this.router = router;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Lease lease = new Lease();
+        try {
+            return lease.wrap(obtainTargetDataSource().getConnection());
+        } catch (SQLException | RuntimeException e) {
+            lease.failed = true;
+            lease.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        Lease lease = new Lease();
+        try {
+            return lease.wrap(obtainTargetDataSource().getConnection(username, password));
+        } catch (SQLException | RuntimeException e) {
+            lease.failed = true;
+            lease.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 连接类错误（SQLState 08xxx）、超时与瞬时错误视为从库故障
+     */
+    static boolean isReplicaFault(Throwable error) {
+        if (!(error instanceof SQLException)) {
+            return false;
+        }
+        SQLException sqlError = (SQLException) error;
+        String sqlState = sqlError.getSQLState();
+        return sqlError instanceof SQLTransientException
+                || sqlError instanceof SQLRecoverableException
+                || sqlError instanceof SQLNonTransientConnectionException
+                || (sqlState != null && sqlState.startsWith("08"));
+    }
+
+    /**
+     * 一次连接租用，从取连接到close只回报一次，回报给取连接时的健康状态（从库被替换或重新注册后不影响新的健康状态）
+     */
+    private final class Lease {
+
+        private final long start = System.nanoTime();
+        private final ReplicaHealth health;
+        private final long probeTicket;
+        private volatile boolean failed;
+        private boolean released;
+
+        Lease() {
+            health = router.health(name);
+            probeTicket = health != null ? router.onAcquire(health) : 0;
+        }
+
+        Connection wrap(Connection connection) {
+            return (Connection) Proxy.newProxyInstance(TrackedDataSource.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new TrackingHandler(connection, this));
+        }
+
+        synchronized void release() {
+            if (!released) {
+                released = true;
+                if (health != null) {
+                    router.onRelease(health, probeTicket, System.nanoTime() - start, failed);
+                }
+            }
+        }
+    }
+
+    private final class TrackingHandler implements InvocationHandler {
+
+        private final Object target;
+        private final Lease lease;
+
+        TrackingHandler(Object target, Lease lease) {
+            this.target = target;
+            this.lease = lease;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            boolean closing = target instanceof Connection && "close".equals(method.getName());
+            try {
+                Object result = method.invoke(target, args);
+                Class<?> type = method.getReturnType();
+                if (result != null && type.isInterface() && Statement.class.isAssignableFrom(type)) {
+                    return Proxy.newProxyInstance(TrackedDataSource.class.getClassLoader(),
+                            new Class<?>[]{type}, new TrackingHandler(result, lease));
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getTargetException();
+                if (isReplicaFault(cause)) {
+                    lease.failed = true;
+                }
+                throw cause;
+            } finally {
+                if (closing) {
+                    lease.release();
+                }
+            }
+        }
+    }
+}
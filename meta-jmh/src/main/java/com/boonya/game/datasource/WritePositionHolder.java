@@ -0,0 +1,91 @@
+package com.boonya.game.datasource;
+
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 读己之写（read-your-writes）：记录当前线程最后一次写主库时的复制位点
+ * <p>
+ * 位点取自 {@link ReplicationLagMonitor} 的心跳序号。写完成后取"下一次心跳的序号"作为位点，
+ * 从库应用到该序号的心跳时必然已经应用了这次写入，此后才允许该线程读这个从库。
+ * <p>
+ * 位点只存在ThreadLocal中，不会自动跟随执行线程切换：响应式链路（publishOn/subscribeOn、boundedElastic）、
+ * {@code @Async} 与自建线程池上的读看不到调用线程的写位点，可能读到旧数据。
+ * 跨线程执行时用 {@link #propagate(Supplier)} 包装任务；跨请求传递时用 {@link #getPosition()} 导出、
+ * {@link #restore(long)} 恢复。池化线程上用完应调用 {@link #clear()}，否则位点会留给后续任务（只会多读主库，不会读到旧数据）。
+ * 开启复制延迟跟踪时，{@link WritePositionWebFilter} 在请求边界、Reactor调度器在每个任务结束后（{@link #clearingAfter}）自动清除。
+ */
+public class WritePositionHolder {
+
+    private static final ThreadLocal<Long> POSITION_HOLDER = new ThreadLocal<>();
+
+    /**
+     * 位点来源，未开启复制延迟跟踪时为null，写操作不记录位点
+     */
+    private static volatile LongSupplier positionSource;
+
+    static void setPositionSource(LongSupplier source) {
+        positionSource = source;
+    }
+
+    /**
+     * 主库写操作完成后调用
+     */
+    public static void markWrite() {
+        LongSupplier source = positionSource;
+        if (source != null) {
+            restore(source.getAsLong());
+        }
+    }
+
+    /**
+     * 当前线程需要从库追上的位点，没有写过时为0
+     * @return 位点
+     */
+    public static long getPosition() {
+        Long position = POSITION_HOLDER.get();
+        return position == null ? 0 : position;
+    }
+
+    /**
+     * 恢复传递过来的位点，只会前进不会后退
+     * @param position 位点
+     */
+    public static void restore(long position) {
+        if (position > getPosition()) {
+            POSITION_HOLDER.set(position);
+        }
+    }
+
+    public static void clear() {
+        POSITION_HOLDER.remove();
+    }
+
+    /**
+     * 包装池化线程上的任务，执行完清除位点，不留给线程上的下一个任务
+     */
+    public static Runnable clearingAfter(Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } finally {
+                clear();
+            }
+        };
+    }
+
+    /**
+     * 捕获当前线程的位点，在执行线程上恢复后执行，执行完清除
+     */
+    public static <T> Supplier<T> propagate(Supplier<T> action) {
+        long position = getPosition();
+        return () -> {
+            restore(position);
+            try {
+                return action.get();
+            } finally {
+                clear();
+            }
+        };
+    }
+}
@@ -0,0 +1,30 @@
+package com.boonya.game.datasource;
+
+import org.springframework.core.Ordered;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * 请求边界清除写位点：{@link WritePositionHolder} 存在ThreadLocal中，Netty线程处理下一个请求时
+ * 不应继承上一个请求的位点（否则无关请求的读一直被固定在主库）
+ * <p>
+ * 请求开始时在处理线程上清除，结束时在完成线程上再清除一次；阻塞处理器在Netty线程上同步执行时两次都生效。
+ * Reactor调度器线程上的任务由 {@link ReplicationLagMonitor} 注册的调度钩子在每个任务结束后清除。
+ */
+public class WritePositionWebFilter implements WebFilter, Ordered {
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        return Mono.defer(() -> {
+            WritePositionHolder.clear();
+            return chain.filter(exchange);
+        }).doFinally(signal -> WritePositionHolder.clear());
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+}
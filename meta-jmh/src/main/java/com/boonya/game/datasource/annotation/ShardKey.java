@@ -0,0 +1,13 @@
+package com.boonya.game.datasource.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * 分片键参数注解，参数为数字、数字集合，或通过value指定的对象属性（如 "id"）
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface ShardKey {
+    String value() default "";
+}
@@ -0,0 +1,12 @@
+package com.boonya.game.datasource.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * 分片方法注解，按 {@link ShardKey} 标记的参数路由到分片；参数为ID集合时按分片拆分并行执行再合并结果
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Sharded {
+}
@@ -1,17 +1,34 @@
 package com.boonya.game.datasource.aop;
 
 import com.boonya.game.datasource.DynamicDataSourceHolder;
+import com.boonya.game.datasource.WritePositionHolder;
+import com.boonya.game.datasource.annotation.ReadOnly;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.annotation.AnnotatedElementUtils;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.lang.reflect.Method;
-
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 读写分离切面
+ * <ul>
+ *     <li>方法的自动路由结果按Method缓存，只在首次调用时解析方法名</li>
+ *     <li>外层已经选定数据源时不再重复切换：主库内的调用一律留在主库，从库内的读操作留在从库，
+ *     只有从库内的写操作才切回主库</li>
+ *     <li>只有真正的写（@Master、非只读的@Transactional）完成后记录写位点；按方法名默认走主库的调用不记录，
+ *     否则任何非读前缀的方法都会把本线程之后的读固定在主库</li>
+ * </ul>
+ */
 @Aspect
 @Component
 @Order(1) // 在事务注解之前执行
@@ -19,6 +36,35 @@ public class DataSourceAspect {
 
     private static final Logger logger = LoggerFactory.getLogger(DataSourceAspect.class);
 
+    private static final String[] READ_PREFIXES = {
+            "get", "find", "query", "select", "list", "count",
+            "exists", "search", "read", "load", "fetch"
+    };
+
+    /**
+     * 自动路由
+     */
+    enum Route {
+        /**
+         * 方法名为读操作，使用从库
+         */
+        SLAVE,
+        /**
+         * 默认使用主库，不记录写位点
+         */
+        MASTER,
+        /**
+         * 非只读事务，使用主库并记录写位点
+         */
+        WRITE,
+        /**
+         * 已由@ReadOnly切点处理，不再路由
+         */
+        NONE
+    }
+
+    private final Map<Method, Route> routes = new ConcurrentHashMap<>();
+
     /**
      * 拦截带有@ReadOnly注解的方法，使用从库
      */
@@ -32,7 +78,22 @@ public class DataSourceAspect {
      */
     @Around("@annotation(com.boonya.game.datasource.annotation.Master)")
     public Object aroundMaster(ProceedingJoinPoint point) throws Throwable {
-        return proceedWithMasterDataSource(point, "Master");
+        return proceedWithMasterDataSource(point, "Master", true);
+    }
+
+    /**
+     * 拦截未标注@Master/@ReadOnly的@Transactional方法：非只读事务使用主库并记录写位点，只读事务不改变路由
+     */
+    @Around("@annotation(org.springframework.transaction.annotation.Transactional) && " +
+            "!@annotation(com.boonya.game.datasource.annotation.Master) && " +
+            "!@annotation(com.boonya.game.datasource.annotation.ReadOnly)")
+    public Object aroundTransactional(ProceedingJoinPoint point) throws Throwable {
+        Method method = ((MethodSignature) point.getSignature()).getMethod();
+        Route route = routes.get(method);
+        if (route == null) {
+            route = routes.computeIfAbsent(method, DataSourceAspect::resolveTransactionalRoute);
+        }
+        return route == Route.WRITE ? proceedWithMasterDataSource(point, "Transactional", true) : point.proceed();
     }
 
     /**
@@ -43,53 +104,73 @@ public class DataSourceAspect {
             "!@annotation(org.springframework.transaction.annotation.Transactional)")
     public Object aroundServiceMethod(ProceedingJoinPoint point) throws Throwable {
         Method method = ((MethodSignature) point.getSignature()).getMethod();
-        String methodName = method.getName();
-
-        // 根据方法名判断是否使用从库
-        if (isReadOperation(methodName)) {
-            return proceedWithSlaveDataSource(point, "Auto-Read");
+        Route route = routes.get(method);
+        if (route == null) {
+            route = routes.computeIfAbsent(method, DataSourceAspect::resolveRoute);
         }
 
-        // 默认使用主库
-        return proceedWithMasterDataSource(point, "Auto-Write");
+        switch (route) {
+            case SLAVE:
+                return proceedWithSlaveDataSource(point, "Auto-Read");
+            case MASTER:
+                return proceedWithMasterDataSource(point, "Auto-Write", false);
+            default:
+                return point.proceed();
+        }
     }
 
     /**
      * 使用从库执行
      */
     private Object proceedWithSlaveDataSource(ProceedingJoinPoint point, String source) throws Throwable {
-        String oldDataSource = DynamicDataSourceHolder.getDataSource();
+        String oldDataSource = DynamicDataSourceHolder.peekDataSource();
+        // 外层已选定数据源（主库或从库）时读操作沿用
+        if (oldDataSource != null) {
+            return point.proceed();
+        }
 
         try {
             DynamicDataSourceHolder.useSlave();
-            logger.debug("{} - Switching to slave datasource: {}", source,
-                    DynamicDataSourceHolder.getDataSourceInfo());
+            if (logger.isDebugEnabled()) {
+                logger.debug("{} - Switching to slave datasource: {}", source,
+                        DynamicDataSourceHolder.getDataSourceInfo());
+            }
 
             return point.proceed();
 
         } finally {
-            // 恢复原来的数据源
-            if (oldDataSource != null) {
-                DynamicDataSourceHolder.setDataSource(oldDataSource);
-            } else {
-                DynamicDataSourceHolder.clearDataSource();
-            }
-            logger.debug("{} - Restored datasource: {}", source, oldDataSource);
+            DynamicDataSourceHolder.clearDataSource();
+            logger.debug("{} - Restored datasource: null", source);
         }
     }
 
     /**
      * 使用主库执行
+     * @param write 是否为真正的写，成功后记录写位点，本线程随后的读只会路由到已追上的从库
      */
-    private Object proceedWithMasterDataSource(ProceedingJoinPoint point, String source) throws Throwable {
-        String oldDataSource = DynamicDataSourceHolder.getDataSource();
+    private Object proceedWithMasterDataSource(ProceedingJoinPoint point, String source, boolean write) throws Throwable {
+        String oldDataSource = DynamicDataSourceHolder.peekDataSource();
+        // 外层已在主库时不再切换；外层可能只是按方法名走主库，写位点仍由这里记录
+        if (DynamicDataSourceHolder.MASTER.equals(oldDataSource)) {
+            Object result = point.proceed();
+            if (write) {
+                WritePositionHolder.markWrite();
+            }
+            return result;
+        }
 
         try {
             DynamicDataSourceHolder.useMaster();
-            logger.debug("{} - Switching to master datasource: {}", source,
-                    DynamicDataSourceHolder.getDataSourceInfo());
+            if (logger.isDebugEnabled()) {
+                logger.debug("{} - Switching to master datasource: {}", source,
+                        DynamicDataSourceHolder.getDataSourceInfo());
+            }
 
-            return point.proceed();
+            Object result = point.proceed();
+            if (write) {
+                WritePositionHolder.markWrite();
+            }
+            return result;
 
         } finally {
             // 恢复原来的数据源
@@ -102,25 +183,38 @@ public class DataSourceAspect {
         }
     }
 
+    /**
+     * 解析方法的自动路由，每个Method只执行一次
+     */
+    static Route resolveRoute(Method method) {
+        if (AnnotatedElementUtils.hasAnnotation(method, ReadOnly.class)) {
+            return Route.NONE;
+        }
+        return isReadOperation(method.getName()) ? Route.SLAVE : Route.MASTER;
+    }
+
+    /**
+     * 解析@Transactional方法的路由：非只读事务为WRITE，只读事务为NONE
+     */
+    static Route resolveTransactionalRoute(Method method) {
+        Transactional transactional = AnnotatedElementUtils.findMergedAnnotation(method, Transactional.class);
+        return transactional != null && !transactional.readOnly() ? Route.WRITE : Route.NONE;
+    }
+
     /**
      * 判断是否为读操作
      */
-    private boolean isReadOperation(String methodName) {
+    static boolean isReadOperation(String methodName) {
         if (methodName == null) {
             return false;
         }
 
-        String lowerMethodName = methodName.toLowerCase();
-        return lowerMethodName.startsWith("get") ||
-                lowerMethodName.startsWith("find") ||
-                lowerMethodName.startsWith("query") ||
-                lowerMethodName.startsWith("select") ||
-                lowerMethodName.startsWith("list") ||
-                lowerMethodName.startsWith("count") ||
-                lowerMethodName.startsWith("exists") ||
-                lowerMethodName.startsWith("search") ||
-                lowerMethodName.startsWith("read") ||
-                lowerMethodName.startsWith("load") ||
-                lowerMethodName.startsWith("fetch");
+        String lowerMethodName = methodName.toLowerCase(Locale.ROOT);
+        for (String prefix : READ_PREFIXES) {
+            if (lowerMethodName.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
     }
 }
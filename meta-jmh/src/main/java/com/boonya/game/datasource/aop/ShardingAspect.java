@@ -0,0 +1,151 @@
+package com.boonya.game.datasource.aop;
+
+import com.boonya.game.datasource.annotation.ShardKey;
+import com.boonya.game.datasource.shard.ShardContextHolder;
+import com.boonya.game.datasource.shard.ShardingDataSource;
+import com.boonya.game.datasource.shard.ShardingTemplate;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.core.annotation.Order;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 分片切面：拦截@Sharded方法，按@ShardKey参数绑定分片
+ * <p>
+ * 分片键为ID集合时（如findAllById）按分片拆分，各分片以自己的ID子集并行调用原方法，结果合并为List。
+ * 在读写分离切面之外执行，每个分片的调用各自经过读写路由。
+ */
+@Aspect
+@Order(0)
+public class ShardingAspect {
+
+    private final ShardingDataSource shardingDataSource;
+    private final ShardingTemplate shardingTemplate;
+    private final Map<Method, KeyParameter> keyParameters = new ConcurrentHashMap<>();
+
+    public ShardingAspect(ShardingDataSource shardingDataSource, ShardingTemplate shardingTemplate) {
+        this.shardingDataSource = shardingDataSource;
+        this.shardingTemplate = shardingTemplate;
+    }
+
+    @Around("@annotation(com.boonya.game.datasource.annotation.Sharded)")
+    public Object aroundSharded(ProceedingJoinPoint point) throws Throwable {
+        Method method = ((MethodSignature) point.getSignature()).getMethod();
+        KeyParameter parameter = keyParameters.computeIfAbsent(method, KeyParameter::resolve);
+        Object[] args = point.getArgs();
+        Object key = parameter.extract(args);
+
+        if (key instanceof Iterable && parameter.property.isEmpty()) {
+            return scatterGather(point, parameter, args, (Iterable<?>) key);
+        }
+
+        String previous = ShardContextHolder.bind(shardingDataSource.shardFor(toLong(key, method)));
+        try {
+            return point.proceed();
+        } finally {
+            ShardContextHolder.restore(previous);
+        }
+    }
+
+    private Object scatterGather(ProceedingJoinPoint point, KeyParameter parameter, Object[] args, Iterable<?> keys) throws Throwable {
+        List<Number> ids = new ArrayList<>();
+        for (Object key : keys) {
+            if (!(key instanceof Number)) {
+                throw new IllegalArgumentException("Shard keys must be numbers: " + key);
+            }
+            ids.add((Number) key);
+        }
+        try {
+            return shardingTemplate.scatterGather(ids, shardIds -> {
+                Object[] shardArgs = args.clone();
+                shardArgs[parameter.index] = shardIds;
+                try {
+                    return asCollection(point.proceed(shardArgs));
+                } catch (RuntimeException | Error e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new ProceedFailure(e);
+                }
+            });
+        } catch (ProceedFailure e) {
+            throw e.getCause();
+        }
+    }
+
+    private static Collection<?> asCollection(Object result) {
+        if (result == null) {
+            return List.of();
+        }
+        if (result instanceof Collection) {
+            return (Collection<?>) result;
+        }
+        List<Object> list = new ArrayList<>();
+        ((Iterable<?>) result).forEach(list::add);
+        return list;
+    }
+
+    private static long toLong(Object key, Method method) {
+        if (key instanceof Number) {
+            return ((Number) key).longValue();
+        }
+        throw new IllegalArgumentException("Shard key of " + method + " must be a number, got " + key);
+    }
+
+    /**
+     * 分片键参数的位置与属性路径，每个Method解析一次
+     */
+    private static final class KeyParameter {
+
+        private final int index;
+        private final String property;
+
+        private KeyParameter(int index, String property) {
+            this.index = index;
+            this.property = property;
+        }
+
+        static KeyParameter resolve(Method method) {
+            Annotation[][] annotations = method.getParameterAnnotations();
+            for (int i = 0; i < annotations.length; i++) {
+                for (Annotation annotation : annotations[i]) {
+                    if (annotation instanceof ShardKey) {
+                        String property = ((ShardKey) annotation).value();
+                        if (property.isEmpty() && Iterable.class.isAssignableFrom(method.getParameterTypes()[i])
+                                && !method.getReturnType().isAssignableFrom(List.class)) {
+                            throw new IllegalStateException("Multi-shard method must return List, Collection or Iterable: " + method);
+                        }
+                        return new KeyParameter(i, property);
+                    }
+                }
+            }
+            throw new IllegalStateException("@Sharded method has no @ShardKey parameter: " + method);
+        }
+
+        Object extract(Object[] args) {
+            Object arg = args[index];
+            if (arg == null) {
+                throw new IllegalArgumentException("Shard key must not be null");
+            }
+            return property.isEmpty() ? arg : PropertyAccessorFactory.forBeanPropertyAccess(arg).getPropertyValue(property);
+        }
+    }
+
+    private static final class ProceedFailure extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        ProceedFailure(Throwable cause) {
+            super(cause);
+        }
+    }
+}
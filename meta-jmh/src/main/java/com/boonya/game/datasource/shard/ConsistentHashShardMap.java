@@ -0,0 +1,98 @@
+package com.boonya.game.datasource.shard;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 一致性哈希分片：每个分片在环上放置virtualNodes个虚拟节点，键落到顺时针方向第一个节点
+ * <p>
+ * 新增一个分片只迁移约 1/(n+1) 的键。环为排序后的不可变数组，查找是一次二分，无锁。
+ */
+public class ConsistentHashShardMap implements ShardMap {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private final List<String> shards;
+    private final long[] ring;
+    private final String[] owners;
+
+    public ConsistentHashShardMap(Collection<String> shards) {
+        this(shards, DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ConsistentHashShardMap(Collection<String> shards, int virtualNodes) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("virtualNodes must be positive: " + virtualNodes);
+        }
+        this.shards = List.copyOf(shards);
+
+        int size = this.shards.size() * virtualNodes;
+        long[] points = new long[size];
+        String[] pointOwners = new String[size];
+        int i = 0;
+        for (String shard : this.shards) {
+            long seed = hashName(shard);
+            for (int node = 0; node < virtualNodes; node++) {
+                points[i] = mix(seed + node * 0x9E3779B97F4A7C15L);
+                pointOwners[i] = shard;
+                i++;
+            }
+        }
+
+        // 按环上位置排序，两个数组同步
+        Integer[] order = new Integer[size];
+        for (int j = 0; j < size; j++) {
+            order[j] = j;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(points[a], points[b]));
+        this.ring = new long[size];
+        this.owners = new String[size];
+        for (int j = 0; j < size; j++) {
+            ring[j] = points[order[j]];
+            owners[j] = pointOwners[order[j]];
+        }
+    }
+
+    @Override
+    public String shardFor(long key) {
+        int index = Arrays.binarySearch(ring, mix(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == ring.length ? 0 : index];
+    }
+
+    @Override
+    public Collection<String> shards() {
+        return shards;
+    }
+
+    /**
+     * 与JVM无关的稳定名称哈希（FNV-1a 64位）
+     */
+    private static long hashName(String name) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * MurmurHash3 fmix64，使相邻ID均匀散开
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,48 @@
+package com.boonya.game.datasource.shard;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * 范围分片：每个分片负责 [起始键, 下一个分片的起始键) 区间，适合按ID段扩容
+ */
+public class RangeShardMap implements ShardMap {
+
+    private final NavigableMap<Long, String> ranges;
+    private final Collection<String> shards;
+
+    /**
+     * @param lowerBounds 分片名称到起始键（含）的映射
+     */
+    public RangeShardMap(Map<String, Long> lowerBounds) {
+        if (lowerBounds.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        TreeMap<Long, String> sorted = new TreeMap<>();
+        lowerBounds.forEach((shard, lower) -> {
+            String previous = sorted.put(lower, shard);
+            if (previous != null) {
+                throw new IllegalArgumentException("Shards " + previous + " and " + shard + " share lower bound " + lower);
+            }
+        });
+        this.ranges = sorted;
+        this.shards = new LinkedHashSet<>(sorted.values());
+    }
+
+    @Override
+    public String shardFor(long key) {
+        Map.Entry<Long, String> entry = ranges.floorEntry(key);
+        if (entry == null) {
+            throw new IllegalArgumentException("Key " + key + " is below the first shard range " + ranges.firstKey());
+        }
+        return entry.getValue();
+    }
+
+    @Override
+    public Collection<String> shards() {
+        return shards;
+    }
+}
@@ -0,0 +1,37 @@
+package com.boonya.game.datasource.shard;
+
+/**
+ * 当前线程绑定的分片，由 {@link com.boonya.game.datasource.aop.ShardingAspect} 或 {@link ShardingTemplate} 设置
+ */
+public final class ShardContextHolder {
+
+    private static final ThreadLocal<String> SHARD_HOLDER = new ThreadLocal<>();
+
+    private ShardContextHolder() {
+    }
+
+    /**
+     * 绑定分片
+     * @return 之前绑定的分片，用于 {@link #restore(String)}
+     */
+    public static String bind(String shard) {
+        String previous = SHARD_HOLDER.get();
+        SHARD_HOLDER.set(shard);
+        return previous;
+    }
+
+    public static void restore(String previous) {
+        if (previous == null) {
+            SHARD_HOLDER.remove();
+        } else {
+            SHARD_HOLDER.set(previous);
+        }
+    }
+
+    /**
+     * @return 当前分片，未绑定时返回null
+     */
+    public static String current() {
+        return SHARD_HOLDER.get();
+    }
+}
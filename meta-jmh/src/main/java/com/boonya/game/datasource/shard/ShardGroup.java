@@ -0,0 +1,67 @@
+package com.boonya.game.datasource.shard;
+
+import com.boonya.game.datasource.DynamicDataSourceHolder;
+import com.boonya.game.datasource.ReplicaRouter;
+import com.boonya.game.datasource.TrackedDataSource;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 一个分片的主从组：写走主库，读由本组的 {@link ReplicaRouter} 按健康状态选择从库，没有可用从库时读主库
+ * <p>
+ * 读路由使用与主数据源相同的从库筛选（{@link DynamicDataSourceHolder#getReplicaFilter()}）：
+ * 开启复制延迟跟踪时，延迟超限或未追上当前线程写位点的分片从库不被选中
+ */
+public class ShardGroup {
+
+    private final String name;
+    private final DataSource master;
+    private final Map<String, DataSource> replicas;
+    private final ReplicaRouter router = new ReplicaRouter();
+
+    public ShardGroup(String name, DataSource master, Map<String, DataSource> replicas) {
+        this.name = name;
+        this.master = master;
+        Map<String, DataSource> tracked = new LinkedHashMap<>();
+        replicas.forEach((replica, dataSource) -> {
+            tracked.put(replica, new TrackedDataSource(replica, dataSource, router));
+            router.addReplica(replica);
+        });
+        this.replicas = Map.copyOf(tracked);
+    }
+
+    /**
+     * @param read 是否为读操作
+     */
+    public DataSource select(boolean read) {
+        if (read) {
+            ReplicaRouter.Filter filter = DynamicDataSourceHolder.getReplicaFilter();
+            String replica = router.choose(filter);
+            if (filter != null) {
+                filter.onRouted(replica);
+            }
+            if (replica != null) {
+                return replicas.get(replica);
+            }
+        }
+        return master;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public DataSource getMaster() {
+        return master;
+    }
+
+    public Map<String, DataSource> getReplicas() {
+        return replicas;
+    }
+
+    public ReplicaRouter getRouter() {
+        return router;
+    }
+}
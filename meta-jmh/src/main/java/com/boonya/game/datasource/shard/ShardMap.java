@@ -0,0 +1,20 @@
+package com.boonya.game.datasource.shard;
+
+import java.util.Collection;
+
+/**
+ * 分片键到分片名称的映射
+ */
+public interface ShardMap {
+
+    /**
+     * @param key 分片键（如用户ID）
+     * @return 分片名称
+     */
+    String shardFor(long key);
+
+    /**
+     * 所有分片名称
+     */
+    Collection<String> shards();
+}
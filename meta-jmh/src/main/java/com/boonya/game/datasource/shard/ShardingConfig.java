@@ -0,0 +1,111 @@
+package com.boonya.game.datasource.shard;
+
+import com.boonya.game.dao.ShardedUserRepository;
+import com.boonya.game.datasource.ReplicaDefinition;
+import com.boonya.game.datasource.ReplicaRegistry;
+import com.boonya.game.datasource.aop.ShardingAspect;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 分片数据源配置，datasource.sharding.enabled=true 时生效
+ * <p>
+ * 分片数据源独立于主数据源（dynamicDataSource），分片表通过 shardingJdbcTemplate 访问；
+ * 用户表由 {@link ShardedUserRepository} 读写，ID仍由主库的号段表全局分配
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "datasource.sharding", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties(ShardingProperties.class)
+public class ShardingConfig {
+
+    @Bean(destroyMethod = "close")
+    public ShardingDataSource shardingDataSource(ShardingProperties properties) {
+        Map<String, ShardGroup> groups = new LinkedHashMap<>();
+        Map<String, Long> rangeStarts = new LinkedHashMap<>();
+        properties.getShards().forEach((shard, config) -> {
+            if (config.getMaster() == null) {
+                throw new IllegalArgumentException("Shard " + shard + " has no master");
+            }
+            DataSource master = ReplicaRegistry.createPool(named(config.getMaster(), shard + "-master"),
+                    properties.getConnectionTimeout());
+            Map<String, DataSource> replicas = new LinkedHashMap<>();
+            List<ReplicaDefinition> replicaConfigs = config.getReplicas();
+            for (int i = 0; i < replicaConfigs.size(); i++) {
+                ReplicaDefinition replica = named(replicaConfigs.get(i), shard + "-replica" + (i + 1));
+                replicas.put(replica.getName(), ReplicaRegistry.createPool(replica, properties.getConnectionTimeout()));
+            }
+            groups.put(shard, new ShardGroup(shard, master, replicas));
+            if (config.getRangeStart() != null) {
+                rangeStarts.put(shard, config.getRangeStart());
+            }
+        });
+        return new ShardingDataSource(shardMap(properties, rangeStarts), groups, properties.getDefaultShard());
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor shardQueryExecutor(ShardingProperties properties) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(properties.getQueryThreads());
+        executor.setMaxPoolSize(properties.getQueryThreads());
+        executor.setQueueCapacity(properties.getQueryThreads() * 64);
+        executor.setThreadNamePrefix("shard-query-");
+        // 队列满时由调用线程执行该分片的查询
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    @Bean
+    public ShardingTemplate shardingTemplate(ShardingDataSource shardingDataSource,
+                                             @Qualifier("shardQueryExecutor") ThreadPoolTaskExecutor shardQueryExecutor,
+                                             ShardingProperties properties) {
+        return new ShardingTemplate(shardingDataSource, shardQueryExecutor, properties.getQueryTimeout());
+    }
+
+    @Bean
+    public ShardingAspect shardingAspect(ShardingDataSource shardingDataSource, ShardingTemplate shardingTemplate) {
+        return new ShardingAspect(shardingDataSource, shardingTemplate);
+    }
+
+    @Bean
+    public JdbcTemplate shardingJdbcTemplate(ShardingDataSource shardingDataSource) {
+        return new JdbcTemplate(shardingDataSource);
+    }
+
+    /**
+     * 用户表按用户ID分片，存在时UserService的读写都走这里
+     */
+    @Bean
+    public ShardedUserRepository shardedUserRepository(@Qualifier("shardingJdbcTemplate") JdbcTemplate shardingJdbcTemplate,
+                                                       ShardingTemplate shardingTemplate) {
+        return new ShardedUserRepository(shardingJdbcTemplate, shardingTemplate);
+    }
+
+    static ShardMap shardMap(ShardingProperties properties, Map<String, Long> rangeStarts) {
+        if ("range".equalsIgnoreCase(properties.getStrategy())) {
+            if (rangeStarts.size() != properties.getShards().size()) {
+                throw new IllegalArgumentException("Every shard needs range-start with strategy=range");
+            }
+            return new RangeShardMap(rangeStarts);
+        }
+        return new ConsistentHashShardMap(properties.getShards().keySet(), properties.getVirtualNodes());
+    }
+
+    private static ReplicaDefinition named(ReplicaDefinition definition, String defaultName) {
+        if (definition.getName() == null) {
+            definition.setName(defaultName);
+        }
+        return definition;
+    }
+}
@@ -0,0 +1,102 @@
+package com.boonya.game.datasource.shard;
+
+import com.boonya.game.datasource.DynamicDataSourceHolder;
+import com.boonya.game.datasource.TrackedDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分片数据源：先按 {@link ShardContextHolder} 中的分片选主从组，再按 {@link DynamicDataSourceHolder}
+ * 的读写标记选组内主库或从库
+ * <p>
+ * 未绑定分片时使用默认分片，没有默认分片则拒绝获取连接，避免数据写错库。
+ */
+public class ShardingDataSource extends AbstractDataSource implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardingDataSource.class);
+
+    private final ShardMap shardMap;
+    private final Map<String, ShardGroup> groups;
+    private final String defaultShard;
+
+    public ShardingDataSource(ShardMap shardMap, Map<String, ShardGroup> groups, String defaultShard) {
+        for (String shard : shardMap.shards()) {
+            if (!groups.containsKey(shard)) {
+                throw new IllegalArgumentException("No data source group for shard " + shard);
+            }
+        }
+        if (defaultShard != null && !groups.containsKey(defaultShard)) {
+            throw new IllegalArgumentException("Unknown default shard " + defaultShard);
+        }
+        this.shardMap = shardMap;
+        this.groups = Map.copyOf(groups);
+        this.defaultShard = defaultShard;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return determineTargetDataSource().getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return determineTargetDataSource().getConnection(username, password);
+    }
+
+    protected DataSource determineTargetDataSource() {
+        String shard = ShardContextHolder.current();
+        if (shard == null) {
+            if (defaultShard == null) {
+                throw new IllegalStateException("No shard bound to current thread, annotate the method with @Sharded");
+            }
+            shard = defaultShard;
+        }
+        ShardGroup group = groups.get(shard);
+        if (group == null) {
+            throw new IllegalStateException("Unknown shard " + shard);
+        }
+        return group.select(DynamicDataSourceHolder.SLAVE.equals(DynamicDataSourceHolder.peekDataSource()));
+    }
+
+    public String shardFor(long key) {
+        return shardMap.shardFor(key);
+    }
+
+    public ShardMap getShardMap() {
+        return shardMap;
+    }
+
+    public Map<String, ShardGroup> getGroups() {
+        return groups;
+    }
+
+    /**
+     * 关闭各分片中可关闭的连接池
+     */
+    @Override
+    public void close() {
+        for (ShardGroup group : groups.values()) {
+            List<DataSource> dataSources = new ArrayList<>(group.getReplicas().values());
+            dataSources.add(group.getMaster());
+            for (DataSource dataSource : dataSources) {
+                DataSource target = dataSource instanceof TrackedDataSource
+                        ? ((TrackedDataSource) dataSource).getTargetDataSource() : dataSource;
+                if (target instanceof AutoCloseable) {
+                    try {
+                        ((AutoCloseable) target).close();
+                    } catch (Exception e) {
+                        logger.warn("Failed to close data source of shard {}: {}", group.getName(), e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+}
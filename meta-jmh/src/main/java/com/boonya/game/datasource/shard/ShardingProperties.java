@@ -0,0 +1,57 @@
+package com.boonya.game.datasource.shard;
+
+import com.boonya.game.datasource.ReplicaDefinition;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分片配置
+ */
+@Data
+@ConfigurationProperties(prefix = "datasource.sharding")
+public class ShardingProperties {
+
+    private boolean enabled;
+
+    /**
+     * hash：一致性哈希；range：按rangeStart划分ID段
+     */
+    private String strategy = "hash";
+
+    private int virtualNodes = ConsistentHashShardMap.DEFAULT_VIRTUAL_NODES;
+
+    /**
+     * 未绑定分片时使用的分片，为空时拒绝获取连接
+     */
+    private String defaultShard;
+
+    /**
+     * 跨分片并行查询的线程数
+     */
+    private int queryThreads = 16;
+
+    private Duration queryTimeout = Duration.ofSeconds(5);
+
+    private Duration connectionTimeout = Duration.ofSeconds(10);
+
+    private Map<String, Shard> shards = new LinkedHashMap<>();
+
+    @Data
+    public static class Shard {
+
+        /**
+         * range策略下该分片的起始ID（含）
+         */
+        private Long rangeStart;
+
+        private ReplicaDefinition master;
+
+        private List<ReplicaDefinition> replicas = new ArrayList<>();
+    }
+}
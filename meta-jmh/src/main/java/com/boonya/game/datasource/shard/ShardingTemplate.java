@@ -0,0 +1,167 @@
+package com.boonya.game.datasource.shard;
+
+import com.boonya.game.datasource.DynamicDataSourceHolder;
+import com.boonya.game.datasource.WritePositionHolder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 分片执行模板
+ * <ul>
+ *     <li>{@link #execute(long, Supplier)}：绑定分片键所在分片后执行</li>
+ *     <li>{@link #scatterGather(Collection, Function)}：按分片拆分键集合，在专用线程池上并行查询各分片后合并结果</li>
+ * </ul>
+ * 并行查询的工作线程继承调用方的读写标记与写位点，读请求在各分片内仍路由到从库，且只选已追上写位点的从库。
+ * 超时或任一分片失败时取消其余查询：排队中的不再执行，执行中的中断工作线程。
+ */
+public class ShardingTemplate {
+
+    private final ShardingDataSource dataSource;
+    private final Executor executor;
+    private final Duration timeout;
+
+    public ShardingTemplate(ShardingDataSource dataSource, Executor executor, Duration timeout) {
+        this.dataSource = dataSource;
+        this.executor = executor;
+        this.timeout = timeout;
+    }
+
+    public <T> T execute(long key, Supplier<T> action) {
+        return executeInShard(dataSource.shardFor(key), action);
+    }
+
+    public <T> T executeInShard(String shard, Supplier<T> action) {
+        String previous = ShardContextHolder.bind(shard);
+        try {
+            return action.get();
+        } finally {
+            ShardContextHolder.restore(previous);
+        }
+    }
+
+    /**
+     * 按分片对键分组，保持每组内的原始顺序
+     */
+    public <K extends Number> Map<String, List<K>> partition(Collection<K> keys) {
+        return partitionBy(keys, key -> key);
+    }
+
+    /**
+     * 按分片对对象分组，分片键由keyOf取出，保持每组内的原始顺序
+     */
+    public <E> Map<String, List<E>> partitionBy(Collection<E> items, Function<? super E, ? extends Number> keyOf) {
+        Map<String, List<E>> partitions = new LinkedHashMap<>();
+        for (E item : items) {
+            Number key = keyOf.apply(item);
+            if (key == null) {
+                throw new IllegalArgumentException("Shard key must not be null: " + item);
+            }
+            partitions.computeIfAbsent(dataSource.shardFor(key.longValue()), shard -> new ArrayList<>()).add(item);
+        }
+        return partitions;
+    }
+
+    /**
+     * 并行查询各分片并合并结果，只涉及一个分片时在调用线程执行
+     * @param query 在已绑定分片的线程中，以该分片的键子集执行的查询
+     */
+    public <K extends Number, T> List<T> scatterGather(Collection<K> keys,
+                                                       Function<List<K>, ? extends Collection<? extends T>> query) {
+        Map<String, List<K>> partitions = partition(keys);
+        if (partitions.isEmpty()) {
+            return new ArrayList<>();
+        }
+        if (partitions.size() == 1) {
+            Map.Entry<String, List<K>> only = partitions.entrySet().iterator().next();
+            return new ArrayList<>(executeInShard(only.getKey(), () -> query.apply(only.getValue())));
+        }
+
+        String route = DynamicDataSourceHolder.peekDataSource();
+        long position = WritePositionHolder.getPosition();
+        List<FutureTask<Collection<? extends T>>> tasks = new ArrayList<>(partitions.size());
+        for (Map.Entry<String, List<K>> partition : partitions.entrySet()) {
+            FutureTask<Collection<? extends T>> task = new FutureTask<>(() -> inheritRoute(route, position,
+                    () -> executeInShard(partition.getKey(), () -> query.apply(partition.getValue()))));
+            tasks.add(task);
+            executor.execute(task);
+        }
+
+        List<T> merged = new ArrayList<>();
+        long deadline = System.nanoTime() + timeout.toNanos();
+        try {
+            for (FutureTask<Collection<? extends T>> task : tasks) {
+                merged.addAll(task.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+            }
+        } catch (TimeoutException e) {
+            cancel(tasks);
+            throw new IllegalStateException("Scatter-gather over " + partitions.size() + " shards timed out after " + timeout, e);
+        } catch (InterruptedException e) {
+            cancel(tasks);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for shard queries", e);
+        } catch (ExecutionException e) {
+            cancel(tasks);
+            throw propagate(e.getCause());
+        }
+        return merged;
+    }
+
+    /**
+     * 还在排队的分片查询不再执行，正在执行的中断其工作线程
+     */
+    private static void cancel(List<? extends FutureTask<?>> tasks) {
+        tasks.forEach(task -> task.cancel(true));
+    }
+
+    /**
+     * 在工作线程上沿用调用方的读写标记与写位点，分片内的从库选择与调用线程一致
+     */
+    private static <T> T inheritRoute(String route, long position, Supplier<T> action) {
+        String previous = DynamicDataSourceHolder.peekDataSource();
+        long previousPosition = WritePositionHolder.getPosition();
+        if (route == null) {
+            DynamicDataSourceHolder.clearDataSource();
+        } else {
+            DynamicDataSourceHolder.setDataSource(route);
+        }
+        WritePositionHolder.restore(position);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                DynamicDataSourceHolder.clearDataSource();
+            } else {
+                DynamicDataSourceHolder.setDataSource(previous);
+            }
+            WritePositionHolder.clear();
+            WritePositionHolder.restore(previousPosition);
+        }
+    }
+
+    private static RuntimeException propagate(Throwable cause) {
+        if (cause instanceof CompletionException || cause instanceof CancellationException) {
+            cause = cause.getCause() != null ? cause.getCause() : cause;
+        }
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IllegalStateException("Shard query failed", cause);
+    }
+}
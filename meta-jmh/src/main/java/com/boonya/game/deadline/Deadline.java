@@ -0,0 +1,158 @@
+package com.boonya.game.deadline;
+
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 请求级截止时间
+ * <ul>
+ *     <li>响应式链路上放在Reactor Context中（{@link #CONTEXT_KEY}），切到阻塞线程时由 {@link #blocking} 转入ThreadLocal</li>
+ *     <li>阻塞链路上各层在发起远程调用前检查剩余时间，等待其他线程的结果时最多等到截止时间</li>
+ *     <li>嵌套设置时取较早的截止时间，内层不能延长外层的期限</li>
+ * </ul>
+ * 未设置截止时间时所有检查都直接通过，行为与原来一致。
+ */
+public final class Deadline {
+
+    /**
+     * Reactor Context中的键
+     */
+    public static final Class<Deadline> CONTEXT_KEY = Deadline.class;
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    private final long expiresAtNanos;
+
+    private Deadline(long expiresAtNanos) {
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    public static Deadline after(Duration timeout) {
+        return new Deadline(System.nanoTime() + timeout.toNanos());
+    }
+
+    public long remainingNanos() {
+        return expiresAtNanos - System.nanoTime();
+    }
+
+    public boolean isExpired() {
+        return remainingNanos() <= 0;
+    }
+
+    /**
+     * 两个截止时间中较早的一个，other为null时返回自身
+     */
+    public Deadline earlier(Deadline other) {
+        return other == null || expiresAtNanos - other.expiresAtNanos <= 0 ? this : other;
+    }
+
+    /**
+     * 当前线程的截止时间，未设置时返回null
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 当前线程的截止时间已过时抛出 {@link DeadlineExceededException}
+     *
+     * @param operation 即将执行的操作，用于异常信息
+     */
+    public static void check(String operation) {
+        Deadline deadline = CURRENT.get();
+        if (deadline != null && deadline.isExpired()) {
+            throw new DeadlineExceededException(operation);
+        }
+    }
+
+    /**
+     * 在截止时间内执行，结束后恢复原来的截止时间；deadline为null时沿用当前线程已有的
+     */
+    public static <T> T callWithin(Deadline deadline, Supplier<T> action) {
+        Deadline previous = CURRENT.get();
+        if (deadline == null) {
+            return action.get();
+        }
+        CURRENT.set(deadline.earlier(previous));
+        try {
+            return action.get();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    /**
+     * 等待其他线程的结果，最多等到当前线程的截止时间；异常按原类型抛出，不包装为CompletionException
+     */
+    public static <T> T await(CompletableFuture<T> future, String operation) {
+        Deadline deadline = CURRENT.get();
+        if (deadline == null || future.isDone()) {
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                throw unwrap(e.getCause());
+            }
+        }
+        try {
+            return future.get(Math.max(0, deadline.remainingNanos()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new DeadlineExceededException(operation);
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + operation, e);
+        }
+    }
+
+    private static RuntimeException unwrap(Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new CompletionException(cause);
+    }
+
+    /**
+     * Reactor Context中的截止时间，未设置时返回null
+     */
+    public static Deadline from(ContextView context) {
+        return context.getOrDefault(CONTEXT_KEY, null);
+    }
+
+    /**
+     * 写入Context，已有更早的截止时间时保留原值
+     */
+    public static Context with(Context context, Duration timeout) {
+        Deadline deadline = after(timeout).earlier(from(context));
+        return context.put(CONTEXT_KEY, deadline);
+    }
+
+    /**
+     * 阻塞调用的响应式包装：订阅时取Context中的截止时间，在执行线程上转入ThreadLocal
+     */
+    public static <T> Mono<T> blocking(Supplier<T> action) {
+        return Mono.deferContextual(context -> {
+            Deadline deadline = from(context);
+            if (deadline != null && deadline.isExpired()) {
+                return Mono.error(new DeadlineExceededException("request"));
+            }
+            return Mono.fromSupplier(() -> callWithin(deadline, action));
+        });
+    }
+}
@@ -0,0 +1,17 @@
+package com.boonya.game.deadline;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * 请求截止时间已过，HTTP接口返回504
+ */
+@ResponseStatus(HttpStatus.GATEWAY_TIMEOUT)
+public class DeadlineExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public DeadlineExceededException(String operation) {
+        super("Deadline exceeded before " + operation + " completed", null, false, false);
+    }
+}
@@ -0,0 +1,58 @@
+package com.boonya.game.deadline;
+
+import org.springframework.core.Ordered;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * 为每个请求设置截止时间并写入Reactor Context
+ * <p>
+ * 调用方可以用请求头 {@value #TIMEOUT_HEADER}（毫秒）给出更短的期限，超过 maxTimeout 的按 maxTimeout 处理；
+ * 请求头缺失或无法解析时使用 defaultTimeout。
+ */
+public class DeadlineWebFilter implements WebFilter, Ordered {
+
+    public static final String TIMEOUT_HEADER = "X-Request-Timeout";
+
+    private final Duration defaultTimeout;
+    private final Duration maxTimeout;
+
+    public DeadlineWebFilter(Duration defaultTimeout, Duration maxTimeout) {
+        this.defaultTimeout = defaultTimeout;
+        this.maxTimeout = maxTimeout;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        Duration timeout = timeoutOf(exchange.getRequest().getHeaders().getFirst(TIMEOUT_HEADER));
+        return chain.filter(exchange).contextWrite(context -> Deadline.with(context, timeout));
+    }
+
+    Duration timeoutOf(String header) {
+        if (header == null) {
+            return defaultTimeout;
+        }
+        try {
+            long millis = Long.parseLong(header.trim());
+            if (millis <= 0) {
+                return defaultTimeout;
+            }
+            Duration requested = Duration.ofMillis(millis);
+            return requested.compareTo(maxTimeout) > 0 ? maxTimeout : requested;
+        } catch (NumberFormatException e) {
+            return defaultTimeout;
+        }
+    }
+
+    /**
+     * 在并发限制之后执行，排队等待许可的时间不计入截止时间
+     */
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE + 1;
+    }
+}
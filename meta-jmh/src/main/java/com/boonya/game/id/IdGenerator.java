@@ -0,0 +1,9 @@
+package com.boonya.game.id;
+
+/**
+ * 全局唯一ID生成
+ */
+public interface IdGenerator {
+
+    long nextId();
+}
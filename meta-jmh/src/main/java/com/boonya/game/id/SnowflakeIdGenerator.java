@@ -0,0 +1,182 @@
+package com.boonya.game.id;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * 雪花算法ID：1位符号 | 41位毫秒时间戳（相对epoch，约69年） | 10位工作节点 | 12位序号
+ * <ul>
+ *     <li>时间戳与下一个可用序号打包在一个AtomicLong中，CAS一次取走一段序号</li>
+ *     <li>每个线程缓存一段序号（bufferSize个），段内发号不访问共享状态；段用完或跨毫秒才重新取段，
+ *     同一毫秒内的ID在线程之间不严格有序，毫秒之间有序</li>
+ *     <li>同一毫秒序号用完时借用下一毫秒，逻辑时间最多领先时钟 maxAheadMillis，超过后等待时钟追上</li>
+ *     <li>时钟回拨时沿用上次的逻辑时间继续发号；回拨超过 maxBackwardMillis 时拒绝发号，避免长时间阻塞</li>
+ * </ul>
+ * 虚拟线程模式下每个虚拟线程都有自己的缓冲段，建议 bufferSize 设为1。
+ */
+public class SnowflakeIdGenerator implements IdGenerator, MeterBinder {
+
+    static final int WORKER_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    public static final long MAX_WORKER_ID = (1L << WORKER_BITS) - 1;
+    static final int SEQUENCE_LIMIT = 1 << SEQUENCE_BITS;
+
+    /**
+     * 状态中下一个序号占13位，可以表示4096（本毫秒已用完）
+     */
+    private static final int STATE_SEQUENCE_BITS = SEQUENCE_BITS + 1;
+    private static final long STATE_SEQUENCE_MASK = (1L << STATE_SEQUENCE_BITS) - 1;
+
+    /**
+     * 2024-01-01T00:00:00Z
+     */
+    public static final long DEFAULT_EPOCH = 1704067200000L;
+
+    private final long epoch;
+    private final long workerId;
+    private final int bufferSize;
+    private final long maxAheadMillis;
+    private final long maxBackwardMillis;
+    private final LongSupplier clock;
+
+    /**
+     * 逻辑时间戳（相对epoch） << 13 | 下一个可用序号
+     */
+    private final AtomicLong state = new AtomicLong();
+    private final ThreadLocal<Buffer> buffers = ThreadLocal.withInitial(Buffer::new);
+
+    private final LongAdder reservations = new LongAdder();
+    private final LongAdder clockWaits = new LongAdder();
+    private final LongAdder clockRejections = new LongAdder();
+
+    public SnowflakeIdGenerator(long workerId) {
+        this(workerId, 32, DEFAULT_EPOCH, 5, 1000, System::currentTimeMillis);
+    }
+
+    public SnowflakeIdGenerator(long workerId, int bufferSize, long epoch, long maxAheadMillis,
+                                long maxBackwardMillis, LongSupplier clock) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("workerId must be in [0, " + MAX_WORKER_ID + "]: " + workerId);
+        }
+        if (bufferSize < 1 || bufferSize > SEQUENCE_LIMIT) {
+            throw new IllegalArgumentException("bufferSize must be in [1, " + SEQUENCE_LIMIT + "]: " + bufferSize);
+        }
+        this.workerId = workerId;
+        this.bufferSize = bufferSize;
+        this.epoch = epoch;
+        this.maxAheadMillis = maxAheadMillis;
+        this.maxBackwardMillis = maxBackwardMillis;
+        this.clock = clock;
+    }
+
+    @Override
+    public long nextId() {
+        long now = clock.getAsLong() - epoch;
+        Buffer buffer = buffers.get();
+        if (buffer.next >= buffer.end || buffer.timestamp < now) {
+            long reserved = reserve(now);
+            buffer.timestamp = reserved >>> STATE_SEQUENCE_BITS;
+            buffer.next = (int) (reserved & STATE_SEQUENCE_MASK);
+            buffer.end = buffer.next + bufferSize;
+        }
+        return compose(buffer.timestamp, buffer.next++);
+    }
+
+    /**
+     * 取一段bufferSize个同一毫秒内的序号
+     * @return 时间戳 << 13 | 起始序号
+     */
+    private long reserve(long now) {
+        while (true) {
+            long current = state.get();
+            long lastTimestamp = current >>> STATE_SEQUENCE_BITS;
+            long timestamp;
+            long start;
+            if (now > lastTimestamp) {
+                timestamp = now;
+                start = 0;
+            } else {
+                // 同一毫秒或时钟回拨：沿用逻辑时间，序号不够时借用下一毫秒
+                timestamp = lastTimestamp;
+                start = current & STATE_SEQUENCE_MASK;
+                if (start + bufferSize > SEQUENCE_LIMIT) {
+                    timestamp++;
+                    start = 0;
+                }
+            }
+
+            long ahead = timestamp - now;
+            if (ahead > maxAheadMillis) {
+                if (ahead > maxBackwardMillis) {
+                    clockRejections.increment();
+                    throw new IllegalStateException("Clock is " + ahead + " ms behind the last issued id, refusing to generate ids");
+                }
+                clockWaits.increment();
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(ahead - maxAheadMillis));
+                now = clock.getAsLong() - epoch;
+                continue;
+            }
+
+            if (state.compareAndSet(current, (timestamp << STATE_SEQUENCE_BITS) | (start + bufferSize))) {
+                reservations.increment();
+                return (timestamp << STATE_SEQUENCE_BITS) | start;
+            }
+        }
+    }
+
+    private long compose(long timestamp, long sequence) {
+        return (timestamp << (WORKER_BITS + SEQUENCE_BITS)) | (workerId << SEQUENCE_BITS) | sequence;
+    }
+
+    public long getWorkerId() {
+        return workerId;
+    }
+
+    /**
+     * ID中的生成时间（epoch毫秒）
+     */
+    public long timestampOf(long id) {
+        return (id >>> (WORKER_BITS + SEQUENCE_BITS)) + epoch;
+    }
+
+    public static long workerIdOf(long id) {
+        return (id >>> SEQUENCE_BITS) & MAX_WORKER_ID;
+    }
+
+    public static long sequenceOf(long id) {
+        return id & (SEQUENCE_LIMIT - 1);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("id.generator.worker", this, SnowflakeIdGenerator::getWorkerId)
+                .description("Worker id embedded in generated ids")
+                .register(registry);
+        FunctionCounter.builder("id.generator.reservations", reservations, LongAdder::sum)
+                .description("Sequence blocks reserved from the shared state")
+                .register(registry);
+        FunctionCounter.builder("id.generator.clock.waits", clockWaits, LongAdder::sum)
+                .description("Waits for the clock to catch up after sequence exhaustion or small clock skew")
+                .register(registry);
+        FunctionCounter.builder("id.generator.clock.rejections", clockRejections, LongAdder::sum)
+                .description("Requests rejected because the clock moved backwards too far")
+                .register(registry);
+    }
+
+    /**
+     * 线程私有的序号段
+     */
+    private static final class Buffer {
+        private long timestamp = -1;
+        private int next;
+        private int end;
+    }
+}
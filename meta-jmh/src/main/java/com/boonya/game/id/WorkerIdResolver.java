@@ -0,0 +1,56 @@
+package com.boonya.game.id;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * 解析工作节点ID，优先级：显式配置 > Pod序号（StatefulSet的 name-N） > 主机名哈希
+ * <p>
+ * Deployment的Pod名是随机后缀，没有序号，只能退化为哈希，有概率冲突；
+ * 多副本部署应使用StatefulSet，或为每个副本配置 id.worker-id。
+ */
+public final class WorkerIdResolver {
+
+    private static final Logger logger = LoggerFactory.getLogger(WorkerIdResolver.class);
+
+    private static final Pattern ORDINAL = Pattern.compile("-(\\d+)$");
+
+    private WorkerIdResolver() {
+    }
+
+    /**
+     * @param configured 配置的工作节点ID，小于0表示自动解析
+     * @param podName    Pod名或主机名
+     */
+    public static long resolve(long configured, String podName) {
+        if (configured >= 0) {
+            if (configured > SnowflakeIdGenerator.MAX_WORKER_ID) {
+                throw new IllegalArgumentException("id.worker-id must be <= " + SnowflakeIdGenerator.MAX_WORKER_ID);
+            }
+            return configured;
+        }
+        if (!StringUtils.hasText(podName)) {
+            logger.warn("No worker id configured and no pod name available, using worker id 0");
+            return 0;
+        }
+        Matcher matcher = ORDINAL.matcher(podName);
+        if (matcher.find() && matcher.group(1).length() < 5) {
+            long ordinal = Long.parseLong(matcher.group(1));
+            if (ordinal <= SnowflakeIdGenerator.MAX_WORKER_ID) {
+                return ordinal;
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(podName.getBytes(StandardCharsets.UTF_8));
+        long hashed = crc.getValue() & SnowflakeIdGenerator.MAX_WORKER_ID;
+        logger.warn("Pod name {} has no ordinal, worker id {} derived from its hash may collide; "
+                + "set id.worker-id or deploy as a StatefulSet", podName, hashed);
+        return hashed;
+    }
+}
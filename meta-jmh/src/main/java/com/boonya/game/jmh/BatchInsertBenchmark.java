@@ -0,0 +1,97 @@
+package com.boonya.game.jmh;
+
+import com.boonya.game.dao.UserBatchWriter;
+import com.boonya.game.model.User;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量写入吞吐：每次操作在一个事务里插入 ROWS 个新用户（号段分配ID + JDBC批处理），得分单位为行/秒
+ * <p>
+ * batchSize=1 即逐条执行，对应原来每个用户一次save的写法。默认写H2内存库；
+ * 对MySQL测试 rewriteBatchedStatements 的效果时指定连接串：
+ * <pre>
+ * java -jar boonya-game-jmh.jar BatchInsertBenchmark \
+ *   -p jdbcUrl='jdbc:mysql://localhost:3306/master_db?rewriteBatchedStatements=true' -p username=root -p password=...
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(BatchInsertBenchmark.ROWS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchInsertBenchmark {
+
+    static final int ROWS = 1000;
+
+    @Param({"1", "10", "100", "1000"})
+    public int batchSize;
+
+    @Param({"jdbc:h2:mem:batch_insert;DB_CLOSE_DELAY=-1"})
+    public String jdbcUrl;
+
+    @Param({"sa"})
+    public String username;
+
+    @Param({""})
+    public String password;
+
+    private HikariDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private UserBatchWriter writer;
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("batch-insert-bench");
+        config.setJdbcUrl(jdbcUrl);
+        config.setUsername(username);
+        config.setPassword(password);
+        config.setMaximumPoolSize(4);
+        dataSource = new HikariDataSource(config);
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS users "
+                + "(id BIGINT NOT NULL PRIMARY KEY, name VARCHAR(255), email VARCHAR(255))");
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        writer = new UserBatchWriter(jdbcTemplate, batchSize);
+        writer.getIdAllocator().createTableIfMissing();
+    }
+
+    /**
+     * 每轮清空表，避免索引随测量时间增长影响后面的批次
+     */
+    @Setup(Level.Iteration)
+    public void truncate() {
+        jdbcTemplate.execute("DELETE FROM users");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Benchmark
+    public void insertRows(Blackhole blackhole) {
+        List<User> users = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            long n = sequence++;
+            users.add(new User(null, "batch_user_" + n, "batch_" + n + "@example.com"));
+        }
+        blackhole.consume(transactionTemplate.execute(status -> writer.insertAll(users, batchSize)));
+    }
+
+}
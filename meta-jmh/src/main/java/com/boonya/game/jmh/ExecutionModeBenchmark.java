@@ -0,0 +1,99 @@
+package com.boonya.game.jmh;
+
+import com.boonya.game.config.TheadPoolConfig;
+import com.boonya.game.jmh.fake.InMemoryRedisTemplate;
+import com.boonya.game.jmh.fake.InMemoryUserRepository;
+import com.boonya.game.jmh.fake.ServiceFixtures;
+import com.boonya.game.model.User;
+import com.boonya.game.service.UserService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 平台线程池 vs 虚拟线程：每次操作并发提交 concurrency 个请求，
+ * 每个请求模拟一次阻塞IO再走多级缓存读取，全部完成后结束
+ * <p>
+ * 得分单位为请求/秒（QPS）；内存开销配合 -prof gc 查看 gc.alloc.rate.norm。
+ * virtual 模式需要 JDK 21+：
+ * <pre>
+ * java -jar boonya-game-jmh.jar ExecutionModeBenchmark -prof gc
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(ExecutionModeBenchmark.CONCURRENCY)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExecutionModeBenchmark {
+
+    static final int CONCURRENCY = 10_000;
+
+    private static final int USER_COUNT = 10_000;
+
+    @Param({"platform", "virtual"})
+    public String mode;
+
+    /**
+     * 每个请求中模拟的阻塞IO耗时（数据库/远程调用）
+     */
+    @Param({"1"})
+    public long blockingMillis;
+
+    private TaskExecutor executor;
+    private UserService userService;
+
+    @Setup
+    public void setup() {
+        if ("virtual".equals(mode)) {
+            if (Runtime.version().feature() < 21) {
+                throw new IllegalStateException("Virtual threads require JDK 21+, running on " + Runtime.version());
+            }
+            // 并发由CONCURRENCY控制；不设上限，避免上一轮任务尚未退出时新任务被拒绝
+            executor = TheadPoolConfig.virtualThreadExecutor("bench-vt-", SimpleAsyncTaskExecutor.UNBOUNDED_CONCURRENCY);
+        } else {
+            executor = new TheadPoolConfig().taskExecutor();
+        }
+        userService = ServiceFixtures.userService(ServiceFixtures.caffeineCacheManager(),
+                new InMemoryRedisTemplate(), new InMemoryUserRepository(USER_COUNT));
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (executor instanceof ThreadPoolTaskExecutor) {
+            ((ThreadPoolTaskExecutor) executor).shutdown();
+        }
+    }
+
+    @Benchmark
+    public void concurrentRequests(Blackhole blackhole) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(CONCURRENCY);
+        for (int i = 0; i < CONCURRENCY; i++) {
+            executor.execute(() -> {
+                try {
+                    blackhole.consume(handleRequest());
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+    }
+
+    private User handleRequest() {
+        try {
+            Thread.sleep(blockingMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return userService.getUserMultiLevel(ThreadLocalRandom.current().nextLong(1, USER_COUNT + 1));
+    }
+}
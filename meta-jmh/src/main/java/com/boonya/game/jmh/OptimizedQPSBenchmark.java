@@ -1,31 +1,77 @@
 package com.boonya.game.jmh;
 
-import com.boonya.game.component.ApplicationContextHolder;
+import com.boonya.game.jmh.fake.InMemoryRedisTemplate;
+import com.boonya.game.jmh.fake.InMemoryUserRepository;
+import com.boonya.game.jmh.fake.ServiceFixtures;
 import com.boonya.game.model.User;
+import com.boonya.game.model.UserView;
 import com.boonya.game.service.UserService;
+import org.apache.commons.pool2.BasePooledObjectFactory;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericObjectPool;
 import org.openjdk.jmh.annotations.*;
 import org.openjdk.jmh.infra.Blackhole;
 
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.LongStream;
 
+/**
+ * 热点读路径的三种写法对比，配合 -prof gc 查看 gc.alloc.rate.norm（字节/操作）：
+ * <ul>
+ *     <li>testOptimizedQPS：UserService.getUserOptimized 返回共享的不可变 UserView</li>
+ *     <li>testAllocatingQPS：每次读取复制一个新的 User</li>
+ *     <li>testPooledQPS：从 commons-pool 借出 User、填充字段、用完归还</li>
+ * </ul>
+ * <pre>
+ * java -jar boonya-game-jmh.jar OptimizedQPSBenchmark -prof gc
+ * </pre>
+ */
 @State(Scope.Benchmark)
 public class OptimizedQPSBenchmark {
 
+    private static final int USER_COUNT = 10_000;
+
     private UserService userService;
     private List<Long> testUserIds;
 
+    // 对照组的数据源，与享元视图持有同样的用户
+    private final ConcurrentHashMap<Long, User> users = new ConcurrentHashMap<>(USER_COUNT, 0.75f, 64);
+    private GenericObjectPool<User> userPool;
+
     @Setup
     public void setup() {
-        //userService = createUserService();
-        userService = ApplicationContextHolder.getBean(UserService.class);
-        testUserIds = LongStream.range(1, 10000).boxed().collect(Collectors.toList());
+        InMemoryUserRepository repository = new InMemoryUserRepository(USER_COUNT);
+        userService = ServiceFixtures.userService(ServiceFixtures.caffeineCacheManager(),
+                new InMemoryRedisTemplate(), repository);
+        testUserIds = LongStream.rangeClosed(1, USER_COUNT).boxed().collect(Collectors.toList());
+
+        // 预热视图缓存
+        testUserIds.forEach(userService::getUserOptimized);
+        repository.findAll().forEach(user -> users.put(user.getId(), user));
 
-        // 预热缓存
-        testUserIds.parallelStream().forEach(userService::getUserOptimized);
+        userPool = new GenericObjectPool<>(new BasePooledObjectFactory<>() {
+            @Override
+            public User create() {
+                return new User();
+            }
+
+            @Override
+            public PooledObject<User> wrap(User user) {
+                return new DefaultPooledObject<>(user);
+            }
+        });
+        userPool.setMaxTotal(64);
+        userPool.setMaxIdle(64);
+    }
+
+    @TearDown
+    public void tearDown() {
+        userPool.close();
     }
 
     @Benchmark
@@ -33,8 +79,38 @@ public class OptimizedQPSBenchmark {
     @BenchmarkMode(Mode.Throughput)
     @OutputTimeUnit(TimeUnit.SECONDS)
     public void testOptimizedQPS(Blackhole blackhole) {
-        Long userId = testUserIds.get(ThreadLocalRandom.current().nextInt(testUserIds.size()));
-        User user = userService.getUserOptimized(userId);
+        Long userId = nextUserId();
+        UserView user = userService.getUserOptimized(userId);
         blackhole.consume(user);
     }
+
+    @Benchmark
+    @Threads(32)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void testAllocatingQPS(Blackhole blackhole) {
+        User source = users.get(nextUserId());
+        blackhole.consume(new User(source.getId(), source.getName(), source.getEmail()));
+    }
+
+    @Benchmark
+    @Threads(32)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void testPooledQPS(Blackhole blackhole) throws Exception {
+        User source = users.get(nextUserId());
+        User user = userPool.borrowObject();
+        try {
+            user.setId(source.getId());
+            user.setName(source.getName());
+            user.setEmail(source.getEmail());
+            blackhole.consume(user);
+        } finally {
+            userPool.returnObject(user);
+        }
+    }
+
+    private Long nextUserId() {
+        return testUserIds.get(ThreadLocalRandom.current().nextInt(testUserIds.size()));
+    }
 }
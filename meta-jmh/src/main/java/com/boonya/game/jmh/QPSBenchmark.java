@@ -2,6 +2,7 @@ package com.boonya.game.jmh;
 
 import com.boonya.game.model.User;
 import com.boonya.game.BoonyaGameJmhApplication;
+import com.boonya.game.id.IdGenerator;
 import com.boonya.game.service.UserService;
 import org.openjdk.jmh.annotations.*;
 import org.openjdk.jmh.infra.Blackhole;
@@ -9,7 +10,6 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.context.ConfigurableApplicationContext;
 
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
 
 @BenchmarkMode(Mode.Throughput) // 测量吞吐量 (QPS)
 @OutputTimeUnit(TimeUnit.SECONDS) // 输出单位：秒
@@ -23,17 +23,18 @@ public class QPSBenchmark {
     private ConfigurableApplicationContext context;
     private UserService userService;
 
-    private AtomicLong userIdGenerator = new AtomicLong(1);
+    private IdGenerator userIdGenerator;
 
     @Setup
     public void setup() {
         // 启动Spring Boot应用
         context = SpringApplication.run(BoonyaGameJmhApplication.class);
         userService = context.getBean(UserService.class);
+        userIdGenerator = context.getBean(IdGenerator.class);
 
-        // 预创建一些测试数据
+        // 预创建一些测试数据，ID固定为1..1000供查询基准命中
         for (int i = 0; i < 1000; i++) {
-            User user = new User(userIdGenerator.get(), "user" + i, "user" + i + "@example.com");
+            User user = new User((long) i + 1, "user" + i, "user" + i + "@example.com");
             userService.save(user);
         }
     }
@@ -55,7 +56,7 @@ public class QPSBenchmark {
     public void testUserCreateQPS() {
         // 模拟创建操作，测试QPS
         long timestamp = System.currentTimeMillis();
-        User user = new User(userIdGenerator.get(), "benchmark_user_" + timestamp,
+        User user = new User(userIdGenerator.nextId(), "benchmark_user_" + timestamp,
                 "benchmark_" + timestamp + "@example.com");
         userService.save(user);
     }
@@ -2,6 +2,7 @@ package com.boonya.game.jmh;
 
 import com.boonya.game.model.User;
 import com.boonya.game.BoonyaGameJmhApplication;
+import com.boonya.game.id.IdGenerator;
 import com.boonya.game.service.OrderService;
 import com.boonya.game.service.UserService;
 import org.openjdk.jmh.annotations.*;
@@ -10,7 +11,6 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.context.ConfigurableApplicationContext;
 
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
 
 @BenchmarkMode(Mode.Throughput) // 测量吞吐量 (TPS)
 @OutputTimeUnit(TimeUnit.SECONDS)
@@ -24,18 +24,18 @@ public class TPSBenchmark {
     private ConfigurableApplicationContext context;
     private UserService userService;
     private OrderService orderService;
-    private AtomicLong userIdGenerator;
+    private IdGenerator userIdGenerator;
 
     @Setup
     public void setup() {
         context = SpringApplication.run(BoonyaGameJmhApplication.class);
         userService = context.getBean(UserService.class);
         orderService = context.getBean(OrderService.class);
-        userIdGenerator = new AtomicLong(1);
+        userIdGenerator = context.getBean(IdGenerator.class);
 
         // 预创建用户数据
         for (int i = 0; i < 100; i++) {
-            User user = new User(userIdGenerator.getAndIncrement(), "pre_user_" + i, "pre_" + i + "@example.com");
+            User user = new User(userIdGenerator.nextId(), "pre_user_" + i, "pre_" + i + "@example.com");
             userService.save(user);
         }
     }
@@ -48,10 +48,10 @@ public class TPSBenchmark {
     @Benchmark
     public void testOrderTransactionTPS(Blackhole blackhole) {
         // 模拟完整的事务：创建用户 -> 创建订单 -> 完成订单
-        Long userId = userIdGenerator.getAndIncrement();
+        Long userId = userIdGenerator.nextId();
 
         // 事务开始：创建用户
-        User user = new User(userIdGenerator.getAndIncrement(), "transaction_user_" + userId,
+        User user = new User(userIdGenerator.nextId(), "transaction_user_" + userId,
                 "transaction_" + userId + "@example.com");
         userService.save(user);
 
@@ -0,0 +1,243 @@
+package com.boonya.game.jmh.fake;
+
+import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 只覆盖opsForValue()的RedisTemplate，值保存在进程内Map中，不做序列化和过期
+ */
+public class InMemoryRedisTemplate extends RedisTemplate<String, Object> {
+
+    private final InMemoryValueOperations valueOperations;
+
+    public InMemoryRedisTemplate() {
+        this(false);
+    }
+
+    /**
+     * @param discardWrites 丢弃所有写入，用于让读请求始终穿透到下一级
+     */
+    public InMemoryRedisTemplate(boolean discardWrites) {
+        this.valueOperations = new InMemoryValueOperations(this, discardWrites);
+    }
+
+    /**
+     * 作为Spring bean使用时不需要连接工厂
+     */
+    @Override
+    public void afterPropertiesSet() {
+    }
+
+    @Override
+    public ValueOperations<String, Object> opsForValue() {
+        return valueOperations;
+    }
+
+    @Override
+    public Boolean delete(String key) {
+        return valueOperations.store.remove(key) != null;
+    }
+
+    @Override
+    public Boolean hasKey(String key) {
+        return valueOperations.store.containsKey(key);
+    }
+
+    public long getReadCount() {
+        return valueOperations.reads.sum();
+    }
+
+    public void clear() {
+        valueOperations.store.clear();
+    }
+
+    static class InMemoryValueOperations implements ValueOperations<String, Object> {
+
+        private final RedisOperations<String, Object> operations;
+        private final boolean discardWrites;
+        private final ConcurrentHashMap<String, Object> store = new ConcurrentHashMap<>();
+        private final LongAdder reads = new LongAdder();
+
+        InMemoryValueOperations(RedisOperations<String, Object> operations, boolean discardWrites) {
+            this.operations = operations;
+            this.discardWrites = discardWrites;
+        }
+
+        @Override
+        public void set(String key, Object value) {
+            if (!discardWrites) {
+                store.put(key, value);
+            }
+        }
+
+        @Override
+        public void set(String key, Object value, long timeout, TimeUnit unit) {
+            set(key, value);
+        }
+
+        @Override
+        public Object setGet(String key, Object value, long timeout, TimeUnit unit) {
+            return discardWrites ? store.get(key) : store.put(key, value);
+        }
+
+        @Override
+        public Object setGet(String key, Object value, Duration duration) {
+            return setGet(key, value, duration.toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public Boolean setIfAbsent(String key, Object value) {
+            return !discardWrites && store.putIfAbsent(key, value) == null;
+        }
+
+        @Override
+        public Boolean setIfAbsent(String key, Object value, long timeout, TimeUnit unit) {
+            return setIfAbsent(key, value);
+        }
+
+        @Override
+        public Boolean setIfPresent(String key, Object value) {
+            return !discardWrites && store.replace(key, value) != null;
+        }
+
+        @Override
+        public Boolean setIfPresent(String key, Object value, long timeout, TimeUnit unit) {
+            return setIfPresent(key, value);
+        }
+
+        @Override
+        public void multiSet(Map<? extends String, ?> map) {
+            map.forEach(this::set);
+        }
+
+        @Override
+        public Boolean multiSetIfAbsent(Map<? extends String, ?> map) {
+            if (discardWrites || map.keySet().stream().anyMatch(store::containsKey)) {
+                return false;
+            }
+            multiSet(map);
+            return true;
+        }
+
+        @Override
+        public Object get(Object key) {
+            reads.increment();
+            return store.get(key);
+        }
+
+        @Override
+        public Object getAndDelete(String key) {
+            return store.remove(key);
+        }
+
+        @Override
+        public Object getAndExpire(String key, long timeout, TimeUnit unit) {
+            return get(key);
+        }
+
+        @Override
+        public Object getAndExpire(String key, Duration timeout) {
+            return get(key);
+        }
+
+        @Override
+        public Object getAndPersist(String key) {
+            return get(key);
+        }
+
+        @Override
+        public Object getAndSet(String key, Object value) {
+            return setGet(key, value, 0, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public List<Object> multiGet(Collection<String> keys) {
+            reads.increment();
+            List<Object> values = new ArrayList<>(keys.size());
+            for (String key : keys) {
+                values.add(store.get(key));
+            }
+            return values;
+        }
+
+        @Override
+        public Long increment(String key) {
+            return increment(key, 1L);
+        }
+
+        @Override
+        public Long increment(String key, long delta) {
+            return (Long) store.merge(key, delta, (old, d) -> ((Number) old).longValue() + (Long) d);
+        }
+
+        @Override
+        public Double increment(String key, double delta) {
+            return (Double) store.merge(key, delta, (old, d) -> ((Number) old).doubleValue() + (Double) d);
+        }
+
+        @Override
+        public Long decrement(String key) {
+            return increment(key, -1L);
+        }
+
+        @Override
+        public Long decrement(String key, long delta) {
+            return increment(key, -delta);
+        }
+
+        @Override
+        public Integer append(String key, String value) {
+            throw unsupported();
+        }
+
+        @Override
+        public String get(String key, long start, long end) {
+            throw unsupported();
+        }
+
+        @Override
+        public void set(String key, Object value, long offset) {
+            throw unsupported();
+        }
+
+        @Override
+        public Long size(String key) {
+            throw unsupported();
+        }
+
+        @Override
+        public Boolean setBit(String key, long offset, boolean value) {
+            throw unsupported();
+        }
+
+        @Override
+        public Boolean getBit(String key, long offset) {
+            throw unsupported();
+        }
+
+        @Override
+        public List<Long> bitField(String key, BitFieldSubCommands subCommands) {
+            throw unsupported();
+        }
+
+        @Override
+        public RedisOperations<String, Object> getOperations() {
+            return operations;
+        }
+
+        private static UnsupportedOperationException unsupported() {
+            return new UnsupportedOperationException("String range/bit operations are not supported in memory");
+        }
+    }
+}
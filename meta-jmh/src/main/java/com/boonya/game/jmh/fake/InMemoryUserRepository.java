@@ -0,0 +1,229 @@
+package com.boonya.game.jmh.fake;
+
+import com.boonya.game.dao.UserRepository;
+import com.boonya.game.model.User;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.repository.query.FluentQuery;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 基于ConcurrentHashMap的UserRepository，用于脱离Spring和MySQL的微基准
+ * <p>
+ * 只实现按主键的增删查，Example/Sort/分页相关方法不支持。
+ */
+public class InMemoryUserRepository implements UserRepository {
+
+    private final ConcurrentHashMap<Long, User> table = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong(1);
+
+    /**
+     * 数据库访问次数，用于验证缓存和合并请求的效果
+     */
+    private final LongAdder queries = new LongAdder();
+
+    public InMemoryUserRepository() {
+    }
+
+    /**
+     * 预置 1..count 的用户
+     */
+    public InMemoryUserRepository(int count) {
+        for (long id = 1; id <= count; id++) {
+            table.put(id, new User(id, "user" + id, "user" + id + "@example.com"));
+        }
+        sequence.set(count + 1L);
+    }
+
+    public long getQueryCount() {
+        return queries.sum();
+    }
+
+    public void resetQueryCount() {
+        queries.reset();
+    }
+
+    @Override
+    public <S extends User> S save(S entity) {
+        if (entity.getId() == null) {
+            entity.setId(sequence.getAndIncrement());
+        }
+        table.put(entity.getId(), entity);
+        return entity;
+    }
+
+    @Override
+    public <S extends User> List<S> saveAll(Iterable<S> entities) {
+        List<S> saved = new ArrayList<>();
+        for (S entity : entities) {
+            saved.add(save(entity));
+        }
+        return saved;
+    }
+
+    @Override
+    public Optional<User> findById(Long id) {
+        queries.increment();
+        return Optional.ofNullable(table.get(id));
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        queries.increment();
+        return table.containsKey(id);
+    }
+
+    @Override
+    public List<User> findAll() {
+        queries.increment();
+        return new ArrayList<>(table.values());
+    }
+
+    @Override
+    public List<User> findAllById(Iterable<Long> ids) {
+        queries.increment();
+        List<User> users = new ArrayList<>();
+        for (Long id : ids) {
+            User user = table.get(id);
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
+    @Override
+    public long count() {
+        return table.size();
+    }
+
+    @Override
+    public void deleteById(Long id) {
+        table.remove(id);
+    }
+
+    @Override
+    public void delete(User entity) {
+        table.remove(entity.getId());
+    }
+
+    @Override
+    public void deleteAllById(Iterable<? extends Long> ids) {
+        ids.forEach(table::remove);
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends User> entities) {
+        entities.forEach(this::delete);
+    }
+
+    @Override
+    public void deleteAll() {
+        table.clear();
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public <S extends User> S saveAndFlush(S entity) {
+        return save(entity);
+    }
+
+    @Override
+    public <S extends User> List<S> saveAllAndFlush(Iterable<S> entities) {
+        return saveAll(entities);
+    }
+
+    @Override
+    public void deleteAllInBatch(Iterable<User> entities) {
+        deleteAll(entities);
+    }
+
+    @Override
+    public void deleteAllByIdInBatch(Iterable<Long> ids) {
+        deleteAllById(ids);
+    }
+
+    @Override
+    public void deleteAllInBatch() {
+        deleteAll();
+    }
+
+    @Deprecated
+    @Override
+    public User getOne(Long id) {
+        return getReferenceById(id);
+    }
+
+    @Deprecated
+    @Override
+    public User getById(Long id) {
+        return getReferenceById(id);
+    }
+
+    @Override
+    public User getReferenceById(Long id) {
+        return findById(id).orElse(null);
+    }
+
+    @Override
+    public List<User> findAll(Sort sort) {
+        throw unsupported();
+    }
+
+    @Override
+    public Page<User> findAll(Pageable pageable) {
+        throw unsupported();
+    }
+
+    @Override
+    public <S extends User> Optional<S> findOne(Example<S> example) {
+        throw unsupported();
+    }
+
+    @Override
+    public <S extends User> List<S> findAll(Example<S> example) {
+        throw unsupported();
+    }
+
+    @Override
+    public <S extends User> List<S> findAll(Example<S> example, Sort sort) {
+        throw unsupported();
+    }
+
+    @Override
+    public <S extends User> Page<S> findAll(Example<S> example, Pageable pageable) {
+        throw unsupported();
+    }
+
+    @Override
+    public <S extends User> long count(Example<S> example) {
+        throw unsupported();
+    }
+
+    @Override
+    public <S extends User> boolean exists(Example<S> example) {
+        throw unsupported();
+    }
+
+    @Override
+    public <S extends User, R> R findBy(Example<S> example,
+                                        Function<FluentQuery.FetchableFluentQuery<S>, R> queryFunction) {
+        throw unsupported();
+    }
+
+    private static UnsupportedOperationException unsupported() {
+        return new UnsupportedOperationException("Query by example/sort/page is not supported in memory");
+    }
+}
@@ -0,0 +1,53 @@
+package com.boonya.game.jmh.fake;
+
+import com.boonya.game.datasource.aop.DataSourceAspect;
+import com.boonya.game.service.UserService;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 不启动Spring容器，直接组装服务对象
+ */
+public final class ServiceFixtures {
+
+    private ServiceFixtures() {
+    }
+
+    /**
+     * 与CacheConfig相同配置的Caffeine本地缓存
+     */
+    public static CacheManager caffeineCacheManager() {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        cacheManager.setCaffeine(Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(10, TimeUnit.MINUTES)
+                .recordStats());
+        return cacheManager;
+    }
+
+    public static UserService userService(CacheManager localCache, InMemoryRedisTemplate redis,
+                                          InMemoryUserRepository repository) {
+        return new UserService(localCache, redis, repository);
+    }
+
+    /**
+     * 织入DataSourceAspect的代理，与容器中的AOP代理行为一致（CGLIB）
+     */
+    public static <T> T withDataSourceAspect(T target) {
+        return withAspect(target, new DataSourceAspect());
+    }
+
+    /**
+     * 织入任意@Aspect实例的代理（CGLIB）
+     */
+    public static <T> T withAspect(T target, Object aspect) {
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(aspect);
+        return factory.getProxy();
+    }
+}
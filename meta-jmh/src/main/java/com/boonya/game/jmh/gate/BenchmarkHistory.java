@@ -0,0 +1,238 @@
+package com.boonya.game.jmh.gate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.BenchmarkResult;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.util.Statistics;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基准结果历史目录
+ * <pre>
+ * results-dir/
+ *   runs/     每次运行的记录JSON与JMH原始JSON，剖析时另有 {runId}-profiles/ 火焰图目录
+ *   reports/  markdown对比报告
+ *   baseline-{profile}.json
+ * </pre>
+ */
+public class BenchmarkHistory {
+
+    private static final double CONFIDENCE = 0.999;
+    private static final double[] PERCENTILES = {50.0, 90.0, 99.0, 99.9};
+    private static final String[] PERCENTILE_LABELS = {"p50", "p90", "p99", "p99.9"};
+    private static final DateTimeFormatter RUN_ID_FORMAT =
+            DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").withZone(ZoneId.systemDefault());
+
+    private final Path root;
+    private final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    public BenchmarkHistory(Path root) {
+        this.root = root;
+    }
+
+    public Path root() {
+        return root;
+    }
+
+    public Path runsDir() {
+        return root.resolve("runs");
+    }
+
+    public Path reportsDir() {
+        return root.resolve("reports");
+    }
+
+    public Path baselineOf(BenchmarkProfile profile) {
+        return root.resolve("baseline-" + profile.name().toLowerCase() + ".json");
+    }
+
+    /**
+     * 运行标识：时间-短SHA-档位，同时作为结果文件名前缀
+     */
+    public String runId(BenchmarkRecord record) {
+        String sha = record.getGitSha();
+        String shortSha = sha.length() > 7 ? sha.substring(0, 7) : sha;
+        return RUN_ID_FORMAT.format(Instant.ofEpochMilli(record.getTimestamp()))
+                + "-" + shortSha + (record.isDirty() ? "-dirty" : "")
+                + "-" + record.getProfile().toLowerCase();
+    }
+
+    /**
+     * 运行前创建记录头，运行标识在此确定，JMH原始JSON也按该标识命名
+     */
+    public BenchmarkRecord newRecord(BenchmarkProfile profile) {
+        BenchmarkRecord record = new BenchmarkRecord();
+        record.setProfile(profile.name());
+        record.setTimestamp(System.currentTimeMillis());
+        record.setGitSha(gitSha());
+        record.setDirty(gitDirty());
+        return record;
+    }
+
+    public Path rawResultOf(BenchmarkRecord record) {
+        return runsDir().resolve(runId(record) + "-jmh.json");
+    }
+
+    public Path profilesOf(BenchmarkRecord record) {
+        return runsDir().resolve(runId(record) + "-profiles");
+    }
+
+    /**
+     * 将JMH运行结果填充进归档记录
+     */
+    public BenchmarkRecord fill(BenchmarkRecord record, Collection<RunResult> runResults) {
+        for (RunResult runResult : runResults) {
+            BenchmarkParams params = runResult.getParams();
+            if (record.getJvm() == null) {
+                record.setJvm(params.getJvm());
+                record.setVmVersion(params.getVmVersion());
+                record.getJvmArgs().addAll(params.getJvmArgs());
+            }
+
+            Result<?> primary = runResult.getPrimaryResult();
+            Statistics statistics = primary.getStatistics();
+
+            BenchmarkRecord.Entry entry = new BenchmarkRecord.Entry();
+            entry.setBenchmark(params.getBenchmark());
+            entry.setMode(params.getMode().shortLabel());
+            for (String key : params.getParamsKeys()) {
+                entry.getParams().put(key, params.getParam(key));
+            }
+            entry.setUnit(primary.getScoreUnit());
+            entry.setScore(primary.getScore());
+            entry.setSampleCount(statistics.getN());
+            entry.setStdDev(finiteOr(statistics.getStandardDeviation(), 0));
+
+            double error = primary.getScoreError();
+            entry.setScoreError(finiteOr(error, 0));
+            double[] interval = statistics.getConfidenceIntervalAt(CONFIDENCE);
+            entry.setCiLower(finiteOr(interval[0], primary.getScore()));
+            entry.setCiUpper(finiteOr(interval[1], primary.getScore()));
+
+            if ("sample".equals(entry.getMode())) {
+                for (int i = 0; i < PERCENTILES.length; i++) {
+                    entry.getPercentiles().put(PERCENTILE_LABELS[i], statistics.getPercentile(PERCENTILES[i]));
+                }
+            }
+
+            for (BenchmarkResult benchmarkResult : runResult.getBenchmarkResults()) {
+                for (IterationResult iteration : benchmarkResult.getIterationResults()) {
+                    entry.getRawScores().add(iteration.getPrimaryResult().getScore());
+                }
+            }
+            record.getResults().add(entry);
+        }
+        return record;
+    }
+
+    public Path save(BenchmarkRecord record) {
+        Path file = runsDir().resolve(runId(record) + ".json");
+        write(file, record);
+        return file;
+    }
+
+    public void promoteToBaseline(Path runFile, BenchmarkProfile profile) {
+        try {
+            Files.createDirectories(root);
+            Files.copy(runFile, baselineOf(profile), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to promote baseline: " + runFile, e);
+        }
+    }
+
+    public Optional<BenchmarkRecord> load(Path file) {
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(mapper.readValue(file.toFile(), BenchmarkRecord.class));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read benchmark record: " + file, e);
+        }
+    }
+
+    public Path writeReport(String runId, String markdown) {
+        Path file = reportsDir().resolve(runId + ".md");
+        try {
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, markdown, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write report: " + file, e);
+        }
+        return file;
+    }
+
+    private void write(Path file, Object value) {
+        try {
+            Files.createDirectories(file.getParent());
+            mapper.writeValue(file.toFile(), value);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write benchmark record: " + file, e);
+        }
+    }
+
+    private static double finiteOr(double value, double fallback) {
+        return Double.isFinite(value) ? value : fallback;
+    }
+
+    /**
+     * CI环境优先读取GIT_COMMIT，否则调用本地git
+     */
+    static String gitSha() {
+        String fromEnv = System.getenv("GIT_COMMIT");
+        if (fromEnv != null && !fromEnv.isBlank()) {
+            return fromEnv.trim();
+        }
+        String output = git("rev-parse", "HEAD");
+        return output == null || output.isBlank() ? "unknown" : output.trim();
+    }
+
+    static boolean gitDirty() {
+        String output = git("status", "--porcelain", "--untracked-files=no");
+        return output != null && !output.isBlank();
+    }
+
+    private static String git(String... args) {
+        String[] command = new String[args.length + 1];
+        command[0] = "git";
+        System.arraycopy(args, 0, command, 1, args.length);
+        try {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            StringBuilder output = new StringBuilder();
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    output.append(line).append('\n');
+                }
+            }
+            if (!process.waitFor(10, TimeUnit.SECONDS) || process.exitValue() != 0) {
+                return null;
+            }
+            return output.toString();
+        } catch (IOException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.boonya.game.jmh.gate;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基准测试门禁：按档位运行JMH，归档结果（git SHA、JVM参数），与基线对比并生成markdown报告。
+ * <p>
+ * 用法：
+ * <pre>
+ * java -cp boonya-game-jmh.jar com.boonya.game.jmh.gate.BenchmarkLauncher \
+ *      --profile qps [--results-dir bench-results] [--baseline file] [--threshold 0.05] \
+ *      [--jvm-args "-Xmx2g -XX:+UseG1GC"] [--update-baseline] [--compare-only run.json] [--no-fail] \
+ *      [--profiling none|jfr|async|auto] [--async-lib /path/to/libasyncProfiler.so]
+ * </pre>
+ * 检测到显著回归时以退出码1结束，便于CI拦截。
+ * 开启剖析时每个基准附带CPU/分配/锁火焰图（见 {@link BenchmarkProfiling}），剖析运行不会更新基线。
+ */
+public class BenchmarkLauncher {
+
+    private static final int EXIT_REGRESSION = 1;
+
+    public static void main(String[] args) throws RunnerException {
+        Map<String, String> options = parse(args);
+        BenchmarkProfile profile = BenchmarkProfile.of(options.getOrDefault("profile", BenchmarkProfile.SMOKE.name()));
+        BenchmarkHistory history = new BenchmarkHistory(Paths.get(options.getOrDefault("results-dir", "bench-results")));
+        double threshold = Double.parseDouble(options.getOrDefault("threshold", "0.05"));
+
+        BenchmarkRecord current;
+        Path runFile;
+        if (options.containsKey("compare-only")) {
+            Path recordFile = Paths.get(options.get("compare-only"));
+            current = history.load(recordFile)
+                    .orElseThrow(() -> new IllegalArgumentException("Run record not found: " + recordFile));
+            runFile = recordFile;
+            profile = BenchmarkProfile.of(current.getProfile());
+        } else {
+            current = history.newRecord(profile);
+            BenchmarkProfiling profiling = BenchmarkProfiling.resolve(
+                    options.getOrDefault("profiling", ProfilingMode.NONE.name()), options.get("async-lib"));
+            Path profilesDir = history.profilesOf(current);
+            Collection<RunResult> results = run(profile, history.rawResultOf(current), options.get("jvm-args"),
+                    profiling, profilesDir);
+            history.fill(current, results);
+            if (profiling != null) {
+                current.setProfiling(profiling.getMode().name().toLowerCase());
+                current.getProfiles().addAll(profiling.collect(profilesDir, history.root()));
+                System.out.println("Profiles saved: " + profilesDir);
+            }
+            runFile = history.save(current);
+            System.out.println("Benchmark record saved: " + runFile);
+        }
+
+        Path baselineFile = options.containsKey("baseline")
+                ? Paths.get(options.get("baseline")) : history.baselineOf(profile);
+        BenchmarkRecord baseline = history.load(baselineFile).orElse(null);
+
+        RegressionComparator comparator = new RegressionComparator(threshold);
+        List<RegressionComparator.Comparison> comparisons = comparator.compare(baseline, current);
+        String markdown = new MarkdownReport().render(baseline, current, comparisons, threshold);
+        Path report = history.writeReport(history.runId(current), markdown);
+        System.out.println(markdown);
+        System.out.println("Benchmark report saved: " + report);
+
+        boolean regressed = comparisons.stream()
+                .anyMatch(c -> c.getStatus() == RegressionComparator.Status.REGRESSION);
+
+        // 没有基线时第一次运行自动成为基线；有回归时不覆盖基线
+        if (options.containsKey("update-baseline") || baseline == null) {
+            if (current.getProfiling() != null) {
+                System.out.println("Baseline not updated: profiled runs include profiler overhead");
+            } else if (regressed) {
+                System.out.println("Baseline not updated: regressions detected");
+            } else {
+                history.promoteToBaseline(runFile, profile);
+                System.out.println("Baseline updated: " + history.baselineOf(profile));
+            }
+        }
+
+        if (regressed && !options.containsKey("no-fail")) {
+            System.exit(EXIT_REGRESSION);
+        }
+    }
+
+    static Collection<RunResult> run(BenchmarkProfile profile, Path rawResult, String jvmArgs,
+                                     BenchmarkProfiling profiling, Path profilesDir) throws RunnerException {
+        ChainedOptionsBuilder builder = new OptionsBuilder()
+                .warmupIterations(profile.getWarmupIterations())
+                .measurementIterations(profile.getMeasurementIterations())
+                .forks(profile.getForks())
+                .shouldFailOnError(true)
+                .resultFormat(ResultFormatType.JSON)
+                .result(rawResult.toString());
+        profile.getIncludes().forEach(builder::include);
+        if (Runtime.version().feature() < 21) {
+            // 虚拟线程需要JDK 21，低版本只跑平台线程模式
+            builder.param("mode", "platform");
+        }
+        if (jvmArgs != null && !jvmArgs.isBlank()) {
+            builder.jvmArgsAppend(jvmArgs.trim().split("\\s+"));
+        }
+        if (profiling != null) {
+            profiling.configure(builder, profilesDir);
+        }
+
+        rawResult.toFile().getParentFile().mkdirs();
+        return new Runner(builder.build()).run();
+    }
+
+    /**
+     * 解析 --key value / --flag 形式的参数
+     */
+    public static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            String key = args[i].substring(2);
+            if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                options.put(key, args[++i]);
+            } else {
+                options.put(key, "true");
+            }
+        }
+        return options;
+    }
+}
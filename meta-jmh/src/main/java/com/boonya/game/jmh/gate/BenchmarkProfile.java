@@ -0,0 +1,90 @@
+package com.boonya.game.jmh.gate;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 基准测试运行档位，决定包含哪些基准以及预热/测量轮数
+ */
+public enum BenchmarkProfile {
+
+    /**
+     * 查询QPS
+     */
+    QPS(List.of("com.boonya.game.jmh.QPSBenchmark"), 3, 5, 2),
+
+    /**
+     * 事务TPS
+     */
+    TPS(List.of("com.boonya.game.jmh.TPSBenchmark"), 3, 5, 2),
+
+    /**
+     * 服务综合吞吐与延迟
+     */
+    SERVICE(List.of("com.boonya.game.jmh.ServiceBenchmark"), 2, 3, 2),
+
+    /**
+     * 优化后的查询QPS
+     */
+    OPTIMIZED(List.of("com.boonya.game.jmh.OptimizedQPSBenchmark"), 3, 5, 2),
+
+    /**
+     * 不依赖Spring/MySQL/Redis的微基准，任意机器上数秒内可完成
+     */
+    MICRO(List.of("com.boonya.game.jmh.micro."), 2, 3, 2),
+
+    /**
+     * 平台线程池 vs 虚拟线程，1万并发阻塞请求
+     */
+    EXECUTION(List.of("com.boonya.game.jmh.ExecutionModeBenchmark"), 2, 3, 2),
+
+    /**
+     * 提交前的快速冒烟档位，只跑一轮fork；用户查询与下单的服务路径，仓库与Redis为内存实现，
+     * 不启动Spring、不连MySQL/Redis，干净的CI上也能运行
+     */
+    SMOKE(List.of("com.boonya.game.jmh.micro.UserServiceMicroBenchmark",
+            "com.boonya.game.jmh.micro.OrderServiceMicroBenchmark"), 1, 3, 1),
+
+    /**
+     * 全量
+     */
+    ALL(List.of("com.boonya.game.jmh..*Benchmark"), 3, 5, 3);
+
+    private final List<String> includes;
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final int forks;
+
+    BenchmarkProfile(List<String> includes, int warmupIterations, int measurementIterations, int forks) {
+        this.includes = includes;
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.forks = forks;
+    }
+
+    public List<String> getIncludes() {
+        return includes;
+    }
+
+    public int getWarmupIterations() {
+        return warmupIterations;
+    }
+
+    public int getMeasurementIterations() {
+        return measurementIterations;
+    }
+
+    /**
+     * fork数至少为2时置信区间才包含进程间方差，单fork只适合冒烟
+     */
+    public int getForks() {
+        return forks;
+    }
+
+    public static BenchmarkProfile of(String name) {
+        return Arrays.stream(values())
+                .filter(profile -> profile.name().equalsIgnoreCase(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown benchmark profile: " + name));
+    }
+}
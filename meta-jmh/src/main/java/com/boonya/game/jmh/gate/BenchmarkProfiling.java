@@ -0,0 +1,167 @@
+package com.boonya.game.jmh.gate;
+
+import org.openjdk.jmh.profile.AsyncProfiler;
+import org.openjdk.jmh.profile.JavaFlightRecorderProfiler;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 基准运行的剖析：给每个fork挂载JFR或async-profiler，运行结束后把每个基准的JFR文件
+ * 转换成CPU/分配/锁竞争三类折叠栈和SVG火焰图，与JMH原始JSON放在同一个runs目录下
+ * <pre>
+ * runs/{runId}-profiles/{benchmark}/profile.jfr
+ *                                   cpu.collapsed   cpu.svg
+ *                                   alloc.collapsed alloc.svg
+ *                                   lock.collapsed  lock.svg
+ * </pre>
+ */
+public class BenchmarkProfiling {
+
+    private static final String ASYNC_LIB_ENV = "ASYNC_PROFILER_LIB";
+    private static final List<String> ASYNC_LIB_CANDIDATES = List.of(
+            "/opt/async-profiler/lib/libasyncProfiler.so",
+            "/usr/local/lib/libasyncProfiler.so",
+            "/usr/lib/libasyncProfiler.so",
+            System.getProperty("user.home") + "/async-profiler/lib/libasyncProfiler.so",
+            "/opt/homebrew/lib/libasyncProfiler.dylib");
+    private static final int HOT_SPOTS = 10;
+    /**
+     * 只记录阻塞超过该时长的锁事件，过滤掉正常的短暂等待
+     */
+    private static final String LOCK_THRESHOLD = "10us";
+
+    private final ProfilingMode mode;
+    private final String asyncLib;
+
+    private BenchmarkProfiling(ProfilingMode mode, String asyncLib) {
+        this.mode = mode;
+        this.asyncLib = asyncLib;
+    }
+
+    /**
+     * 解析剖析模式，NONE时返回null；要求ASYNC但找不到库时退回JFR
+     */
+    public static BenchmarkProfiling resolve(String modeName, String asyncLibOption) {
+        ProfilingMode requested = ProfilingMode.of(modeName);
+        if (requested == ProfilingMode.NONE) {
+            return null;
+        }
+        if (requested == ProfilingMode.JFR) {
+            return new BenchmarkProfiling(ProfilingMode.JFR, null);
+        }
+        String lib = findAsyncLib(asyncLibOption);
+        if (lib == null) {
+            if (requested == ProfilingMode.ASYNC) {
+                System.out.println("async-profiler library not found (set --async-lib or " + ASYNC_LIB_ENV
+                        + "), falling back to JFR");
+            }
+            return new BenchmarkProfiling(ProfilingMode.JFR, null);
+        }
+        return new BenchmarkProfiling(ProfilingMode.ASYNC, lib);
+    }
+
+    public ProfilingMode getMode() {
+        return mode;
+    }
+
+    /**
+     * 给JMH选项添加剖析器，剖析器在每个fork中启动，按基准分目录输出
+     */
+    public void configure(ChainedOptionsBuilder builder, Path dir) {
+        if (mode == ProfilingMode.ASYNC) {
+            // 多事件只能输出为jfr，再统一转换
+            builder.addProfiler(AsyncProfiler.class, "libPath=" + asyncLib + ";event=cpu;alloc;lock=" + LOCK_THRESHOLD
+                    + ";output=jfr;dir=" + dir.toAbsolutePath());
+        } else {
+            builder.addProfiler(JavaFlightRecorderProfiler.class, "configName=profile;dir=" + dir.toAbsolutePath());
+        }
+    }
+
+    /**
+     * 转换dir下所有JFR文件，返回写入归档记录的摘要，路径相对于结果根目录
+     */
+    public List<BenchmarkRecord.Profile> collect(Path dir, Path resultsRoot) {
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        List<Path> recordings;
+        try (Stream<Path> files = Files.walk(dir)) {
+            recordings = files.filter(file -> file.toString().endsWith(".jfr")).sorted().collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list profiles in " + dir, e);
+        }
+
+        FlameGraphSvg renderer = new FlameGraphSvg();
+        List<BenchmarkRecord.Profile> summaries = new ArrayList<>();
+        for (Path recording : recordings) {
+            Map<StackProfile.Kind, StackProfile> profiles;
+            try {
+                profiles = StackProfile.read(recording);
+            } catch (IOException e) {
+                System.out.println("Skipping unreadable recording " + recording + ": " + e.getMessage());
+                continue;
+            }
+
+            Path benchmarkDir = recording.getParent();
+            String benchmark = benchmarkDir.equals(dir) ? recording.getFileName().toString() : benchmarkDir.getFileName().toString();
+            BenchmarkRecord.Profile summary = new BenchmarkRecord.Profile();
+            summary.setBenchmark(benchmark);
+            summary.setRecording(relative(resultsRoot, recording));
+            for (StackProfile profile : profiles.values()) {
+                if (profile.isEmpty()) {
+                    continue;
+                }
+                String name = profile.getKind().fileName();
+                profile.writeCollapsed(benchmarkDir.resolve(name + ".collapsed"));
+                Path svg = benchmarkDir.resolve(name + ".svg");
+                write(svg, renderer.render(benchmark + " " + name, profile));
+                summary.getFlameGraphs().put(name, relative(resultsRoot, svg));
+            }
+            StackProfile cpu = profiles.get(StackProfile.Kind.CPU);
+            for (Map.Entry<String, Long> hotSpot : cpu.topSelf(HOT_SPOTS)) {
+                summary.getCpuHotSpots().add(String.format(Locale.ROOT, "%.1f%% %s",
+                        100.0 * hotSpot.getValue() / cpu.getTotal(), hotSpot.getKey()));
+            }
+            summaries.add(summary);
+        }
+        return summaries;
+    }
+
+    private static String findAsyncLib(String configured) {
+        if (configured != null && !configured.isBlank()) {
+            return configured;
+        }
+        String fromEnv = System.getenv(ASYNC_LIB_ENV);
+        if (fromEnv != null && !fromEnv.isBlank()) {
+            return fromEnv;
+        }
+        return ASYNC_LIB_CANDIDATES.stream()
+                .filter(candidate -> Files.isRegularFile(Paths.get(candidate)))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static String relative(Path root, Path file) {
+        return root.toAbsolutePath().relativize(file.toAbsolutePath()).toString().replace('\\', '/');
+    }
+
+    private static void write(Path file, String content) {
+        try {
+            Files.writeString(file, content, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write " + file, e);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.boonya.game.jmh.gate;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 一次基准测试运行的归档记录，序列化为JSON保存在结果目录
+ */
+@Data
+public class BenchmarkRecord {
+
+    /**
+     * 运行时的git提交
+     */
+    private String gitSha;
+
+    /**
+     * 工作区是否有未提交的改动
+     */
+    private boolean dirty;
+
+    private String profile;
+
+    /**
+     * 运行开始时间（epoch毫秒）
+     */
+    private long timestamp;
+
+    private String jvm;
+
+    private String vmVersion;
+
+    /**
+     * fork出的基准进程使用的JVM参数
+     */
+    private List<String> jvmArgs = new ArrayList<>();
+
+    private List<Entry> results = new ArrayList<>();
+
+    /**
+     * 挂载的剖析器：jfr / async，未剖析时为空
+     */
+    private String profiling;
+
+    private List<Profile> profiles = new ArrayList<>();
+
+    /**
+     * 单个基准（含参数组合）的统计结果
+     */
+    @Data
+    public static class Entry {
+
+        private String benchmark;
+
+        /**
+         * JMH模式缩写：thrpt / avgt / sample / ss
+         */
+        private String mode;
+
+        private Map<String, String> params = new TreeMap<>();
+
+        private String unit;
+
+        private double score;
+
+        /**
+         * 99.9%置信区间半宽
+         */
+        private double scoreError;
+
+        private double ciLower;
+
+        private double ciUpper;
+
+        private long sampleCount;
+
+        private double stdDev;
+
+        /**
+         * 采样模式下的延迟分位数，例如 p99
+         */
+        private Map<String, Double> percentiles = new TreeMap<>();
+
+        /**
+         * 各测量轮次的原始分数
+         */
+        private List<Double> rawScores = new ArrayList<>();
+
+        /**
+         * 唯一标识：基准名 + 模式 + 参数
+         */
+        public String key() {
+            return params.isEmpty() ? benchmark + ":" + mode : benchmark + ":" + mode + params;
+        }
+
+        /**
+         * 吞吐类指标越大越好，时间类指标越小越好
+         */
+        public boolean higherIsBetter() {
+            return "thrpt".equals(mode);
+        }
+    }
+
+    /**
+     * 单个基准的剖析产物，路径相对于结果根目录
+     */
+    @Data
+    public static class Profile {
+
+        /**
+         * JMH按基准和参数划分的输出目录名
+         */
+        private String benchmark;
+
+        private String recording;
+
+        /**
+         * 类别（cpu / alloc / lock）-> SVG火焰图
+         */
+        private Map<String, String> flameGraphs = new TreeMap<>();
+
+        /**
+         * CPU自身耗时最高的方法，形如 "12.5% com.foo.Bar.method"
+         */
+        private List<String> cpuHotSpots = new ArrayList<>();
+    }
+}
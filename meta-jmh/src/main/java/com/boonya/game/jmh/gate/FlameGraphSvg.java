@@ -0,0 +1,106 @@
+package com.boonya.game.jmh.gate;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 把折叠栈渲染成自包含的SVG火焰图（根在底部，宽度与权重成正比，悬停显示方法名和占比）
+ */
+public class FlameGraphSvg {
+
+    private static final int WIDTH = 1200;
+    private static final int PADDING = 10;
+    private static final int FRAME_HEIGHT = 16;
+    private static final int TITLE_HEIGHT = 30;
+    private static final double MIN_FRAME_WIDTH = 0.1;
+    private static final double CHAR_WIDTH = 7.0;
+
+    public String render(String title, StackProfile profile) {
+        Node root = new Node("all");
+        for (Map.Entry<String, Long> stack : profile.getStacks().entrySet()) {
+            root.value += stack.getValue();
+            Node node = root;
+            for (String frame : stack.getKey().split(";")) {
+                node = node.children.computeIfAbsent(frame, Node::new);
+                node.value += stack.getValue();
+            }
+        }
+
+        int height = TITLE_HEIGHT + (root.depth() + 1) * FRAME_HEIGHT + PADDING;
+        double scale = root.value == 0 ? 0 : (WIDTH - 2.0 * PADDING) / root.value;
+
+        StringBuilder svg = new StringBuilder();
+        svg.append(String.format(Locale.ROOT,
+                "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"%d\" height=\"%d\" font-family=\"monospace\" font-size=\"11\">\n",
+                WIDTH, height));
+        svg.append(String.format(Locale.ROOT,
+                "<rect width=\"100%%\" height=\"100%%\" fill=\"#f8f8f8\"/>\n<text x=\"%d\" y=\"20\" font-size=\"14\">%s</text>\n",
+                PADDING, escape(title + " (" + root.value + " " + profile.getKind().getUnit() + ")")));
+        frame(svg, root, profile.getKind(), PADDING, height - PADDING - FRAME_HEIGHT, scale, root.value);
+        svg.append("</svg>\n");
+        return svg.toString();
+    }
+
+    private void frame(StringBuilder svg, Node node, StackProfile.Kind kind, double x, int y, double scale, long total) {
+        double width = node.value * scale;
+        if (width < MIN_FRAME_WIDTH) {
+            return;
+        }
+        String label = node.name + String.format(Locale.ROOT, " (%d, %.2f%%)", node.value, 100.0 * node.value / total);
+        svg.append(String.format(Locale.ROOT,
+                "<g><title>%s</title><rect x=\"%.1f\" y=\"%d\" width=\"%.1f\" height=\"%d\" fill=\"%s\" rx=\"2\"/>",
+                escape(label), x, y, width, FRAME_HEIGHT - 1, color(kind, node.name)));
+        int chars = (int) ((width - 6) / CHAR_WIDTH);
+        if (chars >= 3) {
+            String text = node.name.length() <= chars ? node.name : node.name.substring(0, chars - 2) + "..";
+            svg.append(String.format(Locale.ROOT, "<text x=\"%.1f\" y=\"%d\">%s</text>", x + 3, y + FRAME_HEIGHT - 4, escape(text)));
+        }
+        svg.append("</g>\n");
+
+        double childX = x;
+        for (Node child : node.children.values()) {
+            frame(svg, child, kind, childX, y - FRAME_HEIGHT, scale, total);
+            childX += child.value * scale;
+        }
+    }
+
+    /**
+     * CPU用暖色，分配用绿色，锁用蓝色，同一方法颜色固定
+     */
+    private static String color(StackProfile.Kind kind, String name) {
+        int hash = name.hashCode() & 0x7fffffff;
+        int v1 = hash % 55;
+        int v2 = (hash / 55) % 80;
+        switch (kind) {
+            case ALLOC:
+                return String.format(Locale.ROOT, "rgb(%d,%d,%d)", 50 + v1, 170 + v2 / 2, 50 + v1);
+            case LOCK:
+                return String.format(Locale.ROOT, "rgb(%d,%d,%d)", 80 + v1, 140 + v2 / 2, 215 + v1 / 2);
+            default:
+                return String.format(Locale.ROOT, "rgb(%d,%d,%d)", 205 + v1, 90 + v2 * 2, v1);
+        }
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static class Node {
+        private final String name;
+        private final Map<String, Node> children = new TreeMap<>();
+        private long value;
+
+        Node(String name) {
+            this.name = name;
+        }
+
+        int depth() {
+            int max = 0;
+            for (Node child : children.values()) {
+                max = Math.max(max, child.depth() + 1);
+            }
+            return max;
+        }
+    }
+}
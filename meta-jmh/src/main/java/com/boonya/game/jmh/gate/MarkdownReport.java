@@ -0,0 +1,168 @@
+package com.boonya.game.jmh.gate;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 生成基准对比的markdown报告，回归项置顶
+ */
+public class MarkdownReport {
+
+    public String render(BenchmarkRecord baseline, BenchmarkRecord current,
+                         List<RegressionComparator.Comparison> comparisons, double threshold) {
+        StringBuilder md = new StringBuilder();
+        md.append("# Benchmark report: ").append(current.getProfile()).append("\n\n");
+
+        md.append("| | Baseline | Current |\n");
+        md.append("|---|---|---|\n");
+        row(md, "Commit", baseline == null ? "-" : sha(baseline), sha(current));
+        row(md, "Time", baseline == null ? "-" : Instant.ofEpochMilli(baseline.getTimestamp()).toString(),
+                Instant.ofEpochMilli(current.getTimestamp()).toString());
+        row(md, "JVM", baseline == null ? "-" : baseline.getVmVersion(), current.getVmVersion());
+        row(md, "JVM flags", baseline == null ? "-" : code(String.join(" ", baseline.getJvmArgs())),
+                code(String.join(" ", current.getJvmArgs())));
+        md.append('\n');
+
+        long regressions = count(comparisons, RegressionComparator.Status.REGRESSION);
+        long improvements = count(comparisons, RegressionComparator.Status.IMPROVEMENT);
+        md.append(String.format(Locale.ROOT,
+                "**%d regression(s), %d improvement(s)** — significant = 99.9%% CIs disjoint and |change| ≥ %.1f%%\n\n",
+                regressions, improvements, threshold * 100));
+        if (baseline == null) {
+            md.append("> No baseline found, this run only records history.\n\n");
+        }
+
+        md.append("| Status | Benchmark | Mode | Unit | Baseline (CI) | Current (CI) | Change |\n");
+        md.append("|---|---|---|---|---|---|---|\n");
+        for (RegressionComparator.Comparison comparison : comparisons) {
+            BenchmarkRecord.Entry any = comparison.getCurrent() != null ? comparison.getCurrent() : comparison.getBaseline();
+            md.append("| ").append(badge(comparison.getStatus()))
+                    .append(" | ").append(shortName(any))
+                    .append(" | ").append(any.getMode())
+                    .append(" | ").append(any.getUnit())
+                    .append(" | ").append(score(comparison.getBaseline()))
+                    .append(" | ").append(score(comparison.getCurrent()))
+                    .append(" | ").append(comparison.getBaseline() == null || comparison.getCurrent() == null
+                            ? "-" : String.format(Locale.ROOT, "%+.2f%%", comparison.getChange() * 100))
+                    .append(" |\n");
+        }
+
+        appendLatency(md, comparisons);
+        appendProfiles(md, current);
+        return md.toString();
+    }
+
+    /**
+     * 采样模式的分位数对比，只作为解释性信息，不参与门禁
+     */
+    private void appendLatency(StringBuilder md, List<RegressionComparator.Comparison> comparisons) {
+        boolean header = false;
+        for (RegressionComparator.Comparison comparison : comparisons) {
+            BenchmarkRecord.Entry current = comparison.getCurrent();
+            if (current == null || current.getPercentiles().isEmpty()) {
+                continue;
+            }
+            if (!header) {
+                md.append("\n## Latency percentiles\n\n");
+                md.append("| Benchmark | Percentile | Baseline | Current | Change |\n");
+                md.append("|---|---|---|---|---|\n");
+                header = true;
+            }
+            Map<String, Double> base = comparison.getBaseline() == null ? Map.of() : comparison.getBaseline().getPercentiles();
+            for (Map.Entry<String, Double> p : current.getPercentiles().entrySet()) {
+                Double before = base.get(p.getKey());
+                md.append("| ").append(shortName(current))
+                        .append(" | ").append(p.getKey())
+                        .append(" | ").append(before == null ? "-" : number(before))
+                        .append(" | ").append(number(p.getValue()))
+                        .append(" | ").append(before == null || before == 0 ? "-"
+                                : String.format(Locale.ROOT, "%+.2f%%", (p.getValue() - before) / before * 100))
+                        .append(" |\n");
+            }
+        }
+    }
+
+    /**
+     * 剖析产物：火焰图链接与CPU热点，报告位于reports/，产物路径相对于结果根目录
+     */
+    private void appendProfiles(StringBuilder md, BenchmarkRecord current) {
+        if (current.getProfiles().isEmpty()) {
+            return;
+        }
+        md.append("\n## Where time went (").append(current.getProfiling()).append(")\n\n");
+        md.append("> Profiled run: scores include profiler overhead.\n");
+        for (BenchmarkRecord.Profile profile : current.getProfiles()) {
+            md.append("\n### ").append(profile.getBenchmark()).append("\n\n");
+            if (!profile.getFlameGraphs().isEmpty()) {
+                md.append("Flame graphs:");
+                profile.getFlameGraphs().forEach((kind, file) ->
+                        md.append(" [").append(kind).append("](../").append(file).append(")"));
+                md.append(" · recording `").append(profile.getRecording()).append("`\n\n");
+            }
+            if (!profile.getCpuHotSpots().isEmpty()) {
+                md.append("| CPU self | Method |\n");
+                md.append("|---|---|\n");
+                for (String hotSpot : profile.getCpuHotSpots()) {
+                    int split = hotSpot.indexOf(' ');
+                    md.append("| ").append(hotSpot, 0, split).append(" | ")
+                            .append(code(hotSpot.substring(split + 1))).append(" |\n");
+                }
+            }
+        }
+    }
+
+    private static void row(StringBuilder md, String name, String baseline, String current) {
+        md.append("| ").append(name).append(" | ").append(baseline).append(" | ").append(current).append(" |\n");
+    }
+
+    private static long count(List<RegressionComparator.Comparison> comparisons, RegressionComparator.Status status) {
+        return comparisons.stream().filter(c -> c.getStatus() == status).count();
+    }
+
+    private static String badge(RegressionComparator.Status status) {
+        switch (status) {
+            case REGRESSION:
+                return "🔴 regression";
+            case IMPROVEMENT:
+                return "🟢 improvement";
+            case INCONCLUSIVE:
+                return "⚪ inconclusive";
+            case NEW:
+                return "🆕 new";
+            case MISSING:
+                return "⚠️ missing";
+            default:
+                return "unchanged";
+        }
+    }
+
+    private static String shortName(BenchmarkRecord.Entry entry) {
+        String name = entry.getBenchmark();
+        int method = name.lastIndexOf('.');
+        int type = method > 0 ? name.lastIndexOf('.', method - 1) : -1;
+        String simple = type >= 0 ? name.substring(type + 1) : name;
+        return entry.getParams().isEmpty() ? simple : simple + " " + entry.getParams();
+    }
+
+    private static String score(BenchmarkRecord.Entry entry) {
+        if (entry == null) {
+            return "-";
+        }
+        return number(entry.getScore()) + " [" + number(entry.getCiLower()) + ", " + number(entry.getCiUpper()) + "]";
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.ROOT, Math.abs(value) >= 100 ? "%.0f" : "%.3f", value);
+    }
+
+    private static String sha(BenchmarkRecord record) {
+        String sha = record.getGitSha();
+        return code(sha.length() > 10 ? sha.substring(0, 10) : sha) + (record.isDirty() ? " (dirty)" : "");
+    }
+
+    private static String code(String text) {
+        return text == null || text.isEmpty() ? "-" : "`" + text + "`";
+    }
+}
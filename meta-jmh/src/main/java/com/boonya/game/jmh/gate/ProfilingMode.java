@@ -0,0 +1,36 @@
+package com.boonya.game.jmh.gate;
+
+import java.util.Arrays;
+
+/**
+ * 基准运行时挂载的剖析器
+ */
+public enum ProfilingMode {
+
+    /**
+     * 不挂载剖析器，门禁默认值
+     */
+    NONE,
+
+    /**
+     * JDK自带的Flight Recorder，任意JDK 11+可用
+     */
+    JFR,
+
+    /**
+     * async-profiler，无安全点偏差，需要本机安装libasyncProfiler
+     */
+    ASYNC,
+
+    /**
+     * 找到async-profiler时使用ASYNC，否则退回JFR
+     */
+    AUTO;
+
+    public static ProfilingMode of(String name) {
+        return Arrays.stream(values())
+                .filter(mode -> mode.name().equalsIgnoreCase(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown profiling mode: " + name));
+    }
+}
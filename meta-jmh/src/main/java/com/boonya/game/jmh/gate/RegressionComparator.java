@@ -0,0 +1,161 @@
+package com.boonya.game.jmh.gate;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 基于置信区间的回归判定
+ * <p>
+ * 只有当两次运行的99.9%置信区间不重叠、且相对变化超过阈值时才认定为回归或提升，
+ * 单次分数的涨跌落在区间内一律视为噪声。
+ * 模式不同的结果键不同，不会互相比较；单位不同时（如 ops/ms 与 ops/s）先把本次结果换算到基线的单位，
+ * 无法换算时记为 INCONCLUSIVE。
+ */
+public class RegressionComparator {
+
+    public enum Status {
+        REGRESSION, IMPROVEMENT, UNCHANGED, INCONCLUSIVE, NEW, MISSING
+    }
+
+    private final double threshold;
+
+    /**
+     * @param threshold 最小相对变化，例如0.05表示5%
+     */
+    public RegressionComparator(double threshold) {
+        this.threshold = threshold;
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    public List<Comparison> compare(BenchmarkRecord baseline, BenchmarkRecord current) {
+        Map<String, BenchmarkRecord.Entry> baselineEntries = new LinkedHashMap<>();
+        if (baseline != null) {
+            baseline.getResults().forEach(entry -> baselineEntries.put(entry.key(), entry));
+        }
+
+        List<Comparison> comparisons = new ArrayList<>();
+        for (BenchmarkRecord.Entry entry : current.getResults()) {
+            comparisons.add(compare(baselineEntries.remove(entry.key()), entry));
+        }
+        // 基线中存在但本次未运行的基准
+        baselineEntries.values().forEach(entry -> comparisons.add(new Comparison(entry, null, Status.MISSING, 0)));
+
+        comparisons.sort(Comparator.comparing(Comparison::getStatus).thenComparing(Comparison::getKey));
+        return comparisons;
+    }
+
+    Comparison compare(BenchmarkRecord.Entry baseline, BenchmarkRecord.Entry current) {
+        if (baseline == null) {
+            return new Comparison(null, current, Status.NEW, 0);
+        }
+
+        double factor = conversion(current.getUnit(), baseline.getUnit());
+        if (Double.isNaN(factor)) {
+            return new Comparison(baseline, current, Status.INCONCLUSIVE, 0);
+        }
+        double change = relativeChange(baseline.getScore(), current.getScore() * factor, current.higherIsBetter());
+        if (baseline.getSampleCount() < 2 || current.getSampleCount() < 2) {
+            return new Comparison(baseline, current, Status.INCONCLUSIVE, change);
+        }
+
+        boolean disjoint = current.getCiUpper() * factor < baseline.getCiLower()
+                || current.getCiLower() * factor > baseline.getCiUpper();
+        if (!disjoint || Math.abs(change) < threshold) {
+            return new Comparison(baseline, current, Status.UNCHANGED, change);
+        }
+        return new Comparison(baseline, current, change < 0 ? Status.REGRESSION : Status.IMPROVEMENT, change);
+    }
+
+    /**
+     * 相对变化，正数代表变好：吞吐取 (cur-base)/base，时间取 (base-cur)/base
+     */
+    static double relativeChange(double base, double current, boolean higherIsBetter) {
+        if (base == 0) {
+            return 0;
+        }
+        double delta = (current - base) / base;
+        return higherIsBetter ? delta : -delta;
+    }
+
+    /**
+     * 把分数从from单位换算到to单位的系数，支持JMH的 ops/&lt;时间&gt; 与 &lt;时间&gt;/op；无法换算时返回NaN
+     */
+    static double conversion(String from, String to) {
+        if (Objects.equals(from, to)) {
+            return 1;
+        }
+        if (from == null || to == null) {
+            return Double.NaN;
+        }
+        if (from.startsWith("ops/") && to.startsWith("ops/")) {
+            // 每X的操作数，X越长数值越大
+            return seconds(to.substring(4)) / seconds(from.substring(4));
+        }
+        if (from.endsWith("/op") && to.endsWith("/op")) {
+            return seconds(from.substring(0, from.length() - 3)) / seconds(to.substring(0, to.length() - 3));
+        }
+        return Double.NaN;
+    }
+
+    private static double seconds(String unit) {
+        switch (unit) {
+            case "s":
+                return 1;
+            case "ms":
+                return 1e-3;
+            case "us":
+            case "μs":
+                return 1e-6;
+            case "ns":
+                return 1e-9;
+            case "min":
+                return 60;
+            default:
+                return Double.NaN;
+        }
+    }
+
+    /**
+     * 单个基准的对比结果
+     */
+    public static class Comparison {
+        private final BenchmarkRecord.Entry baseline;
+        private final BenchmarkRecord.Entry current;
+        private final Status status;
+        private final double change;
+
+        public Comparison(BenchmarkRecord.Entry baseline, BenchmarkRecord.Entry current, Status status, double change) {
+            this.baseline = baseline;
+            this.current = current;
+            this.status = status;
+            this.change = change;
+        }
+
+        public BenchmarkRecord.Entry getBaseline() {
+            return baseline;
+        }
+
+        public BenchmarkRecord.Entry getCurrent() {
+            return current;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public double getChange() {
+            return change;
+        }
+
+        public String getKey() {
+            return current != null ? current.key() : baseline.key();
+        }
+    }
+}
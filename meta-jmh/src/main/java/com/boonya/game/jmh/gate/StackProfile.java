@@ -0,0 +1,222 @@
+package com.boonya.game.jmh.gate;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 按调用栈聚合的剖析数据（折叠栈格式，即火焰图的输入），从JFR文件读取
+ * <p>
+ * JFR和async-profiler的jfr输出使用相同的事件类型：
+ * <ul>
+ *     <li>CPU：jdk.ExecutionSample，每个样本权重1</li>
+ *     <li>分配：jdk.ObjectAllocationSample（JDK 16+）或TLAB分配事件，权重为字节数</li>
+ *     <li>锁竞争：jdk.JavaMonitorEnter / jdk.ThreadPark，权重为阻塞纳秒数</li>
+ * </ul>
+ * 也可以用 {@link #readCollapsed} 读取已有的折叠栈文件（async-profiler collapsed 输出或 {@link #writeCollapsed} 的结果）。
+ */
+public class StackProfile {
+
+    public enum Kind {
+        CPU("samples"),
+        ALLOC("bytes"),
+        LOCK("ns");
+
+        private final String unit;
+
+        Kind(String unit) {
+            this.unit = unit;
+        }
+
+        public String getUnit() {
+            return unit;
+        }
+
+        public String fileName() {
+            return name().toLowerCase();
+        }
+    }
+
+    private final Kind kind;
+
+    /**
+     * 折叠栈（根在前，以;分隔）-> 权重
+     */
+    private final Map<String, Long> stacks = new HashMap<>();
+
+    /**
+     * 栈顶方法 -> 自身权重
+     */
+    private final Map<String, Long> selfWeights = new HashMap<>();
+
+    private long total;
+
+    public StackProfile(Kind kind) {
+        this.kind = kind;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public Map<String, Long> getStacks() {
+        return stacks;
+    }
+
+    public boolean isEmpty() {
+        return total == 0;
+    }
+
+    void add(RecordedStackTrace stackTrace, long weight) {
+        if (stackTrace == null || weight <= 0) {
+            return;
+        }
+        List<RecordedFrame> frames = stackTrace.getFrames();
+        if (frames.isEmpty()) {
+            return;
+        }
+        StringBuilder collapsed = new StringBuilder();
+        for (int i = frames.size() - 1; i >= 0; i--) {
+            if (collapsed.length() > 0) {
+                collapsed.append(';');
+            }
+            collapsed.append(frameName(frames.get(i)));
+        }
+        add(collapsed.toString(), frameName(frames.get(0)), weight);
+    }
+
+    private void add(String collapsed, String top, long weight) {
+        stacks.merge(collapsed, weight, Long::sum);
+        selfWeights.merge(top, weight, Long::sum);
+        total += weight;
+    }
+
+    /**
+     * 自身权重最高的n个方法，按权重降序
+     */
+    public List<Map.Entry<String, Long>> topSelf(int n) {
+        return selfWeights.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(n)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 写出折叠栈文件，可直接交给 flamegraph.pl / speedscope 等工具
+     */
+    public void writeCollapsed(Path file) {
+        List<String> lines = new ArrayList<>(stacks.size());
+        stacks.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey(Comparator.naturalOrder()))
+                .forEach(e -> lines.add(e.getKey() + " " + e.getValue()));
+        try {
+            Files.write(file, lines, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write collapsed stacks: " + file, e);
+        }
+    }
+
+    /**
+     * 读取折叠栈文件，每行为“根;...;栈顶 权重”，空行忽略
+     *
+     * @throws IllegalArgumentException 行格式不对
+     */
+    public static StackProfile readCollapsed(Kind kind, Path file) throws IOException {
+        return parseCollapsed(kind, Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    static StackProfile parseCollapsed(Kind kind, List<String> lines) {
+        StackProfile profile = new StackProfile(kind);
+        for (String line : lines) {
+            if (line.isBlank()) {
+                continue;
+            }
+            // 方法名中不含空格，最后一个空格之后是权重
+            int space = line.lastIndexOf(' ');
+            if (space <= 0) {
+                throw new IllegalArgumentException("Malformed collapsed stack line: " + line);
+            }
+            String collapsed = line.substring(0, space);
+            long weight;
+            try {
+                weight = Long.parseLong(line.substring(space + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Malformed collapsed stack weight: " + line, e);
+            }
+            if (weight > 0) {
+                profile.add(collapsed, collapsed.substring(collapsed.lastIndexOf(';') + 1), weight);
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * 读取一个JFR文件，返回各类别的剖析数据（没有对应事件的类别为空）
+     */
+    public static Map<Kind, StackProfile> read(Path jfr) throws IOException {
+        StackProfile cpu = new StackProfile(Kind.CPU);
+        StackProfile allocSamples = new StackProfile(Kind.ALLOC);
+        StackProfile allocTlab = new StackProfile(Kind.ALLOC);
+        StackProfile lock = new StackProfile(Kind.LOCK);
+
+        try (RecordingFile recording = new RecordingFile(jfr)) {
+            while (recording.hasMoreEvents()) {
+                RecordedEvent event = recording.readEvent();
+                switch (event.getEventType().getName()) {
+                    case "jdk.ExecutionSample":
+                        cpu.add(event.getStackTrace(), 1);
+                        break;
+                    case "jdk.ObjectAllocationSample":
+                        allocSamples.add(event.getStackTrace(), event.getLong("weight"));
+                        break;
+                    case "jdk.ObjectAllocationInNewTLAB":
+                        allocTlab.add(event.getStackTrace(), event.getLong("tlabSize"));
+                        break;
+                    case "jdk.ObjectAllocationOutsideTLAB":
+                        allocTlab.add(event.getStackTrace(), event.getLong("allocationSize"));
+                        break;
+                    case "jdk.JavaMonitorEnter":
+                    case "jdk.ThreadPark":
+                        lock.add(event.getStackTrace(), event.getDuration().toNanos());
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        Map<Kind, StackProfile> profiles = new EnumMap<>(Kind.class);
+        profiles.put(Kind.CPU, cpu);
+        // 两种分配事件同时开启时会重复计数，优先使用采样事件
+        profiles.put(Kind.ALLOC, allocSamples.isEmpty() ? allocTlab : allocSamples);
+        profiles.put(Kind.LOCK, lock);
+        return profiles;
+    }
+
+    private static String frameName(RecordedFrame frame) {
+        if (frame.getMethod() == null) {
+            return "[unknown]";
+        }
+        String type = frame.getMethod().getType() == null ? "" : frame.getMethod().getType().getName() + ".";
+        // ;和空格是折叠栈格式的分隔符
+        return (type + frame.getMethod().getName()).replace(';', ':').replace(' ', '_');
+    }
+}
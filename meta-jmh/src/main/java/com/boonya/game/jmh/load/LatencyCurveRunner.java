@@ -0,0 +1,129 @@
+package com.boonya.game.jmh.load;
+
+import com.boonya.game.jmh.gate.BenchmarkLauncher;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 延迟-负载曲线：对同一接口按多个恒定到达率依次施压，输出各档位的延迟分位数
+ * <p>
+ * 用法：
+ * <pre>
+ * java -cp boonya-game-jmh.jar com.boonya.game.jmh.load.LatencyCurveRunner \
+ *      --target users|reactive-users|orders [--rates 500,1000,2000,4000] [--duration 10] [--warmup 3] \
+ *      [--users 10000] [--connections 256] [--max-in-flight 20000] [--timeout-ms 2000] \
+ *      [--url http://host:port] [--threads platform|virtual] [--read-path blocking|reactive] [--out bench-results/load]
+ * </pre>
+ * 不指定 --url 时在进程内启动 {@link StubbedBackendServer}，--threads 选择其执行模式，--read-path 选择用户查询接口的读路径。
+ */
+public class LatencyCurveRunner {
+
+    private static final double[] PERCENTILES = {50.0, 90.0, 99.0, 99.9};
+
+    public static void main(String[] args) {
+        Map<String, String> options = BenchmarkLauncher.parse(args);
+        LoadTarget target = LoadTarget.of(options.getOrDefault("target", "users"));
+        int[] rates = Arrays.stream(options.getOrDefault("rates", "500,1000,2000,4000").split(","))
+                .map(String::trim)
+                .mapToInt(Integer::parseInt)
+                .toArray();
+        Duration duration = Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "10")));
+        Duration warmup = Duration.ofSeconds(Long.parseLong(options.getOrDefault("warmup", "3")));
+        int userCount = Integer.parseInt(options.getOrDefault("users", "10000"));
+        int connections = Integer.parseInt(options.getOrDefault("connections", "256"));
+        int maxInFlight = Integer.parseInt(options.getOrDefault("max-in-flight", "20000"));
+        Duration timeout = Duration.ofMillis(Long.parseLong(options.getOrDefault("timeout-ms", "2000")));
+        boolean virtualThreads = "virtual".equalsIgnoreCase(options.getOrDefault("threads", "platform"));
+        String readPath = options.getOrDefault("read-path", "blocking");
+        Path out = Paths.get(options.getOrDefault("out", "bench-results/load"));
+
+        ConfigurableApplicationContext server = null;
+        String baseUrl = options.get("url");
+        if (baseUrl == null) {
+            server = StubbedBackendServer.start(userCount, virtualThreads, readPath);
+            baseUrl = "http://127.0.0.1:" + StubbedBackendServer.port(server);
+        }
+
+        List<LoadStepResult> results = new ArrayList<>();
+        try (OpenLoopLoadGenerator generator =
+                     new OpenLoopLoadGenerator(baseUrl, connections, maxInFlight, timeout, userCount)) {
+            for (int rate : rates) {
+                System.out.printf(Locale.ROOT, "%s: warmup %d req/s for %ds%n", target, rate, warmup.getSeconds());
+                generator.run(target, rate, warmup);
+                System.out.printf(Locale.ROOT, "%s: measure %d req/s for %ds%n", target, rate, duration.getSeconds());
+                LoadStepResult result = generator.run(target, rate, duration);
+                results.add(result);
+                System.out.printf(Locale.ROOT, "  achieved %.0f req/s, p99 %.3f ms, errors %d (%.2f%%), rejected %d (%.2f%%)%n",
+                        result.getAchievedRate(), result.latencyMillis(99.0), result.getErrors(),
+                        result.getErrorRate() * 100, result.getRejected(), result.getRejectRate() * 100);
+            }
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+
+        String markdown = render(target, baseUrl, duration, results);
+        System.out.println(markdown);
+        System.out.println("Latency curve saved: " + save(out, target, markdown, results));
+    }
+
+    static String render(LoadTarget target, String baseUrl, Duration duration, List<LoadStepResult> results) {
+        StringBuilder md = new StringBuilder();
+        md.append("# Latency vs offered load: ").append(target).append("\n\n");
+        md.append("Target `").append(baseUrl).append("`, ").append(duration.getSeconds())
+                .append("s per step, open-loop constant arrival rate, latency measured from intended send time.\n")
+                .append("Percentiles include every scheduled request: failures at their completion time, ")
+                .append("rejected requests at the request timeout.\n\n");
+        md.append("| Offered (req/s) | Achieved (req/s) | Errors | Error rate | Rejected | Reject rate | p50 (ms) | p90 (ms) | p99 (ms) | p99.9 (ms) | max (ms) | p99 service (ms) |\n");
+        md.append("|---|---|---|---|---|---|---|---|---|---|---|---|\n");
+        for (LoadStepResult result : results) {
+            md.append(String.format(Locale.ROOT, "| %d | %.0f | %d | %.2f%% | %d | %.2f%% |",
+                    result.getOfferedRate(), result.getAchievedRate(), result.getErrors(), result.getErrorRate() * 100,
+                    result.getRejected(), result.getRejectRate() * 100));
+            for (double p : PERCENTILES) {
+                md.append(String.format(Locale.ROOT, " %.3f |", result.latencyMillis(p)));
+            }
+            md.append(String.format(Locale.ROOT, " %.3f | %.3f |%n",
+                    result.maxLatencyMillis(), result.serviceTimeMillis(99.0)));
+        }
+        return md.toString();
+    }
+
+    /**
+     * 保存markdown报告，以及每个档位的HdrHistogram分位数分布（.hgrm，单位毫秒，可直接用HdrHistogram plotter画图）
+     */
+    static Path save(Path out, LoadTarget target, String markdown, List<LoadStepResult> results) {
+        String prefix = "latency-" + target.name().toLowerCase() + "-"
+                + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        try {
+            Files.createDirectories(out);
+            Path report = out.resolve(prefix + ".md");
+            Files.writeString(report, markdown, StandardCharsets.UTF_8);
+            for (LoadStepResult result : results) {
+                Path hgrm = out.resolve(prefix + "-" + result.getOfferedRate() + ".hgrm");
+                try (PrintStream stream = new PrintStream(Files.newOutputStream(hgrm), false, StandardCharsets.UTF_8)) {
+                    result.getLatency().outputPercentileDistribution(stream, 1000.0);
+                }
+            }
+            return report;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write latency report to " + out, e);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.boonya.game.jmh.load;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * 单个压力档位的结果，延迟单位为微秒
+ */
+public class LoadStepResult {
+
+    private final int offeredRate;
+    private final long durationNanos;
+    private final long sent;
+    private final long succeeded;
+    private final long errors;
+    private final long rejected;
+
+    /**
+     * 从计划发送时刻起算的响应时间（已校正协调遗漏），包含全部计划内的请求：
+     * 失败按结束时刻计，被拒绝的按超时时间计
+     */
+    private final Histogram latency;
+
+    /**
+     * 从实际发出时刻起算的服务时间，只含成功请求
+     */
+    private final Histogram serviceTime;
+
+    public LoadStepResult(int offeredRate, long durationNanos, long sent, long succeeded, long errors, long rejected,
+                          Histogram latency, Histogram serviceTime) {
+        this.offeredRate = offeredRate;
+        this.durationNanos = durationNanos;
+        this.sent = sent;
+        this.succeeded = succeeded;
+        this.errors = errors;
+        this.rejected = rejected;
+        this.latency = latency;
+        this.serviceTime = serviceTime;
+    }
+
+    public int getOfferedRate() {
+        return offeredRate;
+    }
+
+    public long getSent() {
+        return sent;
+    }
+
+    /**
+     * 返回2xx的请求数
+     */
+    public long getCompleted() {
+        return succeeded;
+    }
+
+    /**
+     * 计划发送的请求数（已发出 + 被拒绝）
+     */
+    public long getScheduled() {
+        return sent + rejected;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * 失败（非2xx、连接错误、超时）占计划请求数的比例
+     */
+    public double getErrorRate() {
+        long scheduled = getScheduled();
+        return scheduled == 0 ? 0 : (double) errors / scheduled;
+    }
+
+    public double getRejectRate() {
+        long scheduled = getScheduled();
+        return scheduled == 0 ? 0 : (double) rejected / scheduled;
+    }
+
+    public double getAchievedRate() {
+        return durationNanos == 0 ? 0 : getCompleted() * 1e9 / durationNanos;
+    }
+
+    public Histogram getLatency() {
+        return latency;
+    }
+
+    public Histogram getServiceTime() {
+        return serviceTime;
+    }
+
+    /**
+     * @param percentile 0~100
+     * @return 毫秒
+     */
+    public double latencyMillis(double percentile) {
+        return latency.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    public double maxLatencyMillis() {
+        return latency.getMaxValue() / 1000.0;
+    }
+
+    public double serviceTimeMillis(double percentile) {
+        return serviceTime.getValueAtPercentile(percentile) / 1000.0;
+    }
+}
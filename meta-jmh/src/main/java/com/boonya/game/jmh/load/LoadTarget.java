@@ -0,0 +1,52 @@
+package com.boonya.game.jmh.load;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 压测目标接口
+ */
+public enum LoadTarget {
+
+    /**
+     * TestController: GET /api/users/{id}
+     */
+    USERS("GET", "/api/users/%d"),
+
+    /**
+     * ReactiveUserController: GET /users/{id}
+     */
+    REACTIVE_USERS("GET", "/users/%d"),
+
+    /**
+     * TestController: POST /api/orders
+     */
+    ORDERS("POST", "/api/orders?userId=%d&amount=99.9");
+
+    private final String method;
+    private final String pathTemplate;
+
+    LoadTarget(String method, String pathTemplate) {
+        this.method = method;
+        this.pathTemplate = pathTemplate;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * 在 1..userCount 内随机选择用户，生成请求路径
+     */
+    public String nextPath(int userCount) {
+        return String.format(pathTemplate, ThreadLocalRandom.current().nextInt(userCount) + 1);
+    }
+
+    public static LoadTarget of(String name) {
+        return Arrays.stream(values())
+                .filter(target -> target.name().replace('_', '-').equalsIgnoreCase(name)
+                        || target.name().equalsIgnoreCase(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown load target: " + name));
+    }
+}
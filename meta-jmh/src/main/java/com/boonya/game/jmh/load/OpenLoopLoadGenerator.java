@@ -0,0 +1,140 @@
+package com.boonya.game.jmh.load;
+
+import org.HdrHistogram.Recorder;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 恒定到达率（开环）压测器
+ * <p>
+ * 第 i 个请求的计划发送时刻固定为 start + i / rate，与前一个请求是否返回无关；
+ * 响应时间从计划时刻起算，服务端变慢造成的排队会完整体现在分位数中，避免协调遗漏。
+ * 每个计划内的请求都计入响应时间分布：成功与失败（含非2xx、超时）按结束时刻计，
+ * 因在途过多未发出的请求按超时时间计，失败和拒绝不会从分位数中消失；错误率与拒绝率单独报告。
+ * 请求通过 Reactor Netty 非阻塞发送，调度线程从不等待响应。
+ */
+public class OpenLoopLoadGenerator implements AutoCloseable {
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final ConnectionProvider connectionProvider;
+    private final HttpClient client;
+    private final Duration timeout;
+    private final int maxInFlight;
+    private final int userCount;
+
+    /**
+     * @param baseUrl        目标服务地址
+     * @param maxConnections 连接池大小
+     * @param maxInFlight    在途请求上限，超过时该请求记为rejected（压测端自我保护，不是服务端拒绝），响应时间按超时计
+     * @param timeout        单请求超时，超时记为错误
+     * @param userCount      请求路径中用户id的取值范围
+     */
+    public OpenLoopLoadGenerator(String baseUrl, int maxConnections, int maxInFlight, Duration timeout, int userCount) {
+        this.connectionProvider = ConnectionProvider.builder("open-loop")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(-1)
+                .pendingAcquireTimeout(timeout)
+                .build();
+        this.client = HttpClient.create(connectionProvider).baseUrl(baseUrl);
+        this.timeout = timeout;
+        this.maxInFlight = maxInFlight;
+        this.userCount = userCount;
+    }
+
+    public LoadStepResult run(LoadTarget target, int ratePerSecond, Duration duration) {
+        Recorder latency = new Recorder(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+        Recorder serviceTime = new Recorder(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+        LongAdder succeeded = new LongAdder();
+        LongAdder errors = new LongAdder();
+        LongAdder rejected = new LongAdder();
+        AtomicInteger inFlight = new AtomicInteger();
+
+        double intervalNanos = 1e9 / ratePerSecond;
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        long sent = 0;
+
+        for (long i = 0; ; i++) {
+            long intended = start + (long) (i * intervalNanos);
+            if (intended >= end) {
+                break;
+            }
+            long now;
+            while ((now = System.nanoTime()) < intended) {
+                LockSupport.parkNanos(intended - now);
+            }
+            if (inFlight.get() >= maxInFlight) {
+                // 没有发出就不知道何时返回，按超时计，与发出后超时的请求同样对待
+                rejected.increment();
+                latency.recordValue(toMicros(Math.max(now - intended, 0) + timeout.toNanos()));
+                continue;
+            }
+
+            inFlight.incrementAndGet();
+            sent++;
+            long sendAt = now;
+            request(target).subscribe(
+                    status -> {
+                        long completedAt = System.nanoTime();
+                        latency.recordValue(toMicros(completedAt - intended));
+                        if (status >= 200 && status < 300) {
+                            succeeded.increment();
+                            serviceTime.recordValue(toMicros(completedAt - sendAt));
+                        } else {
+                            errors.increment();
+                        }
+                        inFlight.decrementAndGet();
+                    },
+                    error -> {
+                        // 超时在发出timeout之后才触发，这里的耗时不低于超时时间
+                        latency.recordValue(toMicros(System.nanoTime() - intended));
+                        errors.increment();
+                        inFlight.decrementAndGet();
+                    });
+        }
+
+        awaitDrain(inFlight);
+        long elapsed = System.nanoTime() - start;
+        return new LoadStepResult(ratePerSecond, elapsed, sent, succeeded.sum(), errors.sum(), rejected.sum(),
+                latency.getIntervalHistogram(), serviceTime.getIntervalHistogram());
+    }
+
+    private Mono<Integer> request(LoadTarget target) {
+        String path = target.nextPath(userCount);
+        HttpClient.ResponseReceiver<?> receiver = "POST".equals(target.getMethod())
+                ? client.post().uri(path)
+                : client.get().uri(path);
+        return receiver
+                .responseSingle((response, body) -> body.asByteArray()
+                        .then(Mono.just(response.status().code())))
+                .timeout(timeout);
+    }
+
+    /**
+     * 等待在途请求结束，最多等待一个超时周期
+     */
+    private void awaitDrain(AtomicInteger inFlight) {
+        long deadline = System.nanoTime() + timeout.toNanos() + TimeUnit.SECONDS.toNanos(1);
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+    }
+
+    private static long toMicros(long nanos) {
+        return Math.min(Math.max(nanos / 1000, 1), HIGHEST_TRACKABLE_MICROS);
+    }
+
+    @Override
+    public void close() {
+        connectionProvider.disposeLater().block(timeout);
+    }
+}
@@ -0,0 +1,102 @@
+package com.boonya.game.jmh.load;
+
+import com.boonya.game.config.CacheConfig;
+import com.boonya.game.config.ReactiveUserConfig;
+import com.boonya.game.config.TheadPoolConfig;
+import com.boonya.game.controller.ReactiveUserController;
+import com.boonya.game.controller.TestController;
+import com.boonya.game.dao.UserRepository;
+import com.boonya.game.datasource.aop.DataSourceAspect;
+import com.boonya.game.jmh.fake.InMemoryRedisTemplate;
+import com.boonya.game.jmh.fake.InMemoryUserRepository;
+import com.boonya.game.service.OrderService;
+import com.boonya.game.service.UserService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.jpa.JpaRepositoriesAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.redis.RedisReactiveAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.redis.RedisRepositoriesAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+
+/**
+ * 进程内被压服务：真实的 TestController/ReactiveUserController 与服务层，
+ * 数据库和Redis替换为内存实现，跑在随机端口的内嵌 Tomcat 上
+ * <p>
+ * 刻意不加 @Configuration，避免被主应用的组件扫描带入。
+ */
+@EnableAutoConfiguration(exclude = {
+        DataSourceAutoConfiguration.class,
+        HibernateJpaAutoConfiguration.class,
+        JpaRepositoriesAutoConfiguration.class,
+        RedisAutoConfiguration.class,
+        RedisReactiveAutoConfiguration.class,
+        RedisRepositoriesAutoConfiguration.class
+})
+@Import({TestController.class, ReactiveUserController.class, CacheConfig.class, TheadPoolConfig.class,
+        ReactiveUserConfig.class, DataSourceAspect.class})
+public class StubbedBackendServer {
+
+    @Bean
+    public UserRepository userRepository(@Value("${load.user-count:10000}") int userCount) {
+        return new InMemoryUserRepository(userCount);
+    }
+
+    @Bean
+    public InMemoryRedisTemplate redisTemplate() {
+        return new InMemoryRedisTemplate();
+    }
+
+    @Bean
+    public UserService userService(CacheManager cacheManager, InMemoryRedisTemplate redisTemplate,
+                                   UserRepository userRepository) {
+        return new UserService(cacheManager, redisTemplate, userRepository);
+    }
+
+    @Bean
+    public OrderService orderService() {
+        return new OrderService();
+    }
+
+    public static ConfigurableApplicationContext start(int userCount) {
+        return start(userCount, false);
+    }
+
+    /**
+     * @param virtualThreads 开启 spring.threads.virtual.enabled，请求处理与阻塞调用都跑在虚拟线程上（JDK 21+）
+     */
+    public static ConfigurableApplicationContext start(int userCount, boolean virtualThreads) {
+        return start(userCount, virtualThreads, "blocking");
+    }
+
+    /**
+     * @param readPath 两个用户查询接口的读路径：blocking（boundedElastic上调用UserService）或 reactive（ReactiveUserService），
+     *                 桩中没有Redis，响应式路径只有L1和卸载的内存仓库两层
+     */
+    public static ConfigurableApplicationContext start(int userCount, boolean virtualThreads, String readPath) {
+        // devtools 的重启器会用空参数重新调用 main，压测进程内必须关闭
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        return new SpringApplicationBuilder(StubbedBackendServer.class)
+                .web(WebApplicationType.REACTIVE)
+                .properties("server.port=0",
+                        "load.user-count=" + userCount,
+                        "spring.threads.virtual.enabled=" + virtualThreads,
+                        "user.read-path.users=" + readPath,
+                        "user.read-path.api-users=" + readPath,
+                        "spring.main.banner-mode=off",
+                        "logging.level.root=WARN")
+                .run();
+    }
+
+    public static int port(ConfigurableApplicationContext context) {
+        return ((WebServerApplicationContext) context).getWebServer().getPort();
+    }
+}
@@ -0,0 +1,87 @@
+package com.boonya.game.jmh.micro;
+
+import com.boonya.game.jmh.fake.InMemoryRedisTemplate;
+import com.boonya.game.jmh.fake.InMemoryUserRepository;
+import com.boonya.game.jmh.fake.ServiceFixtures;
+import com.boonya.game.model.User;
+import com.boonya.game.service.UserService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DataSourceAspect 的单次调用开销：同一个UserService实例直接调用与经AOP代理调用对比
+ * <ul>
+ *     <li>findById：@ReadOnly，同时命中自动读写分离切点</li>
+ *     <li>save：@Master</li>
+ *     <li>getUserLockFree：按方法名自动路由到从库</li>
+ *     <li>deleteUser：按方法名自动路由到主库</li>
+ * </ul>
+ * aspect=cached 为当前实现（按Method缓存路由、跳过嵌套切换），aspect=legacy 为优化前的实现
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DataSourceAspectBenchmark {
+
+    @Param({"cached", "legacy"})
+    private String aspect;
+
+    private UserService direct;
+    private UserService proxied;
+    private User user;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        direct = ServiceFixtures.userService(ServiceFixtures.caffeineCacheManager(),
+                new InMemoryRedisTemplate(), new InMemoryUserRepository(1000));
+        proxied = "legacy".equals(aspect)
+                ? ServiceFixtures.withAspect(direct, new LegacyDataSourceAspect())
+                : ServiceFixtures.withDataSourceAspect(direct);
+        user = new User(1L, "user1", "user1@example.com");
+    }
+
+    @Benchmark
+    public void readOnlyDirect(Blackhole blackhole) {
+        blackhole.consume(direct.findById(1L));
+    }
+
+    @Benchmark
+    public void readOnlyProxied(Blackhole blackhole) {
+        blackhole.consume(proxied.findById(1L));
+    }
+
+    @Benchmark
+    public void masterDirect(Blackhole blackhole) {
+        blackhole.consume(direct.save(user));
+    }
+
+    @Benchmark
+    public void masterProxied(Blackhole blackhole) {
+        blackhole.consume(proxied.save(user));
+    }
+
+    @Benchmark
+    public void autoReadDirect(Blackhole blackhole) {
+        blackhole.consume(direct.getUserLockFree(1L));
+    }
+
+    @Benchmark
+    public void autoReadProxied(Blackhole blackhole) {
+        blackhole.consume(proxied.getUserLockFree(1L));
+    }
+
+    @Benchmark
+    public void autoWriteDirect(Blackhole blackhole) {
+        blackhole.consume(direct.deleteUser(1L));
+    }
+
+    @Benchmark
+    public void autoWriteProxied(Blackhole blackhole) {
+        blackhole.consume(proxied.deleteUser(1L));
+    }
+}
@@ -0,0 +1,161 @@
+package com.boonya.game.jmh.micro;
+
+import com.boonya.game.cache.local.BoundedLocalCache;
+import com.boonya.game.model.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 本地缓存在读写混合下的扩展性，8~64线程，读占比90%与50%
+ * <ul>
+ *     <li>stampedLock：原先的ConcurrentHashMap外包一把StampedLock，每次写都取全局写锁，所有写串行，并使并发的乐观读失效</li>
+ *     <li>concurrentHashMap：去掉锁的裸ConcurrentHashMap，无界无统计，作为上限参照</li>
+ *     <li>bounded：{@link BoundedLocalCache}，有界淘汰加LongAdder统计</li>
+ * </ul>
+ * 键空间与容量相同，写入基本是覆盖已有键，测的是锁竞争而不是淘汰。
+ * 线程数无法参数化，每个线程数对应一个基准方法。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LocalCacheContentionBenchmark {
+
+    private static final int KEYS = 10_000;
+
+    @Param({"stampedLock", "concurrentHashMap", "bounded"})
+    private String impl;
+
+    @Param({"90", "50"})
+    private int readPercent;
+
+    private LocalCache cache;
+    private User[] users;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        switch (impl) {
+            case "stampedLock":
+                cache = new StampedLockCache();
+                break;
+            case "concurrentHashMap":
+                cache = new MapCache();
+                break;
+            default:
+                BoundedLocalCache<Long, User> bounded = new BoundedLocalCache<>("bench", KEYS);
+                cache = new LocalCache() {
+                    @Override
+                    public User get(Long id) {
+                        return bounded.get(id);
+                    }
+
+                    @Override
+                    public void put(Long id, User user) {
+                        bounded.put(id, user);
+                    }
+                };
+        }
+        users = new User[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            long id = i + 1L;
+            users[i] = new User(id, "user" + id, "user" + id + "@example.com");
+            cache.put(id, users[i]);
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object threads8() {
+        return operate();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Object threads16() {
+        return operate();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public Object threads32() {
+        return operate();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Object threads64() {
+        return operate();
+    }
+
+    private Object operate() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        User user = users[random.nextInt(KEYS)];
+        if (random.nextInt(100) < readPercent) {
+            return cache.get(user.getId());
+        }
+        cache.put(user.getId(), user);
+        return user;
+    }
+
+    private interface LocalCache {
+
+        User get(Long id);
+
+        void put(Long id, User user);
+    }
+
+    /**
+     * MonitoredUserService / UserService.getUserLockFree 原先的写法
+     */
+    private static final class StampedLockCache implements LocalCache {
+
+        private final ConcurrentHashMap<Long, User> map = new ConcurrentHashMap<>(KEYS);
+        private final StampedLock lock = new StampedLock();
+
+        @Override
+        public User get(Long id) {
+            long stamp = lock.tryOptimisticRead();
+            User user = map.get(id);
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    user = map.get(id);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return user;
+        }
+
+        @Override
+        public void put(Long id, User user) {
+            long stamp = lock.writeLock();
+            try {
+                map.put(id, user);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    private static final class MapCache implements LocalCache {
+
+        private final ConcurrentHashMap<Long, User> map = new ConcurrentHashMap<>(KEYS);
+
+        @Override
+        public User get(Long id) {
+            return map.get(id);
+        }
+
+        @Override
+        public void put(Long id, User user) {
+            map.put(id, user);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.boonya.game.jmh.micro;
+
+import com.boonya.game.jmh.fake.InMemoryRedisTemplate;
+import com.boonya.game.jmh.fake.InMemoryUserRepository;
+import com.boonya.game.jmh.fake.ServiceFixtures;
+import com.boonya.game.model.User;
+import com.boonya.game.service.UserService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.support.NoOpCacheManager;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AbstractMultiLevelCache.findById 在各级命中时的开销，不依赖Spring/MySQL/Redis
+ * <ul>
+ *     <li>L1：本地Caffeine命中</li>
+ *     <li>L2：本地缓存关闭，内存Redis命中</li>
+ *     <li>DB：两级缓存都不保留数据，每次穿透到仓库（包含异步回填的开销）</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Threads(4)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MultiLevelCacheMicroBenchmark {
+
+    private static final String CACHE_NAME = "users";
+
+    /**
+     * 100000 超过本地缓存上限 10_000，L1 档位下可观察淘汰后穿透的回落
+     */
+    @Param({"1000", "100000"})
+    private int userCount;
+
+    @Param({"L1", "L2", "DB"})
+    private String tier;
+
+    private UserService userService;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        InMemoryUserRepository repository = new InMemoryUserRepository(userCount);
+        CacheManager localCache;
+        InMemoryRedisTemplate redis;
+
+        switch (tier) {
+            case "L1":
+                localCache = ServiceFixtures.caffeineCacheManager();
+                redis = new InMemoryRedisTemplate();
+                Cache cache = localCache.getCache(CACHE_NAME);
+                repository.findAll().forEach(user -> cache.put(user.getId(), user));
+                break;
+            case "L2":
+                localCache = new NoOpCacheManager();
+                redis = new InMemoryRedisTemplate();
+                repository.findAll().forEach(user ->
+                        redis.opsForValue().set(CACHE_NAME + "_:" + user.getId(), user));
+                break;
+            case "DB":
+                localCache = new NoOpCacheManager();
+                redis = new InMemoryRedisTemplate(true);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown tier: " + tier);
+        }
+
+        userService = ServiceFixtures.userService(localCache, redis, repository);
+    }
+
+    @Benchmark
+    public void getUserMultiLevel(Blackhole blackhole) {
+        long id = ThreadLocalRandom.current().nextLong(1, userCount + 1L);
+        User user = userService.getUserMultiLevel(id);
+        blackhole.consume(user);
+    }
+}
@@ -0,0 +1,111 @@
+package com.boonya.game.jmh.micro;
+
+import com.boonya.game.id.SnowflakeIdGenerator;
+import com.boonya.game.order.MappedOrderEventLog;
+import com.boonya.game.order.OrderEventLog;
+import com.boonya.game.service.OrderService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OrderService 的内存操作开销，模拟处理耗时置0，处理阶段在调用线程同步执行
+ * <p>
+ * eventLog=none 不持久化，eventLog=mapped 每个事件追加到内存映射日志（不定时force）
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Threads(4)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrderServiceMicroBenchmark {
+
+    private static final int CREATE_BATCH = 100_000;
+
+    @Param({"1000", "100000"})
+    private int orderCount;
+
+    @Param({"none", "mapped"})
+    private String eventLog;
+
+    private OrderService orderService;
+    private OrderEventLog log;
+    private Path logFile;
+    private long[] orderIds;
+
+    /**
+     * createOrder 会持续向订单表追加，每轮迭代重建以保持数据量一致
+     */
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        if ("mapped".equals(eventLog)) {
+            logFile = Files.createTempFile("order-events", ".log");
+            log = MappedOrderEventLog.open(logFile, null);
+        } else {
+            log = OrderEventLog.NONE;
+        }
+        orderService = new OrderService(new SnowflakeIdGenerator(0), log, Runnable::run);
+        orderService.setProcessingDelayMillis(0);
+        orderIds = new long[orderCount];
+        for (int i = 0; i < orderCount; i++) {
+            orderIds[i] = orderService.createOrder((long) (i % 1000 + 1), 99.9).getId();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        log.close();
+        if (logFile != null) {
+            Files.deleteIfExists(logFile);
+        }
+    }
+
+    /**
+     * 吞吐模式下订单表会无限增长直到GC抖动，改为每轮固定批量的单次耗时
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, batchSize = CREATE_BATCH)
+    @Measurement(iterations = 5, batchSize = CREATE_BATCH)
+    public void createOrder(Blackhole blackhole) {
+        blackhole.consume(orderService.createOrder(ThreadLocalRandom.current().nextLong(1, 1001), 99.9));
+    }
+
+    /**
+     * 与 TPSBenchmark.testOrderTransactionTPS 的订单部分相同：创建后立即完成
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, batchSize = CREATE_BATCH)
+    @Measurement(iterations = 5, batchSize = CREATE_BATCH)
+    public void createAndComplete(Blackhole blackhole) {
+        OrderService.Order order = orderService.createOrder(ThreadLocalRandom.current().nextLong(1, 1001), 99.9);
+        blackhole.consume(orderService.completeOrder(order.getId()));
+    }
+
+    @Benchmark
+    public void getOrder(Blackhole blackhole) {
+        blackhole.consume(orderService.getOrder(randomOrderId()));
+    }
+
+    /**
+     * 首次调用后订单已完成，之后测量的是幂等路径
+     */
+    @Benchmark
+    public void completeOrder(Blackhole blackhole) {
+        blackhole.consume(orderService.completeOrder(randomOrderId()));
+    }
+
+    private long randomOrderId() {
+        return orderIds[ThreadLocalRandom.current().nextInt(orderCount)];
+    }
+}
@@ -0,0 +1,131 @@
+package com.boonya.game.jmh.micro;
+
+import com.boonya.game.model.User;
+import com.boonya.game.service.UserQueryMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.util.StopWatch;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MonitoredUserService 单次调用的指标开销（不含业务逻辑），Prometheus注册表
+ * <ul>
+ *     <li>facade*：{@link UserQueryMetrics}，Meter预注册，一对nanoTime</li>
+ *     <li>legacy*：优化前的写法，StopWatch + Timer.record(Supplier) + 客户端百分位，
+ *     批量与错误每次调用 Counter.builder(...).register(...)，批量大小直接作为标签</li>
+ * </ul>
+ * 目标：facadeQuery 每次调用低于100ns。nanoTimePair 是两次System.nanoTime的下限，
+ * 在时钟源不是TSC的虚拟机上它本身就接近70ns，比较时应扣除
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserQueryMetricsBenchmark {
+
+    private MeterRegistry registry;
+    private UserQueryMetrics metrics;
+    private User user;
+
+    private Counter legacyQueryCounter;
+    private Timer legacyQueryTimer;
+    private DistributionSummary legacyResponseSize;
+    private final AtomicLong legacyTotalQueries = new AtomicLong();
+    private final AtomicLong legacyCacheHits = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        metrics = new UserQueryMetrics(registry);
+        user = new User(1L, "user1", "user1@example.com");
+
+        legacyQueryCounter = Counter.builder("legacy.query.count").register(registry);
+        legacyQueryTimer = Timer.builder("legacy.query.duration")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(registry);
+        legacyResponseSize = DistributionSummary.builder("legacy.response.size").register(registry);
+    }
+
+    @Benchmark
+    public User baseline() {
+        return user;
+    }
+
+    @Benchmark
+    public long nanoTimePair() {
+        long start = System.nanoTime();
+        return System.nanoTime() - start;
+    }
+
+    @Benchmark
+    public User facadeQuery() {
+        long start = metrics.start();
+        metrics.localHit();
+        metrics.success(start, user);
+        return user;
+    }
+
+    @Benchmark
+    public User legacyQuery() {
+        legacyTotalQueries.incrementAndGet();
+        legacyQueryCounter.increment();
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        User result = legacyQueryTimer.record(() -> {
+            legacyCacheHits.incrementAndGet();
+            return user;
+        });
+        stopWatch.stop();
+        legacyResponseSize.record(Math.max(estimate(result), 100));
+        if (stopWatch.getTotalTimeMillis() > 1000) {
+            Counter.builder("legacy.query.slow").register(registry).increment();
+        }
+        return result;
+    }
+
+    @Benchmark
+    public void facadeBatch(Blackhole blackhole) {
+        int size = ThreadLocalRandom.current().nextInt(1, 500);
+        long start = metrics.batchStart(size);
+        blackhole.consume(size);
+        metrics.batchDone(start);
+    }
+
+    @Benchmark
+    public void legacyBatch(Blackhole blackhole) {
+        int size = ThreadLocalRandom.current().nextInt(1, 500);
+        Counter.builder("legacy.batch.query.count")
+                .tag("batch_size", String.valueOf(size))
+                .register(registry)
+                .increment();
+        blackhole.consume(legacyQueryTimer.record(() -> size));
+    }
+
+    @Benchmark
+    public void facadeError() {
+        metrics.error("IllegalStateException");
+    }
+
+    @Benchmark
+    public void legacyError() {
+        Counter.builder("legacy.query.error.types")
+                .tag("error_type", "IllegalStateException")
+                .register(registry)
+                .increment();
+    }
+
+    private static int estimate(User user) {
+        return 8 + user.getName().length() * 2 + user.getEmail().length() * 2;
+    }
+}
@@ -0,0 +1,69 @@
+package com.boonya.game.jmh.micro;
+
+import com.boonya.game.jmh.fake.InMemoryRedisTemplate;
+import com.boonya.game.jmh.fake.InMemoryUserRepository;
+import com.boonya.game.jmh.fake.ServiceFixtures;
+import com.boonya.game.model.User;
+import com.boonya.game.service.UserService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UserService 自身代码路径的吞吐，仓库与Redis为内存实现，不经过AOP代理
+ * <p>
+ * getUser 内含 Thread.sleep(1)，测的是睡眠而不是代码，因此不在此列。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Threads(4)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserServiceMicroBenchmark {
+
+    @Param({"1000", "100000"})
+    private int userCount;
+
+    private UserService userService;
+    private User[] users;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        InMemoryUserRepository repository = new InMemoryUserRepository(userCount);
+        userService = ServiceFixtures.userService(ServiceFixtures.caffeineCacheManager(),
+                new InMemoryRedisTemplate(), repository);
+
+        users = new User[userCount];
+        for (int i = 0; i < userCount; i++) {
+            long id = i + 1L;
+            users[i] = new User(id, "user" + id, "user" + id + "@example.com");
+        }
+    }
+
+    @Benchmark
+    public void findById(Blackhole blackhole) {
+        blackhole.consume(userService.findById(randomId()));
+    }
+
+    /**
+     * 覆盖写已有主键，数据量保持不变
+     */
+    @Benchmark
+    public void save(Blackhole blackhole) {
+        User user = users[ThreadLocalRandom.current().nextInt(userCount)];
+        blackhole.consume(userService.save(user));
+    }
+
+    @Benchmark
+    public void getUserLockFree(Blackhole blackhole) {
+        blackhole.consume(userService.getUserLockFree(randomId()));
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, userCount + 1L);
+    }
+}
@@ -0,0 +1,448 @@
+package com.boonya.game.limit;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.Data;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 自适应并发限制：按实测RTT调整在途请求上限（Vegas），超出上限的请求短暂排队或立即拒绝
+ * <ul>
+ *     <li>每个窗口汇总一次RTT样本：估算排队量 = limit × (1 - 空载RTT / 窗口平均RTT)，
+ *     排队量小于alpha时增大上限，大于beta时减小，出现过载信号（5xx、超时）时减小</li>
+ *     <li>空载RTT取窗口平均的最小值，每隔probeInterval重新采样，避免下游变慢后上限一直被压低</li>
+ *     <li>在途数不到上限一半时不再增大，防止低流量时上限无意义地膨胀</li>
+ *     <li>优先级按份额使用上限：SHEDDABLE最先被拒，CRITICAL可用满全部上限</li>
+ *     <li>超出份额的请求在本优先级队列中最多等待queueTimeout，释放时按优先级从高到低递交许可，等待超时或队列满即拒绝</li>
+ * </ul>
+ * 快路径只有一次CAS，上限计算由抢到更新权的线程在窗口结束时执行一次。
+ */
+public class AdaptiveConcurrencyLimiter implements MeterBinder {
+
+    public enum Priority {
+        CRITICAL(1.0), NORMAL(0.9), SHEDDABLE(0.5);
+
+        /**
+         * 可使用的上限比例
+         */
+        private final double share;
+
+        Priority(double share) {
+            this.share = share;
+        }
+
+        public double getShare() {
+            return share;
+        }
+    }
+
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private final Policy policy;
+    private final LongSupplier nanoClock;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double estimate;
+    private volatile int limit;
+
+    // 当前窗口的样本，由更新线程sumThenReset
+    private final LongAdder windowRttSum = new LongAdder();
+    private final LongAdder windowSamples = new LongAdder();
+    private final LongAdder windowDrops = new LongAdder();
+    private final AtomicInteger windowMaxInFlight = new AtomicInteger();
+    private final AtomicBoolean updating = new AtomicBoolean();
+    private volatile long nextUpdateAt;
+    private volatile long rttNoLoad;
+    private long probeAt;
+
+    // 各优先级的等待队列，按ordinal下标
+    private final List<Queue<Waiter>> queues = new ArrayList<>(PRIORITIES.length);
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final Map<Priority, LongAdder> accepted = new EnumMap<>(Priority.class);
+    private final Map<Priority, LongAdder> rejected = new EnumMap<>(Priority.class);
+    private final Map<Priority, LongAdder> dropped = new EnumMap<>(Priority.class);
+    private final Map<Priority, Timer> queueGranted = new EnumMap<>(Priority.class);
+    private final Map<Priority, Timer> queueTimedOut = new EnumMap<>(Priority.class);
+
+    public AdaptiveConcurrencyLimiter() {
+        this(new Policy(), System::nanoTime);
+    }
+
+    public AdaptiveConcurrencyLimiter(Policy policy, LongSupplier nanoClock) {
+        this.policy = policy;
+        this.nanoClock = nanoClock;
+        this.estimate = policy.getInitialLimit();
+        this.limit = policy.getInitialLimit();
+        long now = nanoClock.getAsLong();
+        this.nextUpdateAt = now + policy.getWindow().toNanos();
+        this.probeAt = now + policy.getProbeInterval().toNanos();
+        for (Priority priority : PRIORITIES) {
+            queues.add(new ConcurrentLinkedQueue<>());
+            accepted.put(priority, new LongAdder());
+            rejected.put(priority, new LongAdder());
+            dropped.put(priority, new LongAdder());
+        }
+    }
+
+    /**
+     * 不排队地获取许可，超出本优先级份额或有请求在排队时返回null
+     */
+    public Permit tryAcquire(Priority priority) {
+        if (queued.get() > 0 || !reserve(priority)) {
+            return null;
+        }
+        accepted.get(priority).increment();
+        return new Permit(priority, nanoClock.getAsLong());
+    }
+
+    /**
+     * 获取许可，必要时在本优先级队列中等待；超时、队列满或该优先级不排队时返回空Mono并计入拒绝
+     */
+    public Mono<Permit> acquire(Priority priority) {
+        Permit permit = tryAcquire(priority);
+        if (permit != null) {
+            return Mono.just(permit);
+        }
+        Duration maxWait = policy.queueTimeout(priority);
+        if (maxWait.isZero() || queued.get() >= policy.getMaxQueueSize()) {
+            rejected.get(priority).increment();
+            return Mono.empty();
+        }
+        return Mono.create(sink -> enqueue(new Waiter(priority, sink, nanoClock.getAsLong()), maxWait));
+    }
+
+    /**
+     * 递交、排队超时与调用方取消都通过同一次CAS决定等待者的结局，只有一方生效。
+     * 超时不用Mono.timeout：它与递交并发时会丢掉刚送达的许可，在途数随之泄漏。
+     */
+    private void enqueue(Waiter waiter, Duration maxWait) {
+        Disposable timer = Schedulers.parallel().schedule(() -> {
+            if (waiter.state.compareAndSet(null, Waiter.EXPIRED)) {
+                expire(waiter);
+                waiter.sink.success();
+            }
+        }, maxWait.toNanos(), TimeUnit.NANOSECONDS);
+        waiter.sink.onDispose(timer);
+        waiter.sink.onCancel(() -> {
+            if (waiter.state.compareAndSet(null, Waiter.EXPIRED)) {
+                expire(waiter);
+            } else if (waiter.state.get() instanceof Permit permit) {
+                // 许可已递交但未送达
+                permit.ignore();
+            }
+        });
+        queues.get(waiter.priority.ordinal()).offer(waiter);
+        queued.incrementAndGet();
+        drain();
+    }
+
+    /**
+     * 超时或调用方取消，节点留在队列中由drain跳过
+     */
+    private void expire(Waiter waiter) {
+        queued.decrementAndGet();
+        rejected.get(waiter.priority).increment();
+        record(queueTimedOut, waiter);
+    }
+
+    /**
+     * 按优先级从高到低把空出的份额递交给排队的请求
+     */
+    private void drain() {
+        for (Priority priority : PRIORITIES) {
+            Queue<Waiter> queue = queues.get(priority.ordinal());
+            while (queue.peek() != null) {
+                if (!reserve(priority)) {
+                    // 低优先级份额更小，同样没有空位
+                    return;
+                }
+                Waiter waiter = queue.poll();
+                if (waiter == null) {
+                    inFlight.decrementAndGet();
+                    continue;
+                }
+                // 认领即发布许可：之后的onCancel一定能拿到它并释放，不会漏掉在途数
+                Permit permit = new Permit(priority, nanoClock.getAsLong());
+                if (!waiter.state.compareAndSet(null, permit)) {
+                    inFlight.decrementAndGet();
+                    continue;
+                }
+                queued.decrementAndGet();
+                accepted.get(priority).increment();
+                record(queueGranted, waiter);
+                waiter.sink.success(permit);
+            }
+        }
+    }
+
+    private boolean reserve(Priority priority) {
+        int allowed = Math.max(1, (int) (limit * priority.share));
+        while (true) {
+            int current = inFlight.get();
+            if (current >= allowed) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                // 多数情况下没有刷新峰值，先读再写避免每次获取都争用同一个原子变量
+                if (current + 1 > windowMaxInFlight.get()) {
+                    windowMaxInFlight.accumulateAndGet(current + 1, Math::max);
+                }
+                return true;
+            }
+        }
+    }
+
+    private void record(Map<Priority, Timer> timers, Waiter waiter) {
+        Timer timer = timers.get(waiter.priority);
+        if (timer != null) {
+            timer.record(nanoClock.getAsLong() - waiter.enqueuedAt, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void release(Permit permit, long now, boolean sample, boolean overload) {
+        inFlight.decrementAndGet();
+        if (sample) {
+            windowRttSum.add(now - permit.startedAt);
+            windowSamples.increment();
+            if (overload) {
+                windowDrops.increment();
+                dropped.get(permit.priority).increment();
+            }
+            if (now - nextUpdateAt >= 0 && updating.compareAndSet(false, true)) {
+                try {
+                    update(now);
+                } finally {
+                    updating.set(false);
+                }
+            }
+        }
+        if (queued.get() > 0) {
+            drain();
+        }
+    }
+
+    private void update(long now) {
+        if (windowSamples.sum() < policy.getMinWindowSamples()) {
+            return;
+        }
+        long samples = windowSamples.sumThenReset();
+        long rtt = windowRttSum.sumThenReset() / Math.max(1, samples);
+        long drops = windowDrops.sumThenReset();
+        int maxInFlight = windowMaxInFlight.getAndSet(inFlight.get());
+        nextUpdateAt = now + policy.getWindow().toNanos();
+
+        if (now - probeAt >= 0) {
+            // 定期以当前窗口重新作为空载基准
+            probeAt = now + policy.getProbeInterval().toNanos();
+            rttNoLoad = rtt;
+        } else if (rttNoLoad == 0 || rtt < rttNoLoad) {
+            rttNoLoad = rtt;
+        }
+
+        double current = estimate;
+        double log = Math.max(1, Math.log10(current));
+        double next = current;
+        if (drops > 0) {
+            next = current - log;
+        } else if (maxInFlight * 2 >= current && rtt > 0) {
+            double queueSize = Math.ceil(current * (1 - (double) rttNoLoad / rtt));
+            if (queueSize <= log) {
+                next = current + 6 * log;
+            } else if (queueSize < 3 * log) {
+                next = current + log;
+            } else if (queueSize > 6 * log) {
+                next = current - log;
+            }
+        }
+        next = Math.max(policy.getMinLimit(), Math.min(policy.getMaxLimit(), next));
+        estimate = next;
+        limit = (int) next;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public long getRttNoLoadNanos() {
+        return rttNoLoad;
+    }
+
+    public long getAccepted(Priority priority) {
+        return accepted.get(priority).sum();
+    }
+
+    public long getRejected(Priority priority) {
+        return rejected.get(priority).sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("http.limiter.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Current adaptive concurrency limit")
+                .register(registry);
+        Gauge.builder("http.limiter.inflight", inFlight, AtomicInteger::get)
+                .register(registry);
+        Gauge.builder("http.limiter.queue.size", queued, AtomicInteger::get)
+                .register(registry);
+        Gauge.builder("http.limiter.rtt.noload", this, l -> l.rttNoLoad / 1_000_000.0)
+                .description("Baseline round-trip time used by the limit estimate")
+                .baseUnit("milliseconds")
+                .register(registry);
+        for (Priority priority : PRIORITIES) {
+            String tag = priority.name().toLowerCase();
+            FunctionCounter.builder("http.limiter.requests", accepted.get(priority), LongAdder::sum)
+                    .tags("priority", tag, "result", "accepted")
+                    .register(registry);
+            FunctionCounter.builder("http.limiter.requests", rejected.get(priority), LongAdder::sum)
+                    .tags("priority", tag, "result", "rejected")
+                    .register(registry);
+            FunctionCounter.builder("http.limiter.requests", dropped.get(priority), LongAdder::sum)
+                    .description("Accepted requests that completed with an overload signal")
+                    .tags("priority", tag, "result", "dropped")
+                    .register(registry);
+            queueGranted.put(priority, Timer.builder("http.limiter.queue.time")
+                    .tags("priority", tag, "result", "granted")
+                    .register(registry));
+            queueTimedOut.put(priority, Timer.builder("http.limiter.queue.time")
+                    .tags("priority", tag, "result", "timeout")
+                    .register(registry));
+        }
+    }
+
+    /**
+     * 一次获取到的许可，请求结束时必须调用且只调用一次success/dropped/ignore之一
+     */
+    public final class Permit {
+
+        private final Priority priority;
+        private final long startedAt;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Priority priority, long startedAt) {
+            this.priority = priority;
+            this.startedAt = startedAt;
+        }
+
+        public Priority getPriority() {
+            return priority;
+        }
+
+        /**
+         * 正常完成，RTT计入样本
+         */
+        public void success() {
+            release(true, false);
+        }
+
+        /**
+         * 以过载信号结束（5xx、下游超时），RTT计入样本并减小上限
+         */
+        public void dropped() {
+            release(true, true);
+        }
+
+        /**
+         * 不计样本地释放（客户端取消、许可未送达）
+         */
+        public void ignore() {
+            release(false, false);
+        }
+
+        private void release(boolean sample, boolean overload) {
+            if (released.compareAndSet(false, true)) {
+                AdaptiveConcurrencyLimiter.this.release(this, nanoClock.getAsLong(), sample, overload);
+            }
+        }
+    }
+
+    private static final class Waiter {
+
+        static final Object EXPIRED = new Object();
+
+        private final Priority priority;
+        private final MonoSink<Permit> sink;
+        private final long enqueuedAt;
+
+        /**
+         * null：等待中；Permit：已递交；EXPIRED：超时或已取消
+         */
+        private final AtomicReference<Object> state = new AtomicReference<>();
+
+        Waiter(Priority priority, MonoSink<Permit> sink, long enqueuedAt) {
+            this.priority = priority;
+            this.sink = sink;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    /**
+     * 上限估算与排队参数
+     */
+    @Data
+    public static class Policy {
+
+        private int initialLimit = 20;
+
+        private int minLimit = 4;
+
+        private int maxLimit = 1000;
+
+        /**
+         * 汇总RTT样本并调整上限的窗口，样本数不足minWindowSamples时顺延
+         */
+        private Duration window = Duration.ofMillis(100);
+
+        private int minWindowSamples = 10;
+
+        /**
+         * 重新测量空载RTT的间隔
+         */
+        private Duration probeInterval = Duration.ofSeconds(30);
+
+        /**
+         * 所有优先级合计的排队上限，超过后直接拒绝
+         */
+        private int maxQueueSize = 100;
+
+        /**
+         * 各优先级的最长排队时间，0表示不排队、超出份额立即拒绝
+         */
+        private Map<Priority, Duration> queueTimeout = new EnumMap<>(Map.of(
+                Priority.CRITICAL, Duration.ofMillis(100),
+                Priority.NORMAL, Duration.ofMillis(20),
+                Priority.SHEDDABLE, Duration.ZERO));
+
+        Duration queueTimeout(Priority priority) {
+            return queueTimeout.getOrDefault(priority, Duration.ZERO);
+        }
+    }
+}
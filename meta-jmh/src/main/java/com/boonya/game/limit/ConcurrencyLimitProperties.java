@@ -0,0 +1,45 @@
+package com.boonya.game.limit;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * HTTP自适应并发限制配置，见 {@link AdaptiveConcurrencyLimiter}
+ */
+@Data
+@ConfigurationProperties(prefix = "http.limiter")
+public class ConcurrencyLimitProperties {
+
+    private boolean enabled;
+
+    private AdaptiveConcurrencyLimiter.Policy policy = new AdaptiveConcurrencyLimiter.Policy();
+
+    /**
+     * 未匹配任何规则的请求的优先级
+     */
+    private AdaptiveConcurrencyLimiter.Priority defaultPriority = AdaptiveConcurrencyLimiter.Priority.NORMAL;
+
+    /**
+     * 按顺序匹配，第一条命中的规则生效
+     */
+    private List<Endpoint> endpoints = new ArrayList<>();
+
+    /**
+     * 不受限制的路径，例如健康检查，过载时也要能返回
+     */
+    private List<String> bypass = new ArrayList<>(List.of("/actuator/**"));
+
+    @Data
+    public static class Endpoint {
+
+        /**
+         * PathPattern语法，例如 /api/orders/**
+         */
+        private String pattern;
+
+        private AdaptiveConcurrencyLimiter.Priority priority = AdaptiveConcurrencyLimiter.Priority.NORMAL;
+    }
+}
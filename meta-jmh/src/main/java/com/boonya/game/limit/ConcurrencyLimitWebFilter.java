@@ -0,0 +1,100 @@
+package com.boonya.game.limit;
+
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * WebFlux接入：按路径解析优先级，取不到许可时立即返回503，不进入业务处理
+ * <p>
+ * 请求结束时回报结果：5xx与非 ResponseStatusException 的异常计为过载信号，4xx正常计样本，客户端取消不计样本。
+ * 排在所有业务过滤器之前，被拒绝的请求不消耗任何下游资源。
+ */
+public class ConcurrencyLimitWebFilter implements WebFilter, Ordered {
+
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final AdaptiveConcurrencyLimiter.Priority defaultPriority;
+    private final List<PathPattern> bypass = new ArrayList<>();
+    private final List<PathPattern> patterns = new ArrayList<>();
+    private final List<AdaptiveConcurrencyLimiter.Priority> priorities = new ArrayList<>();
+
+    public ConcurrencyLimitWebFilter(AdaptiveConcurrencyLimiter limiter, ConcurrencyLimitProperties properties) {
+        this.limiter = limiter;
+        this.defaultPriority = properties.getDefaultPriority();
+        PathPatternParser parser = PathPatternParser.defaultInstance;
+        for (String pattern : properties.getBypass()) {
+            bypass.add(parser.parse(pattern));
+        }
+        for (ConcurrencyLimitProperties.Endpoint endpoint : properties.getEndpoints()) {
+            patterns.add(parser.parse(endpoint.getPattern()));
+            priorities.add(endpoint.getPriority());
+        }
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        PathContainer path = exchange.getRequest().getPath().pathWithinApplication();
+        for (PathPattern pattern : bypass) {
+            if (pattern.matches(path)) {
+                return chain.filter(exchange);
+            }
+        }
+        AdaptiveConcurrencyLimiter.Priority priority = priorityOf(path);
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquire(priority);
+        if (permit != null) {
+            return proceed(exchange, chain, permit);
+        }
+        return limiter.acquire(priority)
+                .flatMap(granted -> proceed(exchange, chain, granted))
+                .switchIfEmpty(Mono.defer(() -> reject(exchange.getResponse())));
+    }
+
+    AdaptiveConcurrencyLimiter.Priority priorityOf(PathContainer path) {
+        for (int i = 0; i < patterns.size(); i++) {
+            if (patterns.get(i).matches(path)) {
+                return priorities.get(i);
+            }
+        }
+        return defaultPriority;
+    }
+
+    private Mono<Void> proceed(ServerWebExchange exchange, WebFilterChain chain,
+                               AdaptiveConcurrencyLimiter.Permit permit) {
+        return chain.filter(exchange)
+                .doOnSuccess(done -> complete(permit, exchange.getResponse().getStatusCode()))
+                .doOnError(e -> complete(permit, e instanceof ResponseStatusException
+                        ? ((ResponseStatusException) e).getStatusCode() : HttpStatus.INTERNAL_SERVER_ERROR))
+                .doOnCancel(permit::ignore);
+    }
+
+    private static void complete(AdaptiveConcurrencyLimiter.Permit permit, HttpStatusCode status) {
+        if (status != null && status.is5xxServerError()) {
+            permit.dropped();
+        } else {
+            permit.success();
+        }
+    }
+
+    private static Mono<Void> reject(ServerHttpResponse response) {
+        response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        response.getHeaders().set("Retry-After", "1");
+        return response.setComplete();
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+}
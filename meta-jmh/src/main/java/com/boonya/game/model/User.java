@@ -1,8 +1,32 @@
 package com.boonya.game.model;
 
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.TableGenerator;
+
 import java.io.Serializable;
 
+/**
+ * 用户
+ * <p>
+ * ID按号段分配（id_sequences表，每次取 {@link #ID_ALLOCATION_SIZE} 个），不用自增主键，
+ * Hibernate才能把多条INSERT合并成JDBC批次；MySQL没有序列，号段表在MySQL与H2上通用。
+ * JDBC批量写入（{@link com.boonya.game.dao.UserBatchWriter}）从同一张号段表取号，两条写入路径的ID不会冲突。
+ */
+@Entity
+@Table(name = "users")
 public class User implements Serializable {
+
+    public static final String ID_SEQUENCE = "users";
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "user_id")
+    @TableGenerator(name = "user_id", table = "id_sequences", pkColumnName = "sequence_name",
+            valueColumnName = "next_val", pkColumnValue = ID_SEQUENCE, allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
     private String name;
     private String email;
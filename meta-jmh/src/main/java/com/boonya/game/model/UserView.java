@@ -0,0 +1,20 @@
+package com.boonya.game.model;
+
+import java.io.Serializable;
+
+/**
+ * 用户只读视图：不可变，可在线程间共享，读路径直接返回缓存的同一实例而无需复制
+ */
+public record UserView(Long id, String name, String email) implements Serializable {
+
+    public static UserView of(User user) {
+        return new UserView(user.getId(), user.getName(), user.getEmail());
+    }
+
+    /**
+     * 需要可变对象时显式复制，调用方拥有返回的User
+     */
+    public User toUser() {
+        return new User(id, name, email);
+    }
+}
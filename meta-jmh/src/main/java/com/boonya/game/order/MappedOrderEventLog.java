@@ -0,0 +1,245 @@
+package com.boonya.game.order;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * 基于内存映射文件的订单事件日志
+ * <ul>
+ *     <li>定长40字节记录：类型(1) | 保留(3) | 校验和(4) | 订单ID(8) | 用户ID(8) | 金额(8) | 时间戳(8)</li>
+ *     <li>文件按40MB分段映射，追加时原子递增槽位号，各线程写互不重叠的槽位，不加锁</li>
+ *     <li>类型字节最后写入；启动时扫描全文件，类型为0（未写完）或校验和不符（写入中崩溃）的槽位跳过</li>
+ *     <li>进程崩溃不丢已写入页缓存的事件；机器掉电的持久性由定时force保证，最多丢失一个force间隔</li>
+ *     <li>追加与force持有读锁，close持有写锁：等在途追加写完再刷盘关闭，关闭后的追加抛 {@link IllegalStateException}</li>
+ * </ul>
+ */
+public class MappedOrderEventLog implements OrderEventLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedOrderEventLog.class);
+
+    static final int RECORD_SIZE = 40;
+    static final int RECORDS_PER_CHUNK = 1 << 20;
+    private static final long CHUNK_BYTES = (long) RECORD_SIZE * RECORDS_PER_CHUNK;
+
+    private final Path path;
+    private final FileChannel channel;
+    private volatile MappedByteBuffer[] chunks;
+    private final AtomicLong nextSlot = new AtomicLong();
+    private final ScheduledExecutorService forcer;
+    private final StampedLock closeLock = new StampedLock();
+    private boolean closed;
+
+    private MappedOrderEventLog(Path path, Duration forceInterval) throws IOException {
+        this.path = path;
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        int chunkCount = (int) Math.max(1, (size + CHUNK_BYTES - 1) / CHUNK_BYTES);
+        MappedByteBuffer[] mapped = new MappedByteBuffer[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            mapped[i] = map(i);
+        }
+        this.chunks = mapped;
+        this.nextSlot.set(scanEnd());
+
+        if (forceInterval != null && !forceInterval.isZero()) {
+            forcer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "order-log-force");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = forceInterval.toMillis();
+            forcer.scheduleWithFixedDelay(this::force, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            forcer = null;
+        }
+    }
+
+    /**
+     * @param forceInterval 定时刷盘间隔，null或0表示只依赖操作系统回写
+     */
+    public static MappedOrderEventLog open(Path path, Duration forceInterval) throws IOException {
+        MappedOrderEventLog log = new MappedOrderEventLog(path, forceInterval);
+        logger.info("Order event log {} opened with {} slots in use", path, log.nextSlot.get());
+        return log;
+    }
+
+    @Override
+    public void append(OrderEvent event) {
+        long stamp = closeLock.readLock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Order event log " + path + " is closed");
+            }
+            write(event);
+        } finally {
+            closeLock.unlockRead(stamp);
+        }
+    }
+
+    private void write(OrderEvent event) {
+        long slot = nextSlot.getAndIncrement();
+        MappedByteBuffer chunk = chunk((int) (slot / RECORDS_PER_CHUNK));
+        int offset = (int) (slot % RECORDS_PER_CHUNK) * RECORD_SIZE;
+        long amountBits = Double.doubleToRawLongBits(event.amount());
+        chunk.putInt(offset + 4, checksum(event.type().code(), event.orderId(), event.userId(), amountBits, event.timestamp()));
+        chunk.putLong(offset + 8, event.orderId());
+        chunk.putLong(offset + 16, event.userId());
+        chunk.putLong(offset + 24, amountBits);
+        chunk.putLong(offset + 32, event.timestamp());
+        chunk.put(offset, event.type().code());
+    }
+
+    @Override
+    public void replay(Consumer<OrderEvent> consumer) {
+        long end = nextSlot.get();
+        long skipped = 0;
+        for (long slot = 0; slot < end; slot++) {
+            OrderEvent event = read(slot);
+            if (event == null) {
+                skipped++;
+            } else {
+                consumer.accept(event);
+            }
+        }
+        if (skipped > 0) {
+            logger.warn("Skipped {} incomplete records while replaying {}", skipped, path);
+        }
+    }
+
+    /**
+     * 槽位未写完或损坏时返回null
+     */
+    private OrderEvent read(long slot) {
+        MappedByteBuffer chunk = chunks[(int) (slot / RECORDS_PER_CHUNK)];
+        int offset = (int) (slot % RECORDS_PER_CHUNK) * RECORD_SIZE;
+        byte code = chunk.get(offset);
+        OrderEvent.Type type = OrderEvent.Type.of(code);
+        if (type == null) {
+            return null;
+        }
+        long orderId = chunk.getLong(offset + 8);
+        long userId = chunk.getLong(offset + 16);
+        long amountBits = chunk.getLong(offset + 24);
+        long timestamp = chunk.getLong(offset + 32);
+        if (chunk.getInt(offset + 4) != checksum(code, orderId, userId, amountBits, timestamp)) {
+            return null;
+        }
+        return new OrderEvent(type, orderId, userId, Double.longBitsToDouble(amountBits), timestamp);
+    }
+
+    /**
+     * 最后一个有效记录之后的槽位；中间的空洞（并发追加时崩溃）在回放时跳过
+     */
+    private long scanEnd() {
+        long end = 0;
+        long total = (long) chunks.length * RECORDS_PER_CHUNK;
+        for (long slot = 0; slot < total; slot++) {
+            MappedByteBuffer chunk = chunks[(int) (slot / RECORDS_PER_CHUNK)];
+            if (chunk.get((int) (slot % RECORDS_PER_CHUNK) * RECORD_SIZE) != 0) {
+                end = slot + 1;
+            }
+        }
+        return end;
+    }
+
+    private MappedByteBuffer chunk(int index) {
+        MappedByteBuffer[] current = chunks;
+        if (index < current.length) {
+            return current[index];
+        }
+        return grow(index);
+    }
+
+    private synchronized MappedByteBuffer grow(int index) {
+        MappedByteBuffer[] current = chunks;
+        if (index < current.length) {
+            return current[index];
+        }
+        MappedByteBuffer[] next = Arrays.copyOf(current, index + 1);
+        for (int i = current.length; i <= index; i++) {
+            next[i] = map(i);
+        }
+        chunks = next;
+        return next[index];
+    }
+
+    private MappedByteBuffer map(int index) {
+        try {
+            return channel.map(FileChannel.MapMode.READ_WRITE, index * CHUNK_BYTES, CHUNK_BYTES);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map order event log " + path, e);
+        }
+    }
+
+    private static int checksum(byte type, long orderId, long userId, long amountBits, long timestamp) {
+        long h = type * 0x9E3779B97F4A7C15L;
+        h = (h ^ orderId) * 0xC2B2AE3D27D4EB4FL;
+        h = (h ^ userId) * 0xC2B2AE3D27D4EB4FL;
+        h = (h ^ amountBits) * 0xC2B2AE3D27D4EB4FL;
+        h = (h ^ timestamp) * 0xC2B2AE3D27D4EB4FL;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    public long size() {
+        return nextSlot.get();
+    }
+
+    public void force() {
+        long stamp = closeLock.readLock();
+        try {
+            if (!closed) {
+                forceChunks();
+            }
+        } finally {
+            closeLock.unlockRead(stamp);
+        }
+    }
+
+    private void forceChunks() {
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (forcer != null) {
+            forcer.shutdownNow();
+        }
+        long stamp = closeLock.writeLock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            forceChunks();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close order event log {}: {}", path, e.getMessage());
+            }
+        } finally {
+            closeLock.unlockWrite(stamp);
+        }
+    }
+}
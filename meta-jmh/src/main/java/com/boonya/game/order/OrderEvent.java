@@ -0,0 +1,43 @@
+package com.boonya.game.order;
+
+/**
+ * 订单事件，订单状态只由事件推进，重启时按日志顺序重放
+ */
+public record OrderEvent(Type type, long orderId, long userId, double amount, long timestamp) {
+
+    public enum Type {
+        CREATED(1),
+        PROCESSED(2),
+        /**
+         * 处理阶段完成前收到的完成请求
+         */
+        COMPLETION_REQUESTED(3),
+        COMPLETED(4);
+
+        private final byte code;
+
+        Type(int code) {
+            this.code = (byte) code;
+        }
+
+        public byte code() {
+            return code;
+        }
+
+        /**
+         * 未知编码返回null
+         */
+        public static Type of(byte code) {
+            for (Type type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            return null;
+        }
+    }
+
+    public static OrderEvent of(Type type, long orderId, long userId, double amount) {
+        return new OrderEvent(type, orderId, userId, amount, System.currentTimeMillis());
+    }
+}
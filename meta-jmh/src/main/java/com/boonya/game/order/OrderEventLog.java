@@ -0,0 +1,36 @@
+package com.boonya.game.order;
+
+import java.util.function.Consumer;
+
+/**
+ * 订单事件日志，只追加
+ */
+public interface OrderEventLog extends AutoCloseable {
+
+    /**
+     * 不持久化，用于脱离Spring的基准
+     */
+    OrderEventLog NONE = new OrderEventLog() {
+        @Override
+        public void append(OrderEvent event) {
+        }
+
+        @Override
+        public void replay(Consumer<OrderEvent> consumer) {
+        }
+    };
+
+    /**
+     * 同一订单的事件由调用方保证按状态顺序追加
+     */
+    void append(OrderEvent event);
+
+    /**
+     * 按追加顺序回放已有事件，启动时在任何append之前调用
+     */
+    void replay(Consumer<OrderEvent> consumer);
+
+    @Override
+    default void close() {
+    }
+}
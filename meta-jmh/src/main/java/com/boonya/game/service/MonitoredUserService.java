@@ -1,24 +1,35 @@
 package com.boonya.game.service;
 
 import com.boonya.game.cache.CacheService;
+import com.boonya.game.cache.batch.BatchQueryEngine;
+import com.boonya.game.cache.batch.CollapsingBatchLoader;
+import com.boonya.game.cache.fill.BackfillExecutor;
+import com.boonya.game.cache.fill.SingleFlight;
+import com.boonya.game.cache.hotkey.HotKeyTelemetry;
+import com.boonya.game.cache.local.BoundedLocalCache;
+import com.boonya.game.cache.warmup.WarmUpExecutor;
+import com.boonya.game.config.TheadPoolConfig;
+import com.boonya.game.dao.ShardedUserRepository;
 import com.boonya.game.dao.UserRepository;
+import com.boonya.game.datasource.DynamicDataSourceHolder;
+import com.boonya.game.datasource.WritePositionHolder;
 import com.boonya.game.model.User;
-import com.google.common.collect.Lists;
-import io.micrometer.core.instrument.*;
-import io.micrometer.core.annotation.Timed;
-import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.annotation.Resource;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.util.StopWatch;
+import reactor.core.publisher.Flux;
 
+import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.StampedLock;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 public class MonitoredUserService {
@@ -28,82 +39,118 @@ public class MonitoredUserService {
     private UserRepository userRepository;
     @Resource
     private CacheService cacheService;
+    @Autowired(required = false)
+    private HotKeyTelemetry hotKeyTelemetry;
+    // datasource.sharding.enabled=true 时用户表在分片库上
+    @Autowired(required = false)
+    private ShardedUserRepository shardedUsers;
+    @Resource
+    private WarmUpExecutor warmUpExecutor;
+
+    // 监控指标，全部预注册，见 UserQueryMetrics
+    private final UserQueryMetrics metrics;
+
+    // L1未命中后的合批加载（Redis MGET + findAllById），user.batch-loader.enabled 关闭时为null
+    private final MeterRegistry registry;
+    private CollapsingBatchLoader<Long, User> batchLoader;
+
+    @Value("${user.batch-loader.enabled:false}")
+    private boolean batchLoaderEnabled;
+    @Value("${user.batch-loader.window:2ms}")
+    private Duration batchLoaderWindow;
+    @Value("${user.batch-loader.max-batch-size:64}")
+    private int batchLoaderMaxSize;
+    @Value("${user.batch-loader.concurrency:4}")
+    private int batchLoaderConcurrency;
+
+    // 批量查询：L1/L2/L3三个批量阶段，分块在专用线程池（虚拟线程模式下为虚拟线程）上并行
+    private BatchQueryEngine<Long, User> batchQuery;
+    private ExecutorService batchQueryPool;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+    @Value("${user.batch-query.parallelism:8}")
+    private int batchQueryParallelism;
+    @Value("${user.batch-query.chunk-size:100}")
+    private int batchQueryChunkSize;
+    @Value("${user.batch-query.stream-window:1000}")
+    private int batchQueryStreamWindow;
+
+    // L1未命中按用户ID合并加载；Redis在有界线程池上回填，失败计数
+    private final SingleFlight<Long, User> fills = new SingleFlight<>("monitored-user");
+    private final BackfillExecutor backfills = new BackfillExecutor("monitored-user");
+
+    // 本地缓存：有界，按条数淘汰，读写无全局锁
+    private final BoundedLocalCache<Long, User> localCache;
 
-    // 监控指标
-    private final Counter queryCounter;
-    private final Timer queryTimer;
-    private final Counter errorCounter;
-    private final Gauge cacheHitGauge;
-    private final DistributionSummary responseSizeSummary;
+    @Autowired
+    public MonitoredUserService(MeterRegistry registry,
+                                @Value("${user.local-cache.maximum-size:10000}") long localCacheSize,
+                                @Value("${user.local-cache.expire-after-write:10m}") Duration localCacheTtl) {
+        this.registry = registry;
+        this.metrics = new UserQueryMetrics(registry);
+        this.localCache = new BoundedLocalCache<>("monitored-user", localCacheSize, localCacheTtl);
+        localCache.bindTo(registry);
+        fills.bindTo(registry);
+        backfills.bindTo(registry);
+    }
 
-    // 性能统计
-    private final AtomicLong totalQueries = new AtomicLong(0);
-    private final AtomicLong cacheHits = new AtomicLong(0);
-    private final AtomicLong cacheMisses = new AtomicLong(0);
-    private final AtomicLong errors = new AtomicLong(0);
+    @PostConstruct
+    public void init() {
+        if (batchLoaderEnabled) {
+            // 加载线程上没有调用方的路由与写位点，按调用方路由分批后在批次上恢复
+            batchLoader = new CollapsingBatchLoader<>("monitored-user", (route, position, ids) ->
+                    DynamicDataSourceHolder.callWithRoute((String) route, position, () -> loadUsers(ids)),
+                    batchLoaderWindow, batchLoaderMaxSize, batchLoaderConcurrency, registry);
+        }
+        batchQuery = new BatchQueryEngine<>(new UserBatchSource(), batchQueryExecutor(),
+                batchQueryChunkSize, batchQueryStreamWindow);
+    }
 
-    // 本地缓存
-    private final ConcurrentHashMap<Long, User> localCache = new ConcurrentHashMap<>(10000);
-    private final StampedLock cacheLock = new StampedLock();
+    private Executor batchQueryExecutor() {
+        if (virtualThreads && Runtime.version().feature() >= 21) {
+            return TheadPoolConfig.virtualThreadExecutor("batch-query-vt-");
+        }
+        AtomicInteger threads = new AtomicInteger();
+        batchQueryPool = Executors.newFixedThreadPool(batchQueryParallelism, r -> {
+            Thread thread = new Thread(r, "batch-query-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        return batchQueryPool;
+    }
 
-    @Autowired
-    public MonitoredUserService(MeterRegistry registry) {
-        // 初始化监控指标
-        this.queryCounter = Counter.builder("user.query.count")
-                .description("Total number of user queries")
-                .tag("service", "user-service")
-                .register(registry);
-
-        this.queryTimer = Timer.builder("user.query.duration")
-                .description("Time taken for user queries")
-                .tag("service", "user-service")
-                .publishPercentiles(0.5, 0.95, 0.99) // 50th, 95th, 99th percentiles
-                .register(registry);
-
-        this.errorCounter = Counter.builder("user.query.errors")
-                .description("Number of failed user queries")
-                .tag("service", "user-service")
-                .register(registry);
-
-        this.responseSizeSummary = DistributionSummary.builder("user.response.size")
-                .description("Size of user response data")
-                .baseUnit("bytes")
-                .register(registry);
-
-        // TODO 注册缓存命中率指标
-        this.cacheHitGauge = Gauge.builder("user.cache.hit.ratio",null)
-                .description("Cache hit ratio for user queries")
-                .tag("service", "user-service")
-                .register(registry);
+    @PreDestroy
+    public void shutdown() {
+        if (batchLoader != null) {
+            batchLoader.close();
+        }
+        if (batchQueryPool != null) {
+            batchQueryPool.shutdown();
+        }
+        backfills.close();
     }
 
     /**
      * 监控的用户查询方法 - 包含完整的多级缓存和性能监控
      */
-    @Timed(value = "user.query", description = "Time taken to query user with caching")
     public User getMonitoredUser(Long id) {
         if (id == null || id <= 0) {
-            recordError("invalid_id");
+            metrics.error("invalid_id");
             throw new IllegalArgumentException("Invalid user ID: " + id);
         }
 
-        totalQueries.incrementAndGet();
-        queryCounter.increment();
-
-        StopWatch stopWatch = new StopWatch();
-        stopWatch.start();
+        long start = metrics.start();
+        if (hotKeyTelemetry != null) {
+            hotKeyTelemetry.record(id);
+        }
 
         try {
-            User user = queryTimer.record(() -> getUserWithCaching(id));
-
-            stopWatch.stop();
-            recordSuccess(stopWatch.getTotalTimeMillis(), user);
-
+            User user = getUserWithCaching(id);
+            metrics.success(start, user);
             return user;
-
         } catch (Exception e) {
-            stopWatch.stop();
-            recordError(e.getClass().getSimpleName());
+            metrics.failure(start, e.getClass().getSimpleName());
             throw new RuntimeException("Failed to get user: " + id, e);
         }
     }
@@ -115,238 +162,250 @@ public class MonitoredUserService {
         // 1. 检查本地缓存 (L1缓存)
         User user = getFromLocalCache(id);
         if (user != null) {
-            cacheHits.incrementAndGet();
+            metrics.localHit();
+            return user;
+        }
+        metrics.localMiss();
+
+        // 2/3. 同一个用户的并发未命中共享一次加载
+        user = fills.load(id, () -> loadMiss(id));
+        if (user == null) {
+            throw new RuntimeException("User not found: " + id);
+        }
+        return user;
+    }
+
+    /**
+     * L1未命中的加载，只由single-flight的leader执行；返回前同步写入本地缓存，
+     * 之后到达的调用方直接命中L1。用户不存在时返回null
+     */
+    private User loadMiss(Long id) {
+        // 开启合批时，不同用户的并发未命中合并为一次MGET + 一次findAllById
+        if (batchLoader != null) {
+            User user = batchLoader.load(id, DynamicDataSourceHolder.peekDataSource(),
+                    WritePositionHolder.getPosition()).join();
+            if (user != null) {
+                putToLocalCache(id, user);
+            }
             return user;
         }
 
         // 2. 检查Redis缓存 (L2缓存)
-        user = cacheService.getFromRedis("user:" + id, User.class);
+        User user = cacheService.getFromRedis("user:" + id, User.class);
         if (user != null) {
-            cacheHits.incrementAndGet();
+            metrics.redisHits(1);
             // 回填本地缓存
             putToLocalCache(id, user);
             return user;
         }
 
-        cacheMisses.incrementAndGet();
+        metrics.redisMisses(1);
 
         // 3. 查询数据库
-        user = userRepository.findById(id)
-                .orElseThrow(() -> new RuntimeException("User not found: " + id));
-
-        // 4. 异步更新缓存
-        updateCachesAsync(id, user);
+        user = shardedUsers != null ? shardedUsers.findById(id) : userRepository.findById(id).orElse(null);
 
+        // 4. 更新缓存
+        if (user != null) {
+            updateCaches(id, user);
+        }
         return user;
     }
 
+    private List<User> findAllInDatabase(List<Long> ids) {
+        return shardedUsers != null ? shardedUsers.findAllById(ids) : userRepository.findAllById(ids);
+    }
+
     /**
-     * 从本地缓存获取用户
+     * 合批加载：命中/未命中按去重后的键计数
      */
-    private User getFromLocalCache(Long id) {
-        long stamp = cacheLock.tryOptimisticRead();
-        User user = localCache.get(id);
-
-        if (!cacheLock.validate(stamp)) {
-            stamp = cacheLock.readLock();
-            try {
-                user = localCache.get(id);
-            } finally {
-                cacheLock.unlockRead(stamp);
+    private Map<Long, User> loadUsers(List<Long> ids) {
+        Map<Long, User> users = getFromRedis(ids);
+        if (users.size() < ids.size()) {
+            List<Long> missing = new ArrayList<>(ids.size() - users.size());
+            for (Long id : ids) {
+                if (!users.containsKey(id)) {
+                    missing.add(id);
+                }
+            }
+            for (User user : findAllInDatabase(missing)) {
+                users.put(user.getId(), user);
+                updateCaches(user.getId(), user);
             }
         }
-
-        return user;
+        return users;
     }
 
     /**
-     * 将用户放入本地缓存
+     * 一次MGET读取Redis，只返回命中的用户
      */
-    private void putToLocalCache(Long id, User user) {
-        long stamp = cacheLock.writeLock();
-        try {
-            localCache.put(id, user);
-        } finally {
-            cacheLock.unlockWrite(stamp);
+    private Map<Long, User> getFromRedis(List<Long> ids) {
+        List<String> keys = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            keys.add("user:" + id);
+        }
+        List<Object> cached = cacheService.multiGetFromRedis(keys);
+        Map<Long, User> users = new HashMap<>(ids.size() * 2);
+        for (int i = 0; i < ids.size(); i++) {
+            Object value = cached == null ? null : cached.get(i);
+            if (value != null) {
+                users.put(ids.get(i), (User) value);
+            }
         }
+        metrics.redisHits(users.size());
+        metrics.redisMisses(ids.size() - users.size());
+        return users;
     }
 
     /**
-     * 异步更新多级缓存
+     * 从本地缓存获取用户
      */
-    private void updateCachesAsync(Long id, User user) {
-        // 使用CompletableFuture异步更新缓存，不阻塞主线程
-        CompletableFuture.runAsync(() -> {
-            try {
-                // 更新本地缓存
-                putToLocalCache(id, user);
+    private User getFromLocalCache(Long id) {
+        return localCache.get(id);
+    }
 
-                // 更新Redis缓存，设置30分钟过期
-                cacheService.putToRedis("user:" + id, user, 30, TimeUnit.MINUTES);
+    /**
+     * 将用户放入本地缓存
+     */
+    private void putToLocalCache(Long id, User user) {
+        localCache.put(id, user);
+    }
 
-            } catch (Exception e) {
-                // 缓存更新失败不影响主流程，但记录日志
-                System.err.println("Failed to update cache for user " + id + ": " + e.getMessage());
-            }
-        });
+    /**
+     * 更新多级缓存：本地缓存同步写入，Redis在回填线程池上异步写入，队列满时丢弃
+     */
+    private void updateCaches(Long id, User user) {
+        putToLocalCache(id, user);
+        // 设置30分钟过期，失败只计入 cache.backfill{result=failed}
+        backfills.submit(id, () -> cacheService.putToRedis("user:" + id, user, 30, TimeUnit.MINUTES));
     }
 
     /**
-     * 批量查询用户 - 优化批量操作的性能
+     * 批量查询用户，返回顺序与ids一致，不存在的用户被跳过
      */
-    @Timed(value = "user.batch.query", description = "Time taken for batch user queries")
     public List<User> getUsersBatch(List<Long> ids) {
         if (ids == null || ids.isEmpty()) {
             return Collections.emptyList();
         }
 
-        Counter.builder("user.batch.query.count")
-                .tag("batch_size", String.valueOf(ids.size()))
-                .register(Metrics.globalRegistry)
-                .increment();
-
-        return queryTimer.record(() -> {
-            List<User> result = new ArrayList<>(ids.size());
-
-            // 分批处理，避免单次查询数据量过大
-            List<List<Long>> batches = Lists.partition(ids, 100);
-
-            batches.parallelStream().forEach(batch -> {
-                List<User> batchResult = processUserBatch(batch);
-                synchronized (result) {
-                    result.addAll(batchResult);
-                }
-            });
+        long start = metrics.batchStart(ids.size());
+        try {
+            return batchQuery.query(ids);
+        } finally {
+            metrics.batchDone(start);
+        }
+    }
 
-            return result;
+    /**
+     * 超大ID列表的流式批量查询：按 user.batch-query.stream-window 分窗口逐段查询，按ids的顺序发出
+     */
+    public Flux<User> streamUsersBatch(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return Flux.empty();
+        }
+        return Flux.defer(() -> {
+            long start = metrics.batchStart(ids.size());
+            return batchQuery.stream(ids).doFinally(signal -> metrics.batchDone(start));
         });
     }
 
-    private List<User> processUserBatch(List<Long> batchIds) {
-        Map<Long, User> cachedUsers = new HashMap<>();
-        List<Long> missingIds = new ArrayList<>();
+    /**
+     * 批量查询的数据源：本地缓存、Redis MGET、findAllById，回填与单键查询一致
+     */
+    private class UserBatchSource implements BatchQueryEngine.Source<Long, User> {
 
-        // 先检查缓存
-        for (Long id : batchIds) {
-            User cached = getFromLocalCache(id);
-            if (cached != null) {
-                cachedUsers.put(id, cached);
+        @Override
+        public User getLocal(Long id) {
+            User user = getFromLocalCache(id);
+            if (user != null) {
+                metrics.localHit();
             } else {
-                missingIds.add(id);
+                metrics.localMiss();
             }
+            return user;
         }
 
-        // 查询缺失的数据
-        if (!missingIds.isEmpty()) {
-            List<User> dbUsers = userRepository.findAllById(missingIds);
-            for (User user : dbUsers) {
-                cachedUsers.put(user.getId(), user);
-                updateCachesAsync(user.getId(), user);
-            }
+        @Override
+        public Map<Long, User> getRemote(List<Long> ids) {
+            return getFromRedis(ids);
         }
 
-        // 按原始顺序返回结果
-        return batchIds.stream()
-                .map(cachedUsers::get)
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
-    }
-
-    /**
-     * 记录成功查询的指标
-     */
-    private void recordSuccess(long durationMs, User user) {
-        // 记录响应大小（估算）
-        if (user != null) {
-            int estimatedSize = estimateUserSize(user);
-            responseSizeSummary.record(estimatedSize);
+        @Override
+        public Map<Long, User> load(List<Long> ids) {
+            List<User> users = findAllInDatabase(ids);
+            Map<Long, User> loaded = new HashMap<>(users.size() * 2);
+            for (User user : users) {
+                loaded.put(user.getId(), user);
+            }
+            return loaded;
         }
 
-        // 记录慢查询
-        if (durationMs > 1000) { // 超过1秒认为是慢查询
-            Counter.builder("user.query.slow")
-                    .tag("duration_range", "over_1s")
-                    .register(Metrics.globalRegistry)
-                    .increment();
+        @Override
+        public void onRemoteHit(Long id, User user) {
+            putToLocalCache(id, user);
         }
-    }
-
-    /**
-     * 记录错误指标
-     */
-    private void recordError(String errorType) {
-        errors.incrementAndGet();
-        errorCounter.increment();
-
-        Counter.builder("user.query.error.types")
-                .tag("error_type", errorType)
-                .register(Metrics.globalRegistry)
-                .increment();
-    }
-
-    /**
-     * 估算用户对象大小（用于监控）
-     */
-    private int estimateUserSize(User user) {
-        if (user == null) return 0;
 
-        int size = 0;
-        size += user.getId() != null ? 8 : 0;
-        size += user.getName() != null ? user.getName().length() * 2 : 0;
-        size += user.getEmail() != null ? user.getEmail().length() * 2 : 0;
-        // 添加其他字段的大小估算
-
-        return Math.max(size, 100); // 最小100字节
+        @Override
+        public void onLoaded(Long id, User user) {
+            updateCaches(id, user);
+        }
     }
 
     /**
      * 获取性能统计信息
      */
     public Map<String, Object> getPerformanceStats() {
-        long total = totalQueries.get();
-        long hits = cacheHits.get();
-
         return Map.of(
-                "totalQueries", total,
-                "cacheHits", hits,
-                "cacheMisses", cacheMisses.get(),
-                "errors", errors.get(),
-                "cacheHitRatio", total > 0 ? String.format("%.2f%%", (double) hits / total * 100) : "0%",
+                "totalQueries", metrics.getQueries(),
+                "cacheHits", metrics.getCacheHits(),
+                "cacheMisses", metrics.getCacheMisses(),
+                "errors", metrics.getErrors(),
+                "cacheHitRatio", percent(metrics.overallHitRatio()),
+                "localHitRatio", percent(metrics.localHitRatio()),
+                "redisHitRatio", percent(metrics.redisHitRatio()),
                 "localCacheSize", localCache.size()
         );
     }
 
+    private static String percent(double ratio) {
+        return Double.isNaN(ratio) ? "0%" : String.format("%.2f%%", ratio * 100);
+    }
+
     /**
      * 清理缓存（用于测试和管理）
      */
     public void clearCache() {
-        long stamp = cacheLock.writeLock();
-        try {
-            localCache.clear();
-        } finally {
-            cacheLock.unlockWrite(stamp);
-        }
-
+        localCache.clear();
         cacheService.clearUserCache();
     }
 
     /**
-     * 预热缓存
+     * 预热缓存，在预热执行器上按批次查库，受其并发与查库QPS限制，等待全部批次完成
      */
     public void warmUpCache(List<Long> userIds) {
         if (userIds == null || userIds.isEmpty()) return;
 
-        Timer timer = Timer.builder("user.cache.warmup")
-                .register(Metrics.globalRegistry);
-
-        timer.record(() -> {
-            userIds.parallelStream().forEach(id -> {
-                try {
-                    getMonitoredUser(id);
-                } catch (Exception e) {
-                    // 忽略预热过程中的错误
-                }
-            });
-        });
+        metrics.warmUpTimer().record(() -> warmUpExecutor.submit("monitored-user", userIds, WarmUpExecutor.PRIORITY_ON_DEMAND,
+                new WarmUpExecutor.BatchLoader() {
+                    @Override
+                    public List<Long> missing(List<Long> ids) {
+                        List<Long> missing = new ArrayList<>(ids.size());
+                        for (Long id : ids) {
+                            if (!localCache.contains(id)) {
+                                missing.add(id);
+                            }
+                        }
+                        return missing;
+                    }
+
+                    @Override
+                    public int load(List<Long> ids) {
+                        List<User> users = findAllInDatabase(ids);
+                        for (User user : users) {
+                            // 本地缓存同步写入，预热完成即可命中；Redis仍异步写
+                            updateCaches(user.getId(), user);
+                        }
+                        return users.size();
+                    }
+                }).completion().join());
     }
 }
\ No newline at end of file
@@ -1,19 +1,88 @@
 package com.boonya.game.service;
 
+import com.boonya.game.id.IdGenerator;
+import com.boonya.game.id.SnowflakeIdGenerator;
+import com.boonya.game.order.OrderEvent;
+import com.boonya.game.order.OrderEventLog;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * 订单引擎：状态只由事件推进，事件先写日志再改内存状态
+ * <ul>
+ *     <li>按用户分段加锁，同一用户的订单状态变更与日志追加串行，不同用户互不阻塞</li>
+ *     <li>创建后立即返回，处理阶段在processingExecutor上异步执行，不占用分段锁</li>
+ *     <li>completeOrder幂等：已完成直接返回；处理未结束时只记录完成请求，处理结束后补完成</li>
+ *     <li>启动时（依赖注入与属性设置完成后）重放事件日志重建订单表，未处理完的订单重新提交处理</li>
+ *     <li>关闭时不再提交新的处理任务，等待已提交的处理结束后才轮到事件日志关闭</li>
+ * </ul>
+ */
 @Service
 public class OrderService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderService.class);
+
+    public static final String CREATED = "CREATED";
+    public static final String PROCESSED = "PROCESSED";
+    public static final String COMPLETED = "COMPLETED";
+
+    private static final int STRIPES = 64;
+    private static final long SHUTDOWN_WAIT_MILLIS = 5_000;
+
     private final ConcurrentHashMap<Long, Order> orderCache = new ConcurrentHashMap<>();
-    private final AtomicLong idGenerator = new AtomicLong(1);
+    private final Object[] stripes = new Object[STRIPES];
+    private final IdGenerator idGenerator;
+    private final OrderEventLog eventLog;
+    private final Executor processingExecutor;
+
+    /**
+     * 模拟订单处理耗时，微基准中置0以只测量服务本身的开销
+     */
+    private volatile long processingDelayMillis = 2;
+
+    private final AtomicBoolean recovered = new AtomicBoolean();
+    private final AtomicInteger processing = new AtomicInteger();
+    private volatile boolean stopping;
+
+    /**
+     * 脱离Spring的基准直接new：工作节点0、不持久化、处理阶段在调用线程同步执行
+     */
+    public OrderService() {
+        this(new SnowflakeIdGenerator(0), OrderEventLog.NONE, Runnable::run);
+    }
+
+    @Autowired
+    public OrderService(IdGenerator idGenerator, OrderEventLog eventLog,
+                        @Qualifier("taskExecutor") Executor processingExecutor) {
+        this.idGenerator = idGenerator;
+        this.eventLog = eventLog;
+        this.processingExecutor = processingExecutor;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+    }
 
     public static class Order {
-        private Long id;
-        private Long userId;
-        private Double amount;
-        private String status;
+        private final Long id;
+        private final Long userId;
+        private final Double amount;
+        private volatile String status;
+
+        /**
+         * 处理阶段完成前收到完成请求，由分段锁保护
+         */
+        private boolean completionRequested;
 
         public Order(Long id, Long userId, Double amount, String status) {
             this.id = id;
@@ -22,47 +91,170 @@ public class OrderService {
             this.status = status;
         }
 
-        // getters and setters
         public Long getId() { return id; }
-        public void setId(Long id) { this.id = id; }
         public Long getUserId() { return userId; }
-        public void setUserId(Long userId) { this.userId = userId; }
         public Double getAmount() { return amount; }
-        public void setAmount(Double amount) { this.amount = amount; }
         public String getStatus() { return status; }
-        public void setStatus(String status) { this.status = status; }
     }
 
     public Order createOrder(Long userId, Double amount) {
-        Long id = idGenerator.getAndIncrement();
-        Order order = new Order(id, userId, amount, "CREATED");
-        orderCache.put(id, order);
-
-        // 模拟业务处理
-        processOrder(order);
+        long id = idGenerator.nextId();
+        Order order = new Order(id, userId, amount, CREATED);
+        synchronized (stripe(userId)) {
+            eventLog.append(OrderEvent.of(OrderEvent.Type.CREATED, id, key(userId), amount == null ? 0 : amount));
+            orderCache.put(id, order);
+        }
+        submit(order);
         return order;
     }
 
-    private void processOrder(Order order) {
-        // 模拟订单处理逻辑
+    private void submit(Order order) {
+        if (stopping) {
+            // 订单已落日志，下次启动重放时重新处理
+            return;
+        }
+        processing.incrementAndGet();
         try {
-            Thread.sleep(2);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            processingExecutor.execute(() -> {
+                try {
+                    processOrder(order);
+                } finally {
+                    processing.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            processing.decrementAndGet();
+            logger.warn("Order {} processing rejected, it stays CREATED until recovery", order.getId());
         }
-        order.setStatus("PROCESSED");
+    }
+
+    private void processOrder(Order order) {
+        // 模拟订单处理逻辑，在锁外执行
+        if (processingDelayMillis > 0) {
+            try {
+                Thread.sleep(processingDelayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        synchronized (stripe(order.userId)) {
+            if (!CREATED.equals(order.status)) {
+                return;
+            }
+            transition(order, OrderEvent.Type.PROCESSED, PROCESSED);
+            if (order.completionRequested) {
+                transition(order, OrderEvent.Type.COMPLETED, COMPLETED);
+            }
+        }
+    }
+
+    public void setProcessingDelayMillis(long processingDelayMillis) {
+        this.processingDelayMillis = processingDelayMillis;
     }
 
     public Order getOrder(Long id) {
         return orderCache.get(id);
     }
 
+    /**
+     * 幂等完成订单，订单不存在时返回false
+     */
     public boolean completeOrder(Long id) {
         Order order = orderCache.get(id);
-        if (order != null) {
-            order.setStatus("COMPLETED");
-            return true;
+        if (order == null) {
+            return false;
+        }
+        synchronized (stripe(order.userId)) {
+            if (PROCESSED.equals(order.status)) {
+                transition(order, OrderEvent.Type.COMPLETED, COMPLETED);
+            } else if (CREATED.equals(order.status) && !order.completionRequested) {
+                eventLog.append(OrderEvent.of(OrderEvent.Type.COMPLETION_REQUESTED, order.id, key(order.userId), 0));
+                order.completionRequested = true;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 调用方持有订单所属的分段锁
+     */
+    private void transition(Order order, OrderEvent.Type type, String status) {
+        eventLog.append(OrderEvent.of(type, order.id, key(order.userId), 0));
+        order.status = status;
+    }
+
+    /**
+     * 重放事件日志重建订单表，只执行一次；不由Spring创建时在第一次使用前调用
+     */
+    @PostConstruct
+    public void recover() {
+        if (!recovered.compareAndSet(false, true)) {
+            return;
+        }
+        long[] events = new long[1];
+        eventLog.replay(event -> {
+            events[0]++;
+            apply(event);
+        });
+        if (events[0] == 0) {
+            return;
+        }
+        int pending = 0;
+        for (Order order : orderCache.values()) {
+            if (CREATED.equals(order.status)) {
+                submit(order);
+                pending++;
+            }
+        }
+        logger.info("Rebuilt {} orders from {} events, {} resubmitted for processing", orderCache.size(), events[0], pending);
+    }
+
+    /**
+     * 停止提交处理任务，最多等待 {@value #SHUTDOWN_WAIT_MILLIS} 毫秒让已提交的处理结束；
+     * 未处理完的订单停留在CREATED，下次启动时恢复
+     */
+    @PreDestroy
+    public void shutdown() {
+        stopping = true;
+        long deadline = System.currentTimeMillis() + SHUTDOWN_WAIT_MILLIS;
+        while (processing.get() > 0 && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (processing.get() > 0) {
+            logger.warn("{} orders still processing at shutdown, they resume from the event log on restart", processing.get());
+        }
+    }
+
+    private void apply(OrderEvent event) {
+        if (event.type() == OrderEvent.Type.CREATED) {
+            orderCache.put(event.orderId(), new Order(event.orderId(), event.userId(), event.amount(), CREATED));
+            return;
+        }
+        Order order = orderCache.get(event.orderId());
+        if (order == null) {
+            return;
         }
-        return false;
+        switch (event.type()) {
+            case PROCESSED -> order.status = PROCESSED;
+            case COMPLETION_REQUESTED -> order.completionRequested = true;
+            case COMPLETED -> order.status = COMPLETED;
+            default -> {
+            }
+        }
+    }
+
+    private Object stripe(Long userId) {
+        long h = key(userId) * 0x9E3779B97F4A7C15L;
+        return stripes[(int) (h >>> 58)];
+    }
+
+    private static long key(Long userId) {
+        return userId == null ? 0 : userId;
     }
 }
@@ -0,0 +1,36 @@
+package com.boonya.game.service;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 响应式读路径配置，见 {@link ReactiveUserService}
+ */
+@Data
+@ConfigurationProperties(prefix = "user.reactive")
+public class ReactiveUserProperties {
+
+    /**
+     * L1 AsyncCache最大条数与写入后过期时间，与 CacheConfig 的 users 缓存一致
+     */
+    private long localCacheSize = 10_000;
+
+    private Duration localCacheTtl = Duration.ofMinutes(10);
+
+    /**
+     * 单次Redis读的超时，超时或出错按未命中处理，继续查库
+     */
+    private Duration redisTimeout = Duration.ofMillis(50);
+
+    /**
+     * 查库超时，超时返回504
+     */
+    private Duration databaseTimeout = Duration.ofMillis(500);
+
+    /**
+     * 查库后回填Redis的过期时间
+     */
+    private Duration redisTtl = Duration.ofMinutes(30);
+}
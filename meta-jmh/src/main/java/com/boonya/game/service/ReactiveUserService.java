@@ -0,0 +1,164 @@
+package com.boonya.game.service;
+
+import com.boonya.game.dao.ReactiveUserRepository;
+import com.boonya.game.model.User;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.ReactiveRedisOperations;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 全响应式的用户读路径，各层都不阻塞调用线程
+ * <ul>
+ *     <li>L1：Caffeine AsyncCache，缓存的是加载中的Future，同一用户的并发未命中共享一次加载；命中时在调用线程直接返回</li>
+ *     <li>L2：ReactiveRedisOperations，超时或出错按未命中处理并计入降级，继续查库；未配置时跳过</li>
+ *     <li>L3：{@link ReactiveUserRepository}，超时返回504；查到后异步回填Redis，回填失败只记日志</li>
+ * </ul>
+ * Redis键与 {@link UserService} 的多级缓存一致（users_:id），两条路径共用L2。
+ */
+public class ReactiveUserService implements MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveUserService.class);
+
+    private static final String KEY_PREFIX = "users_:";
+
+    private final ReactiveUserRepository repository;
+    private final ReactiveRedisOperations<Object, Object> redis;
+    private final ReactiveUserProperties properties;
+    private final AsyncCache<Long, User> localCache;
+
+    private final LongAdder localHits = new LongAdder();
+    private final LongAdder localMisses = new LongAdder();
+    private final LongAdder redisHits = new LongAdder();
+    private final LongAdder redisMisses = new LongAdder();
+    private final LongAdder redisFallbacks = new LongAdder();
+    private final LongAdder databaseTimeouts = new LongAdder();
+
+    /**
+     * @param redis 为null时不查L2
+     */
+    public ReactiveUserService(ReactiveUserRepository repository, ReactiveRedisOperations<Object, Object> redis,
+                               ReactiveUserProperties properties) {
+        this.repository = repository;
+        this.redis = redis;
+        this.properties = properties;
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(properties.getLocalCacheSize())
+                .expireAfterWrite(properties.getLocalCacheTtl())
+                .buildAsync();
+    }
+
+    /**
+     * 用户不存在时返回空Mono；取消订阅不会取消共享的加载
+     */
+    public Mono<User> getUser(Long id) {
+        CompletableFuture<User> future = localCache.getIfPresent(id);
+        if (future != null && future.isCompletedExceptionally()) {
+            // Caffeine在Future的完成回调中移除失败的加载，这里可能早于回调执行
+            localCache.asMap().remove(id, future);
+            future = null;
+        }
+        if (future != null) {
+            localHits.increment();
+        } else {
+            localMisses.increment();
+            future = localCache.get(id, this::load);
+        }
+        return Mono.fromFuture(future, true);
+    }
+
+    /**
+     * 用户被修改或删除后使L1失效；L2（users_:id）由 {@link UserService#evictUserView} 在写路径上删除
+     */
+    public void evict(Long id) {
+        localCache.synchronous().invalidate(id);
+    }
+
+    /**
+     * L1未命中的加载，只由每个用户的第一个调用方触发；结果为null时Caffeine不保留该条目
+     */
+    private CompletableFuture<User> load(Long id, Executor executor) {
+        String key = KEY_PREFIX + id;
+        return getFromRedis(key)
+                .switchIfEmpty(Mono.defer(() -> getFromDatabase(id, key)))
+                .toFuture();
+    }
+
+    private Mono<User> getFromRedis(String key) {
+        if (redis == null) {
+            return Mono.empty();
+        }
+        return redis.opsForValue().get(key)
+                .timeout(properties.getRedisTimeout())
+                .cast(User.class)
+                .doOnNext(user -> redisHits.increment())
+                .switchIfEmpty(Mono.fromRunnable(redisMisses::increment))
+                .onErrorResume(e -> {
+                    redisFallbacks.increment();
+                    logger.debug("Redis read for {} failed, falling back to database: {}", key, e.toString());
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<User> getFromDatabase(Long id, String key) {
+        return repository.findById(id)
+                .timeout(properties.getDatabaseTimeout())
+                .doOnNext(user -> backfill(key, user))
+                .onErrorMap(TimeoutException.class, e -> {
+                    databaseTimeouts.increment();
+                    return new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "User lookup timed out: " + id, e);
+                });
+    }
+
+    private void backfill(String key, User user) {
+        if (redis == null) {
+            return;
+        }
+        redis.opsForValue().set(key, user, properties.getRedisTtl())
+                .subscribe(null, e -> logger.debug("Redis backfill for {} failed: {}", key, e.toString()));
+    }
+
+    public long getLocalHits() {
+        return localHits.sum();
+    }
+
+    public long getLocalMisses() {
+        return localMisses.sum();
+    }
+
+    public long getRedisFallbacks() {
+        return redisFallbacks.sum();
+    }
+
+    public long getDatabaseTimeouts() {
+        return databaseTimeouts.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        register(registry, "user.reactive.cache", localHits, "tier", "local", "result", "hit");
+        register(registry, "user.reactive.cache", localMisses, "tier", "local", "result", "miss");
+        register(registry, "user.reactive.cache", redisHits, "tier", "redis", "result", "hit");
+        register(registry, "user.reactive.cache", redisMisses, "tier", "redis", "result", "miss");
+        register(registry, "user.reactive.fallback", redisFallbacks, "tier", "redis", "cause", "error");
+        register(registry, "user.reactive.fallback", databaseTimeouts, "tier", "database", "cause", "timeout");
+    }
+
+    private static void register(MeterRegistry registry, String name, LongAdder adder, String... tags) {
+        FunctionCounter.builder(name, adder, LongAdder::sum)
+                .tags(tags)
+                .register(registry);
+    }
+}
@@ -0,0 +1,285 @@
+package com.boonya.game.service;
+
+import com.boonya.game.model.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link MonitoredUserService} 的指标门面
+ * <ul>
+ *     <li>所有Meter在构造时注册，记录路径不创建Meter、不拼接标签</li>
+ *     <li>单次查询的热路径只有两次System.nanoTime与几次LongAdder累加：次数与总耗时精确记录在
+ *     user.query.duration（FunctionTimer），直方图Timer与响应大小按 1/{@value #SAMPLE_RATE} 采样，
+ *     百分位估计不受影响，每次调用省去直方图更新</li>
+ *     <li>批量大小按区间分桶作为标签，实际分布记在 user.batch.query.size；错误类型最多 {@value #MAX_ERROR_TYPES} 种，超出计入other</li>
+ *     <li>命中率按层统计：local为L1命中率，redis为L1未命中后L2的命中率，overall为两层合计；
+ *     Gauge是启动以来的累计值，按时间窗口的命中率用 user.cache.requests 计数器的rate计算</li>
+ * </ul>
+ */
+public class UserQueryMetrics {
+
+    static final int MAX_ERROR_TYPES = 16;
+    static final int SAMPLE_RATE = 16;
+    private static final int SAMPLE_MASK = SAMPLE_RATE - 1;
+    static final String OTHER_ERROR = "other";
+    private static final long SLOW_QUERY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * 批量大小分桶的上界（含），最后一个桶没有上界
+     */
+    private static final int[] BATCH_BOUNDS = {1, 10, 100, 1000};
+    private static final String[] BATCH_BUCKETS = {"1", "2-10", "11-100", "101-1000", "over_1000"};
+
+    private final MeterRegistry registry;
+
+    private final Timer sampledQueryTimer;
+    private final Counter errorCounter;
+    private final Counter slowQueries;
+    private final DistributionSummary responseSize;
+    private final Counter[] batchQueries = new Counter[BATCH_BUCKETS.length];
+    private final Timer batchTimer;
+    private final DistributionSummary batchSize;
+    private final Timer warmUpTimer;
+    private final Map<String, Counter> errorTypes = new ConcurrentHashMap<>();
+    private final Counter otherErrors;
+
+    /**
+     * 完成的查询数（成功与失败），同时是 user.query.count 与 user.query.duration 的次数
+     */
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder localHits = new LongAdder();
+    private final LongAdder localMisses = new LongAdder();
+    private final LongAdder redisHits = new LongAdder();
+    private final LongAdder redisMisses = new LongAdder();
+
+    public UserQueryMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        FunctionCounter.builder("user.query.count", completed, LongAdder::sum)
+                .description("Total number of user queries")
+                .tag("service", "user-service")
+                .register(registry);
+        FunctionTimer.builder("user.query.duration", this,
+                        m -> m.completed.sum(), m -> m.totalNanos.sum(), TimeUnit.NANOSECONDS)
+                .description("Time taken for user queries")
+                .tag("service", "user-service")
+                .register(registry);
+        this.sampledQueryTimer = Timer.builder("user.query.duration.sampled")
+                .description("Sampled user query latency for percentiles, 1 in " + SAMPLE_RATE + " queries")
+                .tag("service", "user-service")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.errorCounter = Counter.builder("user.query.errors")
+                .description("Number of failed user queries")
+                .tag("service", "user-service")
+                .register(registry);
+        this.slowQueries = Counter.builder("user.query.slow")
+                .tag("duration_range", "over_1s")
+                .register(registry);
+        this.responseSize = DistributionSummary.builder("user.response.size")
+                .description("Size of user response data, sampled with the query latency")
+                .baseUnit("bytes")
+                .register(registry);
+
+        for (int i = 0; i < BATCH_BUCKETS.length; i++) {
+            batchQueries[i] = Counter.builder("user.batch.query.count")
+                    .tag("batch_size", BATCH_BUCKETS[i])
+                    .register(registry);
+        }
+        this.batchTimer = Timer.builder("user.batch.query.duration")
+                .description("Time taken for batch user queries")
+                .tag("service", "user-service")
+                .register(registry);
+        this.batchSize = DistributionSummary.builder("user.batch.query.size")
+                .description("Ids per batch query")
+                .register(registry);
+        this.warmUpTimer = Timer.builder("user.cache.warmup")
+                .register(registry);
+        this.otherErrors = errorTypeCounter(OTHER_ERROR);
+
+        hitRatio("local", localHits, localMisses);
+        hitRatio("redis", redisHits, redisMisses);
+        Gauge.builder("user.cache.hit.ratio", this, UserQueryMetrics::overallHitRatio)
+                .description("Cache hit ratio for user queries")
+                .tag("service", "user-service")
+                .tag("tier", "overall")
+                .register(registry);
+    }
+
+    private void hitRatio(String tier, LongAdder hits, LongAdder misses) {
+        Gauge.builder("user.cache.hit.ratio", this, m -> ratio(hits.sum(), misses.sum()))
+                .description("Cache hit ratio for user queries")
+                .tag("service", "user-service")
+                .tag("tier", tier)
+                .register(registry);
+        FunctionCounter.builder("user.cache.requests", hits, LongAdder::sum)
+                .tag("tier", tier)
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("user.cache.requests", misses, LongAdder::sum)
+                .tag("tier", tier)
+                .tag("result", "miss")
+                .register(registry);
+    }
+
+    private Counter errorTypeCounter(String type) {
+        return Counter.builder("user.query.error.types")
+                .tag("error_type", type)
+                .register(registry);
+    }
+
+    /**
+     * 开始一次查询，返回的时间戳交给 {@link #success}/{@link #failure}
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    public void success(long startNanos, User user) {
+        if (done(startNanos) && user != null) {
+            responseSize.record(estimateUserSize(user));
+        }
+    }
+
+    public void failure(long startNanos, String errorType) {
+        done(startNanos);
+        error(errorType);
+    }
+
+    /**
+     * 精确累计次数与耗时，返回本次是否被采样
+     */
+    private boolean done(long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        completed.increment();
+        totalNanos.add(elapsed);
+        if (elapsed > SLOW_QUERY_NANOS) {
+            slowQueries.increment();
+        }
+        if ((ThreadLocalRandom.current().nextInt() & SAMPLE_MASK) != 0) {
+            return false;
+        }
+        sampledQueryTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        return true;
+    }
+
+    public void error(String errorType) {
+        errors.increment();
+        errorCounter.increment();
+        Counter counter = errorTypes.get(errorType);
+        if (counter == null) {
+            counter = errorTypes.size() < MAX_ERROR_TYPES
+                    ? errorTypes.computeIfAbsent(errorType, this::errorTypeCounter) : otherErrors;
+        }
+        counter.increment();
+    }
+
+    public void localHit() {
+        localHits.increment();
+    }
+
+    public void localMiss() {
+        localMisses.increment();
+    }
+
+    public void redisHits(int count) {
+        redisHits.add(count);
+    }
+
+    public void redisMisses(int count) {
+        redisMisses.add(count);
+    }
+
+    /**
+     * 记录一次批量查询，返回开始时间戳交给 {@link #batchDone}
+     */
+    public long batchStart(int size) {
+        batchQueries[bucket(size)].increment();
+        batchSize.record(size);
+        return System.nanoTime();
+    }
+
+    public void batchDone(long startNanos) {
+        batchTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public Timer warmUpTimer() {
+        return warmUpTimer;
+    }
+
+    static int bucket(int size) {
+        for (int i = 0; i < BATCH_BOUNDS.length; i++) {
+            if (size <= BATCH_BOUNDS[i]) {
+                return i;
+            }
+        }
+        return BATCH_BOUNDS.length;
+    }
+
+    static String bucketName(int size) {
+        return BATCH_BUCKETS[bucket(size)];
+    }
+
+    public long getQueries() {
+        return completed.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public long getCacheHits() {
+        return localHits.sum() + redisHits.sum();
+    }
+
+    /**
+     * 两层都未命中、需要查库的次数
+     */
+    public long getCacheMisses() {
+        return redisMisses.sum();
+    }
+
+    public double localHitRatio() {
+        return ratio(localHits.sum(), localMisses.sum());
+    }
+
+    public double redisHitRatio() {
+        return ratio(redisHits.sum(), redisMisses.sum());
+    }
+
+    public double overallHitRatio() {
+        long hits = getCacheHits();
+        return ratio(hits, redisMisses.sum());
+    }
+
+    /**
+     * 没有样本时为NaN，不把"无流量"报成0%命中
+     */
+    private static double ratio(long hits, long misses) {
+        long total = hits + misses;
+        return total == 0 ? Double.NaN : (double) hits / total;
+    }
+
+    /**
+     * 估算用户对象大小（用于监控）
+     */
+    static int estimateUserSize(User user) {
+        int size = 0;
+        size += user.getId() != null ? 8 : 0;
+        size += user.getName() != null ? user.getName().length() * 2 : 0;
+        size += user.getEmail() != null ? user.getEmail().length() * 2 : 0;
+        return Math.max(size, 100); // 最小100字节
+    }
+}
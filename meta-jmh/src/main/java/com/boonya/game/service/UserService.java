@@ -3,46 +3,149 @@ package com.boonya.game.service;
 import com.boonya.game.datasource.annotation.Master;
 import com.boonya.game.datasource.annotation.ReadOnly;
 import com.boonya.game.cache.AbstractMultiLevelCache;
-import com.boonya.game.component.ApplicationContextHolder;
+import com.boonya.game.cache.hedge.HedgedExecutor;
+import com.boonya.game.cache.hotkey.HotKeyTelemetry;
+import com.boonya.game.cache.local.BoundedLocalCache;
+import com.boonya.game.cache.tier.TieredCache;
+import com.boonya.game.cache.tier.TieredCacheFactory;
+import com.boonya.game.cache.warmup.WarmUpExecutor;
+import com.boonya.game.dao.ShardedUserRepository;
+import com.boonya.game.dao.UserBatchWriter;
 import com.boonya.game.dao.UserRepository;
 import com.boonya.game.model.User;
-import jakarta.annotation.Resource;
-import org.apache.commons.pool2.BasePooledObjectFactory;
-import org.apache.commons.pool2.PooledObject;
-import org.apache.commons.pool2.impl.GenericObjectPool;
+import com.boonya.game.model.UserView;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.atomic.LongAdder;
-import java.util.concurrent.locks.StampedLock;
 
 @Service
 public class UserService extends AbstractMultiLevelCache<User, Long> {
     private final ConcurrentHashMap<Long, User> userCache = new ConcurrentHashMap<>();
-    private final AtomicLong idGenerator = new AtomicLong(1);
 
-    @Resource
-    private UserRepository userRepository;
+    private final UserRepository userRepository;
+
+    // 批量写入相关依赖在脱离Spring的基准中不存在，按可选注入
+    @Autowired(required = false)
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired(required = false)
+    private UserBatchWriter batchWriter;
+
+    @Autowired(required = false)
+    private HotKeyTelemetry hotKeyTelemetry;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Autowired(required = false)
+    private TieredCacheFactory tieredCacheFactory;
+
+    @Autowired(required = false)
+    private ReactiveUserService reactiveUserService;
+
+    // user.hedge.enabled=true 时才有，见 DeadlineConfig
+    @Autowired(required = false)
+    private HedgedExecutor.Policy hedgePolicy;
+
+    // datasource.sharding.enabled=true 时才有，见 ShardingConfig；存在时用户表的读写都走分片库
+    private ShardedUserRepository shardedUsers;
+
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:100}")
+    private int jpaBatchSize = 100;
+
+    @Value("${user.batch-loader.enabled:false}")
+    private boolean batchLoaderEnabled;
+
+    @Value("${user.batch-loader.window:2ms}")
+    private Duration batchLoaderWindow = Duration.ofMillis(2);
+
+    @Value("${user.batch-loader.max-batch-size:64}")
+    private int batchLoaderMaxSize = 64;
+
+    @Value("${user.batch-loader.concurrency:4}")
+    private int batchLoaderConcurrency = 4;
 
     @Autowired
-    public UserService(CacheManager localCache, RedisTemplate<String, Object> redisCache) {
+    public UserService(CacheManager localCache, RedisTemplate<String, Object> redisCache,
+                       UserRepository userRepository) {
         super(localCache, redisCache);
+        this.userRepository = userRepository;
     }
 
     @Override
     public JpaRepository<User, Long> database() {
-        return ApplicationContextHolder.getBean(UserRepository.class);
+        return userRepository;
+    }
+
+    @Autowired(required = false)
+    public void setShardedUsers(ShardedUserRepository shardedUsers) {
+        this.shardedUsers = shardedUsers;
+    }
+
+    @Override
+    protected User loadFromDatabase(Long id) {
+        return shardedUsers != null ? shardedUsers.findById(id) : userRepository.findById(id).orElse(null);
+    }
+
+    @Override
+    protected List<User> loadAllFromDatabase(List<Long> ids) {
+        return shardedUsers != null ? shardedUsers.findAllById(ids) : userRepository.findAllById(ids);
+    }
+
+    /**
+     * 配置了 cache.tiered.caches.users 时，"users" 缓存由分层管线读取；
+     * 否则 user.batch-loader.enabled 时，多级缓存L1未命中的并发查询合批加载；
+     * user.hedge.enabled 时固定三层的L2/L3开启对冲（管线与合批不经过对冲）
+     */
+    @PostConstruct
+    public void initCacheLoading() {
+        if (meterRegistry != null) {
+            lockFreeUsers.bindTo(meterRegistry);
+            userViews.bindTo(meterRegistry);
+        }
+        TieredCache<Long, User> pipeline = tieredCacheFactory == null ? null
+                : tieredCacheFactory.create("users", this::loadFromDatabase, this::loadUsers);
+        if (pipeline != null) {
+            usePipeline("users", pipeline);
+        } else if (batchLoaderEnabled) {
+            enableBatchLoading("users", User::getId, batchLoaderWindow, batchLoaderMaxSize,
+                    batchLoaderConcurrency, meterRegistry);
+        }
+        if (hedgePolicy != null) {
+            enableHedging(hedgePolicy, meterRegistry);
+        }
     }
 
+    private Map<Long, User> loadUsers(Collection<Long> ids) {
+        Map<Long, User> users = new HashMap<>(ids.size() * 2);
+        for (User user : loadAllFromDatabase(new ArrayList<>(ids))) {
+            users.put(user.getId(), user);
+        }
+        return users;
+    }
 
     /**
      * 读操作 - 自动使用从库
@@ -50,7 +153,7 @@ public class UserService extends AbstractMultiLevelCache<User, Long> {
     @ReadOnly
     public User findById(Long id) {
         // 这个方法会自动使用从库
-        return userRepository.findById(id).orElse(null);
+        return loadFromDatabase(id);
     }
 
     /**
@@ -59,7 +162,77 @@ public class UserService extends AbstractMultiLevelCache<User, Long> {
     @Master
     public User save(User user) {
         // 这个方法会使用主库
-        return userRepository.save(user);
+        User saved;
+        if (shardedUsers != null) {
+            // ID是分片键，写入前分配
+            assignIds(List.of(user));
+            saved = shardedUsers.save(user);
+        } else {
+            saved = userRepository.save(user);
+        }
+        evictUserView(saved.getId());
+        return saved;
+    }
+
+    /**
+     * 批量写入 - JPA路径，按 hibernate.jdbc.batch_size 分段flush后清空持久化上下文，
+     * 避免一级缓存随批量增长；ID按号段预分配，INSERT可以合并成JDBC批次
+     */
+    @Master
+    @Transactional
+    public List<User> saveAll(List<User> users) {
+        if (shardedUsers != null) {
+            List<User> saved = new ArrayList<>(users.size());
+            for (User user : users) {
+                saved.add(save(user));
+            }
+            return saved;
+        }
+        // 与仓库共用当前事务绑定的EntityManager
+        EntityManager entityManager = entityManagerFactory == null ? null
+                : EntityManagerFactoryUtils.getTransactionalEntityManager(entityManagerFactory);
+        List<User> saved = new ArrayList<>(users.size());
+        for (int from = 0; from < users.size(); from += jpaBatchSize) {
+            List<User> chunk = users.subList(from, Math.min(from + jpaBatchSize, users.size()));
+            saved.addAll(userRepository.saveAll(chunk));
+            if (entityManager != null) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        saved.forEach(user -> evictUserView(user.getId()));
+        return saved;
+    }
+
+    /**
+     * 批量写入 - JDBC快速路径，只插入新用户；未配置JDBC写入器时退回JPA路径
+     * <p>
+     * 退回时是自调用，不经过代理，saveAll上的注解不生效，所以主库与事务在这里声明
+     */
+    @Master
+    @Transactional
+    public List<User> bulkInsert(List<User> users) {
+        if (shardedUsers != null) {
+            assignIds(users);
+            List<User> inserted = shardedUsers.insertAll(users, jpaBatchSize);
+            inserted.forEach(user -> evictUserView(user.getId()));
+            return inserted;
+        }
+        if (batchWriter == null) {
+            return saveAll(users);
+        }
+        List<User> inserted = batchWriter.insertAll(users);
+        inserted.forEach(user -> evictUserView(user.getId()));
+        return inserted;
+    }
+
+    /**
+     * 分片写入前用主库号段表分配ID；没有JDBC写入器时ID须由调用方给出
+     */
+    private void assignIds(List<User> users) {
+        if (batchWriter != null) {
+            batchWriter.assignIds(users);
+        }
     }
 
     /**
@@ -88,17 +261,67 @@ public class UserService extends AbstractMultiLevelCache<User, Long> {
         return userCache.containsKey(id);
     }
 
+    /**
+     * 预热加载器：L1已有的跳过，L2命中的回填L1，其余一次findAllById后回填两级缓存
+     */
+    public WarmUpExecutor.BatchLoader warmUpLoader() {
+        return new WarmUpExecutor.BatchLoader() {
+            @Override
+            public List<Long> missing(List<Long> ids) {
+                Cache cache = getLocalCache().getCache("users");
+                List<Long> notLocal = new ArrayList<>(ids.size());
+                List<String> keys = new ArrayList<>(ids.size());
+                for (Long id : ids) {
+                    if (cache.get(id) == null) {
+                        notLocal.add(id);
+                        keys.add("users_:" + id);
+                    }
+                }
+                if (notLocal.isEmpty()) {
+                    return notLocal;
+                }
+                List<Object> remote = getRedisCache().opsForValue().multiGet(keys);
+                List<Long> missing = new ArrayList<>(notLocal.size());
+                for (int i = 0; i < notLocal.size(); i++) {
+                    Object user = remote == null ? null : remote.get(i);
+                    if (user != null) {
+                        cache.put(notLocal.get(i), user);
+                    } else {
+                        missing.add(notLocal.get(i));
+                    }
+                }
+                return missing;
+            }
+
+            @Override
+            public int load(List<Long> ids) {
+                Cache cache = getLocalCache().getCache("users");
+                List<User> users = loadAllFromDatabase(ids);
+                for (User user : users) {
+                    getRedisCache().opsForValue().set("users_:" + user.getId(), user, Duration.ofMinutes(30));
+                    cache.put(user.getId(), user);
+                }
+                return users.size();
+            }
+        };
+    }
+
+    /**
+     * 启动预热用：Redis中最近一次持久化的热点快照（可能来自其他副本）
+     */
     public List<Long> getHotUserIds() {
-        // 模拟数据库查询延迟
-        return List.of(1L, 2L, 3L);
+        return hotKeyTelemetry == null ? List.of() : hotKeyTelemetry.snapshot();
     }
 
+    /**
+     * 预测预加载用：本副本近期访问统计的热点，按热度从高到低
+     */
     public List<Long> predictHotUserIds() {
-        // 与查询用户热点数据进行预测
-        return List.of();
+        return hotKeyTelemetry == null ? List.of() : hotKeyTelemetry.localHotKeys();
     }
 
     public boolean deleteUser(Long id) {
+        evictUserView(id);
         return userCache.remove(id) != null;
     }
 
@@ -118,91 +341,76 @@ public class UserService extends AbstractMultiLevelCache<User, Long> {
      * 无锁结构
      */
 
-    // 使用并发性能更好的数据结构
-    private final ConcurrentHashMap<Long, User> lockFreeUserCache = new ConcurrentHashMap<>(10000, 0.75f, 64);
-
-    // 使用LongAdder替代AtomicLong
-    private final LongAdder queryCounter = new LongAdder();
-    private final LongAdder hitCounter = new LongAdder();
-
-    // 使用StampedLock提高读性能
-    private final StampedLock lock = new StampedLock();
+    // 有界本地缓存，读写都不经过全局锁，命中统计用LongAdder；失效只在本实例生效，其他实例的修改最多10分钟后可见
+    private final BoundedLocalCache<Long, User> lockFreeUsers =
+            new BoundedLocalCache<>("users-lock-free", 10_000, Duration.ofMinutes(10));
 
     public User getUserLockFree(Long id) {
-        queryCounter.increment();
-
-        // 乐观读
-        long stamp = lock.tryOptimisticRead();
-        User user = lockFreeUserCache.get(id);
-        if (!lock.validate(stamp)) {
-            // 乐观读失败，升级为悲观读
-            stamp = lock.readLock();
-            try {
-                user = lockFreeUserCache.get(id);
-            } finally {
-                lock.unlockRead(stamp);
-            }
+        User user = lockFreeUsers.get(id);
+        if (user != null) {
+            return user;
         }
-
+        // 查库期间被evictUserView失效时不写回，避免把修改前读到的行放回缓存
+        long generation = lockFreeUsers.generation(id);
+        user = loadFromDatabase(id);
         if (user != null) {
-            hitCounter.increment();
+            lockFreeUsers.putIfUnchanged(id, user, generation);
         }
         return user;
     }
 
     /**
-     * 对象池
+     * 只读视图（享元）
      */
 
-    private final ConcurrentHashMap<Long, String> cachedNames = new ConcurrentHashMap<>();
+    // 每个用户一个不可变视图，命中时直接返回共享实例，读路径不分配对象；
+    // 有界并在写入10分钟后过期，失效只在本实例生效，其他实例的修改最多10分钟后可见
+    private final BoundedLocalCache<Long, UserView> userViews =
+            new BoundedLocalCache<>("user-views", 10_000, Duration.ofMinutes(10));
 
-    public class UserPoolFactory extends BasePooledObjectFactory<User> {
-        @Override
-        public User create() {
-            return new User();
+    public UserView getUserOptimized(Long id) {
+        UserView view = userViews.get(id);
+        if (view != null) {
+            return view;
         }
-
-        @Override
-        public PooledObject<User> wrap(User user) {
+        // 未命中时走多级缓存加载；加载期间被evictUserView失效时不写回
+        long generation = userViews.generation(id);
+        User user = super.findById(User.class, "users", id);
+        if (user == null) {
             return null;
         }
+        UserView loaded = UserView.of(user);
+        userViews.putIfUnchanged(id, loaded, generation);
+        return loaded;
     }
 
-    // 使用对象池减少GC
-    private final GenericObjectPool<User> userPool = new GenericObjectPool<>(new UserPoolFactory());
-
-    public User getUserOptimized(Long id) {
-        User user = null;
-        try {
-            // 复用对象而不是创建新对象
-            user = userPool.borrowObject();
-            // 直接设置字段而不是创建新对象
-            user.setId(id);
-            user.setName(cachedNames.get(id)); // 使用缓存
-            return user;
-        } catch (Exception e) {
-            // 如果获取对象失败，确保已获取的对象被正确释放
-            if (user != null) {
-                try {
-                    userPool.returnObject(user);
-                } catch (Exception returnException) {
-                    // 记录返回对象时的异常，但不影响主异常
-                    // 可以使用日志记录
-                }
-            }
-            // 处理对象池异常
-            throw new RuntimeException("Failed to borrow object from pool", e);
-        } finally {
-            if (user != null) {
-                boolean borrowedSuccessfully = false;
-                try {
-                    // 检查是否已经因为异常而归还了对象
-                    userPool.returnObject(user);
-                } catch (Exception e) {
-                    // 不应该忽略返回对象时的异常，至少要记录日志
-                    throw new RuntimeException("Failed to return object to pool", e);
+    /**
+     * 用户被修改或删除后使多级缓存（Redis users_:id 与 "users" 本地缓存）、视图与本地缓存失效，下次读取重新加载
+     * <p>
+     * 先删多级缓存再失效视图：失效前开始的视图加载即使读到旧值也不会写回。
+     * 在事务中调用时提交后再失效一次，提交前被其他请求读回缓存的旧行不会留下
+     */
+    public void evictUserView(Long id) {
+        if (id == null) {
+            return;
+        }
+        evictUser(id);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictUser(id);
                 }
-            }
+            });
+        }
+    }
+
+    private void evictUser(Long id) {
+        evict("users", id);
+        userViews.invalidate(id);
+        lockFreeUsers.invalidate(id);
+        if (reactiveUserService != null) {
+            reactiveUserService.evict(id);
         }
     }
 
@@ -0,0 +1,135 @@
+package com.boonya.game.cache.batch;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 批量查询：保序、三阶段分块、回填与流式窗口
+ */
+class BatchQueryEngineTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    /**
+     * 偶数在L1，3的倍数在L2，其余正数在L3，负数不存在
+     */
+    private final FakeSource source = new FakeSource();
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void resultsFollowInputOrder() {
+        BatchQueryEngine<Long, String> engine = new BatchQueryEngine<>(source, executor, 10, 100);
+        List<Long> ids = LongStream.rangeClosed(1, 500).boxed().collect(Collectors.toList());
+        Collections.shuffle(ids);
+        ids.add(2, -1L);
+        ids.add(7L);
+
+        List<String> users = engine.query(ids);
+
+        List<String> expected = ids.stream().filter(id -> id > 0).map(id -> "v" + id).collect(Collectors.toList());
+        assertEquals(expected, users);
+    }
+
+    @Test
+    void remoteAndLoaderAreCalledInChunksForDistinctMisses() {
+        BatchQueryEngine<Long, String> engine = new BatchQueryEngine<>(source, executor, 10, 100);
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= 60; id++) {
+            ids.add(id);
+            ids.add(id);
+        }
+
+        engine.query(ids);
+
+        // 60个键中30个奇数未命中L1，分3块读L2；其中20个不是3的倍数，分2块加载
+        assertEquals(List.of(10, 10, 10), sorted(source.remoteChunks));
+        assertEquals(List.of(10, 10), sorted(source.loadChunks));
+        assertEquals(10, source.remoteHits.size());
+        assertEquals(20, source.loaded.size());
+    }
+
+    @Test
+    void chunkFailureFailsTheQuery() {
+        source.failLoad = true;
+        BatchQueryEngine<Long, String> engine = new BatchQueryEngine<>(source, executor, 2, 100);
+        IllegalStateException error = assertThrows(IllegalStateException.class,
+                () -> engine.query(List.of(1L, 5L, 7L, 11L, 13L)));
+        assertEquals("db down", error.getMessage());
+    }
+
+    @Test
+    void streamEmitsWindowsInOrder() {
+        BatchQueryEngine<Long, String> engine = new BatchQueryEngine<>(source, executor, 50, 100);
+        List<Long> ids = LongStream.rangeClosed(1, 2_000).map(id -> 2_001 - id).boxed().collect(Collectors.toList());
+
+        List<String> users = engine.stream(ids).collectList().block();
+
+        assertEquals(ids.stream().map(id -> "v" + id).collect(Collectors.toList()), users);
+    }
+
+    private static List<Integer> sorted(List<Integer> sizes) {
+        List<Integer> copy = new ArrayList<>(sizes);
+        Collections.sort(copy);
+        return copy;
+    }
+
+    private static class FakeSource implements BatchQueryEngine.Source<Long, String> {
+
+        private final List<Integer> remoteChunks = Collections.synchronizedList(new ArrayList<>());
+        private final List<Integer> loadChunks = Collections.synchronizedList(new ArrayList<>());
+        private final Map<Long, String> remoteHits = new ConcurrentHashMap<>();
+        private final Map<Long, String> loaded = new ConcurrentHashMap<>();
+        private volatile boolean failLoad;
+
+        @Override
+        public String getLocal(Long key) {
+            return key > 0 && key % 2 == 0 ? "v" + key : null;
+        }
+
+        @Override
+        public Map<Long, String> getRemote(List<Long> keys) {
+            remoteChunks.add(keys.size());
+            Map<Long, String> found = new HashMap<>();
+            keys.stream().filter(key -> key > 0 && key % 3 == 0).forEach(key -> found.put(key, "v" + key));
+            return found;
+        }
+
+        @Override
+        public Map<Long, String> load(List<Long> keys) {
+            loadChunks.add(keys.size());
+            if (failLoad) {
+                throw new IllegalStateException("db down");
+            }
+            Map<Long, String> found = new HashMap<>();
+            keys.stream().filter(key -> key > 0).forEach(key -> found.put(key, "v" + key));
+            return found;
+        }
+
+        @Override
+        public void onRemoteHit(Long key, String value) {
+            remoteHits.put(key, value);
+        }
+
+        @Override
+        public void onLoaded(Long key, String value) {
+            loaded.put(key, value);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.boonya.game.cache.batch;
+
+import com.boonya.game.datasource.DynamicDataSourceHolder;
+import com.boonya.game.datasource.WritePositionHolder;
+import com.boonya.game.jmh.fake.InMemoryRedisTemplate;
+import com.boonya.game.jmh.fake.InMemoryUserRepository;
+import com.boonya.game.jmh.fake.ServiceFixtures;
+import com.boonya.game.model.User;
+import com.boonya.game.service.UserService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.support.NoOpCacheManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 合批加载：窗口合并、上限触发、重复键与失败传播、按分区合批与水位、按调用方路由查库
+ */
+class CollapsingBatchLoaderTest {
+
+    @Test
+    void collapsesConcurrentLoadsWithinWindow() throws Exception {
+        List<List<Long>> batches = Collections.synchronizedList(new ArrayList<>());
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        try (CollapsingBatchLoader<Long, String> loader = new CollapsingBatchLoader<>("test", ids -> {
+            batches.add(ids);
+            Map<Long, String> values = new HashMap<>();
+            ids.forEach(id -> values.put(id, "v" + id));
+            return values;
+        }, Duration.ofMillis(50), 1000, 2, registry)) {
+            int threads = 16;
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<String>> results = new ArrayList<>();
+            for (long id = 0; id < threads; id++) {
+                long key = id;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return loader.load(key).get(2, TimeUnit.SECONDS);
+                }));
+            }
+            start.countDown();
+            for (int i = 0; i < threads; i++) {
+                assertEquals("v" + i, results.get(i).get());
+            }
+            executor.shutdown();
+        }
+        assertTrue(batches.size() < 4, "expected few batches but got " + batches);
+        assertEquals(16, batches.stream().mapToInt(List::size).sum());
+        assertEquals(batches.size(), registry.get("batch.loader.size").summary().count());
+    }
+
+    @Test
+    void fullBatchIsDispatchedWithoutWaitingForWindow() throws Exception {
+        try (CollapsingBatchLoader<Long, Long> loader = new CollapsingBatchLoader<>("test",
+                ids -> Map.of(ids.get(0), ids.get(0)), Duration.ofSeconds(30), 2, 1, null)) {
+            CompletableFuture<Long> first = loader.load(1L);
+            CompletableFuture<Long> second = loader.load(2L);
+            assertEquals(1L, first.get(1, TimeUnit.SECONDS));
+            // 批量函数没返回的键得到null
+            assertNull(second.get(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void duplicateKeysShareOneFuture() throws Exception {
+        List<List<Long>> batches = Collections.synchronizedList(new ArrayList<>());
+        try (CollapsingBatchLoader<Long, Long> loader = new CollapsingBatchLoader<>("test", ids -> {
+            batches.add(ids);
+            return Map.of(7L, 7L);
+        }, Duration.ofMillis(20), 100, 1, null)) {
+            CompletableFuture<Long> a = loader.load(7L);
+            CompletableFuture<Long> b = loader.load(7L);
+            assertSame(a, b);
+            assertEquals(7L, a.get(1, TimeUnit.SECONDS));
+        }
+        assertEquals(List.of(List.of(7L)), batches);
+    }
+
+    @Test
+    void batchFailureFailsEveryCaller() {
+        try (CollapsingBatchLoader<Long, Long> loader = new CollapsingBatchLoader<>("test", ids -> {
+            throw new IllegalStateException("db down");
+        }, Duration.ofMillis(5), 100, 1, null)) {
+            CompletableFuture<Long> a = loader.load(1L);
+            CompletableFuture<Long> b = loader.load(2L);
+            CompletionException error = assertThrows(CompletionException.class, a::join);
+            assertEquals("db down", error.getCause().getMessage());
+            assertThrows(CompletionException.class, b::join);
+        }
+    }
+
+    @Test
+    void userServiceResolvesMissesWithOneQueryPerBatch() throws Exception {
+        InMemoryUserRepository repository = new InMemoryUserRepository(100);
+        InMemoryRedisTemplate redis = new InMemoryRedisTemplate();
+        redis.opsForValue().set("users_:1", new User(1L, "cached", "cached@example.com"));
+        UserService service = ServiceFixtures.userService(new NoOpCacheManager(), redis, repository);
+        service.enableBatchLoading("users", User::getId, Duration.ofMillis(50), 100, 1, null);
+        try {
+            List<CompletableFuture<User>> futures = new ArrayList<>();
+            ExecutorService executor = Executors.newFixedThreadPool(10);
+            for (long id = 1; id <= 10; id++) {
+                long key = id;
+                futures.add(CompletableFuture.supplyAsync(() -> service.findById(User.class, "users", key), executor));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals(i + 1L, futures.get(i).get(2, TimeUnit.SECONDS).getId());
+            }
+            executor.shutdown();
+            assertEquals("cached", futures.get(0).get().getName());
+            assertTrue(repository.getQueryCount() <= 2, "queries: " + repository.getQueryCount());
+            assertNull(service.findById(User.class, "users", 999L));
+        } finally {
+            service.disableBatchLoading();
+        }
+    }
+
+    @Test
+    void partitionsAreBatchedSeparatelyWithTheHighestWatermark() throws Exception {
+        List<String> batches = Collections.synchronizedList(new ArrayList<>());
+        try (CollapsingBatchLoader<Long, Long> loader = new CollapsingBatchLoader<Long, Long>("test",
+                (partition, watermark, ids) -> {
+                    batches.add(partition + "@" + watermark + ids);
+                    Map<Long, Long> values = new HashMap<>();
+                    ids.forEach(id -> values.put(id, id));
+                    return values;
+                }, Duration.ofMillis(20), 100, 1, null)) {
+            List<CompletableFuture<Long>> futures = List.of(
+                    loader.load(1L, "slave", 5), loader.load(2L, "slave", 9),
+                    loader.load(3L, "master", 1), loader.load(4L));
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals(i + 1L, futures.get(i).get(1, TimeUnit.SECONDS));
+            }
+        }
+        assertEquals(Set.of("slave@9[1, 2]", "master@1[3]", "null@0[4]"), Set.copyOf(batches));
+    }
+
+    @Test
+    void userServiceBatchesQueryOnTheCallersRouteAndPosition() throws Exception {
+        List<String> routes = Collections.synchronizedList(new ArrayList<>());
+        InMemoryUserRepository repository = new InMemoryUserRepository(100) {
+            @Override
+            public List<User> findAllById(Iterable<Long> ids) {
+                routes.add(DynamicDataSourceHolder.peekDataSource() + "@" + WritePositionHolder.getPosition());
+                return super.findAllById(ids);
+            }
+        };
+        UserService service = ServiceFixtures.userService(new NoOpCacheManager(), new InMemoryRedisTemplate(), repository);
+        service.enableBatchLoading("users", User::getId, Duration.ofMillis(50), 100, 1, null);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<User> replicaRead = executor.submit(() -> onRoute(DynamicDataSourceHolder.SLAVE, 42,
+                    () -> service.findById(User.class, "users", 1L)));
+            Future<User> masterRead = executor.submit(() -> onRoute(DynamicDataSourceHolder.MASTER, 0,
+                    () -> service.findById(User.class, "users", 2L)));
+            assertEquals(1L, replicaRead.get(2, TimeUnit.SECONDS).getId());
+            assertEquals(2L, masterRead.get(2, TimeUnit.SECONDS).getId());
+            assertEquals(Set.of("slave@42", "master@0"), Set.copyOf(routes));
+
+            // 加载线程上不留下上一批的路由与位点
+            routes.clear();
+            assertEquals(3L, service.findById(User.class, "users", 3L).getId());
+            assertEquals(List.of("null@0"), routes);
+        } finally {
+            executor.shutdown();
+            service.disableBatchLoading();
+        }
+    }
+
+    private static User onRoute(String dataSource, long position, Supplier<User> read) {
+        DynamicDataSourceHolder.setDataSource(dataSource);
+        WritePositionHolder.restore(position);
+        try {
+            return read.get();
+        } finally {
+            DynamicDataSourceHolder.clearDataSource();
+            WritePositionHolder.clear();
+        }
+    }
+}
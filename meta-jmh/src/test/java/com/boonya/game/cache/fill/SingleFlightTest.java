@@ -0,0 +1,171 @@
+package com.boonya.game.cache.fill;
+
+import com.boonya.game.deadline.Deadline;
+import com.boonya.game.deadline.DeadlineExceededException;
+import com.boonya.game.jmh.fake.InMemoryRedisTemplate;
+import com.boonya.game.jmh.fake.InMemoryUserRepository;
+import com.boonya.game.jmh.fake.ServiceFixtures;
+import com.boonya.game.model.User;
+import com.boonya.game.service.UserService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 同键未命中合并：一次加载、一次回填、异常共享、等待者的截止时间
+ */
+class SingleFlightTest {
+
+    private static final int THREADS = 16;
+
+    @Test
+    void concurrentCallersShareOneLoad() throws Exception {
+        SingleFlight<Long, String> flight = new SingleFlight<>("test");
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(() -> flight.load(1L, () -> {
+                calls.incrementAndGet();
+                await(release);
+                return "v1";
+            })));
+        }
+        // 所有调用方都加入在途加载后再放行leader
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (flight.getShared() < THREADS - 1 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        for (Future<String> result : results) {
+            assertEquals("v1", result.get(5, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        assertEquals(1, calls.get());
+        assertEquals(1, flight.getLoads());
+        assertEquals(THREADS - 1, flight.getShared());
+        assertEquals(0, flight.inFlight());
+
+        // 加载结束后不保留结果，下一次调用重新加载
+        assertEquals("v2", flight.load(1L, () -> "v2"));
+    }
+
+    @Test
+    void failureIsSharedWithWaitersWithoutWrapping() throws Exception {
+        SingleFlight<Long, String> flight = new SingleFlight<>("test");
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<String> leader = executor.submit(() -> flight.load(1L, () -> {
+            entered.countDown();
+            await(release);
+            throw new IllegalStateException("db down");
+        }));
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        Future<String> follower = executor.submit(() -> flight.load(1L, () -> "unused"));
+        while (flight.getShared() < 1) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        for (Future<String> result : List.of(leader, follower)) {
+            Exception error = assertThrows(Exception.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, error.getCause());
+        }
+        executor.shutdown();
+        assertEquals(1, flight.getFailures());
+        assertEquals(0, flight.inFlight());
+    }
+
+    @Test
+    void waiterGivesUpAtItsDeadline() throws Exception {
+        SingleFlight<Long, String> flight = new SingleFlight<>("test");
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<String> leader = executor.submit(() -> flight.load(1L, () -> {
+            entered.countDown();
+            await(release);
+            return "v1";
+        }));
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        // 等待者只等到自己的截止时间，leader继续加载
+        long start = System.nanoTime();
+        assertThrows(DeadlineExceededException.class, () -> Deadline.callWithin(Deadline.after(Duration.ofMillis(50)),
+                () -> flight.load(1L, () -> "unused")));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        release.countDown();
+        assertEquals("v1", leader.get(5, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    @Test
+    void hotMissLoadsOnceAndBackfillsRedis() throws Exception {
+        InMemoryUserRepository repository = new InMemoryUserRepository(10) {
+            @Override
+            public Optional<User> findById(Long id) {
+                // 放慢查库，让所有调用方在加载期间到达
+                sleep(200);
+                return super.findById(id);
+            }
+        };
+        InMemoryRedisTemplate redis = new InMemoryRedisTemplate();
+        UserService service = ServiceFixtures.userService(ServiceFixtures.caffeineCacheManager(), redis, repository);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        service.bindTo(registry);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<User>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return service.findById(User.class, "users", 3L);
+            }));
+        }
+        start.countDown();
+        for (Future<User> result : results) {
+            assertEquals(3L, result.get(5, TimeUnit.SECONDS).getId());
+        }
+        executor.shutdown();
+        assertEquals(1, repository.getQueryCount());
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (redis.opsForValue().get("users_:3") == null && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertNotNull(redis.opsForValue().get("users_:3"));
+        assertEquals(1.0, registry.get("cache.fill.loads").functionCounter().count());
+        assertEquals(THREADS - 1, registry.get("cache.fill.shared").functionCounter().count());
+        service.close();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.boonya.game.cache.hedge;
+
+import com.boonya.game.deadline.Deadline;
+import com.boonya.game.deadline.DeadlineExceededException;
+import com.boonya.game.jmh.fake.InMemoryRedisTemplate;
+import com.boonya.game.jmh.fake.InMemoryUserRepository;
+import com.boonya.game.jmh.fake.ServiceFixtures;
+import com.boonya.game.model.User;
+import com.boonya.game.service.UserService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 对冲请求：慢主请求被对冲且不被中断、失败立即切换、预算、截止时间、分位数
+ */
+class HedgedExecutorTest {
+
+    private HedgedExecutor executor;
+
+    @AfterEach
+    void close() {
+        if (executor != null) {
+            executor.close();
+        }
+    }
+
+    @Test
+    void fastPrimaryIsNotHedged() {
+        executor = new HedgedExecutor("test", "primary", policy(Duration.ofMillis(200)));
+        assertEquals("a", executor.call(() -> "a", () -> fail("backup should not run")));
+        assertEquals(1, executor.getCalls());
+        assertEquals(0, executor.getHedged());
+    }
+
+    @Test
+    void slowPrimaryIsHedgedAndTheLoserIsNotInterrupted() throws Exception {
+        executor = new HedgedExecutor("test", "primary", policy(Duration.ofMillis(20)));
+        Sleeper primary = new Sleeper("a", 500);
+
+        long start = System.nanoTime();
+        assertEquals("b", executor.call(primary, () -> "b"));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(400));
+        assertTrue(primary.finished.await(2, TimeUnit.SECONDS), "primary did not run to completion");
+        assertFalse(primary.interrupted, "the losing request must not be interrupted");
+        assertEquals(1, executor.getHedged());
+        assertEquals(1, executor.getBackupWins());
+        assertEquals(1.0, executor.hedgeRate());
+    }
+
+    @Test
+    void onlyThePrimaryLatencyFeedsTheHedgeDelay() throws Exception {
+        HedgedExecutor.Policy policy = policy(Duration.ofSeconds(2));
+        policy.setMinSamples(1);
+        policy.setRefreshInterval(Duration.ZERO);
+        executor = new HedgedExecutor("test", "primary", policy);
+        assertEquals("a", executor.call(() -> "a", null));
+        Sleeper primary = new Sleeper("a", 300);
+
+        // 备选请求胜出的耗时不计入，落败的主请求结束后才记入它自己的耗时
+        assertEquals("b", executor.call(primary, () -> "b"));
+        assertTrue(executor.hedgeDelayNanos() < TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(primary.finished.await(2, TimeUnit.SECONDS), "primary did not run to completion");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (executor.hedgeDelayNanos() < TimeUnit.MILLISECONDS.toNanos(300) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(executor.hedgeDelayNanos() >= TimeUnit.MILLISECONDS.toNanos(300));
+    }
+
+    @Test
+    void failedPrimaryFailsOverWithoutWaitingForTheHedgeDelay() {
+        executor = new HedgedExecutor("test", "primary", policy(Duration.ofSeconds(5)));
+        long start = System.nanoTime();
+        assertEquals("b", executor.call(() -> {
+            throw new IllegalStateException("node down");
+        }, () -> "b"));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        assertEquals(1, executor.getFailovers());
+        assertEquals(0, executor.getHedged());
+
+        IllegalStateException error = assertThrows(IllegalStateException.class, () -> executor.call(() -> {
+            throw new IllegalStateException("both down");
+        }, () -> {
+            throw new IllegalStateException("both down");
+        }));
+        assertEquals("both down", error.getMessage());
+    }
+
+    @Test
+    void hedgesStayWithinTheBudget() {
+        HedgedExecutor.Policy policy = policy(Duration.ofMillis(5));
+        policy.setMaxHedgeRatio(0);
+        policy.setHedgeBurst(0);
+        executor = new HedgedExecutor("test", "primary", policy);
+        assertEquals("a", executor.call(new Sleeper("a", 50), () -> "b"));
+        assertEquals(0, executor.getHedged());
+    }
+
+    @Test
+    void deadlineReturnsWithoutWaitingForRequestsInFlight() throws Exception {
+        executor = new HedgedExecutor("test", "primary", policy(Duration.ofMillis(10)));
+        Sleeper primary = new Sleeper("a", 500);
+        Sleeper backup = new Sleeper("b", 500);
+        long start = System.nanoTime();
+        assertThrows(DeadlineExceededException.class, () -> Deadline.callWithin(Deadline.after(Duration.ofMillis(100)),
+                () -> executor.call(primary, backup)));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(400));
+        assertTrue(primary.finished.await(2, TimeUnit.SECONDS) && backup.finished.await(2, TimeUnit.SECONDS));
+        assertFalse(primary.interrupted || backup.interrupted, "requests in flight must not be interrupted");
+        assertEquals(1, executor.getDeadlineExceeded());
+
+        // 已过期的截止时间不再发出请求
+        assertThrows(DeadlineExceededException.class, () -> Deadline.callWithin(Deadline.after(Duration.ZERO),
+                () -> executor.call(() -> fail("should not run"), null)));
+        assertEquals(1, executor.getCalls());
+    }
+
+    @Test
+    void latencyWindowReportsTheRequestedQuantile() {
+        HedgedExecutor.LatencyWindow window = new HedgedExecutor.LatencyWindow(128, 0);
+        for (long i = 1; i <= 100; i++) {
+            window.record(i);
+        }
+        assertEquals(100, window.count());
+        assertEquals(95, window.quantile(0.95));
+        assertEquals(50, window.quantile(0.5));
+
+        // 环形缓冲只保留最近的样本
+        for (int i = 0; i < 128; i++) {
+            window.record(1000);
+        }
+        assertEquals(1000, window.quantile(0.95));
+    }
+
+    @Test
+    void slowRedisIsHedgedToTheDatabase() {
+        InMemoryUserRepository repository = new InMemoryUserRepository(10);
+        InMemoryRedisTemplate redis = new InMemoryRedisTemplate() {
+            private final ValueOperations<String, Object> slow = slowReads(super.opsForValue(), 2000);
+
+            @Override
+            public ValueOperations<String, Object> opsForValue() {
+                return slow;
+            }
+        };
+        UserService service = ServiceFixtures.userService(ServiceFixtures.caffeineCacheManager(), redis, repository);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        service.enableHedging(policy(Duration.ofMillis(20)), registry);
+
+        long start = System.nanoTime();
+        assertEquals(3L, service.findById(User.class, "users", 3L).getId());
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1000));
+        assertEquals(1.0, registry.get("cache.hedge.backup.wins").tag("target", "redis").functionCounter().count());
+        assertEquals(1, repository.getQueryCount());
+
+        // 不存在的用户由数据库胜出时直接返回null，不再查一次库
+        assertNull(service.findById(User.class, "users", 404L));
+        assertEquals(2, repository.getQueryCount());
+        service.close();
+    }
+
+    private static HedgedExecutor.Policy policy(Duration maxDelay) {
+        HedgedExecutor.Policy policy = new HedgedExecutor.Policy();
+        policy.setMaxDelay(maxDelay);
+        policy.setThreads(4);
+        return policy;
+    }
+
+    /**
+     * 模拟慢查询，记录是否被中断以及是否执行完
+     */
+    private static final class Sleeper implements Supplier<String> {
+
+        private final String value;
+        private final long millis;
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private volatile boolean interrupted;
+
+        Sleeper(String value, long millis) {
+            this.value = value;
+            this.millis = millis;
+        }
+
+        @Override
+        public String get() {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                interrupted = true;
+                Thread.currentThread().interrupt();
+            } finally {
+                finished.countDown();
+            }
+            return value;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ValueOperations<String, Object> slowReads(ValueOperations<String, Object> target, long millis) {
+        return (ValueOperations<String, Object>) Proxy.newProxyInstance(ValueOperations.class.getClassLoader(),
+                new Class<?>[]{ValueOperations.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("get")) {
+                        Thread.sleep(millis);
+                    }
+                    try {
+                        return method.invoke(target, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+}
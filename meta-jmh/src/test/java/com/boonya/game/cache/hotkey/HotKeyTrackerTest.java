@@ -0,0 +1,108 @@
+package com.boonya.game.cache.hotkey;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 热点统计在Zipf分布访问下的准确性与衰减
+ */
+class HotKeyTrackerTest {
+
+    @Test
+    void findsZipfHeadUnderConcurrentRecording() throws Exception {
+        HotKeyTracker tracker = new HotKeyTracker(256, 1 << 16);
+        long[] keys = zipf(100_000, 1.1, 200_000, 42);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int offset = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = offset; i < keys.length; i += threads) {
+                        tracker.record(keys[i]);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        tracker.drain();
+
+        // Zipf分布下排名即键值，最热的10个应为1..10
+        List<Long> top = tracker.top(10).stream().map(HotKey::key).toList();
+        for (long rank = 1; rank <= 10; rank++) {
+            assertTrue(top.contains(rank), "missing rank " + rank + " in " + top);
+        }
+    }
+
+    @Test
+    void decayLetsNewHotKeysOvertakeOldOnes() {
+        HotKeyTracker tracker = new HotKeyTracker(16, 1024);
+        for (int i = 0; i < 1000; i++) {
+            tracker.record(1);
+        }
+        tracker.drain();
+        tracker.decay(0.1, 1.0);
+        for (int i = 0; i < 200; i++) {
+            tracker.record(2);
+        }
+        tracker.drain();
+
+        List<HotKey> top = tracker.top(2);
+        assertEquals(2, top.get(0).key());
+        assertEquals(1, top.get(1).key());
+
+        tracker.decay(0.001, 1.0);
+        assertEquals(0, tracker.size());
+    }
+
+    @Test
+    void overflowingBufferDropsInsteadOfBlocking() {
+        HotKeyTracker tracker = new HotKeyTracker(16, 8);
+        for (int i = 0; i < 10_000; i++) {
+            tracker.record(7);
+        }
+        tracker.drain();
+        List<HotKey> top = tracker.top(1);
+        assertEquals(7, top.get(0).key());
+        assertTrue(top.get(0).count() < 10_000);
+    }
+
+    private static long[] zipf(int n, double s, int universe, long seed) {
+        double[] cdf = new double[universe];
+        double sum = 0;
+        for (int i = 0; i < universe; i++) {
+            sum += 1 / Math.pow(i + 1, s);
+            cdf[i] = sum;
+        }
+        Random random = new Random(seed);
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            double u = random.nextDouble() * sum;
+            int lo = 0;
+            int hi = universe - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (cdf[mid] < u) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            keys[i] = lo + 1;
+        }
+        return keys;
+    }
+}
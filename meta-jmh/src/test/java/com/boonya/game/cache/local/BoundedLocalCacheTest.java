@@ -0,0 +1,181 @@
+package com.boonya.game.cache.local;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 有界本地缓存：容量上限、second chance、失效节点清理、写入后过期、加载期间失效与并发写入
+ */
+class BoundedLocalCacheTest {
+
+    @Test
+    void evictsUnreferencedEntriesFirst() {
+        BoundedLocalCache<Integer, String> cache = new BoundedLocalCache<>("test", 4);
+        for (int i = 0; i < 4; i++) {
+            cache.put(i, "v" + i);
+        }
+        // 读过的键获得第二次机会，最早插入且没被读过的键先淘汰
+        assertEquals("v0", cache.get(0));
+        cache.put(4, "v4");
+
+        assertEquals(4, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertTrue(cache.contains(0));
+        assertFalse(cache.contains(1));
+        assertEquals("v4", cache.get(4));
+    }
+
+    @Test
+    void overwriteDoesNotTakeNewSlot() {
+        BoundedLocalCache<Integer, String> cache = new BoundedLocalCache<>("test", 2);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        cache.put(1, "c");
+
+        assertEquals(2, cache.size());
+        assertEquals(0, cache.getEvictions());
+        assertEquals("c", cache.get(1));
+        assertEquals(3, cache.getPuts());
+        assertNull(cache.get(3));
+        assertEquals(0.5, cache.hitRatio());
+    }
+
+    @Test
+    void invalidatedNodesAreReclaimedWithoutEvictingLiveEntries() {
+        BoundedLocalCache<Integer, String> cache = new BoundedLocalCache<>("test", 3);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        cache.invalidate(1);
+        cache.invalidate(2);
+        cache.put(3, "c");
+        cache.put(4, "d");
+
+        // 失效节点在淘汰扫描中只清理队列，不计入淘汰
+        assertEquals(0, cache.getEvictions());
+        assertEquals(2, cache.size());
+        assertEquals("c", cache.get(3));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, "v" + i);
+        }
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    void entriesExpireAfterWrite() {
+        AtomicLong now = new AtomicLong();
+        BoundedLocalCache<Integer, String> cache = new BoundedLocalCache<>("test", 4, Duration.ofSeconds(10), now::get);
+        cache.put(1, "a");
+        now.addAndGet(TimeUnit.SECONDS.toNanos(9));
+        assertEquals("a", cache.get(1));
+
+        // 覆盖写入重新计时
+        cache.put(1, "b");
+        now.addAndGet(TimeUnit.SECONDS.toNanos(9));
+        assertEquals("b", cache.get(1));
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertNull(cache.get(1));
+        assertFalse(cache.contains(1));
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void loadRacingWithInvalidateIsNotCached() {
+        BoundedLocalCache<Integer, String> cache = new BoundedLocalCache<>("test", 4);
+        long generation = cache.generation(1);
+        // 查库读到旧行之后，并发的保存失效了该键
+        cache.invalidate(1);
+        assertFalse(cache.putIfUnchanged(1, "stale", generation));
+        assertNull(cache.get(1));
+
+        generation = cache.generation(1);
+        assertTrue(cache.putIfUnchanged(1, "fresh", generation));
+        assertEquals("fresh", cache.get(1));
+
+        // clear对所有键生效
+        generation = cache.generation(2);
+        cache.clear();
+        assertFalse(cache.putIfUnchanged(2, "stale", generation));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void invalidateNeverLosesToAConcurrentLoad() throws Exception {
+        BoundedLocalCache<Integer, Integer> cache = new BoundedLocalCache<>("test", 1000);
+        AtomicLong version = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 3; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    if (cache.get(0) == null) {
+                        long generation = cache.generation(0);
+                        int loaded = (int) version.get();
+                        cache.putIfUnchanged(0, loaded, generation);
+                    }
+                }
+            }));
+        }
+        futures.add(executor.submit(() -> {
+            for (int i = 0; i < 20_000; i++) {
+                // 先改库再失效，与UserService的保存路径一致
+                version.incrementAndGet();
+                cache.invalidate(0);
+            }
+        }));
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        Integer cached = cache.get(0);
+        assertTrue(cached == null || cached == version.get(), "stale value " + cached + " for version " + version.get());
+    }
+
+    @Test
+    void staysBoundedUnderConcurrentWrites() throws Exception {
+        int maximumSize = 1000;
+        BoundedLocalCache<Integer, Integer> cache = new BoundedLocalCache<>("test", maximumSize);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 50_000; i++) {
+                    int key = random.nextInt(10_000);
+                    if (random.nextInt(100) < 50) {
+                        Integer value = cache.get(key);
+                        if (value != null) {
+                            assertEquals(key, value);
+                        }
+                    } else {
+                        cache.put(key, key);
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // 并发淘汰只有一个线程执行，静止后再插入一次即回到上限以内
+        cache.put(-1, -1);
+        assertTrue(cache.size() <= maximumSize, "size " + cache.size());
+        assertEquals(400_000, cache.getHits() + cache.getMisses() + cache.getPuts() - 1);
+    }
+}
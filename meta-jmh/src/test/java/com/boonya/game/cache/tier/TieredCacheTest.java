@@ -0,0 +1,225 @@
+package com.boonya.game.cache.tier;
+
+import com.boonya.game.model.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 分层管线：提升、降级、延迟预算跳过、批量读取与堆外容量
+ */
+class TieredCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private final List<Collection<Long>> bulkLoads = new ArrayList<>();
+
+    private LoaderTier<Long, User> loader() {
+        return new LoaderTier<>("loader", id -> {
+            loads.incrementAndGet();
+            return id > 0 ? user(id) : null;
+        }, ids -> {
+            bulkLoads.add(List.copyOf(ids));
+            Map<Long, User> users = new HashMap<>();
+            ids.stream().filter(id -> id > 0).forEach(id -> users.put(id, user(id)));
+            return users;
+        });
+    }
+
+    @Test
+    void lowerTierHitIsPromoted() {
+        CaffeineTier<Long, User> heap = new CaffeineTier<>("heap", 100, Duration.ofMinutes(1));
+        OffHeapTier<Long, User> offHeap = new OffHeapTier<>("offheap", 1 << 20, Duration.ofMinutes(1),
+                OffHeapTier.Codec.javaSerialization());
+        TieredCache<Long, User> cache = TieredCache.<Long, User>builder("users")
+                .tier(heap).tier(offHeap).tier(loader()).build();
+
+        assertEquals("u1", cache.get(1L).getName());
+        assertEquals(1, loads.get());
+        assertNotNull(heap.get(1L));
+        assertNotNull(offHeap.get(1L));
+
+        assertEquals("u1", cache.get(1L).getName());
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHits("heap"));
+        assertEquals(1, cache.getMisses("offheap"));
+
+        // 不缓存空值
+        assertNull(cache.get(-1L));
+        assertNull(cache.get(-1L));
+        assertEquals(3, loads.get());
+        cache.close();
+    }
+
+    @Test
+    void promotionCanBeDisabledPerTier() {
+        CaffeineTier<Long, User> heap = new CaffeineTier<>("heap", 100, Duration.ofMinutes(1));
+        TieredCache.TierOptions noPromote = new TieredCache.TierOptions();
+        noPromote.setPromote(false);
+        TieredCache<Long, User> cache = TieredCache.<Long, User>builder("users")
+                .tier(heap, noPromote).tier(loader()).build();
+        cache.get(1L);
+        cache.get(1L);
+        assertNull(heap.get(1L));
+        assertEquals(2, loads.get());
+        cache.close();
+    }
+
+    @Test
+    void heapEvictionIsDemotedToOffHeap() {
+        CaffeineTier<Long, User> heap = new CaffeineTier<>("heap", 1, Duration.ofMinutes(1));
+        OffHeapTier<Long, User> offHeap = new OffHeapTier<>("offheap", 1 << 20, Duration.ofMinutes(1),
+                OffHeapTier.Codec.javaSerialization());
+        TieredCache.TierOptions demote = new TieredCache.TierOptions();
+        demote.setDemote(true);
+        TieredCache.TierOptions noPromote = new TieredCache.TierOptions();
+        noPromote.setPromote(false);
+        TieredCache<Long, User> cache = TieredCache.<Long, User>builder("users")
+                .tier(heap, demote).tier(offHeap, noPromote).tier(loader()).build();
+
+        for (long id = 1; id <= 5; id++) {
+            cache.get(id);
+            heap.cleanUp();
+        }
+        assertEquals(1, heap.estimatedSize());
+        assertEquals(4, offHeap.size());
+
+        loads.set(0);
+        for (long id = 1; id <= 5; id++) {
+            assertEquals("u" + id, cache.get(id).getName());
+            heap.cleanUp();
+        }
+        assertEquals(0, loads.get());
+        cache.close();
+    }
+
+    @Test
+    void slowTierIsSkippedOverLatencyBudget() {
+        AtomicInteger slowReads = new AtomicInteger();
+        CacheTier<Long, User> slow = new CacheTier<>() {
+            @Override
+            public String name() {
+                return "slow";
+            }
+
+            @Override
+            public User get(Long key) {
+                slowReads.incrementAndGet();
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }
+
+            @Override
+            public void put(Long key, User value) {
+            }
+
+            @Override
+            public void evict(Long key) {
+            }
+        };
+        TieredCache.TierOptions budget = new TieredCache.TierOptions();
+        budget.setLatencyBudget(Duration.ofMillis(1));
+        TieredCache<Long, User> cache = TieredCache.<Long, User>builder("users")
+                .tier(slow, budget).tier(loader()).build();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+
+        int requests = 640;
+        for (long i = 0; i < requests; i++) {
+            assertNotNull(cache.get(i + 1));
+        }
+        assertTrue(slowReads.get() < requests / 4, "slow tier read " + slowReads.get() + " times");
+        assertEquals(requests - slowReads.get(), cache.getSkipped("slow"));
+        assertEquals(cache.getSkipped("slow"), registry.get("cache.tier.requests")
+                .tag("tier", "slow").tag("result", "skipped").functionCounter().count());
+    }
+
+    @Test
+    void failingTierIsTreatedAsMiss() {
+        CacheTier<Long, User> broken = new RedisTier<>("redis", null, key -> "users_:" + key, Duration.ofMinutes(1));
+        TieredCache<Long, User> cache = TieredCache.<Long, User>builder("users")
+                .tier(broken).tier(loader()).build();
+        assertEquals("u7", cache.get(7L).getName());
+        assertEquals(1, cache.getErrors("redis"));
+        cache.close();
+    }
+
+    @Test
+    void loaderFailureIsNotTreatedAsMiss() {
+        CaffeineTier<Long, User> heap = new CaffeineTier<>("heap", 100, Duration.ofMinutes(1));
+        LoaderTier<Long, User> down = new LoaderTier<>("loader", id -> {
+            throw new IllegalStateException("database down");
+        }, ids -> {
+            throw new IllegalStateException("database down");
+        });
+        TieredCache<Long, User> cache = TieredCache.<Long, User>builder("users")
+                .tier(heap).tier(down).build();
+
+        assertEquals("database down", assertThrows(IllegalStateException.class, () -> cache.get(1L)).getMessage());
+        assertThrows(IllegalStateException.class, () -> cache.getAll(List.of(1L, 2L)));
+        assertEquals(3, cache.getErrors("loader"));
+        assertNull(heap.get(1L));
+        cache.close();
+    }
+
+    @Test
+    void lastTierCannotHaveLatencyBudget() {
+        TieredCache.TierOptions budget = new TieredCache.TierOptions();
+        budget.setLatencyBudget(Duration.ofMillis(1));
+        CaffeineTier<Long, User> heap = new CaffeineTier<>("heap", 100, Duration.ofMinutes(1));
+        assertThrows(IllegalStateException.class, () -> TieredCache.<Long, User>builder("users")
+                .tier(heap).tier(loader(), budget).build());
+    }
+
+    @Test
+    void getAllQueriesEachTierOnlyForRemainingKeys() {
+        CaffeineTier<Long, User> heap = new CaffeineTier<>("heap", 100, Duration.ofMinutes(1));
+        heap.put(2L, user(2L));
+        TieredCache<Long, User> cache = TieredCache.<Long, User>builder("users")
+                .tier(heap).tier(loader()).build();
+
+        Map<Long, User> users = cache.getAll(List.of(3L, 2L, -1L, 1L));
+        assertEquals(List.of(3L, 2L, 1L), new ArrayList<>(users.keySet()));
+        assertEquals(List.of(List.of(3L, -1L, 1L)), bulkLoads);
+        assertNotNull(heap.get(3L));
+        assertEquals(1, cache.getHits("heap"));
+        assertEquals(3, cache.getMisses("heap"));
+        cache.close();
+    }
+
+    @Test
+    void offHeapEvictsOldestOverCapacityAndExpires() throws InterruptedException {
+        OffHeapTier.Codec<User> codec = OffHeapTier.Codec.javaSerialization();
+        int entrySize = codec.encode(user(1L)).length;
+        OffHeapTier<Long, User> offHeap = new OffHeapTier<>("offheap", entrySize * 3L, Duration.ofMillis(200), codec);
+        List<Long> evicted = new ArrayList<>();
+        offHeap.onEviction((key, value) -> evicted.add(key));
+        for (long id = 1; id <= 5; id++) {
+            offHeap.put(id, user(id));
+        }
+        assertEquals(List.of(1L, 2L), evicted);
+        assertNull(offHeap.get(1L));
+        assertEquals("u5", offHeap.get(5L).getName());
+        assertEquals(entrySize * 3L, offHeap.usedBytes());
+
+        Thread.sleep(250);
+        assertNull(offHeap.get(5L));
+        assertEquals(entrySize * 2L, offHeap.usedBytes());
+    }
+
+    private static User user(long id) {
+        return new User(id, "u" + id, "u" + id + "@example.com");
+    }
+}
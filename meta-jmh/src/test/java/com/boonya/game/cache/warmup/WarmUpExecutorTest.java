@@ -0,0 +1,104 @@
+package com.boonya.game.cache.warmup;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 预热的执行顺序、查库限速与命中率
+ */
+class WarmUpExecutorTest {
+
+    private WarmUpExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        executor.destroy();
+    }
+
+    @Test
+    void runsHigherPriorityAndHotterBatchesFirst() throws Exception {
+        executor = new WarmUpExecutor(1, 2, 10_000);
+        List<Long> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch gate = new CountDownLatch(1);
+
+        // 先占住唯一的工作线程，让后续批次都进入队列再比较优先级
+        WarmUpJob blocker = executor.submit("blocker", List.of(0L), WarmUpExecutor.PRIORITY_STARTUP, loader(Set.of(), order, gate));
+        WarmUpJob predictive = executor.submit("predictive", ids(100, 104), WarmUpExecutor.PRIORITY_PREDICTIVE, loader(Set.of(), order, null));
+        WarmUpJob startup = executor.submit("startup", ids(1, 5), WarmUpExecutor.PRIORITY_STARTUP, loader(Set.of(), order, null));
+        gate.countDown();
+        predictive.completion().get(5, TimeUnit.SECONDS);
+        startup.completion().get(5, TimeUnit.SECONDS);
+        blocker.completion().get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L, 5L, 100L, 101L, 102L, 103L, 104L), order);
+    }
+
+    @Test
+    void limitsDatabaseQueries() throws Exception {
+        executor = new WarmUpExecutor(4, 1, 20);
+        long start = System.nanoTime();
+        WarmUpJob job = executor.submit("limited", ids(1, 11), WarmUpExecutor.PRIORITY_STARTUP,
+                loader(Set.of(), Collections.synchronizedList(new ArrayList<>()), null));
+        job.completion().get(5, TimeUnit.SECONDS);
+        // 11次查库，20 QPS 下至少需要约0.5秒
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(450));
+        assertEquals(11, job.getCached());
+    }
+
+    @Test
+    void cachedKeysSkipTheDatabaseAndMissingKeysDoNotCountAgainstHitRate() throws Exception {
+        executor = new WarmUpExecutor(2, 10, 1);
+        List<Long> queried = Collections.synchronizedList(new ArrayList<>());
+        // 全部已缓存，不应取令牌（1 QPS下多次查库会明显变慢）
+        WarmUpJob cached = executor.submit("cached", ids(1, 30), WarmUpExecutor.PRIORITY_STARTUP,
+                loader(Set.copyOf(ids(1, 30)), queried, null));
+        cached.completion().get(2, TimeUnit.SECONDS);
+        assertTrue(queried.isEmpty());
+        assertEquals(1.0, cached.hitRate());
+
+        WarmUpJob partial = executor.submit("partial", ids(-4, 5), WarmUpExecutor.PRIORITY_STARTUP,
+                loader(Set.of(), queried, null));
+        partial.completion().get(3, TimeUnit.SECONDS);
+        assertEquals(5, partial.getNotFound());
+        assertEquals(1.0, partial.hitRate());
+    }
+
+    /**
+     * cached中的键视为已缓存；查库时只有正数ID存在
+     */
+    private static WarmUpExecutor.BatchLoader loader(Set<Long> cached, List<Long> queried, CountDownLatch gate) {
+        return new WarmUpExecutor.BatchLoader() {
+            @Override
+            public List<Long> missing(List<Long> ids) {
+                return ids.stream().filter(id -> !cached.contains(id)).toList();
+            }
+
+            @Override
+            public int load(List<Long> ids) {
+                if (gate != null) {
+                    try {
+                        gate.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                queried.addAll(ids);
+                return (int) ids.stream().filter(id -> id > 0).count();
+            }
+        };
+    }
+
+    private static List<Long> ids(long from, long to) {
+        return LongStream.rangeClosed(from, to).boxed().toList();
+    }
+}
@@ -0,0 +1,102 @@
+package com.boonya.game.dao;
+
+import com.boonya.game.model.User;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JPA（表生成器，application.yml中的优化器配置）与JDBC号段分配交替写入同一张users表，ID不冲突
+ */
+class IdRangeAllocatorTest {
+
+    private static final String URL = "jdbc:h2:mem:id_range;DB_CLOSE_DELAY=-1";
+
+    private SessionFactory sessionFactory;
+    private UserBatchWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        // 与application.yml中spring.jpa.properties.hibernate.id的配置保持一致
+        sessionFactory = new Configuration()
+                .addAnnotatedClass(User.class)
+                .setProperty("hibernate.connection.url", URL)
+                .setProperty("hibernate.hbm2ddl.auto", "create-drop")
+                .setProperty("hibernate.id.optimizer.pooled.preferred", "pooled-lo")
+                .setProperty("hibernate.id.generator.stored_last_used", "false")
+                .buildSessionFactory();
+        writer = new UserBatchWriter(new JdbcTemplate(new DriverManagerDataSource(URL)), 10);
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Test
+    void jpaAndJdbcInsertsDoNotCollide() {
+        Set<Long> ids = new HashSet<>();
+        int total = 0;
+        for (int round = 0; round < 4; round++) {
+            // JPA先取一段（50个）只用掉一部分，JDBC紧接着取号
+            for (User user : persist(3 + round * 30)) {
+                assertTrue(ids.add(user.getId()), "duplicate JPA id " + user.getId());
+                total++;
+            }
+            for (User user : writer.insertAll(users(7 + round * 40), 10)) {
+                assertTrue(ids.add(user.getId()), "duplicate JDBC id " + user.getId());
+                total++;
+            }
+        }
+        assertEquals(total, ids.size());
+        assertEquals(total, rowCount());
+    }
+
+    @Test
+    void allocatorStartsFromTheFirstIdBeforeHibernateRuns() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(URL));
+        IdRangeAllocator allocator = new IdRangeAllocator(jdbcTemplate);
+        assertEquals(1, allocator.allocate(User.ID_SEQUENCE, 5));
+        assertEquals(6, allocator.allocate(User.ID_SEQUENCE, 5));
+        assertThrows(IllegalArgumentException.class, () -> allocator.allocate(User.ID_SEQUENCE, 0));
+
+        // Hibernate接着从11开始取号
+        assertEquals(11L, persist(1).get(0).getId());
+    }
+
+    private List<User> persist(int count) {
+        List<User> saved = users(count);
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            saved.forEach(session::persist);
+            session.getTransaction().commit();
+        }
+        return saved;
+    }
+
+    private long rowCount() {
+        try (Session session = sessionFactory.openSession()) {
+            return session.createQuery("select count(u) from User u", Long.class).getSingleResult();
+        }
+    }
+
+    private static List<User> users(int count) {
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            users.add(new User(null, "user" + i, "user" + i + "@example.com"));
+        }
+        return users;
+    }
+}
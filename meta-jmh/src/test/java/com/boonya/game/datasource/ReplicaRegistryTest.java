@@ -0,0 +1,210 @@
+package com.boonya.game.datasource;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 运行时注册从库：替换时路由目标整体切换且健康状态重新开始、预热失败不改变路由、排空只关闭自己创建的连接池
+ * <p>
+ * 白名单内的mysql URL按库名映射到H2内存库，host为broken.test的URL映射到建连时执行失败的库，取连接失败
+ */
+class ReplicaRegistryTest {
+
+    private static final String REPLICA = "replica_a";
+    private static final String CONTAINER = "container_a";
+
+    private final List<HikariDataSource> created = new CopyOnWriteArrayList<>();
+    private DynamicDataSourceConfig.DynamicRoutingDataSource routing;
+    private HikariDataSource containerPool;
+    private ReplicaRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        containerPool = h2Pool(CONTAINER, "jdbc:h2:mem:container_a;DB_CLOSE_DELAY=-1", 1000);
+        routing = new DynamicDataSourceConfig.DynamicRoutingDataSource();
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(DynamicDataSourceHolder.MASTER, new DriverManagerDataSource("jdbc:h2:mem:registry_master;DB_CLOSE_DELAY=-1"));
+        targets.put(CONTAINER, new TrackedDataSource(CONTAINER, containerPool, router()));
+        routing.setTargetDataSources(targets);
+        routing.afterPropertiesSet();
+        DynamicDataSourceHolder.addSlaveDataSource(CONTAINER);
+
+        registry = new ReplicaRegistry(routing, Duration.ofSeconds(5), Duration.ofSeconds(2),
+                List.of("mysql"), List.of("*.test"), (definition, timeout) -> {
+                    String url = definition.getUrl();
+                    String database = url.substring(url.lastIndexOf('/') + 1);
+                    HikariDataSource pool = url.contains("//broken.test/")
+                            ? h2Pool(definition.getName(), "jdbc:h2:mem:" + database + ";INIT=SELECT * FROM missing", 250)
+                            : h2Pool(definition.getName(), "jdbc:h2:mem:" + database + ";DB_CLOSE_DELAY=-1", timeout.toMillis());
+                    created.add(pool);
+                    return pool;
+                });
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.destroy();
+        DynamicDataSourceHolder.removeSlaveDataSource(REPLICA);
+        DynamicDataSourceHolder.removeSlaveDataSource(CONTAINER);
+        containerPool.close();
+        created.forEach(HikariDataSource::close);
+    }
+
+    @Test
+    void replacingAReplicaSwapsTheTargetAndStartsWithAFreshHealth() throws Exception {
+        registry.register(definition(REPLICA, "replica.test", "a"));
+        DataSource first = routing.getResolvedDataSources().get(REPLICA);
+        ReplicaHealth ejected = router().health(REPLICA);
+        HikariDataSource firstPool = created.get(0);
+
+        // 替换前借出的连接，之后从库被摘除
+        Connection leased = first.getConnection();
+        assertEquals(1, ejected.getInFlight());
+        for (int i = 0; i < new ReplicaRouter.Policy().getMaxConsecutiveFailures(); i++) {
+            router().onRelease(ejected, router().onAcquire(ejected), 1_000, true);
+        }
+        assertEquals(ReplicaHealth.State.OPEN, ejected.getState());
+
+        registry.register(definition(REPLICA, "replica.test", "b"));
+        DataSource second = routing.getResolvedDataSources().get(REPLICA);
+        ReplicaHealth fresh = router().health(REPLICA);
+        assertNotSame(first, second);
+        assertNotSame(ejected, fresh);
+        assertEquals(ReplicaHealth.State.CLOSED, fresh.getState());
+
+        // 旧连接归还到它取连接时的健康状态
+        leased.close();
+        assertEquals(0, ejected.getInFlight());
+        assertEquals(0, fresh.getInFlight());
+        try (Connection connection = second.getConnection()) {
+            assertEquals(1, fresh.getInFlight());
+        }
+        assertEquals(0, fresh.getInFlight());
+
+        assertTrue(await(firstPool::isClosed));
+        assertFalse(created.get(1).isClosed());
+    }
+
+    @Test
+    void replacementNeverLeavesTheReplicaOutOfRouting() throws Exception {
+        registry.register(definition(REPLICA, "replica.test", "a"));
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger misses = new AtomicInteger();
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> reads = reader.submit(() -> {
+                while (running.get()) {
+                    if (!routing.getResolvedDataSources().containsKey(REPLICA) || !router().names().contains(REPLICA)) {
+                        misses.incrementAndGet();
+                    }
+                }
+            });
+            for (int i = 0; i < 10; i++) {
+                registry.register(definition(REPLICA, "replica.test", i % 2 == 0 ? "b" : "a"));
+            }
+            running.set(false);
+            reads.get(5, TimeUnit.SECONDS);
+        } finally {
+            running.set(false);
+            reader.shutdownNow();
+        }
+        assertEquals(0, misses.get());
+        assertEquals(1, router().names().stream().filter(REPLICA::equals).count());
+    }
+
+    @Test
+    void failedWarmUpLeavesRoutingUnchanged() {
+        registry.register(definition(REPLICA, "replica.test", "a"));
+        DataSource target = routing.getResolvedDataSources().get(REPLICA);
+        ReplicaHealth health = router().health(REPLICA);
+
+        assertThrows(IllegalStateException.class, () -> registry.register(definition(REPLICA, "broken.test", "a")));
+        assertSame(target, routing.getResolvedDataSources().get(REPLICA));
+        assertSame(health, router().health(REPLICA));
+        assertFalse(created.get(0).isClosed());
+        assertTrue(created.get(1).isClosed());
+
+        // 新从库预热失败不进入路由
+        assertThrows(IllegalStateException.class, () -> registry.register(definition("replica_b", "broken.test", "b")));
+        assertFalse(routing.getResolvedDataSources().containsKey("replica_b"));
+        assertFalse(router().contains("replica_b"));
+        assertTrue(created.get(2).isClosed());
+    }
+
+    @Test
+    void drainClosesOnlyPoolsTheRegistryCreated() {
+        registry.register(definition(REPLICA, "replica.test", "a"));
+        HikariDataSource owned = created.get(0);
+
+        assertTrue(registry.remove(CONTAINER));
+        assertFalse(routing.getResolvedDataSources().containsKey(CONTAINER));
+        assertFalse(router().contains(CONTAINER));
+
+        assertTrue(registry.remove(REPLICA));
+        assertFalse(registry.remove(REPLICA));
+        // 排空任务按顺序执行，自己创建的池关闭时，容器的池若被提交排空也已经关闭
+        assertTrue(await(owned::isClosed));
+        assertFalse(containerPool.isClosed());
+    }
+
+    private static ReplicaRouter router() {
+        return DynamicDataSourceHolder.getReplicaRouter();
+    }
+
+    private static ReplicaDefinition definition(String name, String host, String database) {
+        ReplicaDefinition definition = new ReplicaDefinition();
+        definition.setName(name);
+        definition.setUrl("jdbc:mysql://" + host + "/" + database);
+        definition.setUsername("sa");
+        definition.setMaximumPoolSize(2);
+        definition.setMinimumIdle(1);
+        return definition;
+    }
+
+    /**
+     * 不在构造时建连（initializationFailTimeout=-1），预热取连接时才暴露连不上的库
+     */
+    private static HikariDataSource h2Pool(String name, String url, long connectionTimeoutMillis) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("test-" + name);
+        config.setJdbcUrl(url);
+        config.setUsername("sa");
+        config.setMaximumPoolSize(2);
+        config.setMinimumIdle(1);
+        config.setConnectionTimeout(connectionTimeoutMillis);
+        config.setInitializationFailTimeout(-1);
+        return new HikariDataSource(config);
+    }
+
+    private static boolean await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            Thread.onSpinWait();
+        }
+        return true;
+    }
+}
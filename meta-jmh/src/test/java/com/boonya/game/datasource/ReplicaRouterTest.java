@@ -0,0 +1,117 @@
+package com.boonya.game.datasource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 从库熔断：连续失败摘除、退避后只放行一个探测、只有探测的结果能恢复或再次摘除
+ */
+class ReplicaRouterTest {
+
+    private static final long BACKOFF = TimeUnit.SECONDS.toNanos(5);
+
+    private final AtomicLong now = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+    private ReplicaRouter router;
+
+    @BeforeEach
+    void setUp() {
+        ReplicaRouter.Policy policy = new ReplicaRouter.Policy();
+        policy.setMaxConsecutiveFailures(2);
+        policy.setBaseEjectionNanos(BACKOFF);
+        router = new ReplicaRouter(policy, now::get);
+        router.addReplica("slave1");
+    }
+
+    @Test
+    void consecutiveFailuresEjectUntilTheBackoffExpires() {
+        trip();
+        assertNull(router.choose());
+
+        now.addAndGet(BACKOFF);
+        assertEquals("slave1", router.choose());
+        assertEquals(ReplicaHealth.State.HALF_OPEN, health().getState());
+        // 同一轮退避只放行一个探测
+        assertNull(router.choose());
+    }
+
+    @Test
+    void onlyTheProbeSuccessClosesTheCircuit() {
+        long beforeTrip = router.onAcquire("slave1");
+        assertEquals(0, beforeTrip);
+        trip();
+
+        now.addAndGet(BACKOFF);
+        assertEquals("slave1", router.choose());
+        long probe = router.onAcquire("slave1");
+        assertNotEquals(0, probe);
+
+        // 熔断前已在途的连接先成功归还，不能恢复
+        router.onRelease("slave1", beforeTrip, 1_000, false);
+        assertEquals(ReplicaHealth.State.HALF_OPEN, health().getState());
+        assertNull(router.choose());
+
+        router.onRelease("slave1", probe, 1_000, false);
+        assertEquals(ReplicaHealth.State.CLOSED, health().getState());
+        assertEquals("slave1", router.choose());
+    }
+
+    @Test
+    void onlyTheProbeFailureReEjects() {
+        long beforeTrip = router.onAcquire("slave1");
+        trip();
+
+        now.addAndGet(BACKOFF);
+        assertEquals("slave1", router.choose());
+        long probe = router.onAcquire("slave1");
+
+        // 熔断前的连接失败归还，不影响探测
+        router.onRelease("slave1", beforeTrip, 1_000, true);
+        assertEquals(ReplicaHealth.State.HALF_OPEN, health().getState());
+        assertEquals(1, health().getEjections());
+
+        router.onRelease("slave1", probe, 1_000, true);
+        assertEquals(ReplicaHealth.State.OPEN, health().getState());
+        assertEquals(2, health().getEjections());
+
+        // 再次摘除后退避时间翻倍
+        now.addAndGet(BACKOFF);
+        assertNull(router.choose());
+        now.addAndGet(BACKOFF);
+        assertEquals("slave1", router.choose());
+    }
+
+    @Test
+    void aProbeThatNeverReportsBackIsReplacedAfterTheProbeTimeout() {
+        trip();
+        now.addAndGet(BACKOFF);
+        assertEquals("slave1", router.choose());
+        long lost = router.onAcquire("slave1");
+
+        now.addAndGet(new ReplicaRouter.Policy().getProbeTimeoutNanos());
+        assertEquals("slave1", router.choose());
+        long probe = router.onAcquire("slave1");
+        assertNotEquals(lost, probe);
+
+        // 超时的探测迟到的结果不再算数
+        router.onRelease("slave1", lost, 1_000, false);
+        assertEquals(ReplicaHealth.State.HALF_OPEN, health().getState());
+        router.onRelease("slave1", probe, 1_000, false);
+        assertEquals(ReplicaHealth.State.CLOSED, health().getState());
+    }
+
+    private void trip() {
+        for (int i = 0; i < 2; i++) {
+            router.onRelease("slave1", router.onAcquire("slave1"), 1_000, true);
+        }
+        assertEquals(ReplicaHealth.State.OPEN, health().getState());
+    }
+
+    private ReplicaHealth health() {
+        return router.health("slave1");
+    }
+}
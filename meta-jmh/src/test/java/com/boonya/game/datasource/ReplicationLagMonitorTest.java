@@ -0,0 +1,186 @@
+package com.boonya.game.datasource;
+
+import com.boonya.game.datasource.shard.ConsistentHashShardMap;
+import com.boonya.game.datasource.shard.ShardGroup;
+import com.boonya.game.datasource.shard.ShardingDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 复制延迟跟踪：多实例各写各的心跳行、慢从库不拖慢其他从库、分片从库同样跟踪、读己之写位点及其在请求与调度任务边界的清除
+ */
+class ReplicationLagMonitorTest {
+
+    private static final String URL = "jdbc:h2:mem:replication_lag;DB_CLOSE_DELAY=-1";
+
+    private final DataSource master = new DriverManagerDataSource(URL);
+    private final DataSource shardMaster = new DriverManagerDataSource("jdbc:h2:mem:replication_lag_shard0;DB_CLOSE_DELAY=-1");
+    private ReplicationLagMonitor first;
+    private ReplicationLagMonitor second;
+
+    @AfterEach
+    void tearDown() {
+        for (ReplicationLagMonitor monitor : new ReplicationLagMonitor[]{first, second}) {
+            if (monitor != null) {
+                monitor.destroy();
+            }
+        }
+        WritePositionHolder.clear();
+        new JdbcTemplate(master).execute("DROP TABLE IF EXISTS replication_heartbeat");
+        new JdbcTemplate(shardMaster).execute("DROP TABLE IF EXISTS replication_heartbeat");
+    }
+
+    @Test
+    void instancesWriteTheirOwnRowsAndSlowReplicasDoNotDelayOthers() throws Exception {
+        // slave1与主库同库（复制无延迟），slave2每次取连接阻塞2秒
+        DataSource slow = new DelegatingDataSource(master) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.getConnection();
+            }
+        };
+        first = monitor(routing(master, slow), 11);
+        second = monitor(routing(master, slow), 12);
+
+        assertTrue(await(() -> first.getLagMillis("slave1") < 1000 && second.getLagMillis("slave1") < 1000));
+        assertEquals(Long.MAX_VALUE, first.getLagMillis("slave2"));
+
+        List<Map<String, Object>> rows = new JdbcTemplate(master)
+                .queryForList("SELECT id, seq FROM replication_heartbeat ORDER BY id");
+        assertEquals(2, rows.size());
+        assertEquals(11, ((Number) rows.get(0).get("ID")).intValue());
+        assertEquals(12, ((Number) rows.get(1).get("ID")).intValue());
+
+        // 写位点在下一次心跳到达从库之前不满足，到达之后满足
+        ReplicaHealth slave1 = new ReplicaHealth("slave1", new ReplicaRouter.Policy());
+        long applied = first.getAppliedPosition("slave1");
+        WritePositionHolder.restore(first.nextPosition());
+        assertTrue(WritePositionHolder.getPosition() > applied);
+        assertTrue(await(() -> first.accept(slave1)));
+        assertTrue(first.getAppliedPosition("slave1") >= WritePositionHolder.getPosition());
+    }
+
+    @Test
+    void shardReplicasAreTrackedWithTheSameHeartbeat() throws Exception {
+        // 分片从库与分片主库同库（复制无延迟）
+        ShardGroup group = new ShardGroup("shard0", shardMaster, Map.of("shard0-replica1", shardMaster));
+        first = new ReplicationLagMonitor(routing(master, master), new SimpleMeterRegistry(),
+                Duration.ofMillis(50), Duration.ofSeconds(1), 11);
+        first.setShardingDataSource(new ShardingDataSource(new ConsistentHashShardMap(List.of("shard0")),
+                Map.of("shard0", group), null));
+        first.afterPropertiesSet();
+
+        assertTrue(await(() -> first.getLagMillis("shard0-replica1") < 1000));
+        assertEquals(1, new JdbcTemplate(shardMaster).queryForList("SELECT id FROM replication_heartbeat").size());
+        ReplicaHealth replica = group.getRouter().health("shard0-replica1");
+        assertTrue(first.accept(replica));
+
+        // 分片读路由使用同一筛选：从库未追上写位点时读分片主库，追上后读从库
+        WritePositionHolder.restore(Long.MAX_VALUE);
+        assertSame(shardMaster, group.select(true));
+        WritePositionHolder.clear();
+        WritePositionHolder.restore(first.nextPosition());
+        assertTrue(await(() -> first.accept(replica)));
+        assertSame(group.getReplicas().get("shard0-replica1"), group.select(true));
+    }
+
+    @Test
+    void propagateCarriesThePositionToAnotherThreadAndClearsIt() throws Exception {
+        WritePositionHolder.restore(42);
+        Supplier<Long> task = WritePositionHolder.propagate(WritePositionHolder::getPosition);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            assertEquals(42L, executor.submit(task::get).get());
+            assertEquals(0L, executor.submit(WritePositionHolder::getPosition).get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void requestBoundaryClearsThePositionLeftOnTheThread() {
+        // 同一线程上一个请求留下的位点
+        WritePositionHolder.restore(42);
+        AtomicLong seen = new AtomicLong(-1);
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.post("/api/users"));
+        new WritePositionWebFilter().filter(exchange, e -> Mono.fromRunnable(() -> {
+            seen.set(WritePositionHolder.getPosition());
+            WritePositionHolder.restore(99);
+        })).block(Duration.ofSeconds(1));
+
+        assertEquals(0, seen.get());
+        // 本请求的写位点在请求结束后清除
+        assertEquals(0, WritePositionHolder.getPosition());
+    }
+
+    @Test
+    void schedulerTasksDoNotInheritAnEarlierTasksPosition() {
+        first = monitor(routing(master, master), 11);
+        Scheduler single = Schedulers.newSingle("write-position-test");
+        try {
+            Mono.fromRunnable(() -> WritePositionHolder.restore(7)).subscribeOn(single).block(Duration.ofSeconds(1));
+            assertEquals(0L, Mono.fromCallable(WritePositionHolder::getPosition).subscribeOn(single)
+                    .block(Duration.ofSeconds(1)));
+        } finally {
+            single.dispose();
+        }
+    }
+
+    private static ReplicationLagMonitor monitor(DataSource routing, int instanceId) {
+        ReplicationLagMonitor monitor = new ReplicationLagMonitor(routing, new SimpleMeterRegistry(),
+                Duration.ofMillis(50), Duration.ofSeconds(1), instanceId);
+        monitor.afterPropertiesSet();
+        return monitor;
+    }
+
+    private static DataSource routing(DataSource master, DataSource slow) {
+        DynamicDataSourceConfig.DynamicRoutingDataSource routing = new DynamicDataSourceConfig.DynamicRoutingDataSource();
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(DynamicDataSourceHolder.MASTER, master);
+        targets.put(DynamicDataSourceHolder.SLAVE_1, master);
+        targets.put(DynamicDataSourceHolder.SLAVE_2, slow);
+        routing.setTargetDataSources(targets);
+        routing.afterPropertiesSet();
+        return routing;
+    }
+
+    private static boolean await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(1).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+}
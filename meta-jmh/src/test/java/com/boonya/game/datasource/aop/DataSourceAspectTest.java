@@ -0,0 +1,267 @@
+package com.boonya.game.datasource.aop;
+
+import com.boonya.game.datasource.DynamicDataSourceHolder;
+import com.boonya.game.datasource.WritePositionHolder;
+import com.boonya.game.datasource.annotation.Master;
+import com.boonya.game.datasource.annotation.ReadOnly;
+import com.boonya.game.jmh.fake.InMemoryRedisTemplate;
+import com.boonya.game.jmh.fake.InMemoryUserRepository;
+import com.boonya.game.jmh.fake.ServiceFixtures;
+import com.boonya.game.model.User;
+import com.boonya.game.service.UserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 读写分离切面：路由按注解与方法名解析并按Method缓存、嵌套调用沿用或恢复外层数据源、只有真正的写记录写位点
+ */
+class DataSourceAspectTest {
+
+    private final AtomicLong positions = new AtomicLong(100);
+
+    @BeforeEach
+    void setUp() {
+        WritePositionHolder.clear();
+        ReflectionTestUtils.invokeMethod(WritePositionHolder.class, "setPositionSource",
+                (LongSupplier) positions::incrementAndGet);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(WritePositionHolder.class, "setPositionSource", (LongSupplier) null);
+        WritePositionHolder.clear();
+        DynamicDataSourceHolder.clearDataSource();
+    }
+
+    @Test
+    void routesAreResolvedFromAnnotationsAndMethodNames() throws Exception {
+        assertEquals(DataSourceAspect.Route.SLAVE, DataSourceAspect.resolveRoute(
+                UserService.class.getMethod("getUserLockFree", Long.class)));
+        assertEquals(DataSourceAspect.Route.MASTER, DataSourceAspect.resolveRoute(
+                UserService.class.getMethod("predictHotUserIds")));
+        // @ReadOnly由自己的切点处理，方法名是什么都不再自动路由
+        assertEquals(DataSourceAspect.Route.NONE, DataSourceAspect.resolveRoute(Routes.class.getMethod("read")));
+        assertEquals(DataSourceAspect.Route.NONE, DataSourceAspect.resolveRoute(
+                UserService.class.getMethod("findById", Long.class)));
+
+        assertEquals(DataSourceAspect.Route.WRITE, DataSourceAspect.resolveTransactionalRoute(Routes.class.getMethod("update")));
+        assertEquals(DataSourceAspect.Route.NONE, DataSourceAspect.resolveTransactionalRoute(Routes.class.getMethod("report")));
+
+        assertTrue(DataSourceAspect.isReadOperation("FindAll"));
+        assertTrue(DataSourceAspect.isReadOperation("countActive"));
+        assertFalse(DataSourceAspect.isReadOperation("save"));
+        assertFalse(DataSourceAspect.isReadOperation(null));
+    }
+
+    @Test
+    void routeIsResolvedOncePerMethod() throws Exception {
+        DataSourceAspect aspect = new DataSourceAspect();
+        UserService service = ServiceFixtures.withAspect(userService(new RecordingRepository()), aspect);
+        service.getUserLockFree(1L);
+        service.getUserLockFree(2L);
+        service.getUserCount();
+
+        Map<Method, DataSourceAspect.Route> routes = resolvedRoutes(aspect);
+        assertEquals(DataSourceAspect.Route.SLAVE, routes.get(UserService.class.getMethod("getUserLockFree", Long.class)));
+        int resolved = routes.size();
+        service.getUserLockFree(3L);
+        service.getUserCount();
+        assertEquals(resolved, routes.size());
+    }
+
+    @Test
+    void autoReadRunsOnASlaveAndClearsTheRoute() {
+        RecordingRepository repository = new RecordingRepository();
+        UserService service = ServiceFixtures.withDataSourceAspect(userService(repository));
+
+        service.getUserLockFree(1L);
+        assertEquals(List.of(DynamicDataSourceHolder.SLAVE), repository.routes);
+        assertNull(DynamicDataSourceHolder.peekDataSource());
+    }
+
+    @Test
+    void readsInsideAMasterScopeStayOnTheMaster() {
+        RecordingRepository repository = new RecordingRepository();
+        UserService service = ServiceFixtures.withDataSourceAspect(userService(repository));
+        Routes routes = routes();
+        DynamicDataSourceHolder.useMaster();
+
+        service.getUserLockFree(1L);
+        assertEquals(List.of(DynamicDataSourceHolder.MASTER), repository.routes);
+        assertEquals(DynamicDataSourceHolder.MASTER, routes.read());
+        assertEquals(DynamicDataSourceHolder.MASTER, DynamicDataSourceHolder.peekDataSource());
+
+        DynamicDataSourceHolder.clearDataSource();
+        // @Master内调用@ReadOnly，返回后清除
+        assertEquals(List.of(DynamicDataSourceHolder.MASTER, DynamicDataSourceHolder.MASTER), routes.writeThenRead());
+        assertNull(DynamicDataSourceHolder.peekDataSource());
+    }
+
+    @Test
+    void readsInsideASlaveScopeStayOnThatSlave() {
+        RecordingRepository repository = new RecordingRepository();
+        UserService service = ServiceFixtures.withDataSourceAspect(userService(repository));
+        DynamicDataSourceHolder.useSpecificSlave(DynamicDataSourceHolder.SLAVE_1);
+
+        service.getUserLockFree(1L);
+        assertEquals(List.of(DynamicDataSourceHolder.SLAVE_1), repository.routes);
+        assertEquals(DynamicDataSourceHolder.SLAVE_1, routes().read());
+        assertEquals(DynamicDataSourceHolder.SLAVE_1, DynamicDataSourceHolder.peekDataSource());
+    }
+
+    @Test
+    void writesInsideASlaveScopeSwitchToTheMasterAndRestoreTheSlave() {
+        Routes routes = routes();
+
+        // @ReadOnly内：读沿用从库，写切到主库，写完恢复从库，方法返回后清除
+        assertEquals(List.of(DynamicDataSourceHolder.SLAVE, DynamicDataSourceHolder.MASTER, DynamicDataSourceHolder.SLAVE),
+                routes.readThenWrite());
+        assertNull(DynamicDataSourceHolder.peekDataSource());
+
+        DynamicDataSourceHolder.useSpecificSlave(DynamicDataSourceHolder.SLAVE_2);
+        assertEquals(DynamicDataSourceHolder.MASTER, routes.update());
+        assertEquals(DynamicDataSourceHolder.SLAVE_2, DynamicDataSourceHolder.peekDataSource());
+        // 写失败同样恢复
+        assertThrows(IllegalStateException.class, routes::failingWrite);
+        assertEquals(DynamicDataSourceHolder.SLAVE_2, DynamicDataSourceHolder.peekDataSource());
+    }
+
+    @Test
+    void methodsRoutedToMasterByNameDoNotMarkAWrite() {
+        UserService service = ServiceFixtures.withDataSourceAspect(ServiceFixtures.userService(
+                ServiceFixtures.caffeineCacheManager(), new InMemoryRedisTemplate(), new InMemoryUserRepository(10)));
+
+        // 没有读前缀，按方法名走主库，但不是写
+        service.predictHotUserIds();
+        service.deleteUser(1L);
+        assertEquals(0, WritePositionHolder.getPosition());
+
+        service.save(new User(1L, "renamed", "renamed@example.com"));
+        assertEquals(101, WritePositionHolder.getPosition());
+    }
+
+    @Test
+    void onlyReadWriteTransactionsMarkAWrite() {
+        Routes routes = ServiceFixtures.withDataSourceAspect(new Routes());
+
+        assertEquals(DynamicDataSourceHolder.MASTER, routes.update());
+        assertEquals(101, WritePositionHolder.getPosition());
+
+        WritePositionHolder.clear();
+        // 只读事务不改变路由，也不记录位点
+        assertNull(routes.report());
+        assertEquals(0, WritePositionHolder.getPosition());
+    }
+
+    @Test
+    void writeInsideAMasterScopeStillMarksAWrite() {
+        Routes routes = ServiceFixtures.withDataSourceAspect(new Routes());
+        DynamicDataSourceHolder.useMaster();
+
+        assertEquals(DynamicDataSourceHolder.MASTER, routes.write());
+        assertEquals(101, WritePositionHolder.getPosition());
+        assertEquals(DynamicDataSourceHolder.MASTER, DynamicDataSourceHolder.peekDataSource());
+    }
+
+    @Test
+    void failedWriteDoesNotMarkAWrite() {
+        Routes routes = ServiceFixtures.withDataSourceAspect(new Routes());
+
+        assertThrows(IllegalStateException.class, routes::failingWrite);
+        assertEquals(0, WritePositionHolder.getPosition());
+        assertNull(DynamicDataSourceHolder.peekDataSource());
+    }
+
+    private static UserService userService(InMemoryUserRepository repository) {
+        return ServiceFixtures.userService(ServiceFixtures.caffeineCacheManager(), new InMemoryRedisTemplate(), repository);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<Method, DataSourceAspect.Route> resolvedRoutes(DataSourceAspect aspect) {
+        return (Map<Method, DataSourceAspect.Route>) ReflectionTestUtils.getField(aspect, "routes");
+    }
+
+    /**
+     * 织入切面的Routes，方法内经self调用其他方法，切面对嵌套调用同样生效
+     */
+    private static Routes routes() {
+        Routes target = new Routes();
+        Routes proxy = ServiceFixtures.withDataSourceAspect(target);
+        target.self = proxy;
+        return proxy;
+    }
+
+    /**
+     * 记录每次按ID查询时当前线程选定的数据源
+     */
+    private static final class RecordingRepository extends InMemoryUserRepository {
+
+        private final List<String> routes = new ArrayList<>();
+
+        RecordingRepository() {
+            super(10);
+        }
+
+        @Override
+        public Optional<User> findById(Long id) {
+            routes.add(DynamicDataSourceHolder.peekDataSource());
+            return super.findById(id);
+        }
+    }
+
+    /**
+     * 返回方法执行时当前线程选定的数据源
+     */
+    public static class Routes {
+
+        private Routes self;
+
+        @Master
+        public String write() {
+            return DynamicDataSourceHolder.peekDataSource();
+        }
+
+        @Master
+        public String failingWrite() {
+            throw new IllegalStateException("constraint violation");
+        }
+
+        @Transactional
+        public String update() {
+            return DynamicDataSourceHolder.peekDataSource();
+        }
+
+        @Transactional(readOnly = true)
+        public String report() {
+            return DynamicDataSourceHolder.peekDataSource();
+        }
+
+        @ReadOnly
+        public String read() {
+            return DynamicDataSourceHolder.peekDataSource();
+        }
+
+        @Master
+        public List<String> writeThenRead() {
+            return List.of(self.read(), DynamicDataSourceHolder.peekDataSource());
+        }
+
+        @ReadOnly
+        public List<String> readThenWrite() {
+            return List.of(self.read(), self.write(), DynamicDataSourceHolder.peekDataSource());
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package com.boonya.game.datasource.shard;
+
+import com.boonya.game.dao.ShardedUserRepository;
+import com.boonya.game.datasource.DynamicDataSourceHolder;
+import com.boonya.game.datasource.WritePositionHolder;
+import com.boonya.game.datasource.annotation.Master;
+import com.boonya.game.datasource.annotation.ReadOnly;
+import com.boonya.game.datasource.annotation.ShardKey;
+import com.boonya.game.datasource.annotation.Sharded;
+import com.boonya.game.datasource.aop.DataSourceAspect;
+import com.boonya.game.datasource.aop.ShardingAspect;
+import com.boonya.game.jmh.fake.InMemoryRedisTemplate;
+import com.boonya.game.jmh.fake.InMemoryUserRepository;
+import com.boonya.game.jmh.fake.ServiceFixtures;
+import com.boonya.game.model.User;
+import com.boonya.game.service.UserService;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 三个分片，每个分片一主一从，都是独立的H2内存库
+ */
+class ShardingDataSourceTest {
+
+    private static final List<String> SHARDS = List.of("shard0", "shard1", "shard2");
+
+    private final Map<String, DataSource> masters = new LinkedHashMap<>();
+    private final Map<String, DataSource> replicas = new LinkedHashMap<>();
+    private ExecutorService executor;
+    private ShardingDataSource shardingDataSource;
+    private ShardingTemplate template;
+    private PlayerRepository repository;
+    private ShardedUserRepository users;
+
+    @BeforeEach
+    void setUp() {
+        Map<String, ShardGroup> groups = new LinkedHashMap<>();
+        String run = Long.toHexString(System.nanoTime());
+        for (String shard : SHARDS) {
+            DataSource master = h2(run + "_" + shard);
+            DataSource replica = h2(run + "_" + shard + "_replica");
+            createTable(master);
+            createTable(replica);
+            masters.put(shard, master);
+            replicas.put(shard, replica);
+            groups.put(shard, new ShardGroup(shard, master, Map.of(shard + "-replica1", replica)));
+        }
+        shardingDataSource = new ShardingDataSource(new ConsistentHashShardMap(SHARDS), groups, null);
+        executor = Executors.newFixedThreadPool(4);
+        template = new ShardingTemplate(shardingDataSource, executor, Duration.ofSeconds(5));
+        repository = sharded(new PlayerRepository(new JdbcTemplate(shardingDataSource)), template);
+        users = sharded(new ShardedUserRepository(new JdbcTemplate(shardingDataSource), template), template);
+    }
+
+    private <T> T sharded(T target, ShardingTemplate template) {
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(new ShardingAspect(shardingDataSource, template));
+        factory.addAspect(new DataSourceAspect());
+        return factory.getProxy();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        DynamicDataSourceHolder.setReplicaFilter(null);
+        WritePositionHolder.clear();
+    }
+
+    @Test
+    void writesGoToTheMasterOfTheKeyShard() {
+        for (long id = 1; id <= 300; id++) {
+            repository.save(new User(id, "user" + id, "user" + id + "@example.com"));
+        }
+
+        int total = 0;
+        for (String shard : SHARDS) {
+            List<Long> ids = new JdbcTemplate(masters.get(shard)).queryForList("SELECT id FROM player", Long.class);
+            assertFalse(ids.isEmpty(), shard + " should own some keys");
+            ids.forEach(id -> assertEquals(shard, shardingDataSource.shardFor(id)));
+            assertEquals(0, count(replicas.get(shard)), "writes must not reach replicas");
+            total += ids.size();
+        }
+        assertEquals(300, total);
+    }
+
+    @Test
+    void readsGoToTheReplicaOfTheKeyShard() {
+        repository.save(new User(7L, "master", "m@example.com"));
+        String shard = shardingDataSource.shardFor(7L);
+        new JdbcTemplate(replicas.get(shard)).update("INSERT INTO player (id, name, email) VALUES (7, 'replica', 'r@example.com')");
+
+        assertEquals("replica", repository.findById(7L).getName());
+    }
+
+    @Test
+    void shardReadsUseTheReplicaFilterOfTheMainDataSource() {
+        repository.save(new User(7L, "master", "m@example.com"));
+        String shard = shardingDataSource.shardFor(7L);
+        new JdbcTemplate(replicas.get(shard)).update("INSERT INTO player (id, name, email) VALUES (7, 'replica', 'r@example.com')");
+
+        // 复制延迟超限（或未追上写位点）的分片从库不被选中，读分片主库
+        DynamicDataSourceHolder.setReplicaFilter(replica -> false);
+        assertEquals("master", repository.findById(7L).getName());
+        DynamicDataSourceHolder.setReplicaFilter(replica -> true);
+        assertEquals("replica", repository.findById(7L).getName());
+    }
+
+    @Test
+    void scatteredShardQueriesCarryTheCallersWritePosition() {
+        List<Long> ids = LongStream.rangeClosed(1, 60).boxed().collect(Collectors.toList());
+        for (Long id : ids) {
+            String shard = shardingDataSource.shardFor(id);
+            new JdbcTemplate(masters.get(shard)).update("INSERT INTO player (id, name, email) VALUES (?, 'master', '')", id);
+            new JdbcTemplate(replicas.get(shard)).update("INSERT INTO player (id, name, email) VALUES (?, 'replica', '')", id);
+        }
+        // 只有没写过的线程才能读从库
+        DynamicDataSourceHolder.setReplicaFilter(replica -> WritePositionHolder.getPosition() == 0);
+
+        assertTrue(repository.findAllById(ids).stream().allMatch(user -> "replica".equals(user.getName())));
+        WritePositionHolder.restore(42);
+        List<User> afterWrite = repository.findAllById(ids);
+        assertEquals(ids.size(), afterWrite.size());
+        assertTrue(afterWrite.stream().allMatch(user -> "master".equals(user.getName())));
+    }
+
+    @Test
+    void saveUpdatesWhenAConcurrentInsertWinsTheRace() {
+        long id = 7L;
+        String shard = shardingDataSource.shardFor(id);
+        // UPDATE未命中后、INSERT之前，另一个请求插入了同一ID
+        JdbcTemplate racing = new JdbcTemplate(shardingDataSource) {
+            private boolean raced;
+
+            @Override
+            public int update(String sql, Object... args) {
+                int updated = super.update(sql, args);
+                if (!raced && sql.startsWith("UPDATE users")) {
+                    raced = true;
+                    new JdbcTemplate(masters.get(shard)).update("INSERT INTO users (id, name, email) VALUES (?, 'other', '')", id);
+                }
+                return updated;
+            }
+        };
+        ShardedUserRepository racingUsers = sharded(new ShardedUserRepository(racing, template), template);
+
+        racingUsers.save(new User(id, "mine", "mine@example.com"));
+
+        assertEquals(List.of("mine"), new JdbcTemplate(masters.get(shard))
+                .queryForList("SELECT name FROM users WHERE id = ?", String.class, id));
+    }
+
+    @Test
+    void timedOutScatterGatherInterruptsRunningShardQueries() throws Exception {
+        ShardingTemplate impatient = new ShardingTemplate(shardingDataSource, executor, Duration.ofMillis(200));
+        CountDownLatch interrupted = new CountDownLatch(SHARDS.size());
+        List<Long> ids = LongStream.rangeClosed(1, 60).boxed().collect(Collectors.toList());
+
+        assertThrows(IllegalStateException.class, () -> impatient.scatterGather(ids, shardIds -> {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return List.<Long>of();
+        }));
+        assertTrue(interrupted.await(2, TimeUnit.SECONDS), "running shard queries are interrupted");
+    }
+
+    @Test
+    void findAllByIdScattersAcrossShardsAndMergesResults() {
+        List<Long> ids = LongStream.rangeClosed(1, 200).boxed().collect(Collectors.toList());
+        for (Long id : ids) {
+            String shard = shardingDataSource.shardFor(id);
+            new JdbcTemplate(replicas.get(shard)).update("INSERT INTO player (id, name, email) VALUES (?, ?, ?)",
+                    id, "user" + id, "user" + id + "@example.com");
+        }
+
+        List<User> users = repository.findAllById(ids);
+
+        assertEquals(ids, users.stream().map(User::getId).sorted().collect(Collectors.toList()));
+        assertEquals(SHARDS.size(), repository.queriedThreads().size(), "each shard queried once");
+        assertTrue(repository.queriedThreads().stream().allMatch(thread -> thread.startsWith("pool-")),
+                "shard queries run on the scatter-gather executor");
+    }
+
+    @Test
+    void singleShardBatchRunsOnTheCallerThread() {
+        List<Long> ids = LongStream.rangeClosed(1, 100).boxed()
+                .filter(id -> shardingDataSource.shardFor(id).equals("shard1"))
+                .collect(Collectors.toList());
+
+        assertTrue(repository.findAllById(ids).isEmpty());
+        assertEquals(Set.of(Thread.currentThread().getName()), repository.queriedThreads());
+    }
+
+    @Test
+    void userServiceReadsAndWritesThroughTheShards() {
+        InMemoryUserRepository jpa = new InMemoryUserRepository();
+        UserService service = ServiceFixtures.userService(ServiceFixtures.caffeineCacheManager(),
+                new InMemoryRedisTemplate(), jpa);
+        service.setShardedUsers(users);
+
+        service.save(new User(7L, "master", "m@example.com"));
+        List<User> inserted = new ArrayList<>();
+        for (long id = 100; id < 160; id++) {
+            inserted.add(new User(id, "user" + id, "user" + id + "@example.com"));
+        }
+        service.bulkInsert(inserted);
+
+        int total = 0;
+        for (String shard : SHARDS) {
+            List<Long> ids = new JdbcTemplate(masters.get(shard)).queryForList("SELECT id FROM users", Long.class);
+            ids.forEach(id -> assertEquals(shard, shardingDataSource.shardFor(id)));
+            total += ids.size();
+        }
+        assertEquals(61, total);
+
+        // 读走键所在分片的从库，多级缓存的L3也一样
+        String shard = shardingDataSource.shardFor(7L);
+        new JdbcTemplate(replicas.get(shard)).update("INSERT INTO users (id, name, email) VALUES (7, 'replica', 'r@example.com')");
+        assertEquals("replica", service.findById(7L).getName());
+        assertEquals("replica", service.findById(User.class, "users", 7L).getName());
+        assertEquals(0, jpa.getQueryCount(), "JPA repository must not be used when sharding is on");
+        service.close();
+    }
+
+    @Test
+    void addingAShardMovesOnlyItsShareOfKeys() {
+        ConsistentHashShardMap before = new ConsistentHashShardMap(SHARDS);
+        List<String> grown = new ArrayList<>(SHARDS);
+        grown.add("shard3");
+        ConsistentHashShardMap after = new ConsistentHashShardMap(grown);
+
+        int moved = 0;
+        int keys = 100_000;
+        for (long key = 0; key < keys; key++) {
+            String target = after.shardFor(key);
+            if (!target.equals(before.shardFor(key))) {
+                assertEquals("shard3", target, "keys only move to the new shard");
+                moved++;
+            }
+        }
+        double ratio = (double) moved / keys;
+        assertTrue(ratio > 0.15 && ratio < 0.35, "moved ratio " + ratio);
+    }
+
+    @Test
+    void rangeShardMapRoutesByLowerBound() {
+        RangeShardMap ranges = new RangeShardMap(Map.of("shard0", 1L, "shard1", 1_000_000L, "shard2", 2_000_000L));
+
+        assertEquals("shard0", ranges.shardFor(1));
+        assertEquals("shard0", ranges.shardFor(999_999));
+        assertEquals("shard1", ranges.shardFor(1_000_000));
+        assertEquals("shard2", ranges.shardFor(Long.MAX_VALUE));
+        assertThrows(IllegalArgumentException.class, () -> ranges.shardFor(0));
+    }
+
+    @Test
+    void unboundConnectionIsRejectedWithoutDefaultShard() {
+        assertThrows(IllegalStateException.class, shardingDataSource::getConnection);
+    }
+
+    private static DataSource h2(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        return dataSource;
+    }
+
+    private static void createTable(DataSource dataSource) {
+        new JdbcTemplate(dataSource).execute("CREATE TABLE player (id BIGINT PRIMARY KEY, name VARCHAR(64), email VARCHAR(128))");
+        new JdbcTemplate(dataSource).execute("CREATE TABLE users (id BIGINT PRIMARY KEY, name VARCHAR(64), email VARCHAR(128))");
+    }
+
+    private static int count(DataSource dataSource) {
+        Integer count = new JdbcTemplate(dataSource).queryForObject("SELECT COUNT(*) FROM player", Integer.class);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * 分片表的仓库示例
+     */
+    public static class PlayerRepository {
+
+        private final JdbcTemplate jdbcTemplate;
+        private final Set<String> threads = ConcurrentHashMap.newKeySet();
+
+        public PlayerRepository(JdbcTemplate jdbcTemplate) {
+            this.jdbcTemplate = jdbcTemplate;
+        }
+
+        /**
+         * 执行过findAllById的线程
+         */
+        public Set<String> queriedThreads() {
+            return threads;
+        }
+
+        @Sharded
+        @Master
+        public void save(@ShardKey("id") User user) {
+            jdbcTemplate.update("INSERT INTO player (id, name, email) VALUES (?, ?, ?)",
+                    user.getId(), user.getName(), user.getEmail());
+        }
+
+        @Sharded
+        @ReadOnly
+        public User findById(@ShardKey Long id) {
+            List<User> users = jdbcTemplate.query("SELECT id, name, email FROM player WHERE id = ?",
+                    (rs, row) -> new User(rs.getLong(1), rs.getString(2), rs.getString(3)), id);
+            return users.isEmpty() ? null : users.get(0);
+        }
+
+        @Sharded
+        @ReadOnly
+        public List<User> findAllById(@ShardKey List<Long> ids) {
+            threads.add(Thread.currentThread().getName());
+            if (ids.isEmpty()) {
+                return Collections.emptyList();
+            }
+            String placeholders = ids.stream().map(id -> "?").collect(Collectors.joining(","));
+            return jdbcTemplate.query("SELECT id, name, email FROM player WHERE id IN (" + placeholders + ")",
+                    (rs, row) -> new User(rs.getLong(1), rs.getString(2), rs.getString(3)), ids.toArray());
+        }
+    }
+}
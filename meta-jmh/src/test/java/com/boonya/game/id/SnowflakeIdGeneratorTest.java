@@ -0,0 +1,182 @@
+package com.boonya.game.id;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 雪花ID：单调递增、同一毫秒序号用完借用下一毫秒、时钟回拨、多线程唯一
+ */
+class SnowflakeIdGeneratorTest {
+
+    private static final long BASE = SnowflakeIdGenerator.DEFAULT_EPOCH + 1_000_000;
+
+    @Test
+    void idsIncreaseAndCarryTheirComponents() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(7);
+        long previous = -1;
+        for (int i = 0; i < 100_000; i++) {
+            long id = generator.nextId();
+            assertTrue(id > previous, "ids must increase within a thread");
+            assertEquals(7, SnowflakeIdGenerator.workerIdOf(id));
+            previous = id;
+        }
+        assertTrue(Math.abs(generator.timestampOf(previous) - System.currentTimeMillis()) < 1000);
+
+        assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_WORKER_ID + 1));
+        assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdGenerator(-1));
+    }
+
+    @Test
+    void exhaustedSequenceBorrowsTheNextMillisecond() {
+        // 时钟停在同一毫秒
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, 32, SnowflakeIdGenerator.DEFAULT_EPOCH, 5, 1000, () -> BASE);
+        long previous = -1;
+        for (int i = 0; i < SnowflakeIdGenerator.SEQUENCE_LIMIT; i++) {
+            long id = generator.nextId();
+            assertEquals(BASE, generator.timestampOf(id));
+            assertEquals(i, SnowflakeIdGenerator.sequenceOf(id));
+            assertTrue(id > previous);
+            previous = id;
+        }
+
+        long borrowed = generator.nextId();
+        assertEquals(BASE + 1, generator.timestampOf(borrowed));
+        assertEquals(0, SnowflakeIdGenerator.sequenceOf(borrowed));
+        assertTrue(borrowed > previous);
+
+        // 最多领先时钟 maxAheadMillis
+        for (int i = 1; i < 5 * SnowflakeIdGenerator.SEQUENCE_LIMIT; i++) {
+            previous = generator.nextId();
+        }
+        assertEquals(BASE + 5, generator.timestampOf(previous));
+        assertEquals(SnowflakeIdGenerator.SEQUENCE_LIMIT - 1, SnowflakeIdGenerator.sequenceOf(previous));
+    }
+
+    @Test
+    void generatorWaitsWhenItWouldRunTooFarAheadOfTheClock() {
+        // 发完一毫秒的序号之前时钟不动，之后读到下一毫秒
+        AtomicInteger reads = new AtomicInteger();
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, 1, SnowflakeIdGenerator.DEFAULT_EPOCH, 0, 1000,
+                () -> reads.incrementAndGet() > SnowflakeIdGenerator.SEQUENCE_LIMIT + 1 ? BASE + 1 : BASE);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        generator.bindTo(registry);
+
+        long last = 0;
+        for (int i = 0; i < SnowflakeIdGenerator.SEQUENCE_LIMIT; i++) {
+            last = generator.nextId();
+        }
+        long next = generator.nextId();
+        assertTrue(next > last);
+        assertEquals(BASE + 1, generator.timestampOf(next));
+        assertEquals(0, SnowflakeIdGenerator.sequenceOf(next));
+        assertEquals(1.0, registry.get("id.generator.clock.waits").functionCounter().count());
+    }
+
+    @Test
+    void smallClockRegressionKeepsIssuingIncreasingIds() {
+        AtomicLong now = new AtomicLong(BASE);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, 1, SnowflakeIdGenerator.DEFAULT_EPOCH, 5, 1000, now::get);
+        long before = generator.nextId();
+
+        // 回拨3ms，在 maxAheadMillis 之内，沿用上次的逻辑时间
+        now.set(BASE - 3);
+        long previous = before;
+        for (int i = 0; i < 100; i++) {
+            long id = generator.nextId();
+            assertTrue(id > previous);
+            assertEquals(BASE, generator.timestampOf(id));
+            previous = id;
+        }
+
+        now.set(BASE + 1);
+        long after = generator.nextId();
+        assertTrue(after > previous);
+        assertEquals(BASE + 1, generator.timestampOf(after));
+    }
+
+    @Test
+    void moderateClockRegressionWaitsForTheClockToCatchUp() {
+        // 第一次读取回拨50ms，之后恢复
+        AtomicLong now = new AtomicLong(BASE);
+        AtomicInteger regressedReads = new AtomicInteger();
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, 1, SnowflakeIdGenerator.DEFAULT_EPOCH, 5, 1000,
+                () -> regressedReads.getAndDecrement() > 0 ? now.get() - 50 : now.get());
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        generator.bindTo(registry);
+        long before = generator.nextId();
+
+        regressedReads.set(1);
+        now.set(BASE + 1);
+        long after = generator.nextId();
+        assertTrue(after > before);
+        assertEquals(BASE + 1, generator.timestampOf(after));
+        assertEquals(1.0, registry.get("id.generator.clock.waits").functionCounter().count());
+    }
+
+    @Test
+    void largeClockRegressionIsRejected() {
+        AtomicLong now = new AtomicLong(BASE);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, 1, SnowflakeIdGenerator.DEFAULT_EPOCH, 5, 1000, now::get);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        generator.bindTo(registry);
+        long before = generator.nextId();
+
+        now.set(BASE - 2000);
+        long start = System.nanoTime();
+        assertThrows(IllegalStateException.class, generator::nextId);
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500), "rejection must not block");
+        assertEquals(1.0, registry.get("id.generator.clock.rejections").functionCounter().count());
+
+        // 时钟恢复后继续发号，不与回拨前的ID重复
+        now.set(BASE);
+        assertTrue(generator.nextId() > before);
+    }
+
+    @Test
+    void idsAreUniqueAcrossThreads() throws Exception {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(3);
+        int threads = 8;
+        int perThread = 50_000;
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    boolean increasing = true;
+                    long previous = -1;
+                    for (int i = 0; i < perThread; i++) {
+                        long id = generator.nextId();
+                        increasing &= id > previous;
+                        previous = id;
+                        ids.add(id);
+                    }
+                    return increasing;
+                }));
+            }
+            start.countDown();
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get(30, TimeUnit.SECONDS), "ids must increase within each thread");
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(threads * perThread, ids.size());
+    }
+}
@@ -0,0 +1,128 @@
+package com.boonya.game.jmh.gate;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 折叠栈读取与火焰图：帧宽度按权重比例、子帧按名称排序、方法名转义
+ */
+class FlameGraphSvgTest {
+
+    @Test
+    void collapsedStacksAreParsedIntoTotalsAndSelfWeights() throws Exception {
+        StackProfile profile = StackProfile.readCollapsed(StackProfile.Kind.CPU, fixture());
+
+        assertEquals(100, profile.getTotal());
+        assertEquals(4, profile.getStacks().size());
+        assertEquals(30L, profile.getStacks().get("java.lang.Thread.run;com.foo.Worker.run;com.foo.Cache.<init>"));
+
+        List<Map.Entry<String, Long>> top = profile.topSelf(2);
+        assertEquals("com.foo.Cache.get", top.get(0).getKey());
+        assertEquals(50L, top.get(0).getValue());
+        assertEquals("com.foo.Cache.<init>", top.get(1).getKey());
+    }
+
+    @Test
+    void malformedLinesAreRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> StackProfile.parseCollapsed(StackProfile.Kind.CPU, List.of("a;b;c")));
+        assertThrows(IllegalArgumentException.class,
+                () -> StackProfile.parseCollapsed(StackProfile.Kind.CPU, List.of("a;b;c many")));
+        // 权重为0的栈不计入
+        assertTrue(StackProfile.parseCollapsed(StackProfile.Kind.CPU, List.of("a;b 0")).isEmpty());
+    }
+
+    @Test
+    void writtenStacksReadBackUnchanged(@TempDir Path dir) throws Exception {
+        StackProfile profile = StackProfile.readCollapsed(StackProfile.Kind.ALLOC, fixture());
+        Path file = dir.resolve("alloc.collapsed");
+        profile.writeCollapsed(file);
+
+        StackProfile copy = StackProfile.readCollapsed(StackProfile.Kind.ALLOC, file);
+        assertEquals(profile.getStacks(), copy.getStacks());
+        assertEquals(profile.getTotal(), copy.getTotal());
+    }
+
+    @Test
+    void frameWidthsAreProportionalToWeight() throws Exception {
+        String svg = new FlameGraphSvg().render("cpu", StackProfile.readCollapsed(StackProfile.Kind.CPU, fixture()));
+        Map<String, Element> rects = rectsByTitle(svg);
+
+        // 总宽1200，两侧各留10，100个样本每个11.8
+        assertFrame(rects, "all (100, 100.00%)", 10.0, 78, 1180.0);
+        assertFrame(rects, "java.lang.Thread.run (100, 100.00%)", 10.0, 62, 1180.0);
+        // 同一层按名称排序：Codec在Worker之前
+        assertFrame(rects, "com.foo.Codec.encode&flush (10, 10.00%)", 10.0, 46, 118.0);
+        assertFrame(rects, "com.foo.Worker.run (90, 90.00%)", 128.0, 46, 1062.0);
+        assertFrame(rects, "com.foo.Cache.<init> (30, 30.00%)", 128.0, 30, 354.0);
+        assertFrame(rects, "com.foo.Cache.get (50, 50.00%)", 482.0, 30, 590.0);
+        assertEquals(6, rects.size());
+    }
+
+    @Test
+    void framesNarrowerThanTheMinimumAreSkipped() throws Exception {
+        StackProfile profile = StackProfile.parseCollapsed(StackProfile.Kind.LOCK,
+                List.of("main;busy 1000000", "main;rare 1"));
+        Map<String, Element> rects = rectsByTitle(new FlameGraphSvg().render("lock", profile));
+
+        assertTrue(rects.containsKey("busy (1000000, 100.00%)"));
+        assertFalse(rects.keySet().stream().anyMatch(title -> title.startsWith("rare")));
+    }
+
+    @Test
+    void methodNamesAndTitleAreEscaped() throws Exception {
+        String svg = new FlameGraphSvg().render("<cpu> & \"more\"", StackProfile.readCollapsed(StackProfile.Kind.CPU, fixture()));
+
+        assertTrue(svg.contains("com.foo.Cache.&lt;init&gt; (30, 30.00%)"));
+        assertTrue(svg.contains("com.foo.Codec.encode&amp;flush (10, 10.00%)"));
+        assertTrue(svg.contains("&lt;cpu&gt; &amp; &quot;more&quot; (100 samples)"));
+        assertFalse(svg.contains("<init>"));
+        assertFalse(svg.contains("encode&flush"));
+        // 整个文档是合法的XML
+        assertNotNull(parse(svg));
+    }
+
+    private static void assertFrame(Map<String, Element> rects, String title, double x, int y, double width) {
+        Element rect = rects.get(title);
+        assertNotNull(rect, "missing frame " + title);
+        assertEquals(x, Double.parseDouble(rect.getAttribute("x")), 0.05, title);
+        assertEquals(y, Integer.parseInt(rect.getAttribute("y")), title);
+        assertEquals(width, Double.parseDouble(rect.getAttribute("width")), 0.05, title);
+    }
+
+    /**
+     * 每个帧是 &lt;g&gt;&lt;title/&gt;&lt;rect/&gt;...&lt;/g&gt;，按反转义后的title取rect
+     */
+    private static Map<String, Element> rectsByTitle(String svg) throws Exception {
+        Map<String, Element> rects = new HashMap<>();
+        NodeList groups = parse(svg).getElementsByTagName("g");
+        for (int i = 0; i < groups.getLength(); i++) {
+            Element group = (Element) groups.item(i);
+            String title = group.getElementsByTagName("title").item(0).getTextContent();
+            rects.put(title, (Element) group.getElementsByTagName("rect").item(0));
+        }
+        return rects;
+    }
+
+    private static org.w3c.dom.Document parse(String svg) throws Exception {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(svg.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static Path fixture() throws URISyntaxException {
+        return Path.of(FlameGraphSvgTest.class.getResource("/gate/cpu.collapsed").toURI());
+    }
+}
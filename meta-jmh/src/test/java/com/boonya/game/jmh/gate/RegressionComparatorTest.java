@@ -0,0 +1,132 @@
+package com.boonya.game.jmh.gate;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 回归判定：阈值与置信区间、缺失基线、模式与单位
+ */
+class RegressionComparatorTest {
+
+    private final RegressionComparator comparator = new RegressionComparator(0.05);
+
+    @Test
+    void disjointIntervalsBeyondTheThresholdAreRegressionsOrImprovements() {
+        RegressionComparator.Comparison slower = comparator.compare(
+                entry("a", "thrpt", "ops/s", 1000, 10), entry("a", "thrpt", "ops/s", 900, 10));
+        assertEquals(RegressionComparator.Status.REGRESSION, slower.getStatus());
+        assertEquals(-0.1, slower.getChange(), 1e-9);
+
+        // 时间类指标越小越好
+        RegressionComparator.Comparison faster = comparator.compare(
+                entry("a", "avgt", "ns/op", 100, 1), entry("a", "avgt", "ns/op", 80, 1));
+        assertEquals(RegressionComparator.Status.IMPROVEMENT, faster.getStatus());
+        assertEquals(0.2, faster.getChange(), 1e-9);
+    }
+
+    @Test
+    void changesWithinTheThresholdOrOverlappingIntervalsAreUnchanged() {
+        // 区间不重叠但只慢了3%
+        assertEquals(RegressionComparator.Status.UNCHANGED, comparator.compare(
+                entry("a", "thrpt", "ops/s", 1000, 5), entry("a", "thrpt", "ops/s", 970, 5)).getStatus());
+        // 慢了20%但区间重叠，视为噪声
+        assertEquals(RegressionComparator.Status.UNCHANGED, comparator.compare(
+                entry("a", "thrpt", "ops/s", 1000, 150), entry("a", "thrpt", "ops/s", 800, 150)).getStatus());
+    }
+
+    @Test
+    void singleSampleIsInconclusive() {
+        BenchmarkRecord.Entry current = entry("a", "thrpt", "ops/s", 500, 1);
+        current.setSampleCount(1);
+        RegressionComparator.Comparison comparison = comparator.compare(entry("a", "thrpt", "ops/s", 1000, 1), current);
+        assertEquals(RegressionComparator.Status.INCONCLUSIVE, comparison.getStatus());
+        assertEquals(-0.5, comparison.getChange(), 1e-9);
+    }
+
+    @Test
+    void missingBaselineMarksNewAndMissingBenchmarks() {
+        BenchmarkRecord baseline = record(entry("kept", "thrpt", "ops/s", 1000, 1), entry("dropped", "thrpt", "ops/s", 1000, 1));
+        BenchmarkRecord current = record(entry("kept", "thrpt", "ops/s", 1000, 1), entry("added", "thrpt", "ops/s", 1000, 1));
+
+        Map<String, RegressionComparator.Status> statuses = statuses(comparator.compare(baseline, current));
+        assertEquals(RegressionComparator.Status.UNCHANGED, statuses.get("kept:thrpt"));
+        assertEquals(RegressionComparator.Status.NEW, statuses.get("added:thrpt"));
+        assertEquals(RegressionComparator.Status.MISSING, statuses.get("dropped:thrpt"));
+
+        // 没有基线文件时全部为NEW
+        assertTrue(comparator.compare(null, current).stream()
+                .allMatch(c -> c.getStatus() == RegressionComparator.Status.NEW));
+    }
+
+    @Test
+    void differentModesAndParamsAreNotCompared() {
+        BenchmarkRecord.Entry withParam = entry("a", "thrpt", "ops/s", 10, 1);
+        withParam.getParams().put("userCount", "1000");
+        BenchmarkRecord baseline = record(entry("a", "thrpt", "ops/s", 1000, 1), withParam);
+        BenchmarkRecord current = record(entry("a", "avgt", "ns/op", 1, 0.1), withParam);
+
+        Map<String, RegressionComparator.Status> statuses = statuses(comparator.compare(baseline, current));
+        assertEquals(RegressionComparator.Status.MISSING, statuses.get("a:thrpt"));
+        assertEquals(RegressionComparator.Status.NEW, statuses.get("a:avgt"));
+        assertEquals(RegressionComparator.Status.UNCHANGED, statuses.get("a:thrpt{userCount=1000}"));
+    }
+
+    @Test
+    void scoresInDifferentUnitsAreConvertedToTheBaselineUnit() {
+        // 1000 ops/s 与 1 ops/ms 相同
+        assertEquals(RegressionComparator.Status.UNCHANGED, comparator.compare(
+                entry("a", "thrpt", "ops/s", 1000, 10), entry("a", "thrpt", "ops/ms", 1, 0.01)).getStatus());
+        RegressionComparator.Comparison slower = comparator.compare(
+                entry("a", "thrpt", "ops/s", 1000, 10), entry("a", "thrpt", "ops/ms", 0.5, 0.01));
+        assertEquals(RegressionComparator.Status.REGRESSION, slower.getStatus());
+        assertEquals(-0.5, slower.getChange(), 1e-9);
+
+        // 2 us/op 比 1500 ns/op 慢
+        RegressionComparator.Comparison latency = comparator.compare(
+                entry("a", "avgt", "ns/op", 1500, 10), entry("a", "avgt", "us/op", 2, 0.01));
+        assertEquals(RegressionComparator.Status.REGRESSION, latency.getStatus());
+        assertEquals(-1.0 / 3, latency.getChange(), 1e-9);
+
+        assertEquals(RegressionComparator.Status.INCONCLUSIVE, comparator.compare(
+                entry("a", "thrpt", "ops/s", 1000, 10), entry("a", "thrpt", "B/op", 1000, 10)).getStatus());
+    }
+
+    @Test
+    void unitConversionFactors() {
+        assertEquals(1000, RegressionComparator.conversion("ops/ms", "ops/s"), 1e-9);
+        assertEquals(1e-3, RegressionComparator.conversion("ops/s", "ops/ms"), 1e-12);
+        assertEquals(1000, RegressionComparator.conversion("us/op", "ns/op"), 1e-9);
+        assertEquals(1, RegressionComparator.conversion("ns/op", "ns/op"));
+        assertTrue(Double.isNaN(RegressionComparator.conversion("ops/s", "ns/op")));
+        assertTrue(Double.isNaN(RegressionComparator.conversion("ops/s", null)));
+    }
+
+    private static BenchmarkRecord.Entry entry(String benchmark, String mode, String unit, double score, double error) {
+        BenchmarkRecord.Entry entry = new BenchmarkRecord.Entry();
+        entry.setBenchmark(benchmark);
+        entry.setMode(mode);
+        entry.setUnit(unit);
+        entry.setScore(score);
+        entry.setScoreError(error);
+        entry.setCiLower(score - error);
+        entry.setCiUpper(score + error);
+        entry.setSampleCount(5);
+        return entry;
+    }
+
+    private static BenchmarkRecord record(BenchmarkRecord.Entry... entries) {
+        BenchmarkRecord record = new BenchmarkRecord();
+        record.setResults(List.of(entries));
+        return record;
+    }
+
+    private static Map<String, RegressionComparator.Status> statuses(List<RegressionComparator.Comparison> comparisons) {
+        return comparisons.stream().collect(Collectors.toMap(
+                RegressionComparator.Comparison::getKey, RegressionComparator.Comparison::getStatus));
+    }
+}
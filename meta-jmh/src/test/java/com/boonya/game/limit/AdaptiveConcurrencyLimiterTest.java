@@ -0,0 +1,241 @@
+package com.boonya.game.limit;
+
+import com.boonya.game.limit.AdaptiveConcurrencyLimiter.Permit;
+import com.boonya.game.limit.AdaptiveConcurrencyLimiter.Priority;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 自适应并发限制：RTT驱动的上限调整、优先级份额、排队递交与超时拒绝、取消与递交并发
+ */
+class AdaptiveConcurrencyLimiterTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void limitGrowsWhileRttIsFlatAndShrinksWhenItInflates() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(policy(20), clock::get);
+
+        // 满负荷且RTT不变：没有排队，上限增大
+        for (int round = 0; round < 30; round++) {
+            runRound(limiter, limiter.getLimit(), 10);
+        }
+        int grown = limiter.getLimit();
+        assertTrue(grown > 20, "limit " + grown);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(10), limiter.getRttNoLoadNanos());
+
+        // RTT涨到三倍：估算排队量超过beta，上限回落
+        for (int round = 0; round < 30; round++) {
+            runRound(limiter, limiter.getLimit(), 30);
+        }
+        assertTrue(limiter.getLimit() < grown, "limit " + limiter.getLimit() + " grown " + grown);
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void overloadSignalsShrinkTheLimitAndIdleTrafficDoesNotGrowIt() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(policy(50), clock::get);
+
+        // 在途数远低于上限时不增大
+        for (int round = 0; round < 20; round++) {
+            runRound(limiter, 10, 10);
+        }
+        assertEquals(50, limiter.getLimit());
+
+        for (int round = 0; round < 20; round++) {
+            List<Permit> permits = acquireAll(limiter, 10);
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(10));
+            permits.forEach(Permit::dropped);
+        }
+        assertTrue(limiter.getLimit() < 50, "limit " + limiter.getLimit());
+        assertTrue(limiter.getLimit() >= 4);
+    }
+
+    @Test
+    void prioritiesUseTheirShareOfTheLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(policy(10), clock::get);
+        List<Permit> sheddable = new ArrayList<>();
+        Permit permit;
+        while ((permit = limiter.tryAcquire(Priority.SHEDDABLE)) != null) {
+            sheddable.add(permit);
+        }
+        assertEquals(5, sheddable.size());
+
+        int normal = 0;
+        while (limiter.tryAcquire(Priority.NORMAL) != null) {
+            normal++;
+        }
+        assertEquals(4, normal);
+        assertNotNull(limiter.tryAcquire(Priority.CRITICAL));
+        assertNull(limiter.tryAcquire(Priority.CRITICAL));
+
+        // SHEDDABLE不排队，超出份额立即拒绝
+        assertNull(limiter.acquire(Priority.SHEDDABLE).block(Duration.ofSeconds(1)));
+        assertEquals(1, limiter.getRejected(Priority.SHEDDABLE));
+    }
+
+    @Test
+    void queuedRequestsAreGrantedByPriorityOrTimeOut() throws Exception {
+        AdaptiveConcurrencyLimiter.Policy policy = policy(2);
+        policy.getQueueTimeout().put(Priority.NORMAL, Duration.ofMillis(500));
+        policy.getQueueTimeout().put(Priority.CRITICAL, Duration.ofMillis(500));
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(policy, clock::get);
+        Permit first = limiter.tryAcquire(Priority.CRITICAL);
+        Permit second = limiter.tryAcquire(Priority.CRITICAL);
+        assertNotNull(first);
+        assertNotNull(second);
+
+        CompletableFuture<Permit> normal = limiter.acquire(Priority.NORMAL).toFuture();
+        CompletableFuture<Permit> critical = limiter.acquire(Priority.CRITICAL).toFuture();
+        assertEquals(2, limiter.getQueued());
+
+        // 空出一个位置，先递交给CRITICAL
+        first.success();
+        Permit granted = critical.get(1, TimeUnit.SECONDS);
+        assertEquals(Priority.CRITICAL, granted.getPriority());
+        assertFalse(normal.isDone());
+
+        // NORMAL份额为 2 × 0.9 = 1，等到在途数降到0才能拿到
+        second.success();
+        assertFalse(normal.isDone());
+        granted.success();
+        assertEquals(Priority.NORMAL, normal.get(1, TimeUnit.SECONDS).getPriority());
+        assertEquals(0, limiter.getQueued());
+
+        // 排队超时返回空，计入拒绝，不占用在途数
+        Permit held = limiter.tryAcquire(Priority.CRITICAL);
+        assertNotNull(held);
+        long rejected = limiter.getRejected(Priority.NORMAL);
+        assertNull(limiter.acquire(Priority.NORMAL).block(Duration.ofSeconds(2)));
+        assertEquals(rejected + 1, limiter.getRejected(Priority.NORMAL));
+        assertEquals(0, limiter.getQueued());
+        assertEquals(2, limiter.getInFlight());
+    }
+
+    @Test
+    void cancellationRacingWithGrantDoesNotLeakPermits() throws Exception {
+        AdaptiveConcurrencyLimiter.Policy policy = policy(4);
+        policy.getQueueTimeout().put(Priority.CRITICAL, Duration.ofMillis(2));
+        policy.setMaxQueueSize(10_000);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(policy, System::nanoTime);
+
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            workers.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 2_000; i++) {
+                    Holder holder = new Holder();
+                    limiter.acquire(Priority.CRITICAL).subscribe(holder);
+                    if (random.nextBoolean()) {
+                        // 与drain递交、排队超时竞争的取消
+                        LockSupport.parkNanos(random.nextLong(TimeUnit.MILLISECONDS.toNanos(2)));
+                        holder.cancel();
+                    }
+                    holder.releaseWhenSettled(random.nextLong(TimeUnit.MILLISECONDS.toNanos(1)));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // 取消的等待者最多在排队超时后从队列中清掉
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((limiter.getInFlight() > 0 || limiter.getQueued() > 0) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, limiter.getQueued());
+        assertEquals(0, limiter.getInFlight());
+        assertNotNull(limiter.tryAcquire(Priority.CRITICAL));
+    }
+
+    /**
+     * 订阅方：收到的许可归自己释放，取消后不再等待结果。
+     * Reactor允许取消与onNext并发，取消后才送达的许可由onNext自己释放，与WebFilter中doOnCancel的做法一致
+     */
+    private static final class Holder extends BaseSubscriber<Permit> {
+
+        private static final Object CLOSED = new Object();
+
+        private final CountDownLatch settled = new CountDownLatch(1);
+        private final AtomicReference<Object> permit = new AtomicReference<>();
+
+        @Override
+        protected void hookOnNext(Permit value) {
+            if (!permit.compareAndSet(null, value)) {
+                value.ignore();
+            }
+        }
+
+        @Override
+        protected void hookFinally(SignalType type) {
+            settled.countDown();
+        }
+
+        /**
+         * @param holdNanos 拿到许可后占用的时间，让后来者排队到接近超时
+         */
+        void releaseWhenSettled(long holdNanos) {
+            try {
+                settled.await(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (permit.getAndSet(CLOSED) instanceof Permit received) {
+                LockSupport.parkNanos(holdNanos);
+                received.success();
+            }
+        }
+    }
+
+    private AdaptiveConcurrencyLimiter.Policy policy(int initialLimit) {
+        AdaptiveConcurrencyLimiter.Policy policy = new AdaptiveConcurrencyLimiter.Policy();
+        policy.setInitialLimit(initialLimit);
+        policy.setMinWindowSamples(1);
+        policy.setProbeInterval(Duration.ofHours(1));
+        return policy;
+    }
+
+    /**
+     * 获取n个CRITICAL许可，时钟前进rttMillis后全部正常释放；每轮都跨过一个更新窗口
+     */
+    private void runRound(AdaptiveConcurrencyLimiter limiter, int n, long rttMillis) {
+        List<Permit> permits = acquireAll(limiter, n);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(rttMillis));
+        permits.forEach(Permit::success);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    private List<Permit> acquireAll(AdaptiveConcurrencyLimiter limiter, int n) {
+        List<Permit> permits = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Permit permit = limiter.tryAcquire(Priority.CRITICAL);
+            if (permit == null) {
+                break;
+            }
+            permits.add(permit);
+        }
+        return permits;
+    }
+}
@@ -0,0 +1,168 @@
+package com.boonya.game.order;
+
+import com.boonya.game.id.SnowflakeIdGenerator;
+import com.boonya.game.service.OrderService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 订单状态从内存映射事件日志重建
+ */
+class OrderEventLogRecoveryTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void rebuildsOrdersAfterRestart() throws Exception {
+        Path file = dir.resolve("orders.log");
+        long processed;
+        long completed;
+        try (MappedOrderEventLog log = MappedOrderEventLog.open(file, null)) {
+            OrderService service = service(log, Runnable::run);
+            processed = service.createOrder(1L, 10.0).getId();
+            completed = service.createOrder(2L, 20.0).getId();
+            assertTrue(service.completeOrder(completed));
+        }
+
+        try (MappedOrderEventLog log = MappedOrderEventLog.open(file, null)) {
+            OrderService service = service(log, Runnable::run);
+            assertEquals(OrderService.PROCESSED, service.getOrder(processed).getStatus());
+            assertEquals(OrderService.COMPLETED, service.getOrder(completed).getStatus());
+            assertEquals(20.0, service.getOrder(completed).getAmount());
+            assertEquals(2L, service.getOrder(completed).getUserId());
+        }
+    }
+
+    @Test
+    void completeOrderIsIdempotent() throws Exception {
+        try (MappedOrderEventLog log = MappedOrderEventLog.open(dir.resolve("orders.log"), null)) {
+            OrderService service = service(log, Runnable::run);
+            long id = service.createOrder(1L, 10.0).getId();
+            assertTrue(service.completeOrder(id));
+            long events = log.size();
+            assertTrue(service.completeOrder(id));
+            assertTrue(service.completeOrder(id));
+            assertEquals(events, log.size());
+            assertFalse(service.completeOrder(-1L));
+        }
+    }
+
+    /**
+     * 处理阶段没执行就重启：完成请求已落日志，重放后重新处理并补完成
+     */
+    @Test
+    void resumesPendingOrdersOnRecovery() throws Exception {
+        Path file = dir.resolve("orders.log");
+        long id;
+        try (MappedOrderEventLog log = MappedOrderEventLog.open(file, null)) {
+            OrderService service = service(log, task -> { });
+            id = service.createOrder(1L, 10.0).getId();
+            assertTrue(service.completeOrder(id));
+            assertEquals(OrderService.CREATED, service.getOrder(id).getStatus());
+        }
+
+        try (MappedOrderEventLog log = MappedOrderEventLog.open(file, null)) {
+            OrderService service = service(log, Runnable::run);
+            assertEquals(OrderService.COMPLETED, service.getOrder(id).getStatus());
+        }
+    }
+
+    @Test
+    void skipsTornRecords() throws Exception {
+        Path file = dir.resolve("orders.log");
+        long id;
+        try (MappedOrderEventLog log = MappedOrderEventLog.open(file, null)) {
+            OrderService service = service(log, Runnable::run);
+            id = service.createOrder(1L, 10.0).getId();
+            service.createOrder(2L, 20.0);
+        }
+        // 第3条记录（第二个订单的CREATED）写了类型字节但数据被截断
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[8]), 2L * MappedOrderEventLog.RECORD_SIZE + 8);
+        }
+
+        try (MappedOrderEventLog log = MappedOrderEventLog.open(file, null)) {
+            List<OrderEvent> events = new ArrayList<>();
+            log.replay(events::add);
+            assertEquals(3, events.size());
+            assertEquals(id, events.get(0).orderId());
+            assertEquals(OrderEvent.Type.PROCESSED, events.get(2).type());
+        }
+    }
+
+    @Test
+    void concurrentAppendsAreAllReplayed() throws Exception {
+        Path file = dir.resolve("orders.log");
+        int threads = 4;
+        int perThread = 1_000;
+        ExecutorService callers = Executors.newFixedThreadPool(threads);
+        ExecutorService processing = Executors.newFixedThreadPool(2);
+        try (MappedOrderEventLog log = MappedOrderEventLog.open(file, null)) {
+            OrderService service = service(log, processing);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                long userId = t;
+                futures.add(callers.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        service.completeOrder(service.createOrder(userId, 1.0).getId());
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            // 处理阶段全部结束后才关闭日志
+            processing.shutdown();
+            assertTrue(processing.awaitTermination(30, TimeUnit.SECONDS));
+        } finally {
+            callers.shutdown();
+            processing.shutdownNow();
+        }
+
+        try (MappedOrderEventLog log = MappedOrderEventLog.open(file, null)) {
+            OrderService service = service(log, Runnable::run);
+            List<OrderEvent> created = new ArrayList<>();
+            log.replay(event -> {
+                if (event.type() == OrderEvent.Type.CREATED) {
+                    created.add(event);
+                }
+            });
+            assertEquals(threads * perThread, created.size());
+            for (OrderEvent event : created) {
+                assertEquals(OrderService.COMPLETED, service.getOrder(event.orderId()).getStatus());
+            }
+        }
+    }
+
+    @Test
+    void appendAfterCloseIsRejected() throws Exception {
+        MappedOrderEventLog log = MappedOrderEventLog.open(dir.resolve("orders.log"), null);
+        log.append(OrderEvent.of(OrderEvent.Type.CREATED, 1L, 1L, 1.0));
+        log.close();
+        assertThrows(IllegalStateException.class, () -> log.append(OrderEvent.of(OrderEvent.Type.PROCESSED, 1L, 1L, 0)));
+        // 重复关闭无副作用
+        log.close();
+        assertEquals(1, log.size());
+    }
+
+    private static OrderService service(OrderEventLog log, java.util.concurrent.Executor executor) {
+        OrderService service = new OrderService(new SnowflakeIdGenerator(0), log, executor);
+        service.setProcessingDelayMillis(0);
+        service.recover();
+        return service;
+    }
+}
@@ -0,0 +1,129 @@
+package com.boonya.game.service;
+
+import com.boonya.game.jmh.fake.InMemoryRedisTemplate;
+import com.boonya.game.jmh.fake.InMemoryUserRepository;
+import com.boonya.game.jmh.fake.ServiceFixtures;
+import com.boonya.game.model.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.ReactiveRedisOperations;
+import org.springframework.data.redis.core.ReactiveValueOperations;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 响应式读路径：L1合并未命中、查库超时、不存在的用户不缓存、保存后不再从L2读到旧值
+ */
+class ReactiveUserServiceTest {
+
+    @Test
+    void concurrentMissesShareOneLoadAndThenHitLocally() {
+        AtomicInteger loads = new AtomicInteger();
+        Sinks.One<User> pending = Sinks.one();
+        ReactiveUserService service = new ReactiveUserService(id -> {
+            loads.incrementAndGet();
+            return pending.asMono();
+        }, null, new ReactiveUserProperties());
+
+        Mono<User> first = service.getUser(1L);
+        Mono<User> second = service.getUser(1L);
+        pending.tryEmitValue(new User(1L, "user1", "user1@example.com"));
+
+        assertEquals("user1", first.block(Duration.ofSeconds(1)).getName());
+        assertEquals("user1", second.block(Duration.ofSeconds(1)).getName());
+        assertEquals("user1", service.getUser(1L).block(Duration.ofSeconds(1)).getName());
+        assertEquals(1, loads.get());
+        // 第二个调用方拿到的是在途的Future，也算L1命中
+        assertEquals(2, service.getLocalHits());
+        assertEquals(1, service.getLocalMisses());
+
+        service.evict(1L);
+        assertNotNull(service.getUser(1L).block(Duration.ofSeconds(1)));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void databaseTimeoutFailsWith504AndIsNotCached() {
+        AtomicInteger loads = new AtomicInteger();
+        ReactiveUserProperties properties = new ReactiveUserProperties();
+        properties.setDatabaseTimeout(Duration.ofMillis(20));
+        ReactiveUserService service = new ReactiveUserService(id -> {
+            loads.incrementAndGet();
+            return Mono.never();
+        }, null, properties);
+
+        ResponseStatusException error = assertThrows(ResponseStatusException.class,
+                () -> service.getUser(1L).block(Duration.ofSeconds(1)));
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT, error.getStatusCode());
+        assertEquals(1, service.getDatabaseTimeouts());
+
+        // 失败的加载不留在L1，下一次请求重新查库
+        assertThrows(ResponseStatusException.class, () -> service.getUser(1L).block(Duration.ofSeconds(1)));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void missingUserIsEmptyAndNotCached() {
+        AtomicInteger loads = new AtomicInteger();
+        ReactiveUserService service = new ReactiveUserService(id -> {
+            loads.incrementAndGet();
+            return Mono.empty();
+        }, null, new ReactiveUserProperties());
+
+        assertNull(service.getUser(404L).block(Duration.ofSeconds(1)));
+        assertNull(service.getUser(404L).block(Duration.ofSeconds(1)));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void saveThroughUserServiceDeletesTheSharedRedisKey() {
+        InMemoryRedisTemplate redis = new InMemoryRedisTemplate();
+        InMemoryUserRepository repository = new InMemoryUserRepository(10);
+        UserService userService = ServiceFixtures.userService(ServiceFixtures.caffeineCacheManager(), redis, repository);
+        ReactiveUserService service = new ReactiveUserService(id -> Mono.justOrEmpty(repository.findById(id)),
+                reactive(redis), new ReactiveUserProperties());
+        ReflectionTestUtils.setField(userService, "reactiveUserService", service);
+
+        assertEquals("user1", service.getUser(1L).block(Duration.ofSeconds(1)).getName());
+        assertNotNull(redis.opsForValue().get("users_:1"));
+
+        userService.save(new User(1L, "renamed", "renamed@example.com"));
+        assertNull(redis.opsForValue().get("users_:1"));
+        assertEquals("renamed", service.getUser(1L).block(Duration.ofSeconds(1)).getName());
+        assertEquals("renamed", ((User) redis.opsForValue().get("users_:1")).getName());
+        userService.close();
+    }
+
+    /**
+     * 以InMemoryRedisTemplate为存储的响应式Redis，只支持读写值
+     */
+    @SuppressWarnings("unchecked")
+    private static ReactiveRedisOperations<Object, Object> reactive(InMemoryRedisTemplate redis) {
+        ReactiveValueOperations<Object, Object> values = (ReactiveValueOperations<Object, Object>) Proxy.newProxyInstance(
+                ReactiveValueOperations.class.getClassLoader(), new Class<?>[]{ReactiveValueOperations.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "get" -> Mono.justOrEmpty(redis.opsForValue().get(args[0]));
+                    case "set" -> Mono.fromSupplier(() -> {
+                        redis.opsForValue().set((String) args[0], args[1]);
+                        return true;
+                    });
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+        return (ReactiveRedisOperations<Object, Object>) Proxy.newProxyInstance(
+                ReactiveRedisOperations.class.getClassLoader(), new Class<?>[]{ReactiveRedisOperations.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("opsForValue") && (args == null || args.length == 0)) {
+                        return values;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
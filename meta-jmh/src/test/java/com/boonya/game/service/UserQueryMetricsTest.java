@@ -0,0 +1,67 @@
+package com.boonya.game.service;
+
+import com.boonya.game.model.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 指标门面：分桶标签、错误类型上限、分层命中率
+ */
+class UserQueryMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final UserQueryMetrics metrics = new UserQueryMetrics(registry);
+
+    @Test
+    void batchSizesAreBucketed() {
+        assertEquals("1", UserQueryMetrics.bucketName(1));
+        assertEquals("2-10", UserQueryMetrics.bucketName(10));
+        assertEquals("11-100", UserQueryMetrics.bucketName(11));
+        assertEquals("101-1000", UserQueryMetrics.bucketName(1000));
+        assertEquals("over_1000", UserQueryMetrics.bucketName(5000));
+
+        for (int size = 1; size <= 2000; size++) {
+            metrics.batchDone(metrics.batchStart(size));
+        }
+        assertEquals(5, registry.find("user.batch.query.count").counters().size());
+        assertEquals(90, registry.get("user.batch.query.count").tag("batch_size", "11-100").counter().count());
+        assertEquals(2000, registry.get("user.batch.query.size").summary().count());
+    }
+
+    @Test
+    void errorTypesAreCapped() {
+        for (int i = 0; i < 100; i++) {
+            metrics.error("Error" + i);
+        }
+        // other 在构造时注册，另外最多 MAX_ERROR_TYPES 种
+        assertEquals(UserQueryMetrics.MAX_ERROR_TYPES + 1, registry.find("user.query.error.types").counters().size());
+        assertEquals(100 - UserQueryMetrics.MAX_ERROR_TYPES,
+                registry.get("user.query.error.types").tag("error_type", "other").counter().count());
+        assertEquals(100, registry.get("user.query.errors").counter().count());
+    }
+
+    @Test
+    void hitRatioIsReportedPerTier() {
+        assertTrue(Double.isNaN(registry.get("user.cache.hit.ratio").tag("tier", "local").gauge().value()));
+
+        User user = new User(1L, "user1", "user1@example.com");
+        for (int i = 0; i < 8; i++) {
+            metrics.localHit();
+            metrics.success(metrics.start(), user);
+        }
+        metrics.localMiss();
+        metrics.redisHits(1);
+        metrics.localMiss();
+        metrics.redisMisses(1);
+
+        assertEquals(0.8, registry.get("user.cache.hit.ratio").tag("tier", "local").gauge().value(), 1e-9);
+        assertEquals(0.5, registry.get("user.cache.hit.ratio").tag("tier", "redis").gauge().value(), 1e-9);
+        assertEquals(0.9, registry.get("user.cache.hit.ratio").tag("tier", "overall").gauge().value(), 1e-9);
+        assertEquals(8, registry.get("user.query.duration").functionTimer().count());
+        assertEquals(8, registry.get("user.query.count").functionCounter().count());
+        assertEquals(1, registry.get("user.cache.requests").tag("tier", "redis").tag("result", "miss")
+                .functionCounter().count());
+    }
+}
@@ -0,0 +1,76 @@
+package com.boonya.game.service;
+
+import com.boonya.game.jmh.fake.InMemoryRedisTemplate;
+import com.boonya.game.jmh.fake.InMemoryUserRepository;
+import com.boonya.game.jmh.fake.ServiceFixtures;
+import com.boonya.game.model.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.CacheManager;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 写路径失效：保存后多级缓存、视图与无锁缓存都读到新值
+ */
+class UserServiceEvictionTest {
+
+    private final CacheManager localCache = ServiceFixtures.caffeineCacheManager();
+    private final InMemoryRedisTemplate redis = new InMemoryRedisTemplate();
+    private final InMemoryUserRepository repository = new InMemoryUserRepository(10);
+    private final UserService service = ServiceFixtures.userService(localCache, redis, repository);
+
+    @AfterEach
+    void close() {
+        service.close();
+    }
+
+    @Test
+    void saveIsVisibleToTheOptimizedViewAndTheMultiLevelCache() {
+        warm(1L);
+
+        service.save(new User(1L, "renamed", "renamed@example.com"));
+
+        assertEquals("renamed", service.getUserOptimized(1L).name());
+        assertEquals("renamed", service.getUserMultiLevel(1L).getName());
+        assertEquals("renamed", service.getUserLockFree(1L).getName());
+    }
+
+    @Test
+    void saveDeletesTheRedisKeyAndTheLocalEntry() {
+        warm(2L);
+        assertNotNull(redis.opsForValue().get("users_:2"));
+        assertNotNull(localCache.getCache("users").get(2L));
+
+        service.save(new User(2L, "renamed", "renamed@example.com"));
+
+        assertNull(redis.opsForValue().get("users_:2"));
+        assertNull(localCache.getCache("users").get(2L));
+    }
+
+    @Test
+    void batchWritesEvictEveryUser() {
+        warm(3L);
+        warm(4L);
+
+        service.saveAll(List.of(new User(3L, "batch3", "batch3@example.com")));
+        service.bulkInsert(List.of(new User(4L, "batch4", "batch4@example.com")));
+
+        assertEquals("batch3", service.getUserOptimized(3L).name());
+        assertEquals("batch4", service.getUserOptimized(4L).name());
+    }
+
+    /**
+     * 读一次，使Redis、"users"本地缓存与视图都缓存旧值；Redis由回填线程异步写入
+     */
+    private void warm(Long id) {
+        assertNotEquals("renamed", service.getUserOptimized(id).name());
+        service.getUserLockFree(id);
+        long deadline = System.nanoTime() + 2_000_000_000L;
+        while (redis.opsForValue().get("users_:" + id) == null && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+    }
+}